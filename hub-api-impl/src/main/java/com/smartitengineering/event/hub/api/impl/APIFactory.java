@@ -17,11 +17,14 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package com.smartitengineering.event.hub.api.impl;
 
+import com.smartitengineering.event.hub.api.ByteContent;
 import com.smartitengineering.event.hub.api.Channel;
 import com.smartitengineering.event.hub.api.Content;
 import com.smartitengineering.event.hub.api.Event;
 import com.smartitengineering.event.hub.api.Filter;
 import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -67,6 +70,65 @@ public final class APIFactory {
     return contentImpl;
   }
 
+  public static ByteContent getContent(String contentType,
+                                       byte[] content) {
+    return getContent(contentType, content, null);
+  }
+
+  /**
+   * Create a content over the given bytes. The bytes are not copied, thus the caller must not modify them once they
+   * are handed over.
+   * @param contentType MIME type of the content
+   * @param content Bytes of the content
+   * @param charset Character set of the content, if null the charset parameter of the MIME type if any is used
+   * @return Content over the bytes
+   */
+  public static ByteContent getContent(String contentType,
+                                       byte[] content,
+                                       String charset) {
+    if (contentType == null || content == null) {
+      throw new IllegalArgumentException(
+          "Content or content type can not be null. They are mendatory fields");
+    }
+    return new ByteContentImpl(contentType, content, charset);
+  }
+
+  /**
+   * Retrieve the bytes of a content, without copying them if it is a {@link ByteContent} else by reading its stream
+   * fully and closing it.
+   * @param content Content to retrieve the bytes of
+   * @return The bytes of the content, which must not be modified
+   */
+  public static byte[] getContentBytes(Content content) {
+    if (content instanceof ByteContent) {
+      return ((ByteContent) content).getBytes();
+    }
+    final InputStream stream = content.getContent();
+    if (stream == null) {
+      return new byte[0];
+    }
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) > -1) {
+        outputStream.write(buffer, 0, read);
+      }
+      return outputStream.toByteArray();
+    }
+    catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read content", ex);
+    }
+    finally {
+      try {
+        stream.close();
+      }
+      catch (IOException ex) {
+        //Nothing to do
+      }
+    }
+  }
+
   public static class EventBuilder {
 
     private final EventImpl builderEvent;
@@ -0,0 +1,82 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ *
+ * @author imyousuf
+ */
+class ByteContentImpl
+    implements ByteContent {
+
+  static final String CHARSET_PARAM = "charset=";
+  private final String contentType;
+  private final byte[] bytes;
+  private final String charset;
+
+  ByteContentImpl(String contentType, byte[] bytes, String charset) {
+    this.contentType = contentType;
+    this.bytes = bytes;
+    this.charset = StringUtils.isBlank(charset) ? getCharsetParameter(contentType) : charset;
+  }
+
+  public InputStream getContent() {
+    return new ByteArrayInputStream(bytes);
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public ByteBuffer getByteBuffer() {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  public int getLength() {
+    return bytes.length;
+  }
+
+  public String getCharset() {
+    return charset;
+  }
+
+  static String getCharsetParameter(String contentType) {
+    if (StringUtils.isBlank(contentType)) {
+      return null;
+    }
+    final String[] params = contentType.split(";");
+    for (int i = 1; i < params.length; ++i) {
+      final String param = params[i].trim();
+      if (param.regionMatches(true, 0, CHARSET_PARAM, 0, CHARSET_PARAM.length())) {
+        final String value = StringUtils.strip(param.substring(CHARSET_PARAM.length()).trim(), "\"");
+        return StringUtils.isBlank(value) ? null : value;
+      }
+    }
+    return null;
+  }
+}
@@ -20,7 +20,6 @@ package com.smartitengineering.event.hub.api.impl;
 import com.smartitengineering.event.hub.api.Event;
 import com.smartitengineering.event.hub.api.Filter;
 import org.apache.commons.lang.StringUtils;
-import org.jruby.embed.ScriptingContainer;
 
 /**
  *
@@ -31,7 +30,7 @@ class FilterImpl
 
   private SupportedMimeType mimeType;
   private String filterScript;
-  private ScriptingContainer rubyScriptingContainer;
+  private volatile ScriptEvaluatorPool evaluatorPool;
 
   public SupportedMimeType getMimeType() {
     return mimeType;
@@ -42,6 +41,7 @@ class FilterImpl
       throw new IllegalArgumentException();
     }
     this.mimeType = mimeType;
+    discardEvaluatorPool();
   }
 
   public String getFilterScript() {
@@ -50,38 +50,45 @@ class FilterImpl
 
   public void setFilterScript(String filterScript) {
     this.filterScript = filterScript;
+    discardEvaluatorPool();
   }
 
   public boolean allowBroadcast(Event event) {
     if (mimeType == null || StringUtils.isBlank(filterScript)) {
       return true;
     }
-    switch (mimeType) {
-      case RUBY:
-        return allowBroadcastTestUsingRuby(event);
-      default:
-        return true;
-    }
+    return getEvaluatorPool().allowBroadcast(event);
   }
 
-  protected synchronized void initRuby() {
-    if (StringUtils.isNotBlank(filterScript) && (rubyScriptingContainer == null)) {
-      rubyScriptingContainer = new ScriptingContainer();
-      rubyScriptingContainer.runScriptlet(filterScript);
+  protected ScriptEvaluatorPool getEvaluatorPool() {
+    ScriptEvaluatorPool pool = evaluatorPool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = evaluatorPool;
+        if (pool == null) {
+          pool = new ScriptEvaluatorPool(mimeType, filterScript);
+          evaluatorPool = pool;
+        }
+      }
     }
+    return pool;
   }
 
-  protected ScriptingContainer getRubyScriptingContainer() {
-    return rubyScriptingContainer;
+  /**
+   * Drop the pool of the current script, closing its evaluators, so that the next evaluation compiles the new one.
+   */
+  protected void discardEvaluatorPool() {
+    final ScriptEvaluatorPool pool;
+    synchronized (this) {
+      pool = evaluatorPool;
+      evaluatorPool = null;
+    }
+    if (pool != null) {
+      pool.close();
+    }
   }
 
-  protected synchronized boolean allowBroadcastTestUsingRuby(Event event) {
-    if (rubyScriptingContainer == null) {
-      initRuby();
-    }
-    final Boolean bool;
-    bool = rubyScriptingContainer.callMethod(null,
-        ALLOW_BROADCAST_METHOD_NAME, new Object[] {event}, Boolean.class);
-    return bool;
+  protected boolean allowBroadcastTestUsingRuby(Event event) {
+    return getEvaluatorPool().allowBroadcast(event);
   }
 }
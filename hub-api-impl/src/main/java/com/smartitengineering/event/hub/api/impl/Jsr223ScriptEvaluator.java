@@ -0,0 +1,94 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Evaluates filters in languages with a JSR-223 script engine, i.e. Groovy, JavaScript and Python. Each evaluator
+ * has an engine of its own in which the script is compiled, if the engine supports it, and run once to define the
+ * <tt>allowBroadcast</tt> function, which is then invoked for every event.
+ * @author imyousuf
+ */
+class Jsr223ScriptEvaluator
+    implements ScriptEvaluator {
+
+  private final Invocable invocable;
+
+  Jsr223ScriptEvaluator(String engineName, String script) {
+    final ScriptEngine engine = new ScriptEngineManager(getClass().getClassLoader()).getEngineByName(engineName);
+    if (engine == null) {
+      throw new IllegalStateException("No script engine available for " + engineName);
+    }
+    if (!(engine instanceof Invocable)) {
+      throw new IllegalStateException("Script engine for " + engineName + " can not invoke functions");
+    }
+    try {
+      if (engine instanceof Compilable) {
+        ((Compilable) engine).compile(script).eval();
+      }
+      else {
+        engine.eval(script);
+      }
+    }
+    catch (ScriptException ex) {
+      throw new IllegalArgumentException("Could not compile filter script", ex);
+    }
+    invocable = (Invocable) engine;
+  }
+
+  @Override
+  public boolean allowBroadcast(Event event) {
+    final Object result;
+    try {
+      result = invocable.invokeFunction(Filter.ALLOW_BROADCAST_METHOD_NAME, event);
+    }
+    catch (ScriptException ex) {
+      throw new IllegalStateException("Could not evaluate filter script", ex);
+    }
+    catch (NoSuchMethodException ex) {
+      throw new IllegalStateException("Filter script does not define " + Filter.ALLOW_BROADCAST_METHOD_NAME, ex);
+    }
+    return toBoolean(result);
+  }
+
+  @Override
+  public void close() {
+    //Script engines hold nothing that is not released once they are no longer referred to
+  }
+
+  static boolean toBoolean(Object result) {
+    if (result == null) {
+      return false;
+    }
+    if (result instanceof Boolean) {
+      return ((Boolean) result).booleanValue();
+    }
+    if (result instanceof Number) {
+      return ((Number) result).intValue() != 0;
+    }
+    //Script objects such as Python's True are converted from their string form
+    return Boolean.parseBoolean(result.toString());
+  }
+}
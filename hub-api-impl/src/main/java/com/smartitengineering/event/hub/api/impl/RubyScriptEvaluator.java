@@ -0,0 +1,54 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+
+/**
+ * Evaluates Ruby filters in a scripting container of its own, into which the script is loaded once.
+ * @author imyousuf
+ */
+class RubyScriptEvaluator
+    implements ScriptEvaluator {
+
+  private final ScriptingContainer container;
+
+  RubyScriptEvaluator(String script) {
+    //The container is only ever used by one thread at a time, so it need not be thread safe
+    container = new ScriptingContainer(LocalContextScope.SINGLETHREAD);
+    container.runScriptlet(script);
+  }
+
+  @Override
+  public boolean allowBroadcast(Event event) {
+    final Boolean bool = container.callMethod(null, Filter.ALLOW_BROADCAST_METHOD_NAME, new Object[]{event},
+                                              Boolean.class);
+    return bool != null && bool.booleanValue();
+  }
+
+  /**
+   * Terminate the container, which otherwise keeps its Ruby runtime and the threads it started.
+   */
+  @Override
+  public void close() {
+    container.terminate();
+  }
+}
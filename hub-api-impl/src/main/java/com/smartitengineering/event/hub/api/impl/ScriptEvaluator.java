@@ -0,0 +1,35 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.Event;
+
+/**
+ * Evaluates the <tt>allowBroadcast</tt> function of a filter script that has been compiled once for the evaluator.
+ * Evaluators are not thread safe and are confined to one thread at a time by {@link ScriptEvaluatorPool}.
+ * @author imyousuf
+ */
+interface ScriptEvaluator {
+
+  public boolean allowBroadcast(Event event);
+
+  /**
+   * Release the resources held by the evaluator, after which it is not to be used.
+   */
+  public void close();
+}
@@ -0,0 +1,161 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of evaluators of one filter script. Evaluators are created on demand, up to the size of the pool which by
+ * default is the number of available processors, and each is used by one caller at a time, so that concurrent
+ * callers neither share script state nor serialize on a single lock. Callers beyond the size of the pool wait for an
+ * evaluator to be returned. Once a pool is {@link #close() closed} its evaluators are closed as soon as they are
+ * idle.
+ * @author imyousuf
+ */
+class ScriptEvaluatorPool {
+
+  private static final long WAIT_IN_MILLIS = 100;
+  private final SupportedMimeType mimeType;
+  private final String script;
+  private final int maxSize;
+  private final BlockingQueue<ScriptEvaluator> idleEvaluators;
+  private final AtomicInteger createdEvaluators = new AtomicInteger(0);
+  private volatile boolean closed = false;
+
+  ScriptEvaluatorPool(SupportedMimeType mimeType, String script) {
+    this(mimeType, script, Runtime.getRuntime().availableProcessors());
+  }
+
+  ScriptEvaluatorPool(SupportedMimeType mimeType, String script, int maxSize) {
+    if (mimeType == null || script == null) {
+      throw new IllegalArgumentException("Mime type and script are mandatory");
+    }
+    this.mimeType = mimeType;
+    this.script = script;
+    this.maxSize = maxSize > 0 ? maxSize : 1;
+    this.idleEvaluators = new LinkedBlockingQueue<ScriptEvaluator>(this.maxSize);
+  }
+
+  public SupportedMimeType getMimeType() {
+    return mimeType;
+  }
+
+  public String getScript() {
+    return script;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getCreatedEvaluatorCount() {
+    return createdEvaluators.get();
+  }
+
+  public boolean allowBroadcast(Event event) {
+    final ScriptEvaluator evaluator = borrow();
+    try {
+      return evaluator.allowBroadcast(event);
+    }
+    finally {
+      giveBack(evaluator);
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Close the idle evaluators and those in use when they are given back. Callers still holding on to the pool may go
+   * on using it, but every evaluator it creates is closed after a use.
+   */
+  public void close() {
+    closed = true;
+    closeIdleEvaluators();
+  }
+
+  protected void giveBack(ScriptEvaluator evaluator) {
+    if (closed || !idleEvaluators.offer(evaluator)) {
+      closeEvaluator(evaluator);
+      return;
+    }
+    //Close may have drained the idle evaluators between checking and offering
+    if (closed) {
+      closeIdleEvaluators();
+    }
+  }
+
+  protected void closeIdleEvaluators() {
+    ScriptEvaluator evaluator = idleEvaluators.poll();
+    while (evaluator != null) {
+      closeEvaluator(evaluator);
+      evaluator = idleEvaluators.poll();
+    }
+  }
+
+  protected void closeEvaluator(ScriptEvaluator evaluator) {
+    createdEvaluators.decrementAndGet();
+    evaluator.close();
+  }
+
+  protected ScriptEvaluator borrow() {
+    ScriptEvaluator evaluator = idleEvaluators.poll();
+    while (evaluator == null) {
+      if (createdEvaluators.incrementAndGet() <= maxSize) {
+        try {
+          return createEvaluator();
+        }
+        catch (RuntimeException ex) {
+          createdEvaluators.decrementAndGet();
+          throw ex;
+        }
+      }
+      createdEvaluators.decrementAndGet();
+      try {
+        //Wait for one to be returned, but recheck periodically in case the creation of another one failed
+        evaluator = idleEvaluators.poll(WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a filter script evaluator", ex);
+      }
+    }
+    return evaluator;
+  }
+
+  protected ScriptEvaluator createEvaluator() {
+    switch (mimeType) {
+      case RUBY:
+        return new RubyScriptEvaluator(script);
+      case GROOVY:
+        return new Jsr223ScriptEvaluator("groovy", script);
+      case JAVA_SCRIPT:
+        return new Jsr223ScriptEvaluator("javascript", script);
+      case JYTHON:
+        return new Jsr223ScriptEvaluator("python", script);
+      default:
+        throw new UnsupportedOperationException("Unsupported filter type " + mimeType);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Content;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ByteContentImplTest
+    extends TestCase {
+
+  public void testBytesAreNotCopied() throws Exception {
+    byte[] bytes = "some content".getBytes("UTF-8");
+    ByteContent content = APIFactory.getContent("text/plain", bytes);
+    assertSame(bytes, content.getBytes());
+    assertEquals(bytes.length, content.getLength());
+    assertSame(bytes, APIFactory.getContentBytes(content));
+    assertEquals("text/plain", content.getContentType());
+  }
+
+  public void testStreamIsFreshPerCall() throws Exception {
+    byte[] bytes = "some content".getBytes("UTF-8");
+    ByteContent content = APIFactory.getContent("text/plain", bytes);
+    assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(content.getContent())));
+    assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(content.getContent())));
+  }
+
+  public void testByteBufferIsReadOnly() throws Exception {
+    byte[] bytes = "some content".getBytes("UTF-8");
+    ByteBuffer buffer = APIFactory.getContent("text/plain", bytes).getByteBuffer();
+    assertTrue(buffer.isReadOnly());
+    assertEquals(0, buffer.position());
+    assertEquals(bytes.length, buffer.remaining());
+  }
+
+  public void testCharset() {
+    byte[] bytes = new byte[0];
+    assertNull(APIFactory.getContent("text/plain", bytes).getCharset());
+    assertEquals("ISO-8859-1", APIFactory.getContent("text/plain; charset=ISO-8859-1", bytes).getCharset());
+    assertEquals("UTF-8", APIFactory.getContent("text/plain;Charset=\"UTF-8\"", bytes).getCharset());
+    assertEquals("UTF-16", APIFactory.getContent("text/plain; charset=ISO-8859-1", bytes, "UTF-16").getCharset());
+  }
+
+  public void testGetContentBytesReadsStream() throws Exception {
+    byte[] bytes = "some content".getBytes("UTF-8");
+    InputStream stream = new ByteArrayInputStream(bytes);
+    Content content = APIFactory.getContent("text/plain", stream);
+    assertTrue(Arrays.equals(bytes, APIFactory.getContentBytes(content)));
+  }
+
+  public void testCreateContent() {
+    try {
+      APIFactory.getContent(null, new byte[0]);
+      fail("Should not be able to initialize");
+    }
+    catch (IllegalArgumentException exception) {
+      //Success!
+    }
+    try {
+      APIFactory.getContent("text/plain", (byte[]) null);
+      fail("Should not be able to initialize");
+    }
+    catch (IllegalArgumentException exception) {
+      //Success!
+    }
+  }
+}
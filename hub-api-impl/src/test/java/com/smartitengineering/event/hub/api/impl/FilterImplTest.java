@@ -22,10 +22,15 @@ import com.smartitengineering.event.hub.api.Event;
 import com.smartitengineering.event.hub.api.Filter;
 import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jmock.integration.junit3.MockObjectTestCase;
-import org.jruby.embed.ScriptingContainer;
 
 /**
  *
@@ -107,10 +112,62 @@ public class FilterImplTest
     assertTrue(filterImpl.allowBroadcast(null));
     String script = getScript();
     filterImpl.setFilterScript(script);
+    final Event event = mock(Event.class);
     assertFalse(filterImpl.allowBroadcast(null));
-    assertTrue(filterImpl.allowBroadcast(mock(Event.class)));
+    assertTrue(filterImpl.allowBroadcast(event));
     filterImpl.setMimeType(SupportedMimeType.JYTHON);
-    assertTrue(filterImpl.allowBroadcast(null));
+    filterImpl.setFilterScript(getScript("testpythonallow_success.py"));
+    assertFalse(filterImpl.allowBroadcast(null));
+    assertTrue(filterImpl.allowBroadcast(event));
+  }
+
+  public void testAllowBroadcastUsingGroovy() {
+    assertScriptFilters(SupportedMimeType.GROOVY, "testgroovyallow_success.groovy");
+  }
+
+  public void testAllowBroadcastUsingJavaScript() {
+    assertScriptFilters(SupportedMimeType.JAVA_SCRIPT, "testjsallow_success.js");
+  }
+
+  public void testAllowBroadcastUsingJython() {
+    assertScriptFilters(SupportedMimeType.JYTHON, "testpythonallow_success.py");
+  }
+
+  public void testConcurrentAllowBroadcast() throws Exception {
+    final FilterImpl filterImpl = new FilterImpl();
+    filterImpl.setMimeType(SupportedMimeType.RUBY);
+    filterImpl.setFilterScript(getScript());
+    final Event event = mock(Event.class);
+    final int threads = 8;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+      for (int i = 0; i < threads * 4; ++i) {
+        final boolean withEvent = i % 2 == 0;
+        futures.add(executorService.submit(new Callable<Boolean>() {
+
+          public Boolean call() throws Exception {
+            return filterImpl.allowBroadcast(withEvent ? event : null) == withEvent;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertTrue(future.get());
+      }
+    }
+    finally {
+      executorService.shutdown();
+    }
+    final ScriptEvaluatorPool pool = filterImpl.getEvaluatorPool();
+    assertTrue(pool.getCreatedEvaluatorCount() <= pool.getMaxSize());
+  }
+
+  protected void assertScriptFilters(SupportedMimeType mimeType, String scriptResource) {
+    FilterImpl filterImpl = new FilterImpl();
+    filterImpl.setMimeType(mimeType);
+    filterImpl.setFilterScript(getScript(scriptResource));
+    assertFalse(filterImpl.allowBroadcast(null));
+    assertTrue(filterImpl.allowBroadcast(mock(Event.class)));
   }
 
   public void testFactoryCreation() {
@@ -123,19 +180,37 @@ public class FilterImplTest
     assertEquals(script, impl.getFilterScript());
   }
 
-  public void testInitRuby() {
+  public void testEvaluatorPoolReuse() {
     FilterImpl filterImpl = new FilterImpl();
     filterImpl.setMimeType(SupportedMimeType.RUBY);
     String script = getScript();
     filterImpl.setFilterScript(script);
     assertFalse(filterImpl.allowBroadcastTestUsingRuby(null));
-    ScriptingContainer scriptingContainer =
-                       filterImpl.getRubyScriptingContainer();
-    filterImpl.initRuby();
-    assertSame(scriptingContainer, filterImpl.getRubyScriptingContainer());
-    filterImpl.setFilterScript(null);
-    filterImpl.initRuby();
-    assertSame(scriptingContainer, filterImpl.getRubyScriptingContainer());
+    ScriptEvaluatorPool pool = filterImpl.getEvaluatorPool();
+    assertFalse(filterImpl.allowBroadcastTestUsingRuby(null));
+    assertSame(pool, filterImpl.getEvaluatorPool());
+    assertEquals(1, pool.getCreatedEvaluatorCount());
+    filterImpl.setFilterScript(script);
+    assertNotSame(pool, filterImpl.getEvaluatorPool());
+  }
+
+  public void testReplacedEvaluatorPoolIsClosed() {
+    FilterImpl filterImpl = new FilterImpl();
+    filterImpl.setMimeType(SupportedMimeType.RUBY);
+    String script = getScript();
+    filterImpl.setFilterScript(script);
+    final Event event = mock(Event.class);
+    assertTrue(filterImpl.allowBroadcast(event));
+    ScriptEvaluatorPool pool = filterImpl.getEvaluatorPool();
+    assertEquals(1, pool.getCreatedEvaluatorCount());
+    filterImpl.setMimeType(SupportedMimeType.RUBY);
+    assertTrue(pool.isClosed());
+    assertEquals(0, pool.getCreatedEvaluatorCount());
+    //A caller still holding the old pool gets an evaluator that is closed once given back
+    assertFalse(pool.allowBroadcast(null));
+    assertEquals(0, pool.getCreatedEvaluatorCount());
+    assertTrue(filterImpl.allowBroadcast(event));
+    assertFalse(filterImpl.getEvaluatorPool().isClosed());
   }
 
   /**
@@ -154,11 +229,15 @@ public class FilterImplTest
     /**
      * For ruby script
      */
+    return getScript("testrubyallow_success.rb");
+  }
+
+  protected String getScript(String resource) {
     String script;
     try {
       script =
       IOUtils.toString(getClass().getClassLoader().
-          getResourceAsStream("testrubyallow_success.rb"));
+          getResourceAsStream(resource));
     }
     catch (IOException ex) {
       fail(ex.getMessage());
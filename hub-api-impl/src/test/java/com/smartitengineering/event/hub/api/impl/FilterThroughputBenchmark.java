@@ -0,0 +1,103 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api.impl;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Throughput benchmark of filter evaluation for each supported script language at 1, 8 and 32 concurrent callers
+ * sharing one filter, as subscribers of a filtered channel do. It is not part of the test suite.
+ * <p>
+ * Usage: <tt>FilterThroughputBenchmark [seconds per run, default 5]</tt>
+ * @author imyousuf
+ */
+public class FilterThroughputBenchmark {
+
+  private static final int[] CALLERS = new int[]{1, 8, 32};
+
+  public static void main(String[] args) throws Exception {
+    final long durationInMillis = (args.length > 0 ? NumberUtils.toLong(args[0], 5) : 5) * 1000;
+    final Event event = (Event) Proxy.newProxyInstance(Event.class.getClassLoader(), new Class[]{Event.class},
+                                                       new InvocationHandler() {
+
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        return null;
+      }
+    });
+    System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+    run(SupportedMimeType.RUBY, "testrubyallow_success.rb", event, durationInMillis);
+    run(SupportedMimeType.GROOVY, "testgroovyallow_success.groovy", event, durationInMillis);
+    run(SupportedMimeType.JAVA_SCRIPT, "testjsallow_success.js", event, durationInMillis);
+    run(SupportedMimeType.JYTHON, "testpythonallow_success.py", event, durationInMillis);
+  }
+
+  private static void run(SupportedMimeType mimeType, String scriptResource, final Event event,
+                          final long durationInMillis) throws Exception {
+    final String script = IOUtils.toString(FilterThroughputBenchmark.class.getClassLoader().getResourceAsStream(
+        scriptResource));
+    for (int callers : CALLERS) {
+      final FilterImpl filter = new FilterImpl();
+      filter.setMimeType(mimeType);
+      filter.setFilterScript(script);
+      //Warm up, which also compiles the script for the first evaluator
+      for (int i = 0; i < 1000; ++i) {
+        filter.allowBroadcast(event);
+      }
+      final AtomicLong evaluations = new AtomicLong();
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch end = new CountDownLatch(callers);
+      for (int i = 0; i < callers; ++i) {
+        Thread thread = new Thread(new Runnable() {
+
+          public void run() {
+            try {
+              start.await();
+              final long stopAt = System.currentTimeMillis() + durationInMillis;
+              long count = 0;
+              while (System.currentTimeMillis() < stopAt) {
+                filter.allowBroadcast(event);
+                count++;
+              }
+              evaluations.addAndGet(count);
+            }
+            catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            finally {
+              end.countDown();
+            }
+          }
+        });
+        thread.start();
+      }
+      start.countDown();
+      end.await();
+      System.out.println(mimeType + " with " + callers + " callers: " + (evaluations.get() * 1000 /
+          durationInMillis) + " evaluations/s using " + filter.getEvaluatorPool().getCreatedEvaluatorCount() +
+          " evaluators");
+    }
+  }
+}
@@ -0,0 +1,3 @@
+def allowBroadcast(eventObj) {
+  return eventObj != null
+}
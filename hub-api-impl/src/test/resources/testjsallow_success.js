@@ -0,0 +1,3 @@
+function allowBroadcast(eventObj) {
+  return eventObj != null;
+}
@@ -0,0 +1,2 @@
+def allowBroadcast(eventObj):
+  return eventObj is not None
@@ -0,0 +1,55 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a content held in memory as bytes, so that it can be passed from the request entity to the persistent
+ * storage and back without being copied or converted to a string on the way. The stream returned by
+ * {@link #getContent()} is a fresh one over the same bytes on every call.
+ * @author imyousuf
+ */
+public interface ByteContent
+    extends Content {
+
+  /**
+   * Retrieve the bytes of the content. The array is shared and not a copy, thus it must not be modified.
+   * @return The bytes of this content
+   */
+  public byte[] getBytes();
+
+  /**
+   * Retrieve the bytes of the content as a read only buffer, positioned at the start of the content.
+   * @return Read only buffer over the bytes of this content
+   */
+  public ByteBuffer getByteBuffer();
+
+  /**
+   * Retrieve the length of the content in bytes
+   * @return Length of the content
+   */
+  public int getLength();
+
+  /**
+   * Retrieve the character set of the content if it is text, either the one it was created with or the one in the
+   * charset parameter of its MIME type.
+   * @return Name of the character set or null if it is not known
+   */
+  public String getCharset();
+}
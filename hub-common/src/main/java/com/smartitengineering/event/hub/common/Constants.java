@@ -30,4 +30,14 @@ public interface Constants {
     static final String RSRC_PATH_CHANNEL_PREFIX = "channels";
     static final String RSRC_PATH_CHANNEL_HUB = Channel.HUB_SUB_RESOURCE_PATH;
     static final String RSRC_PATH_CHANNEL_EVENTS = "events";
+    static final String PUBLISH_ACK_HEADER_NAME = "X-CHANNEL-PUBLISH-ACK";
+    static final String PUBLISH_ACK_DURABLE = "durable";
+    static final String EVENT_STREAM_MEDIA_TYPE = "text/event-stream";
+    static final String LAST_EVENT_ID_HEADER_NAME = "Last-Event-ID";
+    static final String RSRC_PATH_CHANNEL_GROUPS = "groups";
+    static final String RSRC_PATH_GROUP = "group";
+    static final String CONSUMER_LEASE_HEADER_NAME = "X-CONSUMER-LEASE";
+    static final String HUB_OWNER_HEADER_NAME = "X-Hub-Owner";
+    static final String HUB_ROUTED_HEADER_NAME = "X-Hub-Routed";
+    static final String HUB_ROUTED_QUERY_PARAM = "hubRouted";
 }
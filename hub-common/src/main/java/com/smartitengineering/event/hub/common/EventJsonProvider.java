@@ -19,14 +19,12 @@ package com.smartitengineering.event.hub.common;
 
 import com.smartitengineering.event.hub.api.Event;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
@@ -48,11 +46,10 @@ public class EventJsonProvider implements MessageBodyWriter<Event> {
 
   private final ObjectMapper mapper = new ObjectMapper();
   private static final String PLACEHOLDER_ID = "id";
-  private static final String UNIVERSAL_UNIQUE_ID = "uniqueId";
-  private static final String CONTENT_TYPE = "content-type";
-  private static final String CONTENT_AS_STRING = "content-as-string";
+  public static final String UNIVERSAL_UNIQUE_ID = "uniqueId";
+  public static final String CONTENT_TYPE = "content-type";
+  public static final String CONTENT_AS_STRING = "content-as-string";
   private static final String CREATION_DATE = "created-at";
-  private final Map<Event, String> contentCache = new WeakHashMap<Event, String>();
 
   @Override
   public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -82,6 +79,15 @@ public class EventJsonProvider implements MessageBodyWriter<Event> {
     if (event == null) {
       return "";
     }
+    final RenderedEventCache renderedEventCache = RenderedEventCache.getInstance();
+    //Only persisted events are cached, as the placeholder and creation date are part of the JSON
+    final boolean cacheable = StringUtils.isNotBlank(event.getPlaceholderId());
+    if (cacheable) {
+      final String json = renderedEventCache.get(event.getUniversallyUniqueID(), RenderedEventCache.Rendition.JSON);
+      if (json != null) {
+        return json;
+      }
+    }
     Map<String, String> jsonMap = new LinkedHashMap<String, String>();
     if (StringUtils.isNotBlank(event.getPlaceholderId())) {
       jsonMap.put(PLACEHOLDER_ID, event.getPlaceholderId());
@@ -92,34 +98,19 @@ public class EventJsonProvider implements MessageBodyWriter<Event> {
     if (StringUtils.isNotBlank(event.getEventContent().getContentType())) {
       jsonMap.put(CONTENT_TYPE, event.getEventContent().getContentType());
     }
-    InputStream contentStream = event.getEventContent().getContent();
-    if (contentStream != null) {
-      String contentAsString = "";
-      if (contentCache.containsKey(event)) {
-        contentAsString = contentCache.get(event);
-      }
-      else {
-        try {
-          if (contentStream.markSupported()) {
-            contentStream.mark(Integer.MAX_VALUE);
-          }
-          contentAsString = IOUtils.toString(contentStream);
-          contentCache.put(event, contentAsString);
-          if (contentStream.markSupported()) {
-            contentStream.reset();
-          }
-        }
-        catch (IOException ex) {
-        }
-      }
-      jsonMap.put(CONTENT_AS_STRING, contentAsString);
+    if (event.getEventContent() != null) {
+      jsonMap.put(CONTENT_AS_STRING, renderedEventCache.getContentAsString(event));
     }
     Date creationDate = event.getCreationDate();
     if (creationDate != null) {
       jsonMap.put(CREATION_DATE, DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format(creationDate));
     }
     try {
-      return mapper.writeValueAsString(jsonMap);
+      final String json = mapper.writeValueAsString(jsonMap);
+      if (cacheable) {
+        renderedEventCache.put(event.getUniversallyUniqueID(), RenderedEventCache.Rendition.JSON, json);
+      }
+      return json;
     }
     catch (Exception ex) {
       return "";
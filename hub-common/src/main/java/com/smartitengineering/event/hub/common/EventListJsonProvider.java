@@ -0,0 +1,135 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.common;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Reads a JSON array of events, each in the form written by {@link EventJsonProvider}, for batch publishing. Only
+ * content and optionally the content type and UUID are read, the rest are assigned when the events are persisted.
+ * Lists of events, such as the ones handed out to a consumer group, are written the same way with every attribute.
+ * @author imyousuf
+ */
+@Provider
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+public class EventListJsonProvider implements MessageBodyReader<List<Event>>, MessageBodyWriter<List<Event>> {
+
+  private static final String CHARSET = "UTF-8";
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final EventJsonProvider eventJsonProvider = new EventJsonProvider();
+
+  @Override
+  public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return List.class.equals(type) && isEventList(type, genericType, mediaType);
+  }
+
+  @Override
+  public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return isEventList(type, genericType, mediaType);
+  }
+
+  protected boolean isEventList(Class<?> type, Type genericType, MediaType mediaType) {
+    if (!List.class.isAssignableFrom(type) || !MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType)) {
+      return false;
+    }
+    if (genericType instanceof ParameterizedType) {
+      final Type[] typeArguments = ((ParameterizedType) genericType).getActualTypeArguments();
+      return typeArguments.length == 1 && Event.class.equals(typeArguments[0]);
+    }
+    return false;
+  }
+
+  @Override
+  public long getSize(List<Event> t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(List<Event> t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                      MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException,
+                                                                                                    WebApplicationException {
+    StringBuilder json = new StringBuilder("[");
+    for (Event event : t) {
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      json.append(eventJsonProvider.getJsonString(event));
+    }
+    entityStream.write(json.append(']').toString().getBytes(CHARSET));
+  }
+
+  @Override
+  public List<Event> readFrom(Class<List<Event>> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                              MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException,
+                                                                                                           WebApplicationException {
+    final List parsedJsonContent;
+    try {
+      parsedJsonContent = mapper.readValue(entityStream, List.class);
+    }
+    catch (IOException ex) {
+      throw new WebApplicationException(ex, Status.BAD_REQUEST);
+    }
+    if (parsedJsonContent == null) {
+      throw new WebApplicationException(new NullPointerException("No events in request!"), Status.BAD_REQUEST);
+    }
+    List<Event> events = new ArrayList<Event>(parsedJsonContent.size());
+    for (Object eventObject : parsedJsonContent) {
+      if (!(eventObject instanceof Map)) {
+        throw new WebApplicationException(new IllegalArgumentException("Event is not a JSON object!"),
+                                          Status.BAD_REQUEST);
+      }
+      Map eventMap = (Map) eventObject;
+      final Object content = eventMap.get(EventJsonProvider.CONTENT_AS_STRING);
+      if (content == null || StringUtils.isBlank(content.toString())) {
+        throw new WebApplicationException(new NullPointerException("Event content is blank!"), Status.BAD_REQUEST);
+      }
+      final Object contentType = eventMap.get(EventJsonProvider.CONTENT_TYPE);
+      final Object uuid = eventMap.get(EventJsonProvider.UNIVERSAL_UNIQUE_ID);
+      APIFactory.EventBuilder builder = APIFactory.getEventBuilder().eventContent(APIFactory.getContent(
+          contentType == null || StringUtils.isBlank(contentType.toString()) ? MediaType.APPLICATION_OCTET_STREAM
+          : contentType.toString(), content.toString().getBytes(CHARSET), CHARSET));
+      if (uuid != null && StringUtils.isNotBlank(uuid.toString())) {
+        builder.uuid(uuid.toString());
+      }
+      events.add(builder.build());
+    }
+    return events;
+  }
+}
@@ -0,0 +1,296 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.common;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Content;
+import com.smartitengineering.event.hub.api.Event;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Process wide cache of what is rendered for an event when it is written in a feed or as JSON, keyed by the event's
+ * UUID, so that the content of an event is read and rendered once rather than on every page it appears in. Since an
+ * event can not be modified once created, entries are never stale and are only evicted to keep the cache within its
+ * size, which is measured in the bytes of the cached strings. The cache is split into segments, each an LRU map
+ * guarded by its own lock and bounded by an equal share of the size.
+ * <p>
+ * Events without an UUID are rendered every time.
+ * @author imyousuf
+ */
+public class RenderedEventCache {
+
+  public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+  public static final int DEFAULT_SEGMENTS = 16;
+  /**
+   * Approximate bytes taken by an entry besides its string, i.e. its key, map entry and string header.
+   */
+  static final int ENTRY_OVERHEAD = 128;
+  private static final String DEFAULT_CHARSET = "UTF-8";
+  private static RenderedEventCache cache;
+  private final Segment[] segments;
+  private final long maxBytes;
+  private final RenderedEventCacheStats stats = new RenderedEventCacheStats(this);
+
+  /**
+   * What is rendered for an event.
+   */
+  public static enum Rendition {
+
+    /**
+     * Content of the event as a string
+     */
+    CONTENT,
+    /**
+     * JSON representation of the event
+     */
+    JSON;
+  }
+
+  public RenderedEventCache(long maxBytes, int segmentCount) {
+    this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES;
+    final int count = segmentCount > 0 ? segmentCount : DEFAULT_SEGMENTS;
+    segments = new Segment[count];
+    for (int i = 0; i < count; ++i) {
+      segments[i] = new Segment(Math.max(1, this.maxBytes / count));
+    }
+  }
+
+  public static synchronized RenderedEventCache getInstance() {
+    if (cache == null) {
+      cache = new RenderedEventCache(DEFAULT_MAX_BYTES, DEFAULT_SEGMENTS);
+    }
+    return cache;
+  }
+
+  public static synchronized void setInstance(RenderedEventCache newCache) {
+    cache = newCache;
+  }
+
+  /**
+   * Retrieve the content of an event as a string, decoded using the charset of the content if known and UTF-8
+   * otherwise.
+   * @param event Event to retrieve the content of
+   * @return The content as a string, empty string if it has none or it could not be read
+   */
+  public String getContentAsString(Event event) {
+    final String uuid = event.getUniversallyUniqueID();
+    String contentAsString = get(uuid, Rendition.CONTENT);
+    if (contentAsString == null) {
+      contentAsString = renderContent(event.getEventContent());
+      if (contentAsString == null) {
+        //Not cached so that reading it is retried the next time
+        return "";
+      }
+      put(uuid, Rendition.CONTENT, contentAsString);
+    }
+    return contentAsString;
+  }
+
+  /**
+   * Retrieve a rendition of an event.
+   * @return The cached rendition or null if it is not cached or the UUID is blank
+   */
+  public String get(String uuid, Rendition rendition) {
+    if (StringUtils.isBlank(uuid)) {
+      return null;
+    }
+    final Key key = new Key(uuid, rendition);
+    final String value = getSegment(key).get(key);
+    if (value == null) {
+      stats.miss();
+    }
+    else {
+      stats.hit();
+    }
+    return value;
+  }
+
+  /**
+   * Cache a rendition of an event, unless the UUID is blank or the rendition is larger than a segment.
+   */
+  public void put(String uuid, Rendition rendition, String value) {
+    if (StringUtils.isBlank(uuid) || value == null) {
+      return;
+    }
+    final Key key = new Key(uuid, rendition);
+    getSegment(key).put(key, value);
+  }
+
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.getBytes();
+    }
+    return bytes;
+  }
+
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.getSize();
+    }
+    return size;
+  }
+
+  public RenderedEventCacheStats getStats() {
+    return stats;
+  }
+
+  /**
+   * Render the content as a string.
+   * @return The content as a string, or null if it could not be read
+   */
+  protected String renderContent(Content content) {
+    if (content == null) {
+      return "";
+    }
+    if (content instanceof ByteContent) {
+      final ByteContent byteContent = (ByteContent) content;
+      final String charset = byteContent.getCharset();
+      try {
+        return new String(byteContent.getBytes(), charset == null ? DEFAULT_CHARSET : charset);
+      }
+      catch (UnsupportedEncodingException ex) {
+        //Decode using the default charset instead
+        try {
+          return new String(byteContent.getBytes(), DEFAULT_CHARSET);
+        }
+        catch (UnsupportedEncodingException uex) {
+          throw new IllegalStateException(uex);
+        }
+      }
+    }
+    final InputStream contentStream = content.getContent();
+    if (contentStream == null) {
+      return "";
+    }
+    try {
+      return IOUtils.toString(contentStream, DEFAULT_CHARSET);
+    }
+    catch (IOException ex) {
+      return null;
+    }
+    finally {
+      IOUtils.closeQuietly(contentStream);
+    }
+  }
+
+  protected Segment getSegment(Key key) {
+    //Spread the hash so that UUIDs differing only in their high bits are not put in the same segment
+    int hash = key.hashCode();
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return segments[(hash & Integer.MAX_VALUE) % segments.length];
+  }
+
+  static long weigh(String value) {
+    return ENTRY_OVERHEAD + 2l * value.length();
+  }
+
+  protected static final class Key {
+
+    private final String uuid;
+    private final Rendition rendition;
+
+    Key(String uuid, Rendition rendition) {
+      this.uuid = uuid;
+      this.rendition = rendition;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return rendition == other.rendition && uuid.equals(other.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * uuid.hashCode() + rendition.ordinal();
+    }
+  }
+
+  protected class Segment {
+
+    private final long maxSegmentBytes;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<Key, String>(16, 0.75f, true);
+    private long bytes;
+
+    Segment(long maxSegmentBytes) {
+      this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    synchronized String get(Key key) {
+      return entries.get(key);
+    }
+
+    synchronized void put(Key key, String value) {
+      final long weight = weigh(value);
+      if (weight > maxSegmentBytes) {
+        return;
+      }
+      final String oldValue = entries.put(key, value);
+      if (oldValue != null) {
+        bytes -= weigh(oldValue);
+      }
+      bytes += weight;
+      final Iterator<Map.Entry<Key, String>> iterator = entries.entrySet().iterator();
+      while (bytes > maxSegmentBytes && iterator.hasNext()) {
+        final Map.Entry<Key, String> eldest = iterator.next();
+        bytes -= weigh(eldest.getValue());
+        iterator.remove();
+        stats.evicted();
+      }
+    }
+
+    synchronized void clear() {
+      entries.clear();
+      bytes = 0;
+    }
+
+    synchronized long getBytes() {
+      return bytes;
+    }
+
+    synchronized int getSize() {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.common;
+
+/**
+ * Management interface exposing the effectiveness of the rendered event cache.
+ * @author imyousuf
+ */
+public interface RenderedEventCacheStatsMBean {
+
+  public long getHits();
+
+  public long getMisses();
+
+  /**
+   * Retrieve the ratio of lookups served from the cache since start or the last reset.
+   * @return Hit rate between 0 and 1, 0 if there has been no lookup
+   */
+  public double getHitRate();
+
+  public long getEvictions();
+
+  public int getSize();
+
+  /**
+   * Retrieve the approximate bytes taken by the cached renditions.
+   */
+  public long getBytes();
+
+  public long getMaxBytes();
+
+  public void resetStats();
+
+  public void clear();
+}
@@ -0,0 +1,103 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.common;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import java.io.ByteArrayInputStream;
+import junit.framework.TestCase;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class RenderedEventCacheTest
+    extends TestCase {
+
+  public void testContentIsRenderedOnce() throws Exception {
+    RenderedEventCache cache = new RenderedEventCache(1024 * 1024, 4);
+    Event event = APIFactory.getEventBuilder().uuid("1").eventContent(APIFactory.getContent("text/plain",
+                                                                                              new ByteArrayInputStream(
+        "content".getBytes("UTF-8")))).build();
+    assertEquals("content", cache.getContentAsString(event));
+    //The stream is consumed, thus the second lookup has to be served from the cache
+    assertEquals("content", cache.getContentAsString(event));
+    assertEquals(1, cache.getStats().getHits());
+    assertEquals(1, cache.getStats().getMisses());
+    assertEquals(1, cache.getSize());
+  }
+
+  public void testContentIsDecodedUsingCharset() throws Exception {
+    RenderedEventCache cache = new RenderedEventCache(1024 * 1024, 4);
+    final String content = "\u00e9v\u00e9nement";
+    Event event = APIFactory.getEventBuilder().uuid("1").eventContent(APIFactory.getContent(
+        "text/plain; charset=ISO-8859-1", content.getBytes("ISO-8859-1"))).build();
+    assertEquals(content, cache.getContentAsString(event));
+  }
+
+  public void testEventsWithoutUUIDAreNotCached() throws Exception {
+    RenderedEventCache cache = new RenderedEventCache(1024 * 1024, 4);
+    Event event = APIFactory.getEventBuilder().eventContent(APIFactory.getContent("text/plain", "content".getBytes(
+        "UTF-8"))).build();
+    assertEquals("content", cache.getContentAsString(event));
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testRenditionsAreSeparate() {
+    RenderedEventCache cache = new RenderedEventCache(1024 * 1024, 4);
+    cache.put("1", RenderedEventCache.Rendition.CONTENT, "content");
+    cache.put("1", RenderedEventCache.Rendition.JSON, "{}");
+    assertEquals("content", cache.get("1", RenderedEventCache.Rendition.CONTENT));
+    assertEquals("{}", cache.get("1", RenderedEventCache.Rendition.JSON));
+    assertNull(cache.get("2", RenderedEventCache.Rendition.JSON));
+    assertEquals(2, cache.getSize());
+  }
+
+  public void testEvictionIsBoundByBytes() {
+    final String value = StringUtils.repeat("a", 100);
+    final long weight = RenderedEventCache.weigh(value);
+    RenderedEventCache cache = new RenderedEventCache(weight * 3, 1);
+    cache.put("1", RenderedEventCache.Rendition.CONTENT, value);
+    cache.put("2", RenderedEventCache.Rendition.CONTENT, value);
+    cache.put("3", RenderedEventCache.Rendition.CONTENT, value);
+    //Access the eldest so that the next one is evicted instead
+    assertNotNull(cache.get("1", RenderedEventCache.Rendition.CONTENT));
+    cache.put("4", RenderedEventCache.Rendition.CONTENT, value);
+    assertEquals(3, cache.getSize());
+    assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    assertEquals(1, cache.getStats().getEvictions());
+    assertNotNull(cache.get("1", RenderedEventCache.Rendition.CONTENT));
+    assertNull(cache.get("2", RenderedEventCache.Rendition.CONTENT));
+  }
+
+  public void testValuesLargerThanSegmentAreNotCached() {
+    RenderedEventCache cache = new RenderedEventCache(RenderedEventCache.ENTRY_OVERHEAD * 2, 1);
+    cache.put("1", RenderedEventCache.Rendition.CONTENT, StringUtils.repeat("a", RenderedEventCache.ENTRY_OVERHEAD));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getBytes());
+  }
+
+  public void testClear() {
+    RenderedEventCache cache = new RenderedEventCache(1024 * 1024, 4);
+    cache.put("1", RenderedEventCache.Rendition.CONTENT, "content");
+    cache.getStats().clear();
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getBytes());
+  }
+}
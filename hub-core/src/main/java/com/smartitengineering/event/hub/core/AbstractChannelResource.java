@@ -18,12 +18,21 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.core;
 
 import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.common.Constants;
 import com.smartitengineering.event.hub.spi.HubPersistentStorer;
 import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import com.smartitengineering.util.rest.atom.server.AbstractResource;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -31,6 +40,12 @@ import org.apache.commons.lang.StringUtils;
  */
 public abstract class AbstractChannelResource extends AbstractResource {
 
+  @Context
+  private HttpServletRequest servletRequest;
+  @Context
+  private HttpServletResponse servletResponse;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
   protected Channel checkChannelExistence()
       throws WebApplicationException {
     Channel channel = getChannel();
@@ -58,6 +73,64 @@ public abstract class AbstractChannelResource extends AbstractResource {
     }
   }
 
+  /**
+   * Point the client at the node owning the channel, as the {@link ChannelRouter} says: name the owner in the
+   * <tt>X-Hub-Owner</tt> header of the response, and if the channel is owned by another node and the router redirects,
+   * redirect the request to the same resource on the owner.
+   * <p>
+   * A redirected request is marked as routed, by the <tt>hubRouted</tt> query parameter of the location it is
+   * redirected to since clients do not send the headers of a redirect back, and is served by whichever node it reaches
+   * next. Thus nodes disagreeing upon the owner, e.g. while the nodes of the hub change, do not bounce a request
+   * between them. A request carrying the <tt>X-Hub-Routed</tt> header, e.g. from a proxy that routed it already, is
+   * served likewise.
+   * @throws WebApplicationException With <tt>307 Temporary Redirect</tt> to the owner
+   */
+  protected void routeToOwner()
+      throws WebApplicationException {
+    final ChannelRouter router = ChannelRouter.getInstance();
+    final String owner = router.getOwner(getChannelName());
+    if (owner == null) {
+      return;
+    }
+    if (servletResponse != null) {
+      servletResponse.setHeader(Constants.HUB_OWNER_HEADER_NAME, owner);
+    }
+    if (router.getMode() != ChannelRouter.Mode.REDIRECT || router.getRemoteOwner(getChannelName()) == null) {
+      return;
+    }
+    if (isRouted()) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Serving request for " + getChannelName() + " routed here although it is owned by " + owner);
+      }
+      return;
+    }
+    final String baseUri = getUriInfo().getBaseUri().toString();
+    final String requestUri = getUriInfo().getRequestUri().toString();
+    final String relativeUri = StringUtils.removeStart(requestUri.startsWith(baseUri) ? requestUri.substring(
+        baseUri.length()) : getUriInfo().getPath(), "/");
+    final StringBuilder location = new StringBuilder(owner).append('/').append(relativeUri).append(relativeUri.
+        indexOf('?') > -1 ? '&' : '?').append(Constants.HUB_ROUTED_QUERY_PARAM).append('=');
+    final String localNodeUrl = router.getLocalNodeUrl();
+    try {
+      location.append(URLEncoder.encode(localNodeUrl == null ? "" : localNodeUrl, "UTF-8"));
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+    throw new WebApplicationException(Response.temporaryRedirect(URI.create(location.toString())).header(
+        Constants.HUB_OWNER_HEADER_NAME, owner).header(Constants.HUB_ROUTED_HEADER_NAME, localNodeUrl).build());
+  }
+
+  /**
+   * Check whether the request has been routed to this node by another one.
+   */
+  protected boolean isRouted() {
+    if (servletRequest != null && servletRequest.getHeader(Constants.HUB_ROUTED_HEADER_NAME) != null) {
+      return true;
+    }
+    return getUriInfo().getQueryParameters().containsKey(Constants.HUB_ROUTED_QUERY_PARAM);
+  }
+
   @Override
   protected String getAuthor() {
     return "info@smartitengineering.com";
@@ -22,7 +22,9 @@ import com.smartitengineering.event.hub.spi.HubPersistentStorer;
 import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import com.smartitengineering.util.rest.atom.server.AbstractResource;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 
 /**
  *
@@ -51,5 +53,36 @@ public abstract class AbstractEventResource extends AbstractResource {
     return "info@smartitengineering.com";
   }
 
+  /**
+   * Create an Atom feed of a page of events to be streamed to the response, with its paging links carrying the query
+   * parameters of this request.
+   * @param title Title of the feed
+   * @param channelId Channel of the events, all events if null
+   * @param placeholderId Placeholder to page from
+   * @param count Signed number of events, positive for after the placeholder and negative for before
+   * @param afterUri URI of the page after an event
+   * @param beforeUri URI of the page before an event
+   * @param pathValues Values of the paging URIs' path parameters preceding the event's placeholder
+   * @return Feed to be set as the entity of the response
+   */
+  protected StreamingEventFeed newStreamingFeed(String title, String channelId, String placeholderId, int count,
+                                                UriBuilder afterUri, UriBuilder beforeUri, Object... pathValues) {
+    final MultivaluedMap<String, String> queryParams = getUriInfo().getQueryParameters();
+    for (String key : queryParams.keySet()) {
+      final Object[] values = queryParams.get(key).toArray();
+      afterUri.queryParam(key, values);
+      beforeUri.queryParam(key, values);
+    }
+    final StreamingEventFeed feed = new StreamingEventFeed(HubPersistentStorerSPI.getInstance().getStorer(),
+                                                           channelId, placeholderId, count,
+                                                           FeedSettings.getStreamingChunkSize());
+    feed.setId(getUriInfo().getRequestUri().toString());
+    feed.setTitle(title);
+    feed.setAuthor(getAuthor());
+    feed.setPagingUris(afterUri, beforeUri, pathValues);
+    feed.setEventUri(getRelativeURIBuilder().path(EventResource.class));
+    return feed;
+  }
+
   protected abstract String getEventName();
 }
@@ -18,17 +18,14 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.core;
 
 import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.common.RenderedEventCache;
 import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import com.sun.jersey.api.view.Viewable;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -43,7 +40,6 @@ import javax.ws.rs.core.UriBuilder;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
 import org.apache.abdera.model.Link;
-import org.apache.commons.io.IOUtils;
 
 /**
  *
@@ -52,7 +48,6 @@ import org.apache.commons.io.IOUtils;
 @Path("/all-events")
 public class AllEventsResource extends AbstractEventResource {
 
-  private final Map<Event, String> contentCache = new WeakHashMap<Event, String>();
 
   static final Method BEFORE_METHOD;
   static final Method AFTER_METHOD;
@@ -173,6 +168,13 @@ public class AllEventsResource extends AbstractEventResource {
     if (isBefore) {
       thisCount = count * -1;
     }
+    if (FeedSettings.isStreamed(thisCount)) {
+      final StreamingEventFeed streamingFeed = newStreamingFeed("Events", null, placeholderId, thisCount,
+                                                                getRelativeURIBuilder().path(AllEventsResource.class).
+          path(AFTER_METHOD), getRelativeURIBuilder().path(AllEventsResource.class).path(BEFORE_METHOD));
+      streamingFeed.addLink("root", getRelativeURIBuilder().path(RootResource.class).build().toString());
+      return Response.ok(streamingFeed, MediaType.APPLICATION_ATOM_XML).build();
+    }
     ResponseBuilder responseBuilder = Response.ok();
     Feed atomFeed = getFeed("Events", new Date());
 
@@ -215,30 +217,7 @@ public class AllEventsResource extends AbstractEventResource {
         eventEntry.setId(event.getPlaceholderId());
         eventEntry.setTitle(event.getPlaceholderId().toString());
 
-        InputStream contentStream = event.getEventContent().getContent();
-        String contentAsString = "";
-
-        if (contentStream != null) {
-          if (contentCache.containsKey(event)) {
-            contentAsString = contentCache.get(event);
-          }
-          else {
-            try {
-              if (contentStream.markSupported()) {
-                contentStream.mark(Integer.MAX_VALUE);
-              }
-              contentAsString = IOUtils.toString(contentStream);
-              contentCache.put(event, contentAsString);
-              if (contentStream.markSupported()) {
-                contentStream.reset();
-              }
-            }
-            catch (IOException ex) {
-            }
-          }
-        }
-
-
+        final String contentAsString = RenderedEventCache.getInstance().getContentAsString(event);
         eventEntry.setContent(contentAsString);
         eventEntry.setUpdated(event.getCreationDate());
 
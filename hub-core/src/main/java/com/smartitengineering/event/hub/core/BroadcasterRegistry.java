@@ -0,0 +1,320 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the broadcasters of the channels, keyed by the channel's name. A channel's broadcaster is created when it is
+ * first retrieved to subscribe to, and destroyed once it has had no subscribers for longer than the idle timeout, even
+ * if events are still published to the channel, so that a hub with many mostly idle channels only holds broadcasters
+ * for those in use.
+ * <p>
+ * Broadcasters created by the registry dispatch their broadcasts on a pool of threads shared by all of them, each
+ * broadcaster's broadcasts still being pushed one after another, rather than keeping a thread per broadcaster; and
+ * write to their subscribers on another pool, shared by the subscribers of all of them.
+ * <p>
+ * The reaper also reaps the idle channel queues of the {@link PublishPipeline} and the idle consumer groups of the
+ * {@link ConsumerGroupCoordinator}, with the same idle timeout.
+ * @author imyousuf
+ */
+public class BroadcasterRegistry {
+
+  public static final long DEFAULT_IDLE_TIMEOUT_IN_SEC = 300;
+  private static volatile BroadcasterRegistry registry = new BroadcasterRegistry(0, 0, DEFAULT_IDLE_TIMEOUT_IN_SEC);
+  private final ConcurrentMap<String, EventBroadcaster> broadcasters =
+                                                        new ConcurrentHashMap<String, EventBroadcaster>();
+  private final int dispatcherThreads;
+  private final int writerThreads;
+  private final long idleTimeoutInSec;
+  private final ExecutorService dispatcherPool;
+  private final ExecutorService writerPool;
+  private final ScheduledExecutorService reaper;
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong reaped = new AtomicLong();
+  private final BroadcasterRegistryStats stats = new BroadcasterRegistryStats(this);
+  private final FanOutStats fanOutStats = new FanOutStats(this);
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param dispatcherThreads Threads shared by the broadcasters to push broadcasts to their subscribers, twice the
+   *                          number of processors if not positive
+   * @param writerThreads Threads shared by the subscribers of all broadcasters to write to them, four times the
+   *                      number of processors if not positive
+   * @param idleTimeoutInSec How long a broadcaster is kept without subscribers, {@link #DEFAULT_IDLE_TIMEOUT_IN_SEC}
+   *                         if not positive
+   */
+  public BroadcasterRegistry(int dispatcherThreads, int writerThreads, long idleTimeoutInSec) {
+    this.dispatcherThreads = dispatcherThreads > 0 ? dispatcherThreads : Runtime.getRuntime().availableProcessors() * 2;
+    this.writerThreads = writerThreads > 0 ? writerThreads : Runtime.getRuntime().availableProcessors() * 4;
+    this.idleTimeoutInSec = idleTimeoutInSec > 0 ? idleTimeoutInSec : DEFAULT_IDLE_TIMEOUT_IN_SEC;
+    dispatcherPool = Executors.newFixedThreadPool(this.dispatcherThreads);
+    writerPool = Executors.newFixedThreadPool(this.writerThreads);
+    reaper = Executors.newSingleThreadScheduledExecutor();
+    final long period = Math.max(1, this.idleTimeoutInSec / 2);
+    reaper.scheduleWithFixedDelay(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          reap();
+        }
+        catch (RuntimeException ex) {
+          logger.error("Could not reap idle broadcasters", ex);
+        }
+        final long idleSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(
+            BroadcasterRegistry.this.idleTimeoutInSec);
+        try {
+          PublishPipeline.getInstance().reap(idleSince);
+        }
+        catch (RuntimeException ex) {
+          logger.error("Could not reap idle publish queues", ex);
+        }
+        try {
+          ConsumerGroupCoordinator.getInstance().reap(idleSince);
+        }
+        catch (RuntimeException ex) {
+          logger.error("Could not reap idle consumer groups", ex);
+        }
+      }
+    }, period, period, TimeUnit.SECONDS);
+  }
+
+  public static BroadcasterRegistry getInstance() {
+    return registry;
+  }
+
+  /**
+   * Replace the registry in use, shutting the previous one down.
+   */
+  public static void setInstance(BroadcasterRegistry newRegistry) {
+    if (newRegistry == null) {
+      return;
+    }
+    final BroadcasterRegistry oldRegistry = registry;
+    registry = newRegistry;
+    if (oldRegistry != newRegistry) {
+      oldRegistry.shutdown();
+    }
+  }
+
+  /**
+   * Retrieve the broadcaster of a channel, creating it if the channel does not have one yet.
+   */
+  public EventBroadcaster getBroadcaster(String channelName) {
+    return getBroadcaster(getId(channelName, ""), "", true);
+  }
+
+  /**
+   * Retrieve the broadcaster of a channel if it has one.
+   * @return The broadcaster or null if the channel has none
+   */
+  public EventBroadcaster lookupBroadcaster(String channelName) {
+    return getBroadcaster(getId(channelName, ""), "", false);
+  }
+
+  /**
+   * Retrieve the event stream broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public EventStreamBroadcaster getEventStreamBroadcaster(String channelName, boolean createIfAbsent) {
+    return (EventStreamBroadcaster) getBroadcaster(getId(channelName, EventStreamBroadcaster.ID_SUFFIX),
+                                                   EventStreamBroadcaster.ID_SUFFIX, createIfAbsent);
+  }
+
+  /**
+   * Retrieve the long poll broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public LongPollBroadcaster getLongPollBroadcaster(String channelName, boolean createIfAbsent) {
+    return (LongPollBroadcaster) getBroadcaster(getId(channelName, LongPollBroadcaster.ID_SUFFIX),
+                                                LongPollBroadcaster.ID_SUFFIX, createIfAbsent);
+  }
+
+  /**
+   * Retrieve the consumer group fetch broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public ConsumerGroupFetchBroadcaster getConsumerGroupFetchBroadcaster(String channelName, boolean createIfAbsent) {
+    return (ConsumerGroupFetchBroadcaster) getBroadcaster(getId(channelName, ConsumerGroupFetchBroadcaster.ID_SUFFIX),
+                                                          ConsumerGroupFetchBroadcaster.ID_SUFFIX, createIfAbsent);
+  }
+
+  protected String getId(String channelName, String suffix) {
+    return new StringBuilder(channelName.toLowerCase()).append(suffix).toString();
+  }
+
+  /**
+   * Retrieve a broadcaster. Retrieving one to subscribe to, i.e. creating it if absent, marks it as used, under the
+   * same lock the reaper checks it under, so that it is not reaped before the subscriber is added; merely looking it
+   * up, e.g. to deliver events to, does not, so that a channel published to without subscribers is still reaped.
+   */
+  protected EventBroadcaster getBroadcaster(String id, String suffix, boolean createIfAbsent) {
+    if (!createIfAbsent) {
+      return broadcasters.get(id);
+    }
+    synchronized (this) {
+      EventBroadcaster broadcaster = broadcasters.get(id);
+      if (broadcaster == null) {
+        broadcaster = newBroadcaster(id, suffix);
+        broadcaster.setID(id);
+        broadcaster.setDispatcher(new SerialExecutor(dispatcherPool));
+        broadcaster.setWriter(writerPool);
+        final BroadcasterFactory factory = BroadcasterFactory.getDefault();
+        if (factory != null) {
+          factory.add(broadcaster, id);
+        }
+        broadcasters.put(id, broadcaster);
+        created.incrementAndGet();
+      }
+      broadcaster.touch();
+      return broadcaster;
+    }
+  }
+
+  /**
+   * Create the broadcaster of the kind the suffix of its ID is of. Long poll and consumer group fetch broadcasters
+   * time the waits of their requests with the reaper's thread.
+   */
+  protected EventBroadcaster newBroadcaster(String id, String suffix) {
+    if (EventStreamBroadcaster.ID_SUFFIX.equals(suffix)) {
+      return new EventStreamBroadcaster(id);
+    }
+    if (LongPollBroadcaster.ID_SUFFIX.equals(suffix)) {
+      final LongPollBroadcaster broadcaster = new LongPollBroadcaster(id);
+      broadcaster.setScheduler(reaper);
+      return broadcaster;
+    }
+    if (ConsumerGroupFetchBroadcaster.ID_SUFFIX.equals(suffix)) {
+      final ConsumerGroupFetchBroadcaster broadcaster = new ConsumerGroupFetchBroadcaster(id);
+      broadcaster.setScheduler(reaper);
+      return broadcaster;
+    }
+    return new EventBroadcaster(id);
+  }
+
+  /**
+   * Destroy the broadcasters that have had no subscribers for longer than the idle timeout.
+   * @return Number of broadcasters destroyed
+   */
+  public int reap() {
+    return reap(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleTimeoutInSec));
+  }
+
+  /**
+   * Destroy the broadcasters that have had no subscribers, nor been retrieved to subscribe to, since the given time.
+   * @return Number of broadcasters destroyed
+   */
+  public int reap(long idleSince) {
+    final List<EventBroadcaster> idleBroadcasters = new ArrayList<EventBroadcaster>();
+    synchronized (this) {
+      for (Map.Entry<String, EventBroadcaster> entry : broadcasters.entrySet()) {
+        if (entry.getValue().isIdleSince(idleSince)) {
+          broadcasters.remove(entry.getKey());
+          idleBroadcasters.add(entry.getValue());
+        }
+      }
+    }
+    final BroadcasterFactory factory = BroadcasterFactory.getDefault();
+    for (EventBroadcaster broadcaster : idleBroadcasters) {
+      try {
+        if (factory != null) {
+          factory.remove(broadcaster, broadcaster.getID());
+        }
+        broadcaster.destroy();
+      }
+      catch (RuntimeException ex) {
+        logger.warn("Could not destroy idle broadcaster " + broadcaster.getID(), ex);
+      }
+    }
+    reaped.addAndGet(idleBroadcasters.size());
+    if (logger.isDebugEnabled() && !idleBroadcasters.isEmpty()) {
+      logger.debug("Reaped " + idleBroadcasters.size() + " idle broadcasters, " + broadcasters.size() + " live");
+    }
+    return idleBroadcasters.size();
+  }
+
+  /**
+   * Stop reaping and dispatching; the broadcasters themselves are left to Atmosphere to destroy.
+   */
+  public void shutdown() {
+    reaper.shutdownNow();
+    dispatcherPool.shutdown();
+    writerPool.shutdown();
+    broadcasters.clear();
+  }
+
+  public int getLiveCount() {
+    return broadcasters.size();
+  }
+
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  public long getReapedCount() {
+    return reaped.get();
+  }
+
+  public long getIdleTimeoutInSec() {
+    return idleTimeoutInSec;
+  }
+
+  public int getDispatcherThreads() {
+    return dispatcherThreads;
+  }
+
+  public int getWriterThreads() {
+    return writerThreads;
+  }
+
+  public BroadcasterRegistryStats getStats() {
+    return stats;
+  }
+
+  public FanOutStats getFanOutStats() {
+    return fanOutStats;
+  }
+
+  /**
+   * Get the live broadcasters, as a view that reflects those created and reaped afterwards.
+   */
+  public Collection<EventBroadcaster> getBroadcasters() {
+    return Collections.unmodifiableCollection(broadcasters.values());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Counts of the broadcasters of a {@link BroadcasterRegistry}, exposed as an MBean.
+ * @author imyousuf
+ */
+public class BroadcasterRegistryStats implements BroadcasterRegistryStatsMBean {
+
+  public static final String OBJECT_NAME = "com.smartitengineering.event.hub:type=BroadcasterRegistry";
+  private final BroadcasterRegistry registry;
+
+  public BroadcasterRegistryStats(BroadcasterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public int getLiveCount() {
+    return registry.getLiveCount();
+  }
+
+  @Override
+  public long getCreatedCount() {
+    return registry.getCreatedCount();
+  }
+
+  @Override
+  public long getReapedCount() {
+    return registry.getReapedCount();
+  }
+
+  @Override
+  public long getIdleTimeoutInSec() {
+    return registry.getIdleTimeoutInSec();
+  }
+
+  @Override
+  public int getDispatcherThreads() {
+    return registry.getDispatcherThreads();
+  }
+
+  @Override
+  public int getWriterThreads() {
+    return registry.getWriterThreads();
+  }
+
+  @Override
+  public int reap() {
+    return registry.reap();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Management interface of the {@link BroadcasterRegistry}.
+ * @author imyousuf
+ */
+public interface BroadcasterRegistryStatsMBean {
+
+  /**
+   * Number of broadcasters currently registered, including event stream ones.
+   */
+  public int getLiveCount();
+
+  public long getCreatedCount();
+
+  /**
+   * Number of broadcasters destroyed for having no subscribers for longer than the idle timeout.
+   */
+  public long getReapedCount();
+
+  public long getIdleTimeoutInSec();
+
+  public int getDispatcherThreads();
+
+  public int getWriterThreads();
+
+  /**
+   * Reap the idle broadcasters now rather than waiting for the next scheduled run.
+   */
+  public int reap();
+}
@@ -0,0 +1,406 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the events published to each channel so that requests waiting for a channel's events can park till there
+ * are some, without reading the storer meanwhile. Each channel has a version, incremented whenever events of it
+ * become readable, and the placeholder ID of the newest event broadcast to it on this node, if known.
+ * <p>
+ * Events are reported by the {@link EventBus} as it delivers them to this node, whether published through this node
+ * or forwarded from the other nodes of the cluster, along with the placeholder ID of the newest of them; text
+ * broadcast to a channel other than by the bus is reported by the channel's {@link ChannelEventFilter} without one.
+ * The events of a channel are forwarded from the other nodes only while this node has
+ * {@link EventBus#addInterest(java.lang.String) interest} in it, so the newest event of a channel is forgotten when
+ * the interest is lost.
+ * <p>
+ * Storers may make events visible out of the order of their placeholders within a
+ * {@link com.smartitengineering.event.hub.spi.OrderedHubPersistentStorer visibility lag}. Readers resuming after the
+ * last event they read must then not be handed an event until every event ordered before it is visible, else they
+ * would skip those becoming visible late. So each channel also has a settled placeholder: once an event is
+ * {@link #sighted(java.lang.String, java.lang.String) sighted}, by being broadcast or read, it and every event
+ * ordered before it are settled after the lag. Without a lag events are settled as soon as they are sighted.
+ * @author imyousuf
+ */
+public class ChannelActivityNotifier {
+
+  private static volatile ChannelActivityNotifier instance = new ChannelActivityNotifier();
+  private final ConcurrentMap<String, Activity> activities = new ConcurrentHashMap<String, Activity>();
+  private final Comparator<String> placeholderOrder;
+  private final long visibilityLagInMillis;
+  private final ScheduledExecutorService settler;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * Notifier for a storer whose events become visible in the order of their ascending placeholders.
+   */
+  public ChannelActivityNotifier() {
+    this(PlaceholderOrder.ASCENDING, 0);
+  }
+
+  /**
+   * @param placeholderOrder Order the storer streams the events in after a placeholder
+   * @param visibilityLagInMillis Time within which every event ordered before a visible event becomes visible
+   */
+  public ChannelActivityNotifier(Comparator<String> placeholderOrder, long visibilityLagInMillis) {
+    this.placeholderOrder = placeholderOrder == null ? PlaceholderOrder.ASCENDING : placeholderOrder;
+    this.visibilityLagInMillis = Math.max(0, visibilityLagInMillis);
+    this.settler = this.visibilityLagInMillis > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+  }
+
+  public static ChannelActivityNotifier getInstance() {
+    return instance;
+  }
+
+  /**
+   * Replace the notifier in use, shutting the previous one down.
+   */
+  public static void setInstance(ChannelActivityNotifier notifier) {
+    if (notifier == null) {
+      return;
+    }
+    final ChannelActivityNotifier oldNotifier = instance;
+    instance = notifier;
+    if (oldNotifier != notifier) {
+      oldNotifier.shutdown();
+    }
+  }
+
+  public Comparator<String> getPlaceholderOrder() {
+    return placeholderOrder;
+  }
+
+  public long getVisibilityLagInMillis() {
+    return visibilityLagInMillis;
+  }
+
+  /**
+   * Get the current version of a channel, to be passed to {@link #await(java.lang.String, long, long)}.
+   */
+  public long getVersion(String channelName) {
+    return getActivity(channelName).getVersion();
+  }
+
+  /**
+   * Check whether a placeholder is known to be that of the newest event of a channel, in which case there are no
+   * events after it to read.
+   */
+  public boolean isNewest(String channelName, String placeholderId) {
+    return placeholderId != null && placeholderId.equals(getActivity(channelName).getNewestPlaceholderId());
+  }
+
+  /**
+   * Get the placeholder up to which the events of a channel are settled.
+   * @return The placeholder or null if none of the channel's events is settled yet
+   */
+  public String getSettledPlaceholderId(String channelName) {
+    return getActivity(channelName).getSettledPlaceholderId();
+  }
+
+  /**
+   * Check whether every event of a channel ordered up to a placeholder is visible.
+   */
+  public boolean isSettled(String channelName, String placeholderId) {
+    final String settledPlaceholderId = getSettledPlaceholderId(channelName);
+    return settledPlaceholderId != null && placeholderId != null && placeholderOrder.compare(placeholderId,
+                                                                                             settledPlaceholderId) <= 0;
+  }
+
+  /**
+   * Report events of a channel read after a placeholder, and keep only those settled, i.e. those that can be handed
+   * to a reader without it skipping an event becoming visible later.
+   * @param channelName Name of the channel
+   * @param events Events read, in any order
+   * @return The settled events, in the order they were read in
+   */
+  public List<Event> settle(String channelName, Collection<Event> events) {
+    if (events == null || events.isEmpty()) {
+      return new ArrayList<Event>();
+    }
+    String newestPlaceholderId = null;
+    for (Event event : events) {
+      if (newestPlaceholderId == null || placeholderOrder.compare(event.getPlaceholderId(), newestPlaceholderId) > 0) {
+        newestPlaceholderId = event.getPlaceholderId();
+      }
+    }
+    sighted(channelName, newestPlaceholderId);
+    final List<Event> settled = new ArrayList<Event>(events.size());
+    for (Event event : events) {
+      if (isSettled(channelName, event.getPlaceholderId())) {
+        settled.add(event);
+      }
+    }
+    return settled;
+  }
+
+  /**
+   * Report an event of a channel seen to be visible, settling it and every event ordered before it once the
+   * visibility lag has passed.
+   */
+  public void sighted(String channelName, String placeholderId) {
+    if (placeholderId != null) {
+      getActivity(channelName).sighted(placeholderId, false);
+    }
+  }
+
+  /**
+   * Report events broadcast to a channel on this node, waking up the requests waiting for the channel's events once
+   * they are settled.
+   * @param channelName Name of the channel
+   * @param newestPlaceholderId Placeholder ID of the newest of the events
+   */
+  public void published(String channelName, String newestPlaceholderId) {
+    getActivity(channelName).published(newestPlaceholderId);
+  }
+
+  /**
+   * Report text broadcast to a channel other than its events, whose placeholder IDs are hence not known.
+   */
+  public void published(String channelName) {
+    getActivity(channelName).published(null);
+  }
+
+  /**
+   * Forget the newest event of a channel, e.g. when the events published to it on the other nodes stop being
+   * forwarded to this one.
+   */
+  public void forgetNewest(String channelName) {
+    getActivity(channelName).forgetNewest();
+  }
+
+  /**
+   * Wait for events of a channel to become readable after it was at the given version.
+   * @param channelName Name of the channel
+   * @param version Version of the channel the caller has seen
+   * @param timeoutInMillis Longest to wait
+   * @return The channel's version, the same as the one passed if none were published within the timeout
+   * @throws InterruptedException If interrupted while waiting
+   */
+  public long await(String channelName, long version, long timeoutInMillis)
+      throws InterruptedException {
+    return getActivity(channelName).await(version, timeoutInMillis);
+  }
+
+  /**
+   * Have a listener told whenever events of a channel become readable.
+   */
+  public void addListener(String channelName, Listener listener) {
+    getActivity(channelName).listeners.addIfAbsent(listener);
+  }
+
+  public void removeListener(String channelName, Listener listener) {
+    getActivity(channelName).listeners.remove(listener);
+  }
+
+  /**
+   * Stop settling the events sighted; waiters are still woken up by their timeouts.
+   */
+  public void shutdown() {
+    if (settler != null) {
+      settler.shutdownNow();
+    }
+  }
+
+  protected Activity getActivity(String channelName) {
+    final String key = channelName.toLowerCase();
+    Activity activity = activities.get(key);
+    if (activity == null) {
+      final Activity newActivity = new Activity(key);
+      activity = activities.putIfAbsent(key, newActivity);
+      if (activity == null) {
+        activity = newActivity;
+      }
+    }
+    return activity;
+  }
+
+  /**
+   * Listener of the activity of a channel, which is called on the thread reporting the activity and hence must not
+   * block.
+   */
+  public static interface Listener {
+
+    public void channelActive(String channelName);
+  }
+
+  /**
+   * Activity of a channel, locked on itself.
+   */
+  protected class Activity {
+
+    private final String channelName;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    /**
+     * Sightings yet to settle, both their placeholders and the times they were seen at ascending
+     */
+    private final LinkedList<Sighting> sightings = new LinkedList<Sighting>();
+    private long version = 0;
+    private String newestPlaceholderId;
+    private String settledPlaceholderId;
+    private boolean settleScheduled = false;
+
+    public Activity(String channelName) {
+      this.channelName = channelName;
+    }
+
+    public synchronized long getVersion() {
+      return version;
+    }
+
+    public synchronized String getNewestPlaceholderId() {
+      return newestPlaceholderId;
+    }
+
+    public synchronized String getSettledPlaceholderId() {
+      return settledPlaceholderId;
+    }
+
+    public synchronized void forgetNewest() {
+      newestPlaceholderId = null;
+    }
+
+    public void published(String placeholderId) {
+      synchronized (this) {
+        newestPlaceholderId = placeholderId;
+        //Events settling later are announced then
+        if (placeholderId != null && !sighted(placeholderId, true)) {
+          return;
+        }
+        ++version;
+        notifyAll();
+      }
+      fireActive();
+    }
+
+    /**
+     * @return Whether the placeholder was settled right away
+     */
+    protected synchronized boolean sighted(String placeholderId, boolean announced) {
+      if (settledPlaceholderId != null && placeholderOrder.compare(placeholderId, settledPlaceholderId) <= 0) {
+        return announced;
+      }
+      if (visibilityLagInMillis < 1) {
+        settledPlaceholderId = placeholderId;
+        return true;
+      }
+      //An event sighted later than one ordered after it settles no earlier than the latter
+      if (!sightings.isEmpty() && placeholderOrder.compare(sightings.getLast().placeholderId, placeholderId) >= 0) {
+        return false;
+      }
+      sightings.add(new Sighting(placeholderId, System.currentTimeMillis()));
+      if (!settleScheduled) {
+        scheduleSettle(visibilityLagInMillis);
+      }
+      return false;
+    }
+
+    protected void settle() {
+      synchronized (this) {
+        settleScheduled = false;
+        final long settledUntil = System.currentTimeMillis() - visibilityLagInMillis;
+        String settled = null;
+        while (!sightings.isEmpty() && sightings.getFirst().time <= settledUntil) {
+          settled = sightings.removeFirst().placeholderId;
+        }
+        if (!sightings.isEmpty()) {
+          scheduleSettle(sightings.getFirst().time - settledUntil);
+        }
+        if (settled == null) {
+          return;
+        }
+        settledPlaceholderId = settled;
+        ++version;
+        notifyAll();
+      }
+      fireActive();
+    }
+
+    private void scheduleSettle(long delayInMillis) {
+      try {
+        settler.schedule(new Runnable() {
+
+          @Override
+          public void run() {
+            try {
+              settle();
+            }
+            catch (RuntimeException ex) {
+              logger.error("Could not settle events of " + channelName, ex);
+            }
+          }
+        }, Math.max(1, delayInMillis), TimeUnit.MILLISECONDS);
+        settleScheduled = true;
+      }
+      catch (RejectedExecutionException ex) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Not settling events of " + channelName + " as the notifier is shut down");
+        }
+      }
+    }
+
+    protected void fireActive() {
+      for (Listener listener : listeners) {
+        try {
+          listener.channelActive(channelName);
+        }
+        catch (RuntimeException ex) {
+          logger.error("Could not notify activity of " + channelName, ex);
+        }
+      }
+    }
+
+    public synchronized long await(long seenVersion, long timeoutInMillis)
+        throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + timeoutInMillis;
+      long remaining = timeoutInMillis;
+      while (version == seenVersion && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return version;
+    }
+  }
+
+  private static class Sighting {
+
+    private final String placeholderId;
+    private final long time;
+
+    public Sighting(String placeholderId, long time) {
+      this.placeholderId = placeholderId;
+      this.time = time;
+    }
+  }
+}
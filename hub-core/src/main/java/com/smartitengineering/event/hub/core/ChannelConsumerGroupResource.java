@@ -0,0 +1,147 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.common.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.commons.lang.StringUtils;
+import org.atmosphere.annotation.Suspend;
+import org.atmosphere.jersey.Broadcastable;
+
+/**
+ * A named consumer group of a channel, whose consumers share the channel's events among themselves. A consumer
+ * fetches the next events after the group's committed offset, waiting for them to be published if there are none,
+ * and gets them with a lease; once done with them it commits the lease, optionally along with other leases it holds,
+ * so that the group's offset is moved past them. Events of a lease not committed in time are handed to another
+ * consumer. The committed offset survives restarts of the hub as it is persisted by the storer.
+ * @author imyousuf
+ */
+@Path("/" + Constants.RSRC_PATH_CHANNEL_PREFIX + "/{" + Constants.RSRC_PATH_CHANNEL + "}/"
+    + Constants.RSRC_PATH_CHANNEL_GROUPS + "/{" + Constants.RSRC_PATH_GROUP + "}")
+public class ChannelConsumerGroupResource extends AbstractChannelResource {
+
+  public static final int MAX_GROUP_NAME_LENGTH = 200;
+  private static final Pattern GROUP_NAME_PATTERN = Pattern.compile("[\\w.\\-]+");
+  private static final Pattern LEASE_ID_SEPARATOR = Pattern.compile("[\\s,]+");
+  @PathParam(Constants.RSRC_PATH_CHANNEL)
+  private String channelName;
+  @PathParam(Constants.RSRC_PATH_GROUP)
+  private String groupName;
+  @HeaderParam(Constants.AUTH_TOKEN_HEADER_NAME)
+  private String authToken;
+  @Context
+  private HttpServletRequest servletRequest;
+
+  /**
+   * Get the placeholder ID of the last event committed by the group, or <tt>204 No Content</tt> if it has not
+   * committed any.
+   */
+  @GET
+  @Produces(MediaType.TEXT_PLAIN)
+  public Response getCommittedOffset() {
+    checkGroup();
+    final String offset = ConsumerGroupCoordinator.getInstance().getCommittedOffset(channelName, groupName);
+    if (offset == null) {
+      return Response.noContent().build();
+    }
+    return Response.ok(offset).build();
+  }
+
+  /**
+   * Fetch the next events of the group, oldest first, as a JSON array with the ID of their lease in the
+   * <tt>X-CONSUMER-LEASE</tt> header. If there are none it waits for events to be published for the given number of
+   * seconds, bound by {@link ConsumerGroupSettings#getMaxWaitInSec()}, and responds <tt>204 No Content</tt> if none
+   * are. The request is suspended by the channel's {@link ConsumerGroupFetchBroadcaster} rather than holding a thread
+   * while it waits, and is suspended even if not to wait, but then it is responded to after the first try.
+   */
+  @GET
+  @Suspend(outputComments = false)
+  @Path(Constants.RSRC_PATH_CHANNEL_EVENTS)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Broadcastable fetch(@QueryParam("count") @DefaultValue("10") int count,
+                             @QueryParam("waitInSec") @DefaultValue("-1") long waitInSec) {
+    checkGroup();
+    final long maxWaitInSec = ConsumerGroupSettings.getMaxWaitInSec();
+    final long wait = waitInSec < 0 || waitInSec > maxWaitInSec ? maxWaitInSec : waitInSec;
+    final ConsumerGroupFetch fetch = new ConsumerGroupFetch(channelName, groupName, count, wait * 1000);
+    servletRequest.setAttribute(ConsumerGroupFetchBroadcaster.FETCH_ATTRIBUTE, fetch);
+    return new Broadcastable(ConsumerGroupFetchBroadcaster.getBroadcaster(channelName, true));
+  }
+
+  /**
+   * Commit one or more leases of the group, whose IDs are separated by white spaces or commas. Responds
+   * <tt>204 No Content</tt> if all are committed, else <tt>409 Conflict</tt> with the IDs of the leases that have
+   * expired or are unknown, one per line; the rest are committed nonetheless.
+   */
+  @POST
+  @Path("commits")
+  @Consumes(MediaType.TEXT_PLAIN)
+  @Produces(MediaType.TEXT_PLAIN)
+  public Response commit(String leaseIds) {
+    checkGroup();
+    final List<String> ids = new ArrayList<String>();
+    for (String leaseId : LEASE_ID_SEPARATOR.split(StringUtils.trimToEmpty(leaseIds))) {
+      if (StringUtils.isNotBlank(leaseId)) {
+        ids.add(leaseId);
+      }
+    }
+    if (ids.isEmpty()) {
+      return Response.status(Response.Status.BAD_REQUEST).build();
+    }
+    final List<String> rejected = ConsumerGroupCoordinator.getInstance().commit(channelName, groupName, ids);
+    if (rejected.isEmpty()) {
+      return Response.noContent().build();
+    }
+    return Response.status(Response.Status.CONFLICT).entity(StringUtils.join(rejected, '\n')).build();
+  }
+
+  protected void checkGroup() {
+    checkAuthToken(checkChannelExistence());
+    if (StringUtils.isBlank(groupName) || groupName.length() > MAX_GROUP_NAME_LENGTH || !GROUP_NAME_PATTERN.matcher(
+        groupName).matches()) {
+      throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+    routeToOwner();
+  }
+
+  @Override
+  protected String getChannelName() {
+    return channelName;
+  }
+
+  @Override
+  protected String getAuthToken() {
+    return authToken;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Filter;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.util.ArrayList;
+import java.util.List;
+import org.atmosphere.cpr.BroadcastFilter;
+import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
+import org.atmosphere.cpr.Broadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the filter of a channel to the events of a broadcast. Broadcast filters are applied once per message by
+ * the broadcaster, before the message is pushed to each of the suspended resources, so the channel filter is evaluated
+ * once per event irrespective of the number of subscribers. Rejected events are dropped and the rest are turned into
+ * the {@link EncodedPayload} written to the subscribers; if all are rejected the broadcast is aborted. Any message
+ * other than an {@link EventBroadcastMessage}, for example one already filtered on the node it was published to, is
+ * passed on as is, text being encoded once.
+ * <p>
+ * A broadcaster that has to write each subscriber a different text, such as the {@link EventStreamBroadcaster}, can
+ * have the filter pass on the filtered message itself instead of its text.
+ * <p>
+ * Text broadcast directly, other than by the {@link EventBus}, is reported to the {@link ChannelActivityNotifier} as
+ * activity of the channel of the broadcaster owning the filter, if it has one.
+ * @author imyousuf
+ */
+public class ChannelEventFilter implements BroadcastFilter {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final boolean payloadDeferred;
+  private final Broadcaster owner;
+
+  public ChannelEventFilter() {
+    this(false);
+  }
+
+  /**
+   * @param payloadDeferred Whether to pass on the filtered {@link EventBroadcastMessage} rather than its payload
+   */
+  public ChannelEventFilter(boolean payloadDeferred) {
+    this(payloadDeferred, null);
+  }
+
+  /**
+   * @param payloadDeferred Whether to pass on the filtered {@link EventBroadcastMessage} rather than its payload
+   * @param owner Broadcaster of the channel the filter is added to, whose ID is the channel's name
+   */
+  public ChannelEventFilter(boolean payloadDeferred, Broadcaster owner) {
+    this.payloadDeferred = payloadDeferred;
+    this.owner = owner;
+  }
+
+  public boolean isPayloadDeferred() {
+    return payloadDeferred;
+  }
+
+  @Override
+  public BroadcastAction filter(Object message) {
+    if (message instanceof EventBroadcastMessage && ((EventBroadcastMessage) message).isFiltered()) {
+      return toAction((EventBroadcastMessage) message);
+    }
+    if (!(message instanceof EventBroadcastMessage)) {
+      if (owner != null) {
+        //Text broadcast other than by the event bus, which already reports the activity of the events it delivers
+        ChannelActivityNotifier.getInstance().published(owner.getID());
+      }
+      if (message instanceof String) {
+        return new BroadcastAction(EncodedPayload.encode((String) message));
+      }
+      return new BroadcastAction(message);
+    }
+    final EventBroadcastMessage eventMessage = (EventBroadcastMessage) message;
+    final Channel channel = HubPersistentStorerSPI.getInstance().getStorer().getChannel(eventMessage.getChannelName());
+    final Filter filter = channel == null ? null : channel.getFilter();
+    if (filter == null) {
+      return toAction(eventMessage.withFilteredItems(eventMessage.getItems()));
+    }
+    final ChannelFilterStats stats = ChannelFilterStatsRegistry.getInstance().getStats(channel.getName());
+    final List<EventBroadcastMessage.Item> passedItems =
+                                           new ArrayList<EventBroadcastMessage.Item>(eventMessage.getItems().size());
+    for (EventBroadcastMessage.Item item : eventMessage.getItems()) {
+      final long start = System.nanoTime();
+      try {
+        final boolean allowed = filter.allowBroadcast(item.toEvent());
+        stats.record(allowed, System.nanoTime() - start);
+        if (allowed) {
+          passedItems.add(item);
+        }
+      }
+      catch (RuntimeException ex) {
+        //Do not let an event the filter could not decide upon through
+        stats.recordFailure(System.nanoTime() - start);
+        logger.error("Could not evaluate filter of channel " + channel.getName() + " for event " + item.
+            getPlaceholderId(), ex);
+      }
+    }
+    if (passedItems.isEmpty()) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("All events rejected by filter of channel " + channel.getName());
+      }
+      return new BroadcastAction(ACTION.ABORT, message);
+    }
+    return toAction(eventMessage.withFilteredItems(passedItems));
+  }
+
+  protected BroadcastAction toAction(EventBroadcastMessage filteredMessage) {
+    return new BroadcastAction(payloadDeferred ? filteredMessage : filteredMessage.getEncodedPayload());
+  }
+}
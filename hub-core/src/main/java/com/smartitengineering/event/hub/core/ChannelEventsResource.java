@@ -19,17 +19,16 @@ package com.smartitengineering.event.hub.core;
 
 import com.smartitengineering.event.hub.api.Event;
 import com.smartitengineering.event.hub.common.Constants;
+import com.smartitengineering.event.hub.common.RenderedEventCache;
 import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import com.sun.jersey.api.view.Viewable;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -37,16 +36,21 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import org.apache.abdera.factory.Factory;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
 import org.apache.abdera.model.Link;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.atmosphere.annotation.Suspend;
+import org.atmosphere.jersey.Broadcastable;
 
 /**
  *
@@ -57,7 +61,7 @@ public class ChannelEventsResource extends AbstractEventResource {
 
   static final Method BEFORE_METHOD;
   static final Method AFTER_METHOD;
-  private final Map<Event, String> contentCache = new WeakHashMap<Event, String>();
+  private static final Pattern WAIT_PATTERN = Pattern.compile("(\\d{1,9})\\s*(ms|s)?", Pattern.CASE_INSENSITIVE);
   @Context
   private HttpServletRequest servletRequest;
   @PathParam("channelId")
@@ -81,6 +85,10 @@ public class ChannelEventsResource extends AbstractEventResource {
   @QueryParam("count")
   @DefaultValue("10")
   private Integer count;
+  @QueryParam("wait")
+  private String wait;
+  @QueryParam("max")
+  private Integer max;
 
   @GET
   @Produces(MediaType.APPLICATION_ATOM_XML)
@@ -103,11 +111,28 @@ public class ChannelEventsResource extends AbstractEventResource {
     return getInHTMLFrags(beforeEvent, true);
   }
 
+  /**
+   * Respond with the events after a placeholder. If asked to <tt>wait</tt> for events and there are none yet the
+   * request is suspended by the channel's {@link LongPollBroadcaster}, and responded with every event published after
+   * the placeholder, up to the <tt>max</tt> query parameter, in one feed. While waiting the storer is not read at all,
+   * nor is it before waiting if the placeholder is known to be of the channel's newest event. The request is suspended
+   * even if not to wait, but then it is responded to right away.
+   */
   @GET
+  @Suspend(outputComments = false)
   @Produces(MediaType.APPLICATION_ATOM_XML)
   @Path("/after/{eventPlaceholderId}")
-  public Response getAfter(@PathParam("eventPlaceholderId") String afterEvent) {
-    return get(afterEvent, false);
+  public Broadcastable getAfter(@PathParam("eventPlaceholderId") String afterEvent) {
+    final long waitInMillis = getLongPollWaitInMillis();
+    final LongPoll poll;
+    if (waitInMillis > 0) {
+      poll = new LongPoll(channelId, afterEvent, getLongPollMaxEvents(), waitInMillis, newEventFeedBuilder());
+    }
+    else {
+      poll = new LongPoll(channelId, get(afterEvent, false).getEntity());
+    }
+    servletRequest.setAttribute(LongPollBroadcaster.POLL_ATTRIBUTE, poll);
+    return new Broadcastable(LongPollBroadcaster.getBroadcaster(channelId, true));
   }
 
   @GET
@@ -181,91 +206,133 @@ public class ChannelEventsResource extends AbstractEventResource {
     if (count == null) {
       count = 10;
     }
-    ResponseBuilder responseBuilder = Response.ok();
-    Feed atomFeed = getFeed("Events", new Date());
-
     int thisCount = count;
     if (isBefore) {
       thisCount = count * -1;
     }
-
+    if (FeedSettings.isStreamed(thisCount)) {
+      final StreamingEventFeed streamingFeed = newStreamingFeed("Events", channelId, placeholderId, thisCount,
+                                                                getRelativeURIBuilder().path(ChannelEventsResource.class).
+          path(AFTER_METHOD), getRelativeURIBuilder().path(ChannelEventsResource.class).path(BEFORE_METHOD), channelId);
+      return Response.ok(streamingFeed, MediaType.APPLICATION_ATOM_XML).build();
+    }
     Collection<Event> events = HubPersistentStorerSPI.getInstance().getStorer().getEvents(placeholderId, channelId,
                                                                                           thisCount);
+    return getFeedResponse(events);
+  }
+
+  /**
+   * Get the time to wait for events as asked by the <tt>wait</tt> query parameter, in seconds with an optional
+   * <tt>s</tt> suffix or in milliseconds with a <tt>ms</tt> suffix, bound by
+   * {@link FeedSettings#getMaxLongPollWaitInSec()}.
+   * @return The time to wait in milliseconds, 0 if not asked to wait
+   */
+  protected long getLongPollWaitInMillis() {
+    if (StringUtils.isBlank(wait)) {
+      return 0;
+    }
+    final Matcher matcher = WAIT_PATTERN.matcher(wait.trim());
+    if (!matcher.matches()) {
+      throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+    final long value = NumberUtils.toLong(matcher.group(1));
+    final long waitInMillis = "ms".equalsIgnoreCase(matcher.group(2)) ? value : value * 1000;
+    return Math.min(waitInMillis, FeedSettings.getMaxLongPollWaitInSec() * 1000L);
+  }
+
+  protected int getLongPollMaxEvents() {
+    final int maxEvents = max == null || max.intValue() < 1 ? (count == null || count.intValue() < 1 ? 10 : count.
+        intValue()) : max.intValue();
+    return Math.min(maxEvents, FeedSettings.getMaxLongPollEvents());
+  }
+
+  protected Response getFeedResponse(Collection<Event> events) {
+    ResponseBuilder responseBuilder = Response.ok();
+    responseBuilder.entity(newEventFeedBuilder().build(events));
+    return responseBuilder.build();
+  }
+
+  /**
+   * Take what is needed to build the feed of a page of events off this request, so that the feed can be built once
+   * the request has been suspended as well.
+   */
+  protected EventFeedBuilder newEventFeedBuilder() {
+    final MultivaluedMap<String, String> queryParams = getUriInfo().getQueryParameters();
+    final UriBuilder nextUri = getRelativeURIBuilder().path(ChannelEventsResource.class).path(AFTER_METHOD);
+    final UriBuilder previousUri = getRelativeURIBuilder().path(ChannelEventsResource.class).path(BEFORE_METHOD);
+    for (String key : queryParams.keySet()) {
+      final Object[] values = queryParams.get(key).toArray();
+      nextUri.queryParam(key, values);
+      previousUri.queryParam(key, values);
+    }
+    return new EventFeedBuilder(getFeed("Events", new Date()), getAbderaFactory(), channelId, nextUri, previousUri,
+                                getRelativeURIBuilder().path(EventResource.class));
+  }
+
+  @Override
+  protected String getEventName() {
+    return placeholderId;
+  }
 
-    if (events != null && !events.isEmpty()) {
-      MultivaluedMap<String, String> queryParams = getUriInfo().getQueryParameters();
+  /**
+   * Builds the Atom feed of a page of events, newest first, with the links to the pages after and before it.
+   */
+  protected static class EventFeedBuilder {
+
+    private final Feed feed;
+    private final Factory abderaFactory;
+    private final String channelId;
+    private final UriBuilder nextUri;
+    private final UriBuilder previousUri;
+    private final UriBuilder eventUri;
+
+    public EventFeedBuilder(Feed feed, Factory abderaFactory, String channelId, UriBuilder nextUri,
+                            UriBuilder previousUri, UriBuilder eventUri) {
+      this.feed = feed;
+      this.abderaFactory = abderaFactory;
+      this.channelId = channelId;
+      this.nextUri = nextUri;
+      this.previousUri = previousUri;
+      this.eventUri = eventUri;
+    }
 
+    public Feed build(Collection<Event> events) {
+      if (events == null || events.isEmpty()) {
+        return feed;
+      }
       List<Event> eventList = new ArrayList<Event>(events);
-      Link nextLink = getAbderaFactory().newLink();
+      Link nextLink = abderaFactory.newLink();
       nextLink.setRel(Link.REL_PREVIOUS);
       Event lastEvent = eventList.get(0);
-      final UriBuilder nextUri = getRelativeURIBuilder().path(ChannelEventsResource.class).path(AFTER_METHOD);
-      final UriBuilder previousUri = getRelativeURIBuilder().path(ChannelEventsResource.class).path(BEFORE_METHOD);
-
-      for (String key : queryParams.keySet()) {
-        final Object[] values = queryParams.get(key).toArray();
-        nextUri.queryParam(key, values);
-        previousUri.queryParam(key, values);
-      }
-
       nextLink.setHref(nextUri.build(channelId, lastEvent.getPlaceholderId()).toString());
-      atomFeed.addLink(nextLink);
+      feed.addLink(nextLink);
 
-      Link previousLink = getAbderaFactory().newLink();
+      Link previousLink = abderaFactory.newLink();
       previousLink.setRel(Link.REL_NEXT);
       Event firstEvent = eventList.get(events.size() - 1);
       previousLink.setHref(previousUri.build(channelId, firstEvent.getPlaceholderId()).toString());
-      atomFeed.addLink(previousLink);
+      feed.addLink(previousLink);
 
       for (Event event : events) {
-        Entry eventEntry = getAbderaFactory().newEntry();
+        Entry eventEntry = abderaFactory.newEntry();
 
         eventEntry.setId(event.getPlaceholderId());
         eventEntry.setTitle(event.getPlaceholderId().toString());
 
-        InputStream contentStream = event.getEventContent().getContent();
-        String contentAsString = "";
-
-        if (contentStream != null) {
-          if (contentCache.containsKey(event)) {
-            contentAsString = contentCache.get(event);
-          }
-          else {
-            try {
-              if (contentStream.markSupported()) {
-                contentStream.mark(Integer.MAX_VALUE);
-              }
-              contentAsString = IOUtils.toString(contentStream);
-              contentCache.put(event, contentAsString);
-              if (contentStream.markSupported()) {
-                contentStream.reset();
-              }
-            }
-            catch (IOException ex) {
-            }
-          }
-        }
-
-
+        final String contentAsString = RenderedEventCache.getInstance().getContentAsString(event);
         eventEntry.setContent(contentAsString);
         eventEntry.setUpdated(event.getCreationDate());
 
-        Link eventLink = getAbderaFactory().newLink();
+        Link eventLink = abderaFactory.newLink();
 
-        eventLink.setHref(getRelativeURIBuilder().path(EventResource.class).build(event.getPlaceholderId()).toString());
+        eventLink.setHref(eventUri.build(event.getPlaceholderId()).toString());
         eventLink.setRel(Link.REL_ALTERNATE);
         eventLink.setMimeType(MediaType.APPLICATION_JSON);
 
         eventEntry.addLink(eventLink);
-        atomFeed.addEntry(eventEntry);
+        feed.addEntry(eventEntry);
       }
+      return feed;
     }
-    responseBuilder.entity(atomFeed);
-    return responseBuilder.build();
-  }
-
-  @Override
-  protected String getEventName() {
-    return placeholderId;
   }
 }
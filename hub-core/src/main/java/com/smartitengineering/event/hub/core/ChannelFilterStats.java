@@ -0,0 +1,140 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filter evaluation counters of a channel. Latency percentiles are computed from the most recent evaluations only,
+ * kept in a fixed size ring, so that recording stays cheap and the figures reflect current behaviour.
+ * @author imyousuf
+ */
+public class ChannelFilterStats implements ChannelFilterStatsMBean {
+
+  public static final int LATENCY_SAMPLE_SIZE = 1024;
+  private final String channelName;
+  private final AtomicLong evaluated = new AtomicLong();
+  private final AtomicLong passed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final long[] latencies = new long[LATENCY_SAMPLE_SIZE];
+  private int latencyCount = 0;
+  private int nextLatencyIndex = 0;
+
+  public ChannelFilterStats(String channelName) {
+    this.channelName = channelName;
+  }
+
+  public void record(boolean allowed, long latencyInNanos) {
+    evaluated.incrementAndGet();
+    if (allowed) {
+      passed.incrementAndGet();
+    }
+    else {
+      rejected.incrementAndGet();
+    }
+    synchronized (latencies) {
+      latencies[nextLatencyIndex] = latencyInNanos;
+      nextLatencyIndex = (nextLatencyIndex + 1) % latencies.length;
+      if (latencyCount < latencies.length) {
+        latencyCount++;
+      }
+    }
+  }
+
+  public void recordFailure(long latencyInNanos) {
+    failed.incrementAndGet();
+    record(false, latencyInNanos);
+  }
+
+  @Override
+  public String getChannelName() {
+    return channelName;
+  }
+
+  @Override
+  public long getEvaluated() {
+    return evaluated.get();
+  }
+
+  @Override
+  public long getPassed() {
+    return passed.get();
+  }
+
+  @Override
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @Override
+  public long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public double getLatencyMedianInMicros() {
+    return getLatencyPercentileInMicros(50);
+  }
+
+  @Override
+  public double getLatency90thPercentileInMicros() {
+    return getLatencyPercentileInMicros(90);
+  }
+
+  @Override
+  public double getLatency99thPercentileInMicros() {
+    return getLatencyPercentileInMicros(99);
+  }
+
+  @Override
+  public double getLatencyMaxInMicros() {
+    return getLatencyPercentileInMicros(100);
+  }
+
+  @Override
+  public void reset() {
+    evaluated.set(0);
+    passed.set(0);
+    rejected.set(0);
+    failed.set(0);
+    synchronized (latencies) {
+      latencyCount = 0;
+      nextLatencyIndex = 0;
+    }
+  }
+
+  /**
+   * Get a latency percentile, using the nearest rank, of the sampled evaluations.
+   * @param percentile Percentile between 1 and 100
+   * @return The latency in microseconds, 0 if nothing has been evaluated
+   */
+  public double getLatencyPercentileInMicros(int percentile) {
+    final long[] sample;
+    synchronized (latencies) {
+      sample = Arrays.copyOf(latencies, latencyCount);
+    }
+    if (sample.length == 0) {
+      return 0d;
+    }
+    Arrays.sort(sample);
+    final int rank = (int) Math.ceil(percentile / 100d * sample.length);
+    return sample[Math.min(Math.max(rank, 1), sample.length) - 1] / 1000d;
+  }
+}
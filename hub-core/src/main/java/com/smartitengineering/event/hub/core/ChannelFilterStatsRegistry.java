@@ -0,0 +1,82 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the filter statistics of each channel, registering them as an MBean when the channel's filter is first
+ * evaluated.
+ * @author imyousuf
+ */
+public final class ChannelFilterStatsRegistry {
+
+  public static final String OBJECT_NAME_PREFIX = "com.smartitengineering.event.hub:type=ChannelFilter,channel=";
+  private static final ChannelFilterStatsRegistry INSTANCE = new ChannelFilterStatsRegistry();
+  private final ConcurrentMap<String, ChannelFilterStats> stats = new ConcurrentHashMap<String, ChannelFilterStats>();
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  private ChannelFilterStatsRegistry() {
+  }
+
+  public static ChannelFilterStatsRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  public ChannelFilterStats getStats(String channelName) {
+    ChannelFilterStats channelStats = stats.get(channelName);
+    if (channelStats == null) {
+      final ChannelFilterStats newStats = new ChannelFilterStats(channelName);
+      channelStats = stats.putIfAbsent(channelName, newStats);
+      if (channelStats == null) {
+        channelStats = newStats;
+        try {
+          ManagementFactory.getPlatformMBeanServer().registerMBean(newStats, getObjectName(channelName));
+        }
+        catch (Exception ex) {
+          logger.warn("Could not register filter statistics of channel " + channelName, ex);
+        }
+      }
+    }
+    return channelStats;
+  }
+
+  /**
+   * Unregister the MBeans of all channels and forget their statistics.
+   */
+  public void clear() {
+    for (String channelName : stats.keySet()) {
+      stats.remove(channelName);
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName(channelName));
+      }
+      catch (Exception ex) {
+        logger.warn("Could not unregister filter statistics of channel " + channelName, ex);
+      }
+    }
+  }
+
+  protected ObjectName getObjectName(String channelName) throws Exception {
+    return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(channelName));
+  }
+}
@@ -21,9 +21,13 @@ import com.smartitengineering.event.hub.api.Channel;
 import com.smartitengineering.event.hub.api.Event;
 import com.smartitengineering.event.hub.api.impl.APIFactory;
 import com.smartitengineering.event.hub.common.Constants;
-import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
@@ -34,16 +38,10 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.atmosphere.annotation.Broadcast;
-import org.atmosphere.annotation.Cluster;
 import org.atmosphere.annotation.Suspend;
-import org.atmosphere.cpr.Broadcaster;
 import org.atmosphere.jersey.Broadcastable;
-import org.atmosphere.plugin.jgroups.JGroupsFilter;
 
 /**
  *
@@ -52,33 +50,63 @@ import org.atmosphere.plugin.jgroups.JGroupsFilter;
 @Path("/" + Constants.RSRC_PATH_CHANNEL_PREFIX + "/{" + Constants.RSRC_PATH_CHANNEL + "}/" + Constants.RSRC_PATH_CHANNEL_HUB)
 public class ChannelHubResource extends AbstractChannelResource {
 
-  @PathParam(Constants.RSRC_PATH_CHANNEL)
-  private Broadcaster broadcaster;
+  /**
+   * Status of a batch of more events than can be published at once, which JAX-RS has no constant for.
+   */
+  public static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
   @PathParam(Constants.RSRC_PATH_CHANNEL)
   private String channelName;
   @HeaderParam(Constants.AUTH_TOKEN_HEADER_NAME)
   private String authToken;
+  @HeaderParam(Constants.PUBLISH_ACK_HEADER_NAME)
+  private String publishAck;
   @Context
   private Request request;
+  @Context
+  private HttpServletRequest servletRequest;
 
   @GET
   @Suspend(outputComments = false)
   @Produces
   public Broadcastable register() {
-    checkChannelExistence();
-    checkAuthToken();
-    return new Broadcastable(broadcaster);
+    checkAuthToken(checkChannelExistence());
+    routeToOwner();
+    return new Broadcastable(getBroadcaster());
+  }
+
+  /**
+   * Subscribe to the channel as a <tt>text/event-stream</tt>, where each event is a frame identified by its
+   * placeholder ID. A subscriber reconnecting with the <tt>Last-Event-ID</tt> header is first sent the events it
+   * missed, oldest first, and then the live ones, without any repeated or left out in between.
+   */
+  @GET
+  @Suspend(outputComments = false)
+  @Produces(Constants.EVENT_STREAM_MEDIA_TYPE)
+  public Broadcastable registerEventStream(@HeaderParam(Constants.LAST_EVENT_ID_HEADER_NAME) String lastEventId) {
+    checkAuthToken(checkChannelExistence());
+    routeToOwner();
+    servletRequest.setAttribute(EventStreamBroadcaster.CURSOR_ATTRIBUTE, new EventStreamCursor(channelName,
+        lastEventId, ChannelActivityNotifier.getInstance().getPlaceholderOrder()));
+    return new Broadcastable(EventStreamBroadcaster.getBroadcaster(channelName, true));
   }
 
-  @Broadcast
+  /**
+   * Publish an event to the channel. The event is persisted and broadcast asynchronously by the
+   * {@link PublishPipeline}; the response is <tt>202 Accepted</tt> with the location at which the event can be
+   * looked up by its UUID, unless the publisher asks to wait for the event to be persisted using the
+   * <tt>X-CHANNEL-PUBLISH-ACK: durable</tt> header, in which case it is <tt>201 Created</tt> with the location of
+   * the event. If the channel has too many events waiting to be persisted the response is
+   * <tt>503 Service Unavailable</tt> with a <tt>Retry-After</tt> header.
+   */
   @POST
-  @Cluster(name = "EventHub", value=JGroupsFilter.class)
-  public Response broadcast(@HeaderParam("Content-type") String contentType, String message) {
-    checkAuthToken();
-    checkChannelExistence();
+  public Response broadcast(@HeaderParam("Content-type") String contentType, byte[] message) {
+    //Auth token check fails for a non-existent channel as well, so the channel is looked up once per request
+    final Channel channel = getChannel();
+    checkAuthToken(channel);
     final String eventContentType;
     //HTTP Request entity body can not be blank
-    if (StringUtils.isBlank(message)) {
+    if (isBlank(message)) {
       return Response.status(Status.BAD_REQUEST).build();
     }
     final boolean isHtmlPost;
@@ -90,12 +118,13 @@ public class ChannelHubResource extends AbstractChannelResource {
       eventContentType = MediaType.APPLICATION_OCTET_STREAM;
       isHtmlPost = true;
       try {
+        final String formMessage = new String(message, "UTF-8");
         //Will search for the first '=' if not found will take the whole string
-        final int startIndex = message.indexOf("=") + 1;
+        final int startIndex = formMessage.indexOf("=") + 1;
         //Consider the first '=' as the start of a value point and take rest as value
-        final String realMsg = message.substring(startIndex);
+        final String realMsg = formMessage.substring(startIndex);
         //Decode the message to ignore the form encodings and make them human readable
-        message = URLDecoder.decode(realMsg, "UTF-8");
+        message = URLDecoder.decode(realMsg, "UTF-8").getBytes("UTF-8");
       }
       catch (UnsupportedEncodingException ex) {
         ex.printStackTrace();
@@ -105,20 +134,107 @@ public class ChannelHubResource extends AbstractChannelResource {
       eventContentType = contentType;
       isHtmlPost = false;
     }
-    Event event = APIFactory.getEventBuilder().eventContent(APIFactory.getContent(eventContentType, IOUtils.
-        toInputStream(message))).build();
-    final Channel channel = HubPersistentStorerSPI.getInstance().getStorer().getChannel(channelName);
-    event = HubPersistentStorerSPI.getInstance().getStorer().create(channel, event);
-    //Add a new line at the end of the message to ensure that the message is flushed to its listeners
-    message = message + "\n";
-    Broadcastable broadcastable = new Broadcastable(message, broadcaster);
-    ResponseBuilder builder = Response.ok(broadcastable);
-    builder.location(getAbsoluteURIBuilder().path(EventResource.class).build(event.getPlaceholderId()));
+    //The entity's bytes are handed over as is, they are neither copied nor converted to a string till broadcast
+    Event event = APIFactory.getEventBuilder().eventContent(APIFactory.getContent(eventContentType, message)).build();
+    final PublishTicket ticket = publish(channel, Collections.singletonList(event));
+    if (ticket == null) {
+      return getQueueFullResponse();
+    }
     if (isHtmlPost) {
-      builder.status(Response.Status.SEE_OTHER);
-      builder.location(getAbsoluteURIBuilder().path(ChannelEventsResource.class).build(channelName));
+      return Response.status(Response.Status.SEE_OTHER).location(getAbsoluteURIBuilder().path(
+          ChannelEventsResource.class).build(channelName)).build();
+    }
+    if (isDurableAckRequested()) {
+      final Response durableResponse = awaitDurability(ticket);
+      if (durableResponse != null) {
+        return durableResponse;
+      }
     }
-    return builder.build();
+    return Response.status(Response.Status.ACCEPTED).location(getAbsoluteURIBuilder().path(
+        EventByUUIDResource.class).build(ticket.getUniversallyUniqueIDs().get(0))).build();
+  }
+
+  /**
+   * Publish a batch of events to the channel, which are persisted together and broadcast as consecutive lines in
+   * the order they were supplied. Responds the same as publishing a single event, except that the location is that of
+   * the channel's events. A batch can have at most as many events as the queue of a channel can take, the
+   * {@link PublishPipeline#getQueueCapacity() queue capacity}; a larger one is rejected with
+   * <tt>413 Request Entity Too Large</tt>, since retrying it would never succeed. An event supplied with the UUID of
+   * an existing event fails its batch.
+   */
+  @POST
+  @Path("batch")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response broadcastBatch(List<Event> events) {
+    final Channel channel = getChannel();
+    checkAuthToken(channel);
+    if (events == null || events.isEmpty()) {
+      return Response.status(Status.BAD_REQUEST).build();
+    }
+    final int queueCapacity = PublishPipeline.getInstance().getQueueCapacity();
+    if (events.size() > queueCapacity) {
+      return Response.status(REQUEST_ENTITY_TOO_LARGE).entity("At most " + queueCapacity +
+          " events can be published at once").build();
+    }
+    final PublishTicket ticket = publish(channel, events);
+    if (ticket == null) {
+      return getQueueFullResponse();
+    }
+    if (isDurableAckRequested()) {
+      final Response durableResponse = awaitDurability(ticket);
+      if (durableResponse != null) {
+        return durableResponse;
+      }
+    }
+    return Response.status(Response.Status.ACCEPTED).location(getAbsoluteURIBuilder().path(
+        ChannelEventsResource.class).build(channelName)).build();
+  }
+
+  protected PublishTicket publish(Channel channel, List<Event> events) {
+    return PublishPipeline.getInstance().publish(channel, events);
+  }
+
+  /**
+   * Retrieve the channel's broadcaster from the {@link BroadcasterRegistry}, rather than having Atmosphere look it up
+   * by the path parameter, so that it is created and reaped by the registry.
+   */
+  protected EventBroadcaster getBroadcaster() {
+    return BroadcasterRegistry.getInstance().getBroadcaster(channelName);
+  }
+
+  protected boolean isDurableAckRequested() {
+    return Constants.PUBLISH_ACK_DURABLE.equalsIgnoreCase(StringUtils.trim(publishAck));
+  }
+
+  /**
+   * Wait for the events of the ticket to be persisted.
+   * @return Response for the persisted events, with the location of the event if only one was published else that of
+   *         the channel's events, or null if they are not persisted within the timeout
+   */
+  protected Response awaitDurability(PublishTicket ticket) {
+    try {
+      if (!ticket.await(PublishSettings.getDurableAckTimeoutInSec(), TimeUnit.SECONDS)) {
+        return null;
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    if (ticket.getError() != null) {
+      return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(ticket.getError().getMessage()).build();
+    }
+    final List<Event> createdEvents = ticket.getCreatedEvents();
+    if (createdEvents.size() == 1) {
+      return Response.created(getAbsoluteURIBuilder().path(EventResource.class).build(createdEvents.get(0).
+          getPlaceholderId())).build();
+    }
+    return Response.created(getAbsoluteURIBuilder().path(ChannelEventsResource.class).build(channelName)).build();
+  }
+
+  protected Response getQueueFullResponse() {
+    return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", String.valueOf(PublishSettings.
+        getRetryAfterInSec())).build();
   }
 
   @Override
@@ -130,4 +246,16 @@ public class ChannelHubResource extends AbstractChannelResource {
   protected String getAuthToken() {
     return authToken;
   }
+
+  protected static boolean isBlank(byte[] message) {
+    if (message == null) {
+      return true;
+    }
+    for (byte b : message) {
+      if (!Character.isWhitespace(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,106 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring of channel names over the nodes of the hub, identified by their URLs. Each node is placed on
+ * the ring at a number of points, so that channels are spread evenly and a node joining or leaving only moves the
+ * channels it takes over or gives up, about one in as many as there are nodes, rather than reshuffling all of them.
+ * A ring is immutable; a new one is built for a change of membership.
+ * @author imyousuf
+ */
+public class ChannelOwnershipRing {
+
+  public static final int DEFAULT_POINTS_PER_NODE = 128;
+  private static final String DIGEST_ALGORITHM = "MD5";
+  private static final String CHARSET = "UTF-8";
+  private final SortedMap<Long, String> points = new TreeMap<Long, String>();
+  private final Set<String> nodes;
+
+  public ChannelOwnershipRing(Collection<String> nodes) {
+    this(nodes, DEFAULT_POINTS_PER_NODE);
+  }
+
+  public ChannelOwnershipRing(Collection<String> nodes, int pointsPerNode) {
+    this.nodes = Collections.unmodifiableSet(new TreeSet<String>(nodes));
+    final int nodePoints = pointsPerNode > 0 ? pointsPerNode : DEFAULT_POINTS_PER_NODE;
+    //Nodes are placed in sorted order so that colliding points resolve the same on every node
+    for (String node : this.nodes) {
+      for (int i = 0; i < nodePoints; ++i) {
+        final Long point = hash(new StringBuilder(node).append('#').append(i).toString());
+        if (!points.containsKey(point)) {
+          points.put(point, node);
+        }
+      }
+    }
+  }
+
+  public Set<String> getNodes() {
+    return nodes;
+  }
+
+  public boolean isEmpty() {
+    return points.isEmpty();
+  }
+
+  /**
+   * Get the node owning a channel, the first one at or after the channel's point on the ring.
+   * @return The node's URL or null if the ring has no nodes
+   */
+  public String getOwner(String channelName) {
+    if (points.isEmpty() || channelName == null) {
+      return null;
+    }
+    final SortedMap<Long, String> tail = points.tailMap(hash(channelName.toLowerCase()));
+    return tail.isEmpty() ? points.get(points.firstKey()) : tail.get(tail.firstKey());
+  }
+
+  protected static long hash(String key) {
+    try {
+      final byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(key.getBytes(CHARSET));
+      long hash = 0;
+      for (int i = 0; i < 8; ++i) {
+        hash = (hash << 8) | (digest[i] & 0xff);
+      }
+      return hash;
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("ChannelOwnershipRing");
+    builder.append(nodes);
+    return builder.toString();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Knows which node of the hub owns each channel, by a {@link ChannelOwnershipRing} of the URLs of the nodes, so that
+ * clients can be pointed at the owner of a channel and a channel's publishers and subscribers end up on the same node.
+ * The URLs of the other nodes are learnt through the {@link EventBus}, and the ring is rebuilt as they join and leave;
+ * being a consistent hash only the channels of the nodes joining or leaving change owner, and connections already on
+ * a node that no longer owns their channel are left as they are, to move on their next reconnect.
+ * <p>
+ * A node with no URL of its own configured takes no part; every channel is then local to it.
+ * @author imyousuf
+ */
+public class ChannelRouter {
+
+  private static volatile ChannelRouter instance = new ChannelRouter(null, Mode.HINT);
+  private final String localNodeUrl;
+  private final Mode mode;
+  private volatile ChannelOwnershipRing ring;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * How clients connecting to a node other than the owner of the channel are pointed at the owner.
+   */
+  public static enum Mode {
+
+    /**
+     * Serve the request and name the owner in the <tt>X-Hub-Owner</tt> response header.
+     */
+    HINT,
+    /**
+     * Redirect the request to the owner with <tt>307 Temporary Redirect</tt>, keeping the method and entity. A
+     * request is redirected at most once and served by the node it is redirected to, even if that node deems another
+     * one the owner.
+     */
+    REDIRECT;
+
+    /**
+     * Parse a mode by its name, case insensitively.
+     * @return The mode or null if there is none by the name
+     */
+    public static Mode parse(String name) {
+      if (StringUtils.isBlank(name)) {
+        return null;
+      }
+      try {
+        return valueOf(name.trim().toUpperCase());
+      }
+      catch (IllegalArgumentException ex) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * @param localNodeUrl Base URL clients reach this node's resources at, null if the node takes no part in routing
+   * @param mode How to point clients at the owner, hinting if null
+   */
+  public ChannelRouter(String localNodeUrl, Mode mode) {
+    this.localNodeUrl = StringUtils.isBlank(localNodeUrl) ? null : StringUtils.removeEnd(localNodeUrl.trim(), "/");
+    this.mode = mode == null ? Mode.HINT : mode;
+    this.ring = new ChannelOwnershipRing(this.localNodeUrl == null ? Collections.<String>emptySet() : Collections.
+        singleton(this.localNodeUrl));
+  }
+
+  public static ChannelRouter getInstance() {
+    return instance;
+  }
+
+  public static void setInstance(ChannelRouter router) {
+    if (router != null) {
+      instance = router;
+    }
+  }
+
+  public String getLocalNodeUrl() {
+    return localNodeUrl;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Rebuild the ring for the URLs of the other nodes currently in the cluster.
+   */
+  public void setRemoteNodes(Collection<String> nodeUrls) {
+    if (localNodeUrl == null) {
+      return;
+    }
+    final Set<String> nodes = new HashSet<String>();
+    for (String nodeUrl : nodeUrls) {
+      if (StringUtils.isNotBlank(nodeUrl)) {
+        nodes.add(StringUtils.removeEnd(nodeUrl.trim(), "/"));
+      }
+    }
+    nodes.add(localNodeUrl);
+    if (nodes.equals(ring.getNodes())) {
+      return;
+    }
+    ring = new ChannelOwnershipRing(nodes);
+    if (logger.isInfoEnabled()) {
+      logger.info("Channel ownership rebalanced over " + nodes);
+    }
+  }
+
+  public ChannelOwnershipRing getRing() {
+    return ring;
+  }
+
+  /**
+   * Get the URL of the node owning a channel.
+   * @return The URL or null if this node takes no part in routing
+   */
+  public String getOwner(String channelName) {
+    return ring.getOwner(channelName);
+  }
+
+  /**
+   * Get the URL of the node owning a channel if it is another node.
+   * @return The URL or null if this node owns the channel or takes no part in routing
+   */
+  public String getRemoteOwner(String channelName) {
+    final String owner = getOwner(channelName);
+    return owner == null || owner.equals(localNodeUrl) ? null : owner;
+  }
+}
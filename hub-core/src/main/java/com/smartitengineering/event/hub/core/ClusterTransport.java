@@ -0,0 +1,60 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Carries the messages of the {@link EventBus} between the nodes of the hub's cluster.
+ * @author imyousuf
+ */
+public interface ClusterTransport {
+
+  /**
+   * Join the cluster, delivering the messages received and the membership changes to the receiver.
+   */
+  public void start(Receiver receiver) throws Exception;
+
+  public void stop();
+
+  /**
+   * Get the ID of this node, null if not started.
+   */
+  public String getLocalNode();
+
+  /**
+   * Send a message to one node of the cluster.
+   */
+  public void send(String node, Serializable message) throws Exception;
+
+  /**
+   * Send a message to all the other nodes of the cluster.
+   */
+  public void sendToAll(Serializable message) throws Exception;
+
+  public interface Receiver {
+
+    public void received(String node, Serializable message);
+
+    /**
+     * Called with the IDs of all the nodes of the cluster, this node included, whenever a node joins or leaves.
+     */
+    public void membershipChanged(Set<String> nodes);
+  }
+}
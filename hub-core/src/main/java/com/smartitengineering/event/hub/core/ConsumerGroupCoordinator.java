@@ -0,0 +1,411 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates the consumers of named consumer groups of channels. Each group reads its channel's events from the
+ * storer a chunk at a time, after its committed offset, and hands them out to its consumers as leases, so that
+ * however many consumers a group has the events are read once and each is handed to one consumer at a time. A
+ * consumer commits the leases it is done with, in batches if it wishes, and the group's offset is moved past every
+ * event committed without a gap before it and persisted. A group that has not committed any offset starts from the
+ * oldest event of the channel.
+ * <p>
+ * Storers allocating placeholder IDs in blocks may make an event visible before events ordered ahead of it, so a
+ * group moving its read position past the former would never read the latter. Hence a group only reads up to the
+ * events {@link ChannelActivityNotifier#settle(java.lang.String, java.util.Collection) settled} by the
+ * {@link ChannelActivityNotifier}, i.e. those no event ordered ahead of can become visible any more, and leaves the
+ * rest to be read once they settle.
+ * <p>
+ * A fetch finding no events may wait for events of the channel to become readable, being woken up by the
+ * {@link ChannelActivityNotifier} once the events published are settled; fetches made over HTTP do not wait here but
+ * are suspended by the {@link ConsumerGroupFetchBroadcaster} and tried again without waiting. Leases are held in
+ * memory by the node they were handed out from, hence the consumers of a group are expected to fetch and commit
+ * through the same node; events of leases lost, e.g. on restart, are handed out again from the committed offset. A
+ * group with no leases out nor commits held back by a gap is dropped once unused for a while, and loaded again from
+ * its committed offset when next used.
+ * @author imyousuf
+ */
+public class ConsumerGroupCoordinator implements ChannelActivityNotifier.Listener {
+
+  private static volatile ConsumerGroupCoordinator instance = new ConsumerGroupCoordinator();
+  private final ConcurrentMap<String, ConcurrentMap<String, ConsumerGroup>> groupsByChannel =
+      new ConcurrentHashMap<String, ConcurrentMap<String, ConsumerGroup>>();
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public static ConsumerGroupCoordinator getInstance() {
+    return instance;
+  }
+
+  public static void setInstance(ConsumerGroupCoordinator coordinator) {
+    if (coordinator != null) {
+      instance = coordinator;
+    }
+  }
+
+  /**
+   * Hand out events of a consumer group after its committed offset that are not leased to another consumer.
+   * @param channelName Name of the channel
+   * @param groupName Name of the consumer group
+   * @param count Maximum number of events to hand out
+   * @param waitInMillis Longest to wait for events if there are none to hand out right away
+   * @return The lease of the events, oldest first, or null if there were none to hand out
+   * @throws InterruptedException If interrupted while waiting for events
+   */
+  public ConsumerLease fetch(String channelName, String groupName, int count, long waitInMillis)
+      throws InterruptedException {
+    if (waitInMillis <= 0) {
+      return getGroup(channelName, groupName).fetch(count, waitInMillis);
+    }
+    //Have the events published on the other nodes forwarded to this one while waiting, and be woken once they settle
+    final EventBus bus = EventBus.getInstance();
+    bus.addInterest(channelName);
+    ChannelActivityNotifier.getInstance().addListener(channelName, this);
+    try {
+      return getGroup(channelName, groupName).fetch(count, waitInMillis);
+    }
+    finally {
+      bus.removeInterest(channelName);
+    }
+  }
+
+  /**
+   * Commit the leases of a consumer group its consumers are done with, in one batch.
+   * @param channelName Name of the channel
+   * @param groupName Name of the consumer group
+   * @param leaseIds IDs of the leases to commit
+   * @return IDs of the leases that could not be committed since they are unknown or have expired
+   */
+  public List<String> commit(String channelName, String groupName, Collection<String> leaseIds) {
+    return getGroup(channelName, groupName).commit(leaseIds);
+  }
+
+  /**
+   * Get how long till the next lease of a consumer group expires, its events then being handed out again.
+   * @param defaultMillis Time to return if the group has no leases out, or none expiring earlier
+   */
+  public long getMillisToNextExpiry(String channelName, String groupName, long defaultMillis) {
+    return getGroup(channelName, groupName).getMillisToNextLeaseExpiry(defaultMillis);
+  }
+
+  /**
+   * Get the placeholder ID of the last event committed by a consumer group.
+   * @return The placeholder ID or null if the group has not committed any
+   */
+  public String getCommittedOffset(String channelName, String groupName) {
+    return getGroup(channelName, groupName).getCommittedOffset();
+  }
+
+  @Override
+  public void channelActive(String channelName) {
+    eventsPublished(channelName);
+  }
+
+  /**
+   * Wake up the fetches of the consumer groups of a channel waiting for events.
+   */
+  public void eventsPublished(String channelName) {
+    final Map<String, ConsumerGroup> groups = groupsByChannel.get(channelName.toLowerCase());
+    if (groups == null) {
+      return;
+    }
+    for (ConsumerGroup group : groups.values()) {
+      group.wakeUp();
+    }
+  }
+
+  /**
+   * Drop the consumer groups unused since the given time that have no leases out, nor commits held back by a gap, so
+   * that dropping them loses nothing the storer does not have.
+   * @return Number of groups dropped
+   */
+  public int reap(long idleSince) {
+    int reaped = 0;
+    synchronized (this) {
+      for (Iterator<ConcurrentMap<String, ConsumerGroup>> channels = groupsByChannel.values().iterator(); channels.
+          hasNext();) {
+        final ConcurrentMap<String, ConsumerGroup> groups = channels.next();
+        for (Iterator<ConsumerGroup> iterator = groups.values().iterator(); iterator.hasNext();) {
+          if (iterator.next().isIdleSince(idleSince)) {
+            iterator.remove();
+            ++reaped;
+          }
+        }
+        if (groups.isEmpty()) {
+          channels.remove();
+        }
+      }
+    }
+    if (logger.isDebugEnabled() && reaped > 0) {
+      logger.debug("Reaped " + reaped + " idle consumer groups");
+    }
+    return reaped;
+  }
+
+  public int getGroupCount() {
+    int count = 0;
+    for (Map<String, ConsumerGroup> groups : groupsByChannel.values()) {
+      count += groups.size();
+    }
+    return count;
+  }
+
+  /**
+   * Retrieve a group, creating it if absent, and mark it as used under the same lock the reaper checks it under.
+   */
+  protected synchronized ConsumerGroup getGroup(String channelName, String groupName) {
+    final String channelKey = channelName.toLowerCase();
+    ConcurrentMap<String, ConsumerGroup> groups = groupsByChannel.get(channelKey);
+    if (groups == null) {
+      groups = new ConcurrentHashMap<String, ConsumerGroup>();
+      groupsByChannel.put(channelKey, groups);
+    }
+    ConsumerGroup group = groups.get(groupName);
+    if (group == null) {
+      group = newGroup(channelName, groupName);
+      groups.put(groupName, group);
+    }
+    group.touch();
+    return group;
+  }
+
+  protected ConsumerGroup newGroup(String channelName, String groupName) {
+    return new ConsumerGroup(channelName, groupName);
+  }
+
+  /**
+   * State of a consumer group on this node. It is locked on itself.
+   */
+  protected static class ConsumerGroup {
+
+    private final String channelName;
+    private final String groupName;
+    private final LinkedList<Event> ready = new LinkedList<Event>();
+    /*
+     * Events read and not yet committed past, in the order they were read, with whether each has been committed
+     */
+    private final LinkedHashMap<String, Boolean> uncommitted = new LinkedHashMap<String, Boolean>();
+    private final Map<String, ConsumerLease> leases = new HashMap<String, ConsumerLease>();
+    private boolean loaded = false;
+    private String committedOffset;
+    private String readPosition;
+    private volatile long lastUsedTime = System.currentTimeMillis();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    protected ConsumerGroup(String channelName, String groupName) {
+      this.channelName = channelName;
+      this.groupName = groupName;
+    }
+
+    public synchronized String getCommittedOffset() {
+      load();
+      return committedOffset;
+    }
+
+    public synchronized ConsumerLease fetch(int count, long waitInMillis)
+        throws InterruptedException {
+      load();
+      final int leaseCount = count > 0 ? count : ConsumerGroupSettings.DEFAULT_FETCH_COUNT;
+      final long deadline = System.currentTimeMillis() + Math.max(0, waitInMillis);
+      while (true) {
+        expireLeases();
+        if (ready.isEmpty()) {
+          readAhead(leaseCount);
+        }
+        final long remaining = deadline - System.currentTimeMillis();
+        if (!ready.isEmpty() || remaining <= 0) {
+          break;
+        }
+        //Wake up by the time the next lease expires too, as its events may then be handed out
+        wait(Math.min(remaining, getMillisToNextExpiry(remaining)));
+      }
+      if (ready.isEmpty()) {
+        return null;
+      }
+      final List<Event> events = new ArrayList<Event>(Math.min(leaseCount, ready.size()));
+      while (events.size() < leaseCount && !ready.isEmpty()) {
+        events.add(ready.removeFirst());
+      }
+      final ConsumerLease lease = new ConsumerLease(UUID.randomUUID().toString(), events, System.currentTimeMillis()
+          + ConsumerGroupSettings.getLeaseTimeoutInSec() * 1000);
+      leases.put(lease.getId(), lease);
+      return lease;
+    }
+
+    public synchronized List<String> commit(Collection<String> leaseIds) {
+      load();
+      expireLeases();
+      final List<String> rejected = new ArrayList<String>();
+      for (String leaseId : leaseIds) {
+        final ConsumerLease lease = leases.remove(leaseId);
+        if (lease == null) {
+          rejected.add(leaseId);
+          continue;
+        }
+        for (Event event : lease.getEvents()) {
+          if (uncommitted.containsKey(event.getPlaceholderId())) {
+            uncommitted.put(event.getPlaceholderId(), Boolean.TRUE);
+          }
+        }
+      }
+      String newOffset = null;
+      int committedCount = 0;
+      for (Map.Entry<String, Boolean> entry : uncommitted.entrySet()) {
+        if (!entry.getValue().booleanValue()) {
+          break;
+        }
+        newOffset = entry.getKey();
+        ++committedCount;
+      }
+      if (newOffset != null) {
+        //Persist first so that the offset in memory never runs ahead of the one in the storer
+        getStorer().commitConsumerOffsets(Collections.singletonList(new ConsumerOffset(channelName, groupName, newOffset)));
+        final Iterator<String> committedIds = uncommitted.keySet().iterator();
+        for (int i = 0; i < committedCount; ++i) {
+          committedIds.next();
+          committedIds.remove();
+        }
+        committedOffset = newOffset;
+      }
+      return rejected;
+    }
+
+    public synchronized void wakeUp() {
+      notifyAll();
+    }
+
+    public void touch() {
+      lastUsedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Check whether the group has not been used since the given time and has nothing in memory the storer does not
+     * have, i.e. no leases out and no commit held back by a gap.
+     */
+    public synchronized boolean isIdleSince(long timeInMillis) {
+      if (lastUsedTime >= timeInMillis) {
+        return false;
+      }
+      expireLeases();
+      return leases.isEmpty() && !uncommitted.containsValue(Boolean.TRUE);
+    }
+
+    public synchronized long getMillisToNextLeaseExpiry(long defaultMillis) {
+      return getMillisToNextExpiry(defaultMillis);
+    }
+
+    protected void load() {
+      if (loaded) {
+        return;
+      }
+      final ConsumerOffset offset = getStorer().getConsumerOffset(channelName, groupName);
+      committedOffset = offset == null ? null : offset.getPlaceholderId();
+      readPosition = committedOffset;
+      loaded = true;
+    }
+
+    /**
+     * Hand out the events of expired leases again, ahead of the ones yet to be handed out.
+     */
+    protected void expireLeases() {
+      if (leases.isEmpty()) {
+        return;
+      }
+      final long now = System.currentTimeMillis();
+      final List<Event> expired = new ArrayList<Event>();
+      for (Iterator<ConsumerLease> iterator = leases.values().iterator(); iterator.hasNext();) {
+        final ConsumerLease lease = iterator.next();
+        if (lease.isExpired(now)) {
+          iterator.remove();
+          expired.addAll(lease.getEvents());
+        }
+      }
+      if (!expired.isEmpty()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Handing out " + expired.size() + " events of expired leases of " + channelName + "/"
+              + groupName + " again");
+        }
+        ready.addAll(0, expired);
+      }
+    }
+
+    protected long getMillisToNextExpiry(long defaultMillis) {
+      long next = defaultMillis;
+      final long now = System.currentTimeMillis();
+      for (ConsumerLease lease : leases.values()) {
+        next = Math.min(next, Math.max(1, lease.getExpiryTime() - now));
+      }
+      return next;
+    }
+
+    /**
+     * Read the events after the read position, stopping at the first one not settled yet so that the read position
+     * never moves past an event that may still become visible.
+     */
+    protected void readAhead(int count) {
+      final int readCount = Math.max(count, ConsumerGroupSettings.getReadAhead());
+      final List<Event> read = new ArrayList<Event>();
+      final CloseableIterator<Event> events = getStorer().streamEvents(readPosition, channelName,
+                                                                       HubPersistentStorer.Direction.AFTER);
+      try {
+        for (int i = 0; i < readCount && events.hasNext(); ++i) {
+          read.add(events.next());
+        }
+      }
+      finally {
+        events.close();
+      }
+      final Iterator<Event> settled = ChannelActivityNotifier.getInstance().settle(channelName, read).iterator();
+      for (Event event : read) {
+        if (!settled.hasNext() || settled.next() != event) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Holding back events of " + channelName + "/" + groupName + " from " + event.
+                getPlaceholderId() + " till they settle");
+          }
+          break;
+        }
+        ready.add(event);
+        uncommitted.put(event.getPlaceholderId(), Boolean.FALSE);
+        readPosition = event.getPlaceholderId();
+      }
+    }
+
+    protected HubPersistentStorer getStorer() {
+      return HubPersistentStorerSPI.getInstance().getStorer();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.common.Constants;
+import com.smartitengineering.event.hub.common.EventListJsonProvider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * A fetch of the next events of a consumer group, suspended by its channel's {@link ConsumerGroupFetchBroadcaster}
+ * till the group has events to hand out or the fetch's wait is over.
+ * @author imyousuf
+ */
+public class ConsumerGroupFetch {
+
+  private final String channelName;
+  private final String groupName;
+  private final int count;
+  private final long deadline;
+  private volatile Future<?> retry;
+
+  /**
+   * @param channelName Name of the channel
+   * @param groupName Name of the consumer group
+   * @param count Most events to hand out
+   * @param waitInMillis Longest to wait for events
+   */
+  public ConsumerGroupFetch(String channelName, String groupName, int count, long waitInMillis) {
+    this.channelName = channelName;
+    this.groupName = groupName;
+    this.count = count;
+    this.deadline = System.currentTimeMillis() + Math.max(0, waitInMillis);
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Get how much longer the fetch is to wait for events.
+   */
+  public long getMillisToDeadline() {
+    return deadline - System.currentTimeMillis();
+  }
+
+  public void setRetry(Future<?> retry) {
+    this.retry = retry;
+  }
+
+  public void cancelRetry() {
+    final Future<?> future = retry;
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Write the lease handed out, as a JSON array of its events with its ID in the
+   * {@link Constants#CONSUMER_LEASE_HEADER_NAME} header, or <tt>204 No Content</tt> if there was none.
+   * @param lease Lease handed out or null
+   * @param response The suspended response, not committed yet
+   */
+  public void write(ConsumerLease lease, HttpServletResponse response)
+      throws IOException {
+    if (lease == null) {
+      response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+      return;
+    }
+    response.setHeader(Constants.CONSUMER_LEASE_HEADER_NAME, lease.getId());
+    response.setContentType(MediaType.APPLICATION_JSON);
+    final OutputStream outputStream = response.getOutputStream();
+    new EventListJsonProvider().writeTo(lease.getEvents(), List.class, null, null, MediaType.APPLICATION_JSON_TYPE,
+                                        null, outputStream);
+    outputStream.flush();
+  }
+}
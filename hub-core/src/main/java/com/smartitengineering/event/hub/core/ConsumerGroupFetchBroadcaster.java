@@ -0,0 +1,264 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcaster of the fetches of the consumer groups of a channel that are to wait for events. A fetch is suspended
+ * rather than holding a thread while it waits, and is tried again on the broadcaster's dispatcher whenever the
+ * {@link ChannelActivityNotifier} reports events of the channel readable, and when the next lease of its group
+ * expires, till it is handed a lease or its wait is over. The tries of all the fetches of a channel run one after
+ * another, so a fetch is never handed more than one lease.
+ * <p>
+ * It is kept by the {@link BroadcasterRegistry} by the channel's name suffixed with {@link #ID_SUFFIX} and reaped as
+ * the other broadcasters are.
+ * @author imyousuf
+ */
+public class ConsumerGroupFetchBroadcaster
+    extends EventBroadcaster
+    implements ChannelActivityNotifier.Listener {
+
+  public static final String ID_SUFFIX = "/consumer-group-fetch";
+  public static final String FETCH_ATTRIBUTE = ConsumerGroupFetch.class.getName();
+  private final ConcurrentMap<AtmosphereResource, ConsumerGroupFetch> fetches =
+                                                 new ConcurrentHashMap<AtmosphereResource, ConsumerGroupFetch>();
+  private final AtomicBoolean listening = new AtomicBoolean(false);
+  private final AtomicBoolean retryQueued = new AtomicBoolean(false);
+  private volatile ScheduledExecutorService scheduler;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public ConsumerGroupFetchBroadcaster() {
+    super();
+  }
+
+  public ConsumerGroupFetchBroadcaster(String id) {
+    super(id);
+  }
+
+  /**
+   * Retrieve the consumer group fetch broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create and register the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public static ConsumerGroupFetchBroadcaster getBroadcaster(String channelName, boolean createIfAbsent) {
+    return BroadcasterRegistry.getInstance().getConsumerGroupFetchBroadcaster(channelName, createIfAbsent);
+  }
+
+  @Override
+  public String getChannelName() {
+    final String id = getID();
+    return id.endsWith(ID_SUFFIX) ? id.substring(0, id.length() - ID_SUFFIX.length()) : id;
+  }
+
+  /**
+   * Fetches are only written their leases, so the filter need not report text broadcast to the broadcaster as
+   * activity of the channel.
+   */
+  @Override
+  protected ChannelEventFilter createChannelEventFilter() {
+    return new ChannelEventFilter(true);
+  }
+
+  /**
+   * Set the executor the fetches' retries are timed with. Without one a fetch is answered after its first try.
+   */
+  public void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Get the number of fetches waiting for events.
+   */
+  public int getFetchCount() {
+    return fetches.size();
+  }
+
+  @Override
+  public AtmosphereResource addAtmosphereResource(final AtmosphereResource r) {
+    final AtmosphereResource added = super.addAtmosphereResource(r);
+    final ConsumerGroupFetch fetch = getFetch(r);
+    if (fetch == null) {
+      return added;
+    }
+    //Listen before the first try so that no event becoming readable meanwhile is missed
+    listen();
+    fetches.put(r, fetch);
+    getDispatcher().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        tryFetch(r, fetch);
+      }
+    });
+    return added;
+  }
+
+  @Override
+  public AtmosphereResource removeAtmosphereResource(AtmosphereResource r) {
+    final ConsumerGroupFetch fetch = fetches.remove(r);
+    if (fetch != null) {
+      fetch.cancelRetry();
+    }
+    return super.removeAtmosphereResource(r);
+  }
+
+  @Override
+  public void channelActive(String channelName) {
+    if (fetches.isEmpty() || retryQueued.getAndSet(true)) {
+      return;
+    }
+    getDispatcher().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        retryQueued.set(false);
+        for (Map.Entry<AtmosphereResource, ConsumerGroupFetch> entry : new HashMap<AtmosphereResource,
+            ConsumerGroupFetch>(fetches).entrySet()) {
+          tryFetch(entry.getKey(), entry.getValue());
+        }
+      }
+    });
+  }
+
+  @Override
+  public void destroy() {
+    if (listening.compareAndSet(true, false)) {
+      ChannelActivityNotifier.getInstance().removeListener(getChannelName(), this);
+    }
+    super.destroy();
+  }
+
+  /**
+   * Try handing the fetch a lease without waiting, answering it if there is one or its wait is over, else retrying
+   * it once the next lease of its group expires. Run on the dispatcher only.
+   */
+  protected void tryFetch(AtmosphereResource r, ConsumerGroupFetch fetch) {
+    if (fetches.get(r) != fetch) {
+      return;
+    }
+    final ConsumerGroupCoordinator coordinator = ConsumerGroupCoordinator.getInstance();
+    ConsumerLease lease = null;
+    try {
+      lease = coordinator.fetch(fetch.getChannelName(), fetch.getGroupName(), fetch.getCount(), 0);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    catch (RuntimeException ex) {
+      logger.warn("Could not fetch events of " + fetch.getChannelName() + "/" + fetch.getGroupName(), ex);
+    }
+    final long remaining = fetch.getMillisToDeadline();
+    if (lease == null && remaining > 0) {
+      scheduleRetry(r, fetch, coordinator.getMillisToNextExpiry(fetch.getChannelName(), fetch.getGroupName(),
+                                                                remaining));
+      return;
+    }
+    if (fetches.remove(r, fetch)) {
+      answer(r, fetch, lease);
+    }
+  }
+
+  protected void scheduleRetry(final AtmosphereResource r, final ConsumerGroupFetch fetch, long delayInMillis) {
+    fetch.cancelRetry();
+    final Runnable retry = new Runnable() {
+
+      @Override
+      public void run() {
+        getDispatcher().execute(new Runnable() {
+
+          @Override
+          public void run() {
+            tryFetch(r, fetch);
+          }
+        });
+      }
+    };
+    final ScheduledExecutorService executor = scheduler;
+    if (executor != null) {
+      try {
+        fetch.setRetry(executor.schedule(retry, delayInMillis, TimeUnit.MILLISECONDS));
+        return;
+      }
+      catch (RejectedExecutionException ex) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Could not time fetch of " + getChannelName() + ", answering it right away", ex);
+        }
+      }
+    }
+    if (fetches.remove(r, fetch)) {
+      answer(r, fetch, null);
+    }
+  }
+
+  /**
+   * Write the answer of a fetch with the writer and resume it.
+   */
+  protected void answer(final AtmosphereResource r, final ConsumerGroupFetch fetch, final ConsumerLease lease) {
+    fetch.cancelRetry();
+    getWriter().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          fetch.write(lease, (HttpServletResponse) r.getResponse());
+        }
+        catch (IOException ex) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Could not answer fetch of " + getChannelName(), ex);
+          }
+        }
+        catch (RuntimeException ex) {
+          logger.warn("Could not answer fetch of " + getChannelName(), ex);
+        }
+        finally {
+          disconnect(r);
+        }
+      }
+    });
+  }
+
+  protected void listen() {
+    if (listening.compareAndSet(false, true)) {
+      ChannelActivityNotifier.getInstance().addListener(getChannelName(), this);
+    }
+  }
+
+  protected static ConsumerGroupFetch getFetch(AtmosphereResource r) {
+    final Object request = r.getRequest();
+    if (!(request instanceof HttpServletRequest)) {
+      return null;
+    }
+    final Object fetch = ((HttpServletRequest) request).getAttribute(FETCH_ATTRIBUTE);
+    return fetch instanceof ConsumerGroupFetch ? (ConsumerGroupFetch) fetch : null;
+  }
+}
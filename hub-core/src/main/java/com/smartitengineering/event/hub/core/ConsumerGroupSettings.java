@@ -0,0 +1,72 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Settings of consumer groups, configured from the web application's context parameters by
+ * {@link EventHubContextListener}.
+ * @author imyousuf
+ */
+public final class ConsumerGroupSettings {
+
+  public static final long DEFAULT_LEASE_TIMEOUT_IN_SEC = 30;
+  public static final long DEFAULT_MAX_WAIT_IN_SEC = 30;
+  public static final int DEFAULT_READ_AHEAD = 100;
+  public static final int DEFAULT_FETCH_COUNT = 10;
+  private static volatile long leaseTimeoutInSec = DEFAULT_LEASE_TIMEOUT_IN_SEC;
+  private static volatile long maxWaitInSec = DEFAULT_MAX_WAIT_IN_SEC;
+  private static volatile int readAhead = DEFAULT_READ_AHEAD;
+
+  private ConsumerGroupSettings() {
+  }
+
+  /**
+   * Get the time a consumer has to commit the events it fetched, after which they are handed to another consumer of
+   * the group.
+   */
+  public static long getLeaseTimeoutInSec() {
+    return leaseTimeoutInSec;
+  }
+
+  public static void setLeaseTimeoutInSec(long leaseTimeoutInSec) {
+    ConsumerGroupSettings.leaseTimeoutInSec = leaseTimeoutInSec > 0 ? leaseTimeoutInSec : DEFAULT_LEASE_TIMEOUT_IN_SEC;
+  }
+
+  /**
+   * Get the longest a fetch may wait for events to be published when the group has none to hand out.
+   */
+  public static long getMaxWaitInSec() {
+    return maxWaitInSec;
+  }
+
+  public static void setMaxWaitInSec(long maxWaitInSec) {
+    ConsumerGroupSettings.maxWaitInSec = maxWaitInSec > -1 ? maxWaitInSec : DEFAULT_MAX_WAIT_IN_SEC;
+  }
+
+  /**
+   * Get the minimum number of events read from the storer at a time for a group, which are then handed out to its
+   * consumers from memory.
+   */
+  public static int getReadAhead() {
+    return readAhead;
+  }
+
+  public static void setReadAhead(int readAhead) {
+    ConsumerGroupSettings.readAhead = readAhead > 0 ? readAhead : DEFAULT_READ_AHEAD;
+  }
+}
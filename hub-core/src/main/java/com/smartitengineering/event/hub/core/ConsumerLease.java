@@ -0,0 +1,60 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Events of a consumer group handed out to one of its consumers, which are to be committed using the lease's ID
+ * before it expires. Events of an expired lease are handed out again.
+ * @author imyousuf
+ */
+public class ConsumerLease {
+
+  private final String id;
+  private final List<Event> events;
+  private final long expiryTime;
+
+  public ConsumerLease(String id, List<Event> events, long expiryTime) {
+    this.id = id;
+    this.events = Collections.unmodifiableList(new ArrayList<Event>(events));
+    this.expiryTime = expiryTime;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Get the leased events, oldest first.
+   */
+  public List<Event> getEvents() {
+    return events;
+  }
+
+  public long getExpiryTime() {
+    return expiryTime;
+  }
+
+  public boolean isExpired(long now) {
+    return now >= expiryTime;
+  }
+}
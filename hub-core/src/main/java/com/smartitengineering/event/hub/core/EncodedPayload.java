@@ -0,0 +1,92 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Text of a broadcast encoded once, as UTF-8, so that the same bytes are written to every subscriber of the channel
+ * rather than the text being encoded again for each of them. It is immutable; its bytes are never handed out other
+ * than as a read only buffer.
+ * @author imyousuf
+ */
+public final class EncodedPayload implements Serializable {
+
+  public static final String CHARSET = "UTF-8";
+  private static final long serialVersionUID = 1L;
+  private final byte[] bytes;
+
+  private EncodedPayload(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  public static EncodedPayload encode(String text) {
+    try {
+      return new EncodedPayload(text == null ? new byte[0] : text.getBytes(CHARSET));
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  public int getLength() {
+    return bytes.length;
+  }
+
+  public ByteBuffer asReadOnlyBuffer() {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  public void writeTo(OutputStream outputStream) throws IOException {
+    outputStream.write(bytes);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof EncodedPayload)) {
+      return false;
+    }
+    return Arrays.equals(bytes, ((EncodedPayload) obj).bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bytes);
+  }
+
+  /**
+   * Decode the payload back to its text, e.g. for a writer other than the subscriber queue.
+   */
+  @Override
+  public String toString() {
+    try {
+      return new String(bytes, CHARSET);
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
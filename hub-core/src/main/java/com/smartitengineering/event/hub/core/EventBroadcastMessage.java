@@ -0,0 +1,238 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Content;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The message broadcast to the subscribers of a channel for one or more events published to it. It carries what the
+ * channel's filter needs to evaluate each event, and is turned into the text written to subscribers, one line per
+ * event, only once the filter has been applied.
+ * @author imyousuf
+ */
+public class EventBroadcastMessage implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private final String channelName;
+  private final List<Item> items;
+  private final boolean filtered;
+  private transient volatile EncodedPayload encodedPayload;
+  private transient volatile EncodedPayload encodedEventStreamPayload;
+
+  public EventBroadcastMessage(String channelName, List<Item> items) {
+    this(channelName, items, false);
+  }
+
+  protected EventBroadcastMessage(String channelName, List<Item> items, boolean filtered) {
+    this.channelName = channelName;
+    this.items = items == null ? Collections.<Item>emptyList() : Collections.unmodifiableList(new ArrayList<Item>(
+        items));
+    this.filtered = filtered;
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public List<Item> getItems() {
+    return items;
+  }
+
+  /**
+   * Create a message for the same channel with the given items.
+   */
+  public EventBroadcastMessage withItems(List<Item> newItems) {
+    return new EventBroadcastMessage(channelName, newItems, filtered);
+  }
+
+  /**
+   * Create a message for the same channel with the items that passed the channel's filter, so that it is not filtered
+   * again, for example when received from another node of the cluster.
+   */
+  public EventBroadcastMessage withFilteredItems(List<Item> passedItems) {
+    return new EventBroadcastMessage(channelName, passedItems, true);
+  }
+
+  public boolean isFiltered() {
+    return filtered;
+  }
+
+  /**
+   * Get the text to be written to the subscribers, i.e. content of each event followed by a new line to ensure that
+   * the message is flushed to its listeners.
+   */
+  public String getPayload() {
+    StringBuilder payload = new StringBuilder();
+    for (Item item : items) {
+      payload.append(item.getContent()).append('\n');
+    }
+    return payload.toString();
+  }
+
+  /**
+   * Get the text to be written to the subscribers of a <tt>text/event-stream</tt>, i.e. a frame per event with the
+   * placeholder ID of the event as the frame's ID, so that a reconnecting subscriber can resume from the last one it
+   * received.
+   */
+  public String getEventStreamPayload() {
+    StringBuilder payload = new StringBuilder();
+    for (Item item : items) {
+      item.appendEventStreamFrame(payload);
+    }
+    return payload.toString();
+  }
+
+  /**
+   * Get the payload encoded once for all the subscribers of the message.
+   */
+  public EncodedPayload getEncodedPayload() {
+    EncodedPayload encoded = encodedPayload;
+    if (encoded == null) {
+      encoded = EncodedPayload.encode(getPayload());
+      encodedPayload = encoded;
+    }
+    return encoded;
+  }
+
+  /**
+   * Get the <tt>text/event-stream</tt> payload encoded once for all the subscribers the message is written to as is.
+   */
+  public EncodedPayload getEncodedEventStreamPayload() {
+    EncodedPayload encoded = encodedEventStreamPayload;
+    if (encoded == null) {
+      encoded = EncodedPayload.encode(getEventStreamPayload());
+      encodedEventStreamPayload = encoded;
+    }
+    return encoded;
+  }
+
+  @Override
+  public String toString() {
+    return getPayload();
+  }
+
+  public static class Item implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final String DEFAULT_CHARSET = "UTF-8";
+    private static final Pattern EVENT_STREAM_LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+    private final String placeholderId;
+    private final String uuid;
+    private final String contentType;
+    private final byte[] content;
+    private final String charset;
+
+    /**
+     * Create an item for an event's content. The bytes of the content are shared and not copied.
+     */
+    public Item(String placeholderId, String uuid, String contentType, byte[] content, String charset) {
+      this.placeholderId = placeholderId;
+      this.uuid = uuid;
+      this.contentType = contentType;
+      this.content = content == null ? new byte[0] : content;
+      this.charset = charset;
+    }
+
+    public static Item fromEvent(Event event, ByteContent content) {
+      return new Item(event.getPlaceholderId(), event.getUniversallyUniqueID(), content.getContentType(), content.
+          getBytes(), content.getCharset());
+    }
+
+    /**
+     * Create an item for an event read from the storer, sharing the bytes of its content if it has them.
+     */
+    public static Item fromEvent(Event event) {
+      final Content content = event.getEventContent();
+      if (content instanceof ByteContent) {
+        return fromEvent(event, (ByteContent) content);
+      }
+      return fromEvent(event, APIFactory.getContent(content.getContentType(), APIFactory.getContentBytes(content)));
+    }
+
+    public String getPlaceholderId() {
+      return placeholderId;
+    }
+
+    public String getUuid() {
+      return uuid;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    /**
+     * Get the content decoded using its charset, or UTF-8 if it has none or it is not supported.
+     */
+    public String getContent() {
+      if (charset != null) {
+        try {
+          return new String(content, charset);
+        }
+        catch (UnsupportedEncodingException ex) {
+          //Fall back to the default charset
+        }
+      }
+      try {
+        return new String(content, DEFAULT_CHARSET);
+      }
+      catch (UnsupportedEncodingException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    /**
+     * Get the bytes of the content, which must not be modified.
+     */
+    public byte[] getContentBytes() {
+      return content;
+    }
+
+    public String getCharset() {
+      return charset;
+    }
+
+    /**
+     * Append the <tt>text/event-stream</tt> frame of the item, with each line of the content as a data line.
+     */
+    public StringBuilder appendEventStreamFrame(StringBuilder frame) {
+      frame.append("id: ").append(placeholderId).append('\n');
+      for (String line : EVENT_STREAM_LINE_BREAK.split(getContent(), -1)) {
+        frame.append("data: ").append(line).append('\n');
+      }
+      return frame.append('\n');
+    }
+
+    /**
+     * Create an event for the item to be passed to a filter, over the bytes of its content.
+     */
+    public Event toEvent() {
+      return APIFactory.getEventBuilder().placeholder(placeholderId).uuid(uuid).eventContent(APIFactory.getContent(
+          contentType, content, charset)).build();
+    }
+  }
+}
@@ -17,28 +17,256 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package com.smartitengineering.event.hub.core;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.jersey.JerseyBroadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Broadcaster of a channel, which applies the channel's filter to each broadcast using {@link ChannelEventFilter}.
+ * <p>
+ * Broadcasters are created and reaped by the {@link BroadcasterRegistry}, which gives each a dispatcher on a thread
+ * pool shared by all; broadcasts are then pushed to the subscribers by the dispatcher rather than by a thread of the
+ * broadcaster's own waiting for messages. A broadcaster created by Atmosphere itself keeps its own thread.
+ * <p>
+ * A broadcast's {@link EncodedPayload} is queued, as is, to a {@link SubscriberQueue} per subscriber and written
+ * by the registry's writer pool; so the text is encoded once however many subscribers there are, and a subscriber
+ * slow to read neither delays the others nor piles up more than its queue's bounds, past which the channel's
+ * {@link SubscriberQueue.OverflowPolicy} applies.
+ * <p>
+ * Subscribers joining and leaving are registered with the {@link EventBus} as interest in the channel, so that the
+ * events published to the channel on the other nodes are forwarded to this one.
  * @author imyousuf
  */
 public class EventBroadcaster
     extends JerseyBroadcaster {
 
+  private static final Executor SAME_THREAD = new Executor() {
+
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+  private volatile Executor dispatcher;
+  private volatile Executor writer;
+  private final ConcurrentMap<AtmosphereResource, SubscriberQueue> subscriberQueues =
+      new ConcurrentHashMap<AtmosphereResource, SubscriberQueue>();
+  private final ConcurrentMap<AtmosphereResource, Boolean> subscribers =
+      new ConcurrentHashMap<AtmosphereResource, Boolean>();
+  private volatile long lastActiveTime = System.currentTimeMillis();
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
   public EventBroadcaster() {
     super();
+    addChannelEventFilter();
   }
 
   public EventBroadcaster(String channelName) {
-    super();
+    super(channelName);
+    addChannelEventFilter();
+  }
+
+  /**
+   * Add the filter before any other, in particular the cluster filter, so that other nodes receive the broadcast
+   * only if it survives filtering and already in the form to be written.
+   */
+  private void addChannelEventFilter() {
+    getBroadcasterConfig().addFilter(createChannelEventFilter());
+  }
+
+  protected ChannelEventFilter createChannelEventFilter() {
+    return new ChannelEventFilter(false, this);
+  }
+
+  /**
+   * Set the executor to push broadcasts to the subscribers with, which must run them one after another.
+   */
+  public void setDispatcher(Executor dispatcher) {
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * Set the executor to write to the subscribers with, shared by the subscribers.
+   */
+  public void setWriter(Executor writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Get the executor to push broadcasts to the subscribers with, running them on the calling thread if there is none.
+   */
+  protected Executor getDispatcher() {
+    final Executor executor = dispatcher;
+    return executor == null ? SAME_THREAD : executor;
+  }
+
+  /**
+   * Get the executor to write to the subscribers with, writing on the calling thread if there is none.
+   */
+  protected Executor getWriter() {
+    final Executor executor = writer;
+    return executor == null ? SAME_THREAD : executor;
+  }
+
+  /**
+   * Mark the broadcaster as in use by a subscriber, delaying it being reaped. Broadcasting to it does not, so that
+   * the broadcaster of a channel published to without subscribers is still reaped.
+   */
+  public void touch() {
+    lastActiveTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Check whether the broadcaster has had no subscribers, nor been marked as in use, since the given time.
+   */
+  public boolean isIdleSince(long timeInMillis) {
+    return lastActiveTime < timeInMillis && getAtmosphereResources().isEmpty();
+  }
+
+  @Override
+  public AtmosphereResource addAtmosphereResource(AtmosphereResource r) {
+    touch();
+    if (subscribers.putIfAbsent(r, Boolean.TRUE) == null) {
+      EventBus.getInstance().addInterest(getChannelName());
+    }
+    return super.addAtmosphereResource(r);
+  }
+
+  @Override
+  public AtmosphereResource removeAtmosphereResource(AtmosphereResource r) {
+    touch();
+    if (subscribers.remove(r) != null) {
+      EventBus.getInstance().removeInterest(getChannelName());
+    }
+    final SubscriberQueue queue = subscriberQueues.remove(r);
+    if (queue != null) {
+      queue.close();
+    }
+    return super.removeAtmosphereResource(r);
+  }
+
+  /**
+   * Drop a subscriber, e.g. one too slow to read, resuming its response so that it can reconnect.
+   */
+  public void disconnect(AtmosphereResource r) {
+    removeAtmosphereResource(r);
+    try {
+      r.resume();
+    }
+    catch (RuntimeException ex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Could not resume disconnected subscriber of " + getID(), ex);
+      }
+    }
+  }
+
+  public Collection<SubscriberQueue> getSubscriberQueues() {
+    return Collections.unmodifiableCollection(subscriberQueues.values());
+  }
+
+  /**
+   * Get the name of the channel the broadcaster is of, i.e. its ID.
+   */
+  public String getChannelName() {
+    return getID();
+  }
+
+  protected SubscriberQueue getSubscriberQueue(AtmosphereResource r) {
+    SubscriberQueue queue = subscriberQueues.get(r);
+    if (queue == null) {
+      final Executor executor = writer;
+      final SubscriberQueue newQueue = new SubscriberQueue(this, r, executor == null ? SAME_THREAD : executor,
+                                                           FanOutSettings.getSubscriberByteBudget(),
+                                                           FanOutSettings.getSubscriberQueueCapacity(),
+                                                           FanOutSettings.getOverflowPolicy(getChannelName()),
+                                                           BroadcasterRegistry.getInstance().getFanOutStats());
+      queue = subscriberQueues.putIfAbsent(r, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * Without a dispatcher start as Atmosphere does, with a thread waiting for messages to push; else only prepare the
+   * cache the messages are tracked in, the dispatcher pushing them as they are broadcast.
+   */
+  @Override
+  protected void start() {
+    if (dispatcher == null) {
+      super.start();
+      return;
+    }
+    if (!started.getAndSet(true)) {
+      broadcasterCache = bc.getBroadcasterCache();
+      broadcasterCache.start();
+    }
+  }
+
+  @Override
+  public <T> Future<T> broadcast(T msg) {
+    final Future<T> future = super.broadcast(msg);
+    dispatch();
+    return future;
+  }
+
+  @Override
+  public <T> Future<T> broadcast(T msg, AtmosphereResource r) {
+    final Future<T> future = super.broadcast(msg, r);
+    dispatch();
+    return future;
+  }
+
+  @Override
+  public <T> Future<T> broadcast(T msg, Set<AtmosphereResource> subset) {
+    final Future<T> future = super.broadcast(msg, subset);
+    dispatch();
+    return future;
+  }
+
+  /**
+   * Push the queued messages to the subscribers using the dispatcher, if there is one.
+   */
+  protected void dispatch() {
+    final Executor executor = dispatcher;
+    if (executor == null) {
+      return;
+    }
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        Entry entry;
+        while ((entry = messages.poll()) != null) {
+          try {
+            push(entry);
+          }
+          catch (RuntimeException ex) {
+            logger.error("Could not push broadcast of " + getID(), ex);
+          }
+        }
+      }
+    });
   }
 
   @Override
   protected void broadcast(final AtmosphereResource r,
                            final AtmosphereResourceEvent e) {
+    final Object message = e.getMessage();
+    if (message instanceof EncodedPayload) {
+      getSubscriberQueue(r).offer((EncodedPayload) message);
+      return;
+    }
     super.broadcast(r, e);
   }
 }
@@ -0,0 +1,354 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the events published to a channel to the subscribers on this node and forwards them to only those other
+ * nodes of the cluster that have subscribers to the channel, rather than to every node.
+ * <p>
+ * Each node announces to the others the channels it gains its first, or loses its last, subscriber to, and on any
+ * change of membership all nodes send the channels they have subscribers to; from these each node keeps a directory
+ * of the nodes interested in each channel. Besides the subscribers of the broadcasters, requests waiting for a
+ * channel's events, such as consumer group fetches, register their interest for as long as they wait; the broadcaster
+ * of a channel's long polls keeps its interest for as long as it lives.
+ * <p>
+ * Nodes also send each other the URLs clients reach them at as they join, which the {@link ChannelRouter} places the
+ * channels on.
+ * <p>
+ * Without a {@link ClusterTransport} events are only delivered to this node.
+ * @author imyousuf
+ */
+public class EventBus implements ClusterTransport.Receiver {
+
+  private static volatile EventBus instance = new EventBus(null);
+  private final ClusterTransport transport;
+  private final Map<String, Integer> localInterest = new ConcurrentHashMap<String, Integer>();
+  private final ConcurrentMap<String, Set<String>> directory = new ConcurrentHashMap<String, Set<String>>();
+  private volatile Set<String> members = Collections.emptySet();
+  private final ConcurrentMap<String, String> nodeUrls = new ConcurrentHashMap<String, String>();
+  private final AtomicLong forwarded = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong directoryUpdates = new AtomicLong();
+  private final EventBusStats stats = new EventBusStats(this);
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param transport Transport to reach the other nodes with, null to only deliver to this node
+   */
+  public EventBus(ClusterTransport transport) {
+    this.transport = transport;
+  }
+
+  public static EventBus getInstance() {
+    return instance;
+  }
+
+  /**
+   * Replace the bus in use, stopping the previous one.
+   */
+  public static void setInstance(EventBus bus) {
+    if (bus == null) {
+      return;
+    }
+    final EventBus oldBus = instance;
+    instance = bus;
+    if (oldBus != bus) {
+      oldBus.stop();
+    }
+  }
+
+  /**
+   * Join the cluster, if there is a transport.
+   */
+  public void start() throws Exception {
+    if (transport != null) {
+      transport.start(this);
+    }
+  }
+
+  public void stop() {
+    if (transport != null) {
+      transport.stop();
+    }
+    directory.clear();
+  }
+
+  /**
+   * Deliver events persisted for a channel to its subscribers on this node and forward them to the other nodes that
+   * have subscribers to it.
+   */
+  public void publish(EventBroadcastMessage message) {
+    deliverLocally(message);
+    final Set<String> nodes = directory.get(message.getChannelName().toLowerCase());
+    if (transport == null || nodes == null || nodes.isEmpty()) {
+      return;
+    }
+    final String localNode = transport.getLocalNode();
+    final EventBusMessage busMessage = EventBusMessage.events(message);
+    for (String node : nodes) {
+      if (node.equals(localNode)) {
+        continue;
+      }
+      try {
+        transport.send(node, busMessage);
+        forwarded.incrementAndGet();
+      }
+      catch (Exception ex) {
+        logger.warn("Could not forward events of " + message.getChannelName() + " to " + node, ex);
+      }
+    }
+  }
+
+  /**
+   * Register interest in the events of a channel, e.g. of a subscriber joining, so that they are forwarded to this
+   * node. Every call must be matched by a call to {@link #removeInterest(java.lang.String)}.
+   */
+  public void addInterest(String channelName) {
+    final String key = channelName.toLowerCase();
+    final boolean first;
+    synchronized (localInterest) {
+      final Integer count = localInterest.get(key);
+      first = count == null;
+      localInterest.put(key, first ? 1 : count + 1);
+      if (first) {
+        announce(EventBusMessage.Type.SUBSCRIBE, key);
+      }
+    }
+  }
+
+  public void removeInterest(String channelName) {
+    final String key = channelName.toLowerCase();
+    synchronized (localInterest) {
+      final Integer count = localInterest.get(key);
+      if (count == null) {
+        return;
+      }
+      if (count > 1) {
+        localInterest.put(key, count - 1);
+      }
+      else {
+        localInterest.remove(key);
+        announce(EventBusMessage.Type.UNSUBSCRIBE, key);
+        //Events published on the other nodes are no longer forwarded, so the newest one is not known any more
+        ChannelActivityNotifier.getInstance().forgetNewest(key);
+      }
+    }
+  }
+
+  /**
+   * Announce a change of the channels this node has interest in; called holding the lock of the local interest so
+   * that the announcements of a channel are sent in the order of the changes.
+   */
+  protected void announce(EventBusMessage.Type type, String channelName) {
+    if (transport == null) {
+      return;
+    }
+    try {
+      transport.sendToAll(EventBusMessage.subscriptions(type, Collections.singleton(channelName)));
+    }
+    catch (Exception ex) {
+      logger.warn("Could not announce " + type + " of " + channelName, ex);
+    }
+  }
+
+  @Override
+  public void received(String node, Serializable message) {
+    if (!(message instanceof EventBusMessage)) {
+      return;
+    }
+    final EventBusMessage busMessage = (EventBusMessage) message;
+    switch (busMessage.getType()) {
+      case EVENTS:
+        received.incrementAndGet();
+        deliverLocally(busMessage.getEvents());
+        break;
+      case SUBSCRIBE:
+        directoryUpdates.incrementAndGet();
+        for (String channelName : busMessage.getChannelNames()) {
+          getNodes(channelName).add(node);
+        }
+        break;
+      case UNSUBSCRIBE:
+        directoryUpdates.incrementAndGet();
+        for (String channelName : busMessage.getChannelNames()) {
+          getNodes(channelName).remove(node);
+        }
+        break;
+      case NODE:
+        directoryUpdates.incrementAndGet();
+        if (busMessage.getNodeUrl() != null) {
+          nodeUrls.put(node, busMessage.getNodeUrl());
+          ChannelRouter.getInstance().setRemoteNodes(nodeUrls.values());
+        }
+        break;
+      case SNAPSHOT:
+        directoryUpdates.incrementAndGet();
+        for (Map.Entry<String, Set<String>> entry : directory.entrySet()) {
+          if (!busMessage.getChannelNames().contains(entry.getKey())) {
+            entry.getValue().remove(node);
+          }
+        }
+        for (String channelName : busMessage.getChannelNames()) {
+          getNodes(channelName).add(node);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void membershipChanged(Set<String> nodes) {
+    final Set<String> oldMembers = members;
+    members = Collections.unmodifiableSet(new HashSet<String>(nodes));
+    for (Set<String> interestedNodes : directory.values()) {
+      interestedNodes.retainAll(nodes);
+    }
+    nodeUrls.keySet().retainAll(nodes);
+    ChannelRouter.getInstance().setRemoteNodes(nodeUrls.values());
+    boolean joined = false;
+    for (String node : nodes) {
+      if (!oldMembers.contains(node) && !node.equals(transport.getLocalNode())) {
+        joined = true;
+        break;
+      }
+    }
+    if (!joined) {
+      return;
+    }
+    final String localNodeUrl = ChannelRouter.getInstance().getLocalNodeUrl();
+    if (localNodeUrl != null) {
+      try {
+        transport.sendToAll(EventBusMessage.node(localNodeUrl));
+      }
+      catch (Exception ex) {
+        logger.warn("Could not send URL of this node on membership change", ex);
+      }
+    }
+    synchronized (localInterest) {
+      if (localInterest.isEmpty()) {
+        return;
+      }
+      try {
+        transport.sendToAll(EventBusMessage.subscriptions(EventBusMessage.Type.SNAPSHOT, new ArrayList<String>(
+            localInterest.keySet())));
+      }
+      catch (Exception ex) {
+        logger.warn("Could not send channels subscribed to on membership change", ex);
+      }
+    }
+  }
+
+  protected Set<String> getNodes(String channelName) {
+    final String key = channelName.toLowerCase();
+    Set<String> nodes = directory.get(key);
+    if (nodes == null) {
+      final Set<String> newNodes = new CopyOnWriteArraySet<String>();
+      nodes = directory.putIfAbsent(key, newNodes);
+      if (nodes == null) {
+        nodes = newNodes;
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Broadcast events to the subscribers of their channel on this node, and wake up the requests waiting for them.
+   */
+  protected void deliverLocally(EventBroadcastMessage message) {
+    final String channelName = message.getChannelName();
+    final BroadcasterRegistry registry = BroadcasterRegistry.getInstance();
+    try {
+      final EventBroadcaster broadcaster = registry.lookupBroadcaster(channelName);
+      if (broadcaster != null) {
+        broadcaster.broadcast(message);
+      }
+    }
+    catch (RuntimeException ex) {
+      logger.error("Could not broadcast events to " + channelName, ex);
+    }
+    try {
+      final EventStreamBroadcaster eventStreamBroadcaster = registry.getEventStreamBroadcaster(channelName, false);
+      if (eventStreamBroadcaster != null) {
+        eventStreamBroadcaster.broadcast(message);
+      }
+    }
+    catch (RuntimeException ex) {
+      logger.error("Could not broadcast events to event stream of " + channelName, ex);
+    }
+    final List<EventBroadcastMessage.Item> items = message.getItems();
+    if (!items.isEmpty()) {
+      ChannelActivityNotifier.getInstance().published(channelName, items.get(items.size() - 1).getPlaceholderId());
+    }
+  }
+
+  /**
+   * Get the other nodes known to have subscribers to a channel.
+   */
+  public Set<String> getInterestedNodes(String channelName) {
+    final Set<String> nodes = directory.get(channelName.toLowerCase());
+    return nodes == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(nodes);
+  }
+
+  /**
+   * Get the channels this node has subscribers to.
+   */
+  public Set<String> getLocalInterest() {
+    return Collections.unmodifiableSet(localInterest.keySet());
+  }
+
+  public Set<String> getMembers() {
+    return members;
+  }
+
+  /**
+   * Number of messages of events sent to other nodes.
+   */
+  public long getForwardedCount() {
+    return forwarded.get();
+  }
+
+  /**
+   * Number of messages of events received from other nodes.
+   */
+  public long getReceivedCount() {
+    return received.get();
+  }
+
+  public long getDirectoryUpdateCount() {
+    return directoryUpdates.get();
+  }
+
+  public EventBusStats getStats() {
+    return stats;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Message exchanged by the {@link EventBus} of the nodes of the cluster; either events published to a channel, an
+ * update of the channels the sending node has subscribers to, or the URL of the sending node.
+ * @author imyousuf
+ */
+public class EventBusMessage implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private final Type type;
+  private final Set<String> channelNames;
+  private final EventBroadcastMessage events;
+  private final String nodeUrl;
+
+  public static enum Type {
+
+    /**
+     * Events published to a channel the receiving node has subscribers to.
+     */
+    EVENTS,
+    /**
+     * The sending node now has subscribers to the channels.
+     */
+    SUBSCRIBE,
+    /**
+     * The sending node no longer has subscribers to the channels.
+     */
+    UNSUBSCRIBE,
+    /**
+     * All the channels the sending node has subscribers to, replacing those known for it.
+     */
+    SNAPSHOT,
+    /**
+     * The URL clients reach the sending node at.
+     */
+    NODE;
+  }
+
+  protected EventBusMessage(Type type, Collection<String> channelNames, EventBroadcastMessage events, String nodeUrl) {
+    this.type = type;
+    this.nodeUrl = nodeUrl;
+    this.channelNames = channelNames == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(
+        new LinkedHashSet<String>(channelNames));
+    this.events = events;
+  }
+
+  public static EventBusMessage events(EventBroadcastMessage events) {
+    return new EventBusMessage(Type.EVENTS, null, events, null);
+  }
+
+  public static EventBusMessage subscriptions(Type type, Collection<String> channelNames) {
+    return new EventBusMessage(type, channelNames, null, null);
+  }
+
+  public static EventBusMessage node(String nodeUrl) {
+    return new EventBusMessage(Type.NODE, null, null, nodeUrl);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Set<String> getChannelNames() {
+    return channelNames;
+  }
+
+  public EventBroadcastMessage getEvents() {
+    return events;
+  }
+
+  public String getNodeUrl() {
+    return nodeUrl;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Counts of the messages of an {@link EventBus}, exposed as an MBean.
+ * @author imyousuf
+ */
+public class EventBusStats implements EventBusStatsMBean {
+
+  public static final String OBJECT_NAME = "com.smartitengineering.event.hub:type=EventBus";
+  private final EventBus bus;
+
+  public EventBusStats(EventBus bus) {
+    this.bus = bus;
+  }
+
+  @Override
+  public int getMembers() {
+    return bus.getMembers().size();
+  }
+
+  @Override
+  public int getSubscribedChannels() {
+    return bus.getLocalInterest().size();
+  }
+
+  @Override
+  public long getForwardedMessages() {
+    return bus.getForwardedCount();
+  }
+
+  @Override
+  public long getReceivedMessages() {
+    return bus.getReceivedCount();
+  }
+
+  @Override
+  public long getDirectoryUpdates() {
+    return bus.getDirectoryUpdateCount();
+  }
+}
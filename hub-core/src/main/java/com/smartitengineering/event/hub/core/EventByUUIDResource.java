@@ -0,0 +1,60 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Location of an event by its UUID, given to publishers before the event's placeholder is known. While the event is
+ * waiting to be persisted it responds with <tt>202 Accepted</tt>, once persisted it redirects to the event and if it
+ * could not be persisted it responds with <tt>500 Internal Server Error</tt> and the reason.
+ * @author imyousuf
+ */
+@Path("/event/uuid/{eventUUID}")
+public class EventByUUIDResource {
+
+  @PathParam("eventUUID")
+  private String uuid;
+  @Context
+  private UriInfo uriInfo;
+
+  @GET
+  public Response get() {
+    final PublishPipeline pipeline = PublishPipeline.getInstance();
+    if (pipeline.isPending(uuid)) {
+      return Response.status(Response.Status.ACCEPTED).build();
+    }
+    final Event event = HubPersistentStorerSPI.getInstance().getStorer().getEventByUUID(uuid);
+    if (event != null) {
+      return Response.seeOther(uriInfo.getBaseUriBuilder().path(EventResource.class).build(event.getPlaceholderId())).
+          build();
+    }
+    final String failure = pipeline.getFailure(uuid);
+    if (failure != null) {
+      return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(failure).build();
+    }
+    return Response.status(Response.Status.NOT_FOUND).build();
+  }
+}
@@ -0,0 +1,342 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.common.RenderedEventCache;
+import com.smartitengineering.event.hub.common.RenderedEventCacheStats;
+import com.smartitengineering.event.hub.spi.ChannelCacheStats;
+import com.smartitengineering.event.hub.spi.ChannelCachingHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerDecorator;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts and stops the services of the hub that live as long as the web application does. It has to be registered
+ * after the listener initializing the persistent storer SPI, which it resolves eagerly with the decorators named by
+ * <tt>storerDecorators</tt>, class names of {@link HubPersistentStorerDecorator}s separated by commas, innermost
+ * first. It joins the channel cache to the cluster and exposes its
+ * statistics over JMX, when the configured storer caches channels, and unregisters the channel filter statistics.
+ * <p>
+ * Context parameters: <tt>channelCacheClusterName</tt> to override the JGroups group the channel cache invalidations
+ * are sent to and <tt>channelCacheJGroupsConfig</tt> for the JGroups protocol stack to use.
+ * <tt>publishQueueCapacity</tt>, <tt>publishBatchSize</tt> and <tt>publishWriterThreads</tt> configure the
+ * {@link PublishPipeline}, <tt>publishDurableAckTimeoutInSec</tt> and <tt>publishRetryAfterInSec</tt> the
+ * {@link PublishSettings}. <tt>renderedEventCacheMaxBytes</tt> bounds the {@link RenderedEventCache}, whose statistics
+ * are registered as an MBean. <tt>feedStreamingThreshold</tt>, <tt>feedStreamingChunkSize</tt>,
+ * <tt>feedMaxLongPollWaitInSec</tt> and <tt>feedMaxLongPollEvents</tt> configure the {@link FeedSettings}.
+ * <tt>consumerLeaseTimeoutInSec</tt>, <tt>consumerMaxWaitInSec</tt> and <tt>consumerReadAhead</tt> configure the
+ * {@link ConsumerGroupSettings}. <tt>broadcasterDispatcherThreads</tt>, <tt>subscriberWriterThreads</tt> and
+ * <tt>broadcasterIdleTimeoutInSec</tt> configure the {@link BroadcasterRegistry}, whose counts are registered as an
+ * MBean along with those of the subscriber queues. <tt>subscriberByteBudget</tt>, <tt>subscriberQueueCapacity</tt>,
+ * <tt>subscriberOverflowPolicy</tt> and <tt>subscriberOverflowPolicies</tt>, e.g. <tt>quotes=coalesce</tt>, configure
+ * the {@link FanOutSettings}. <tt>eventBusClusterName</tt> and <tt>eventBusJGroupsConfig</tt> configure the JGroups
+ * group the {@link EventBus} forwards events to the other nodes over. <tt>hubNodeUrl</tt> is the URL clients reach this
+ * node at, which the {@link ChannelRouter} shares with the other nodes to point clients at the node owning a channel,
+ * in the way <tt>channelRoutingMode</tt> says, <tt>hint</tt> or <tt>redirect</tt>.
+ * @author imyousuf
+ */
+public class EventHubContextListener implements ServletContextListener {
+
+  public static final String CHANNEL_CACHE_CLUSTER_NAME_PARAM = "channelCacheClusterName";
+  public static final String CHANNEL_CACHE_JGROUPS_CONFIG_PARAM = "channelCacheJGroupsConfig";
+  public static final String PUBLISH_QUEUE_CAPACITY_PARAM = "publishQueueCapacity";
+  public static final String PUBLISH_BATCH_SIZE_PARAM = "publishBatchSize";
+  public static final String PUBLISH_WRITER_THREADS_PARAM = "publishWriterThreads";
+  public static final String PUBLISH_DURABLE_ACK_TIMEOUT_PARAM = "publishDurableAckTimeoutInSec";
+  public static final String PUBLISH_RETRY_AFTER_PARAM = "publishRetryAfterInSec";
+  public static final String RENDERED_EVENT_CACHE_MAX_BYTES_PARAM = "renderedEventCacheMaxBytes";
+  public static final String FEED_STREAMING_THRESHOLD_PARAM = "feedStreamingThreshold";
+  public static final String FEED_STREAMING_CHUNK_SIZE_PARAM = "feedStreamingChunkSize";
+  public static final String FEED_MAX_LONG_POLL_WAIT_PARAM = "feedMaxLongPollWaitInSec";
+  public static final String FEED_MAX_LONG_POLL_EVENTS_PARAM = "feedMaxLongPollEvents";
+  public static final String CONSUMER_LEASE_TIMEOUT_PARAM = "consumerLeaseTimeoutInSec";
+  public static final String CONSUMER_MAX_WAIT_PARAM = "consumerMaxWaitInSec";
+  public static final String CONSUMER_READ_AHEAD_PARAM = "consumerReadAhead";
+  public static final String BROADCASTER_DISPATCHER_THREADS_PARAM = "broadcasterDispatcherThreads";
+  public static final String BROADCASTER_IDLE_TIMEOUT_PARAM = "broadcasterIdleTimeoutInSec";
+  public static final String SUBSCRIBER_WRITER_THREADS_PARAM = "subscriberWriterThreads";
+  public static final String SUBSCRIBER_BYTE_BUDGET_PARAM = "subscriberByteBudget";
+  public static final String SUBSCRIBER_QUEUE_CAPACITY_PARAM = "subscriberQueueCapacity";
+  public static final String SUBSCRIBER_OVERFLOW_POLICY_PARAM = "subscriberOverflowPolicy";
+  public static final String SUBSCRIBER_OVERFLOW_POLICIES_PARAM = "subscriberOverflowPolicies";
+  public static final String EVENT_BUS_CLUSTER_NAME_PARAM = "eventBusClusterName";
+  public static final String EVENT_BUS_JGROUPS_CONFIG_PARAM = "eventBusJGroupsConfig";
+  public static final String HUB_NODE_URL_PARAM = "hubNodeUrl";
+  public static final String CHANNEL_ROUTING_MODE_PARAM = "channelRoutingMode";
+  public static final String STORER_DECORATORS_PARAM = "storerDecorators";
+  public static final long PUBLISH_SHUTDOWN_TIMEOUT_IN_MILLIS = 10000;
+  private JGroupsChannelInvalidationPublisher invalidationPublisher;
+  private ObjectName channelCacheStatsName;
+  private ObjectName renderedEventCacheStatsName;
+  private ObjectName broadcasterRegistryStatsName;
+  private ObjectName fanOutStatsName;
+  private ObjectName eventBusStatsName;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    final ServletContext context = sce == null ? null : sce.getServletContext();
+    initializeStorer(context);
+    startChannelActivityNotifier();
+    startPublishPipeline(context);
+    startRenderedEventCache(context);
+    startBroadcasterRegistry(context);
+    startChannelRouter(context);
+    startEventBus(context);
+    FeedSettings.setStreamingThreshold(getIntParameter(context, FEED_STREAMING_THRESHOLD_PARAM,
+                                                       FeedSettings.DEFAULT_STREAMING_THRESHOLD));
+    FeedSettings.setStreamingChunkSize(getIntParameter(context, FEED_STREAMING_CHUNK_SIZE_PARAM,
+                                                       FeedSettings.DEFAULT_STREAMING_CHUNK_SIZE));
+    FeedSettings.setMaxLongPollWaitInSec(getIntParameter(context, FEED_MAX_LONG_POLL_WAIT_PARAM,
+                                                         FeedSettings.DEFAULT_MAX_LONG_POLL_WAIT_IN_SEC));
+    FeedSettings.setMaxLongPollEvents(getIntParameter(context, FEED_MAX_LONG_POLL_EVENTS_PARAM,
+                                                      FeedSettings.DEFAULT_MAX_LONG_POLL_EVENTS));
+    ConsumerGroupSettings.setLeaseTimeoutInSec(getIntParameter(context, CONSUMER_LEASE_TIMEOUT_PARAM,
+                                                               (int) ConsumerGroupSettings.DEFAULT_LEASE_TIMEOUT_IN_SEC));
+    ConsumerGroupSettings.setMaxWaitInSec(getIntParameter(context, CONSUMER_MAX_WAIT_PARAM,
+                                                          (int) ConsumerGroupSettings.DEFAULT_MAX_WAIT_IN_SEC));
+    ConsumerGroupSettings.setReadAhead(getIntParameter(context, CONSUMER_READ_AHEAD_PARAM,
+                                                       ConsumerGroupSettings.DEFAULT_READ_AHEAD));
+    final ChannelCachingHubPersistentStorer cache = HubPersistentStorerSPI.getInstance().getStorer(
+        ChannelCachingHubPersistentStorer.class);
+    if (cache != null) {
+      startInvalidationPublisher(cache, context);
+      registerChannelCacheStats(cache);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    PublishPipeline.getInstance().shutdown(PUBLISH_SHUTDOWN_TIMEOUT_IN_MILLIS);
+    ChannelFilterStatsRegistry.getInstance().clear();
+    if (invalidationPublisher != null) {
+      invalidationPublisher.stop();
+      invalidationPublisher = null;
+    }
+    if (channelCacheStatsName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(channelCacheStatsName);
+      }
+      catch (Exception ex) {
+        logger.warn("Could not unregister channel cache statistics", ex);
+      }
+      channelCacheStatsName = null;
+    }
+    if (renderedEventCacheStatsName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(renderedEventCacheStatsName);
+      }
+      catch (Exception ex) {
+        logger.warn("Could not unregister rendered event cache statistics", ex);
+      }
+      renderedEventCacheStatsName = null;
+    }
+    RenderedEventCache.getInstance().clear();
+    unregisterMBean(broadcasterRegistryStatsName);
+    broadcasterRegistryStatsName = null;
+    unregisterMBean(fanOutStatsName);
+    fanOutStatsName = null;
+    BroadcasterRegistry.getInstance().shutdown();
+    unregisterMBean(eventBusStatsName);
+    eventBusStatsName = null;
+    EventBus.setInstance(new EventBus(null));
+    ChannelRouter.setInstance(new ChannelRouter(null, ChannelRouter.Mode.HINT));
+    ChannelActivityNotifier.setInstance(new ChannelActivityNotifier());
+  }
+
+  /**
+   * Track the activity of the channels in the order the storer streams events in and with its visibility lag, so that
+   * readers resuming after a placeholder are only handed the events that will not be followed by ones ordered before.
+   */
+  protected void startChannelActivityNotifier() {
+    final HubPersistentStorerSPI spi = HubPersistentStorerSPI.getInstance();
+    final long visibilityLag = spi.getVisibilityLagInMillis();
+    ChannelActivityNotifier.setInstance(new ChannelActivityNotifier(spi.getPlaceholderOrder(), visibilityLag));
+    if (visibilityLag > 0) {
+      logger.info("Events are settled for the readers resuming after them " + visibilityLag + "ms after sighted");
+    }
+  }
+
+  protected void startPublishPipeline(ServletContext context) {
+    PublishPipeline.setInstance(new PublishPipeline(getIntParameter(context, PUBLISH_QUEUE_CAPACITY_PARAM,
+                                                                    PublishPipeline.DEFAULT_QUEUE_CAPACITY),
+                                                    getIntParameter(context, PUBLISH_BATCH_SIZE_PARAM,
+                                                                    PublishPipeline.DEFAULT_BATCH_SIZE),
+                                                    getIntParameter(context, PUBLISH_WRITER_THREADS_PARAM, 0)));
+    PublishSettings.setDurableAckTimeoutInSec(getIntParameter(context, PUBLISH_DURABLE_ACK_TIMEOUT_PARAM,
+                                                              (int) PublishSettings.DEFAULT_DURABLE_ACK_TIMEOUT_IN_SEC));
+    PublishSettings.setRetryAfterInSec(getIntParameter(context, PUBLISH_RETRY_AFTER_PARAM,
+                                                       (int) PublishSettings.DEFAULT_RETRY_AFTER_IN_SEC));
+  }
+
+  protected void startRenderedEventCache(ServletContext context) {
+    final long maxBytes = context == null ? RenderedEventCache.DEFAULT_MAX_BYTES : NumberUtils.toLong(context.
+        getInitParameter(RENDERED_EVENT_CACHE_MAX_BYTES_PARAM), RenderedEventCache.DEFAULT_MAX_BYTES);
+    final RenderedEventCache cache = new RenderedEventCache(maxBytes, RenderedEventCache.DEFAULT_SEGMENTS);
+    RenderedEventCache.setInstance(cache);
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = new ObjectName(RenderedEventCacheStats.OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(cache.getStats(), name);
+      renderedEventCacheStatsName = name;
+    }
+    catch (Exception ex) {
+      logger.warn("Could not register rendered event cache statistics", ex);
+    }
+  }
+
+  protected void startBroadcasterRegistry(ServletContext context) {
+    final int dispatcherThreads = getIntParameter(context, BROADCASTER_DISPATCHER_THREADS_PARAM, 0);
+    final int writerThreads = getIntParameter(context, SUBSCRIBER_WRITER_THREADS_PARAM, 0);
+    final int idleTimeoutInSec = getIntParameter(context, BROADCASTER_IDLE_TIMEOUT_PARAM,
+                                                 (int) BroadcasterRegistry.DEFAULT_IDLE_TIMEOUT_IN_SEC);
+    final BroadcasterRegistry registry = new BroadcasterRegistry(dispatcherThreads, writerThreads,
+                                                                 idleTimeoutInSec);
+    BroadcasterRegistry.setInstance(registry);
+    FanOutSettings.setSubscriberByteBudget(getIntParameter(context, SUBSCRIBER_BYTE_BUDGET_PARAM,
+                                                           (int) FanOutSettings.DEFAULT_SUBSCRIBER_BYTE_BUDGET));
+    FanOutSettings.setSubscriberQueueCapacity(getIntParameter(context, SUBSCRIBER_QUEUE_CAPACITY_PARAM,
+                                                              FanOutSettings.DEFAULT_SUBSCRIBER_QUEUE_CAPACITY));
+    FanOutSettings.setDefaultOverflowPolicy(SubscriberQueue.OverflowPolicy.parse(context == null ? null : context.
+        getInitParameter(SUBSCRIBER_OVERFLOW_POLICY_PARAM)));
+    FanOutSettings.setOverflowPolicies(context == null ? null : context.getInitParameter(
+        SUBSCRIBER_OVERFLOW_POLICIES_PARAM));
+    broadcasterRegistryStatsName = registerMBean(registry.getStats(), BroadcasterRegistryStats.OBJECT_NAME);
+    fanOutStatsName = registerMBean(registry.getFanOutStats(), FanOutStats.OBJECT_NAME);
+  }
+
+  /**
+   * Resolve the storer before any request needs it, stacking the configured decorators around it.
+   */
+  protected void initializeStorer(ServletContext context) {
+    final String classNames = context == null ? null : context.getInitParameter(STORER_DECORATORS_PARAM);
+    if (StringUtils.isNotBlank(classNames)) {
+      final List<HubPersistentStorerDecorator> decorators = HubPersistentStorerSPI.createDecorators(classNames);
+      if (HubPersistentStorerSPI.isInitialized()) {
+        logger.warn("Storer was resolved before the web application started, it will not be decorated!");
+      }
+      else {
+        HubPersistentStorerSPI.setDecorators(decorators);
+      }
+    }
+    HubPersistentStorerSPI.initialize();
+  }
+
+  protected void startChannelRouter(ServletContext context) {
+    final ChannelRouter.Mode mode = context == null ? null : ChannelRouter.Mode.parse(context.getInitParameter(
+        CHANNEL_ROUTING_MODE_PARAM));
+    ChannelRouter.setInstance(new ChannelRouter(context == null ? null : context.getInitParameter(HUB_NODE_URL_PARAM),
+                                                mode == null ? ChannelRouter.Mode.HINT : mode));
+  }
+
+  protected void startEventBus(ServletContext context) {
+    final String clusterName = context == null ? null : context.getInitParameter(EVENT_BUS_CLUSTER_NAME_PARAM);
+    final String jgroupsConfig = context == null ? null : context.getInitParameter(EVENT_BUS_JGROUPS_CONFIG_PARAM);
+    EventBus bus = new EventBus(new JGroupsClusterTransport(clusterName, jgroupsConfig));
+    try {
+      bus.start();
+    }
+    catch (Exception ex) {
+      logger.error("Could not join cluster of the event bus, events will only reach the subscribers of this node!",
+                   ex);
+      bus = new EventBus(null);
+    }
+    EventBus.setInstance(bus);
+    eventBusStatsName = registerMBean(bus.getStats(), EventBusStats.OBJECT_NAME);
+  }
+
+  /**
+   * Register an MBean, replacing any registered by the name.
+   * @return Name of the MBean or null if it could not be registered
+   */
+  protected ObjectName registerMBean(Object mbean, String objectName) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = new ObjectName(objectName);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(mbean, name);
+      return name;
+    }
+    catch (Exception ex) {
+      logger.warn("Could not register MBean " + objectName, ex);
+      return null;
+    }
+  }
+
+  protected void unregisterMBean(ObjectName name) {
+    if (name == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+    catch (Exception ex) {
+      logger.warn("Could not unregister MBean " + name, ex);
+    }
+  }
+
+  protected int getIntParameter(ServletContext context, String name, int defaultValue) {
+    return context == null ? defaultValue : NumberUtils.toInt(context.getInitParameter(name), defaultValue);
+  }
+
+  protected void startInvalidationPublisher(ChannelCachingHubPersistentStorer cache, ServletContext context) {
+    final String clusterName = context == null ? null : context.getInitParameter(CHANNEL_CACHE_CLUSTER_NAME_PARAM);
+    final String jgroupsConfig = context == null ? null : context.getInitParameter(CHANNEL_CACHE_JGROUPS_CONFIG_PARAM);
+    JGroupsChannelInvalidationPublisher publisher = new JGroupsChannelInvalidationPublisher(cache, clusterName,
+                                                                                             jgroupsConfig);
+    try {
+      publisher.start();
+      cache.setInvalidationPublisher(publisher);
+      invalidationPublisher = publisher;
+    }
+    catch (Exception ex) {
+      logger.error("Could not join cluster for channel cache invalidation, changes to channels on other nodes " +
+          "will be seen once their cached copy expires!", ex);
+    }
+  }
+
+  protected void registerChannelCacheStats(ChannelCachingHubPersistentStorer cache) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = new ObjectName(ChannelCacheStats.OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(cache.getStats(), name);
+      channelCacheStatsName = name;
+    }
+    catch (Exception ex) {
+      logger.warn("Could not register channel cache statistics", ex);
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcaster of a channel's <tt>text/event-stream</tt> subscribers, which writes each event as a frame identified
+ * by its placeholder ID. A subscriber reconnecting with the ID of the last event it received has the events it missed
+ * replayed from the storer when it joins, on the writer rather than the thread subscribing, and is handed over to the
+ * live broadcast using its {@link EventStreamCursor}. Only events {@link ChannelActivityNotifier settled} are
+ * replayed, so that no event becoming visible late is left out; a replay reaching events yet to settle resumes once
+ * the {@link ChannelActivityNotifier} reports them settled, unless they have been broadcast to the subscriber
+ * meanwhile, in which case it is handed over right away.
+ * <p>
+ * It is kept by the {@link BroadcasterRegistry} by the channel's name suffixed with {@link #ID_SUFFIX}, and the
+ * {@link EventBus} broadcasts to it, if it exists, the same events it delivers to the channel's
+ * {@link EventBroadcaster} on this node, whether published through this node or forwarded from another.
+ * @author imyousuf
+ */
+public class EventStreamBroadcaster
+    extends EventBroadcaster
+    implements ChannelActivityNotifier.Listener {
+
+  public static final String ID_SUFFIX = "/event-stream";
+  public static final String CURSOR_ATTRIBUTE = EventStreamCursor.class.getName();
+  private static final String FRAME_CHARSET = "UTF-8";
+  /*
+   * Replays waiting for the events they reached to settle
+   */
+  private final ConcurrentMap<AtmosphereResource, EventStreamCursor> unsettledReplays =
+                                                   new ConcurrentHashMap<AtmosphereResource, EventStreamCursor>();
+  private final AtomicBoolean listening = new AtomicBoolean(false);
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public EventStreamBroadcaster() {
+    super();
+  }
+
+  public EventStreamBroadcaster(String id) {
+    super(id);
+  }
+
+  /**
+   * Retrieve the event stream broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create and register the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public static EventStreamBroadcaster getBroadcaster(String channelName, boolean createIfAbsent) {
+    return BroadcasterRegistry.getInstance().getEventStreamBroadcaster(channelName, createIfAbsent);
+  }
+
+
+  @Override
+  public String getChannelName() {
+    final String id = getID();
+    return id.endsWith(ID_SUFFIX) ? id.substring(0, id.length() - ID_SUFFIX.length()) : id;
+  }
+
+  /**
+   * The frames differ per subscriber, depending upon what was replayed to it, so the filter passes on the filtered
+   * message rather than its payload.
+   */
+  @Override
+  protected ChannelEventFilter createChannelEventFilter() {
+    return new ChannelEventFilter(true);
+  }
+
+  @Override
+  public AtmosphereResource addAtmosphereResource(AtmosphereResource r) {
+    final AtmosphereResource added = super.addAtmosphereResource(r);
+    final EventStreamCursor cursor = getCursor(r);
+    if (cursor != null && cursor.isReplaying()) {
+      //Listen before the first read so that no settling of the events it reaches is missed
+      if (listening.compareAndSet(false, true)) {
+        ChannelActivityNotifier.getInstance().addListener(getChannelName(), this);
+      }
+      scheduleReplay(r, cursor);
+    }
+    return added;
+  }
+
+  @Override
+  public AtmosphereResource removeAtmosphereResource(AtmosphereResource r) {
+    unsettledReplays.remove(r);
+    return super.removeAtmosphereResource(r);
+  }
+
+  @Override
+  public void channelActive(String channelName) {
+    for (Map.Entry<AtmosphereResource, EventStreamCursor> entry : unsettledReplays.entrySet()) {
+      if (unsettledReplays.remove(entry.getKey(), entry.getValue())) {
+        scheduleReplay(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (listening.compareAndSet(true, false)) {
+      ChannelActivityNotifier.getInstance().removeListener(getChannelName(), this);
+    }
+    super.destroy();
+  }
+
+  @Override
+  protected void broadcast(final AtmosphereResource r,
+                           final AtmosphereResourceEvent e) {
+    final Object message = e.getMessage();
+    if (!(message instanceof EventBroadcastMessage)) {
+      super.broadcast(r, e);
+      return;
+    }
+    final EventBroadcastMessage eventMessage = (EventBroadcastMessage) message;
+    final EventStreamCursor cursor = getCursor(r);
+    if (cursor == null) {
+      e.setMessage(eventMessage.getEncodedEventStreamPayload());
+      super.broadcast(r, e);
+      return;
+    }
+    synchronized (cursor) {
+      final List<EventBroadcastMessage.Item> items = cursor.accept(eventMessage.getItems());
+      if (items.isEmpty()) {
+        return;
+      }
+      //Only a subscriber being handed over from replay is written other than the frames encoded for all
+      e.setMessage(items.size() == eventMessage.getItems().size() ? eventMessage.getEncodedEventStreamPayload()
+          : EncodedPayload.encode(eventMessage.withItems(items).getEventStreamPayload()));
+      super.broadcast(r, e);
+    }
+  }
+
+  protected void scheduleReplay(final AtmosphereResource r, final EventStreamCursor cursor) {
+    getWriter().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        replay(r, cursor);
+      }
+    });
+  }
+
+  /**
+   * Write the settled events after the subscriber's replay position to it, oldest first, followed by those broadcast
+   * to it meanwhile once it is handed over. Channel's filter is applied to the replayed events as it is to the
+   * broadcast ones.
+   */
+  protected void replay(AtmosphereResource r, EventStreamCursor cursor) {
+    final ChannelActivityNotifier notifier = ChannelActivityNotifier.getInstance();
+    final HubPersistentStorer storer = HubPersistentStorerSPI.getInstance().getStorer();
+    final Channel channel = storer.getChannel(cursor.getChannelName());
+    final Filter filter = channel == null ? null : channel.getFilter();
+    final HttpServletResponse response = (HttpServletResponse) r.getResponse();
+    final int chunkSize = FeedSettings.getStreamingChunkSize();
+    final String position = cursor.getReplayPosition();
+    int replayedCount = 0;
+    boolean waiting = false;
+    try {
+      final OutputStream outputStream = response.getOutputStream();
+      String unsettledId = null;
+      final CloseableIterator<Event> events = storer.streamEvents(position, cursor.getChannelName(),
+                                                                  HubPersistentStorer.Direction.AFTER);
+      try {
+        while (unsettledId == null && events.hasNext()) {
+          final List<Event> chunk = new ArrayList<Event>(chunkSize);
+          while (chunk.size() < chunkSize && events.hasNext()) {
+            chunk.add(events.next());
+          }
+          final Iterator<Event> settled = notifier.settle(cursor.getChannelName(), chunk).iterator();
+          final StringBuilder frames = new StringBuilder();
+          for (Event event : chunk) {
+            if (!settled.hasNext() || settled.next() != event) {
+              unsettledId = event.getPlaceholderId();
+              break;
+            }
+            if (isAllowed(filter, event)) {
+              EventBroadcastMessage.Item.fromEvent(event).appendEventStreamFrame(frames);
+              ++replayedCount;
+            }
+            cursor.replayed(event.getPlaceholderId());
+          }
+          write(outputStream, frames);
+        }
+      }
+      finally {
+        events.close();
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Replayed " + replayedCount + " events of " + cursor.getChannelName() + " after " + position);
+      }
+      //Events not broadcast since the subscriber joined were persisted before it did, so have to be replayed
+      if (unsettledId != null && !cursor.isHeldBack(unsettledId)) {
+        unsettledReplays.put(r, cursor);
+        waiting = true;
+        //Resume it right away if the events settled before it was put up to wait, as that would not be reported again
+        if (notifier.isSettled(cursor.getChannelName(), unsettledId) && unsettledReplays.remove(r, cursor)) {
+          waiting = false;
+          scheduleReplay(r, cursor);
+          waiting = true;
+        }
+        return;
+      }
+      synchronized (cursor) {
+        final StringBuilder frames = new StringBuilder();
+        for (EventBroadcastMessage.Item item : cursor.replayDone()) {
+          item.appendEventStreamFrame(frames);
+        }
+        write(outputStream, frames);
+      }
+    }
+    catch (IOException ex) {
+      logger.warn("Could not replay events of " + cursor.getChannelName() + " to subscriber", ex);
+    }
+    catch (RuntimeException ex) {
+      logger.error("Could not replay events of " + cursor.getChannelName() + " to subscriber", ex);
+    }
+    finally {
+      //Never leave the subscriber holding back broadcasts
+      if (!waiting && cursor.isReplaying()) {
+        cursor.replayDone();
+      }
+    }
+  }
+
+  protected boolean isAllowed(Filter filter, Event event) {
+    if (filter == null) {
+      return true;
+    }
+    try {
+      return filter.allowBroadcast(event);
+    }
+    catch (RuntimeException ex) {
+      //Do not let an event the filter could not decide upon through, same as for the broadcast ones
+      logger.error("Could not evaluate filter for replayed event " + event.getPlaceholderId(), ex);
+      return false;
+    }
+  }
+
+  protected static EventStreamCursor getCursor(AtmosphereResource r) {
+    final Object request = r.getRequest();
+    if (!(request instanceof HttpServletRequest)) {
+      return null;
+    }
+    final Object cursor = ((HttpServletRequest) request).getAttribute(CURSOR_ATTRIBUTE);
+    return cursor instanceof EventStreamCursor ? (EventStreamCursor) cursor : null;
+  }
+
+  private static void write(OutputStream outputStream, StringBuilder frames)
+      throws IOException {
+    if (frames.length() < 1) {
+      return;
+    }
+    outputStream.write(frames.toString().getBytes(FRAME_CHARSET));
+    outputStream.flush();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Position of a <tt>text/event-stream</tt> subscriber in the events of its channel, used to hand over from replaying
+ * the events it missed to the live broadcast without a gap or a duplicate. The subscriber joins the broadcast before
+ * the missed events are read, so any event persisted after the read started is broadcast to it; broadcasts received
+ * while replaying are held back till the replay is done. Since an event is broadcast after it is persisted, an event
+ * may both be replayed and broadcast afterwards, so the broadcast of any event ordered up to the last one replayed is
+ * skipped. Only settled events are replayed, hence every event ordered before the last one replayed has been replayed
+ * too, unless left out by the channel's filter.
+ * <p>
+ * The cursor is locked on itself; whoever writes to the subscriber does so holding the lock so that replayed and live
+ * events are not interleaved.
+ * @author imyousuf
+ */
+public class EventStreamCursor {
+
+  private final String channelName;
+  private final String lastEventId;
+  private final Comparator<String> placeholderOrder;
+  private final List<EventBroadcastMessage.Item> heldBack = new ArrayList<EventBroadcastMessage.Item>();
+  private String lastReplayedId;
+  private boolean replaying;
+
+  /**
+   * @param channelName Name of the channel subscribed to
+   * @param lastEventId Placeholder ID of the last event the subscriber received, if it is reconnecting
+   * @param placeholderOrder Order the storer streams the events of the channel in
+   */
+  public EventStreamCursor(String channelName, String lastEventId, Comparator<String> placeholderOrder) {
+    this.channelName = channelName;
+    this.lastEventId = StringUtils.trimToNull(lastEventId);
+    this.placeholderOrder = placeholderOrder;
+    this.replaying = this.lastEventId != null;
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public String getLastEventId() {
+    return lastEventId;
+  }
+
+  public synchronized boolean isReplaying() {
+    return replaying;
+  }
+
+  /**
+   * Get the placeholder ID to replay the events after, i.e. that of the last event replayed or else of the last event
+   * the subscriber received.
+   */
+  public synchronized String getReplayPosition() {
+    return lastReplayedId == null ? lastEventId : lastReplayedId;
+  }
+
+  /**
+   * Record that an event has been replayed to the subscriber, or skipped by the channel's filter.
+   */
+  public synchronized void replayed(String placeholderId) {
+    if (lastReplayedId == null || placeholderOrder.compare(placeholderId, lastReplayedId) > 0) {
+      lastReplayedId = placeholderId;
+    }
+  }
+
+  /**
+   * Check whether an event has been broadcast to the subscriber while replaying.
+   */
+  public synchronized boolean isHeldBack(String placeholderId) {
+    for (EventBroadcastMessage.Item item : heldBack) {
+      if (placeholderId.equals(item.getPlaceholderId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Accept events broadcast to the subscriber.
+   * @return The events to be written to the subscriber now, which is none while replaying
+   */
+  public synchronized List<EventBroadcastMessage.Item> accept(List<EventBroadcastMessage.Item> items) {
+    if (replaying) {
+      heldBack.addAll(items);
+      return Collections.emptyList();
+    }
+    return skipReplayed(items);
+  }
+
+  /**
+   * Mark the replay as done, after which broadcasts are written as they are received.
+   * @return The events broadcast while replaying that are yet to be written to the subscriber
+   */
+  public synchronized List<EventBroadcastMessage.Item> replayDone() {
+    replaying = false;
+    final List<EventBroadcastMessage.Item> items = skipReplayed(heldBack);
+    heldBack.clear();
+    return items;
+  }
+
+  protected List<EventBroadcastMessage.Item> skipReplayed(List<EventBroadcastMessage.Item> items) {
+    if (lastReplayedId == null) {
+      return new ArrayList<EventBroadcastMessage.Item>(items);
+    }
+    final List<EventBroadcastMessage.Item> unseen = new ArrayList<EventBroadcastMessage.Item>(items.size());
+    for (EventBroadcastMessage.Item item : items) {
+      if (placeholderOrder.compare(item.getPlaceholderId(), lastReplayedId) > 0) {
+        unseen.add(item);
+      }
+    }
+    return unseen;
+  }
+}
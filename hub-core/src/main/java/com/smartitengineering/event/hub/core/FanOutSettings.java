@@ -0,0 +1,112 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.core.SubscriberQueue.OverflowPolicy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Settings of writing broadcasts to the subscribers of channels, configured from the web application's context
+ * parameters by {@link EventHubContextListener}.
+ * @author imyousuf
+ */
+public final class FanOutSettings {
+
+  public static final long DEFAULT_SUBSCRIBER_BYTE_BUDGET = 1024 * 1024;
+  public static final int DEFAULT_SUBSCRIBER_QUEUE_CAPACITY = 1000;
+  public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DISCONNECT;
+  private static volatile long subscriberByteBudget = DEFAULT_SUBSCRIBER_BYTE_BUDGET;
+  private static volatile int subscriberQueueCapacity = DEFAULT_SUBSCRIBER_QUEUE_CAPACITY;
+  private static volatile OverflowPolicy defaultOverflowPolicy = DEFAULT_OVERFLOW_POLICY;
+  private static final ConcurrentMap<String, OverflowPolicy> channelOverflowPolicies =
+      new ConcurrentHashMap<String, OverflowPolicy>();
+
+  private FanOutSettings() {
+  }
+
+  /**
+   * Get the most bytes that may be waiting to be written to a subscriber, beyond which it is considered too slow and
+   * is disconnected.
+   */
+  public static long getSubscriberByteBudget() {
+    return subscriberByteBudget;
+  }
+
+  public static void setSubscriberByteBudget(long subscriberByteBudget) {
+    FanOutSettings.subscriberByteBudget = subscriberByteBudget > 0 ? subscriberByteBudget
+        : DEFAULT_SUBSCRIBER_BYTE_BUDGET;
+  }
+
+  /**
+   * Get the most payloads that may be waiting to be written to a subscriber.
+   */
+  public static int getSubscriberQueueCapacity() {
+    return subscriberQueueCapacity;
+  }
+
+  public static void setSubscriberQueueCapacity(int subscriberQueueCapacity) {
+    FanOutSettings.subscriberQueueCapacity = subscriberQueueCapacity > 0 ? subscriberQueueCapacity
+        : DEFAULT_SUBSCRIBER_QUEUE_CAPACITY;
+  }
+
+  public static OverflowPolicy getDefaultOverflowPolicy() {
+    return defaultOverflowPolicy;
+  }
+
+  public static void setDefaultOverflowPolicy(OverflowPolicy overflowPolicy) {
+    FanOutSettings.defaultOverflowPolicy = overflowPolicy == null ? DEFAULT_OVERFLOW_POLICY : overflowPolicy;
+  }
+
+  /**
+   * Get the policy applied to the queues of the subscribers of a channel that overflow, the default one unless the
+   * channel has its own. Changes apply to subscribers joining afterwards.
+   */
+  public static OverflowPolicy getOverflowPolicy(String channelName) {
+    final OverflowPolicy policy = channelName == null ? null : channelOverflowPolicies.get(channelName.toLowerCase());
+    return policy == null ? defaultOverflowPolicy : policy;
+  }
+
+  /**
+   * Set the overflow policy of a channel, or go back to the default one if the policy is null.
+   */
+  public static void setOverflowPolicy(String channelName, OverflowPolicy overflowPolicy) {
+    if (overflowPolicy == null) {
+      channelOverflowPolicies.remove(channelName.toLowerCase());
+    }
+    else {
+      channelOverflowPolicies.put(channelName.toLowerCase(), overflowPolicy);
+    }
+  }
+
+  /**
+   * Set the overflow policies of channels from a comma separated list of <tt>channel=policy</tt> pairs, e.g.
+   * <tt>quotes=coalesce,audit=disconnect</tt>, replacing those set before. Pairs that can not be parsed are ignored.
+   */
+  public static void setOverflowPolicies(String policies) {
+    channelOverflowPolicies.clear();
+    for (String pair : StringUtils.split(StringUtils.defaultString(policies), ',')) {
+      final String channelName = StringUtils.trimToNull(StringUtils.substringBefore(pair, "="));
+      final OverflowPolicy policy = OverflowPolicy.parse(StringUtils.substringAfter(pair, "="));
+      if (channelName != null && policy != null) {
+        setOverflowPolicy(channelName, policy);
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the subscriber queues of the broadcasters of a {@link BroadcasterRegistry}, exposed as an MBean. Queue
+ * depths are sampled from the live queues when asked for.
+ * @author imyousuf
+ */
+public class FanOutStats implements FanOutStatsMBean {
+
+  public static final String OBJECT_NAME = "com.smartitengineering.event.hub:type=FanOut";
+  private static final int[] DEPTH_BUCKET_BOUNDS = new int[]{0, 1, 10, 100, 1000};
+  private static final String[] DEPTH_BUCKET_NAMES = new String[]{"0", "1", "2-10", "11-100", "101-1000", ">1000"};
+  private final BroadcasterRegistry registry;
+  private final AtomicLong disconnects = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  public FanOutStats(BroadcasterRegistry registry) {
+    this.registry = registry;
+  }
+
+  void disconnected() {
+    disconnects.incrementAndGet();
+  }
+
+  void dropped(int count) {
+    if (count > 0) {
+      dropped.addAndGet(count);
+    }
+  }
+
+  void coalesced(int count) {
+    if (count > 0) {
+      coalesced.addAndGet(count);
+    }
+  }
+
+  @Override
+  public int getSubscribers() {
+    int subscribers = 0;
+    for (EventBroadcaster broadcaster : registry.getBroadcasters()) {
+      subscribers += broadcaster.getSubscriberQueues().size();
+    }
+    return subscribers;
+  }
+
+  @Override
+  public Map<String, Integer> getQueueDepthDistribution() {
+    final int[] counts = new int[DEPTH_BUCKET_NAMES.length];
+    for (EventBroadcaster broadcaster : registry.getBroadcasters()) {
+      for (SubscriberQueue queue : broadcaster.getSubscriberQueues()) {
+        ++counts[getDepthBucket(queue.getQueuedPayloads())];
+      }
+    }
+    final Map<String, Integer> distribution = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < counts.length; ++i) {
+      distribution.put(DEPTH_BUCKET_NAMES[i], counts[i]);
+    }
+    return distribution;
+  }
+
+  protected int getDepthBucket(int depth) {
+    for (int i = 0; i < DEPTH_BUCKET_BOUNDS.length; ++i) {
+      if (depth <= DEPTH_BUCKET_BOUNDS[i]) {
+        return i;
+      }
+    }
+    return DEPTH_BUCKET_BOUNDS.length;
+  }
+
+  @Override
+  public int getMaxQueueDepth() {
+    int max = 0;
+    for (EventBroadcaster broadcaster : registry.getBroadcasters()) {
+      for (SubscriberQueue queue : broadcaster.getSubscriberQueues()) {
+        max = Math.max(max, queue.getQueuedPayloads());
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public long getQueuedBytes() {
+    long bytes = 0;
+    for (EventBroadcaster broadcaster : registry.getBroadcasters()) {
+      for (SubscriberQueue queue : broadcaster.getSubscriberQueues()) {
+        bytes += queue.getQueuedBytes();
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getDisconnects() {
+    return disconnects.get();
+  }
+
+  @Override
+  public long getDroppedPayloads() {
+    return dropped.get();
+  }
+
+  @Override
+  public long getCoalescedPayloads() {
+    return coalesced.get();
+  }
+
+  @Override
+  public void resetStats() {
+    disconnects.set(0);
+    dropped.set(0);
+    coalesced.set(0);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.Map;
+
+/**
+ * Management interface of the writing of broadcasts to the subscribers of all channels.
+ * @author imyousuf
+ */
+public interface FanOutStatsMBean {
+
+  public int getSubscribers();
+
+  /**
+   * Number of subscribers by the number of payloads in their queue, in buckets of 0, 1, 2-10, 11-100, 101-1000 and
+   * more than 1000.
+   */
+  public Map<String, Integer> getQueueDepthDistribution();
+
+  public int getMaxQueueDepth();
+
+  public long getQueuedBytes();
+
+  /**
+   * Number of subscribers disconnected for their queue overflowing or failing to be written to.
+   */
+  public long getDisconnects();
+
+  /**
+   * Number of payloads dropped from queues that overflowed under the drop oldest policy.
+   */
+  public long getDroppedPayloads();
+
+  /**
+   * Number of payloads skipped by subscribers whose queue overflowed under the coalesce policy.
+   */
+  public long getCoalescedPayloads();
+
+  public void resetStats();
+}
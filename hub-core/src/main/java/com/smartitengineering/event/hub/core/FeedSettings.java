@@ -0,0 +1,88 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Settings of the event feeds shared by the hub resources, configured from the web application's context parameters
+ * by {@link EventHubContextListener}.
+ * @author imyousuf
+ */
+public final class FeedSettings {
+
+  public static final int DEFAULT_STREAMING_THRESHOLD = 100;
+  public static final int DEFAULT_STREAMING_CHUNK_SIZE = 100;
+  private static volatile int streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+  public static final int DEFAULT_MAX_LONG_POLL_WAIT_IN_SEC = 60;
+  public static final int DEFAULT_MAX_LONG_POLL_EVENTS = 500;
+  private static volatile int streamingChunkSize = DEFAULT_STREAMING_CHUNK_SIZE;
+  private static volatile int maxLongPollWaitInSec = DEFAULT_MAX_LONG_POLL_WAIT_IN_SEC;
+  private static volatile int maxLongPollEvents = DEFAULT_MAX_LONG_POLL_EVENTS;
+
+  private FeedSettings() {
+  }
+
+  /**
+   * Get the number of events above which an Atom feed page is streamed rather than built in memory, 0 to stream
+   * every page.
+   */
+  public static int getStreamingThreshold() {
+    return streamingThreshold;
+  }
+
+  public static void setStreamingThreshold(int streamingThreshold) {
+    FeedSettings.streamingThreshold = streamingThreshold > -1 ? streamingThreshold : DEFAULT_STREAMING_THRESHOLD;
+  }
+
+  /**
+   * Get the number of events fetched from the storer at a time while streaming a feed page.
+   */
+  public static int getStreamingChunkSize() {
+    return streamingChunkSize;
+  }
+
+  public static void setStreamingChunkSize(int streamingChunkSize) {
+    FeedSettings.streamingChunkSize = streamingChunkSize > 0 ? streamingChunkSize : DEFAULT_STREAMING_CHUNK_SIZE;
+  }
+
+  /**
+   * Get the longest a long polling request for the events after a placeholder may wait for events to be published.
+   */
+  public static int getMaxLongPollWaitInSec() {
+    return maxLongPollWaitInSec;
+  }
+
+  public static void setMaxLongPollWaitInSec(int maxLongPollWaitInSec) {
+    FeedSettings.maxLongPollWaitInSec = maxLongPollWaitInSec > 0 ? maxLongPollWaitInSec
+        : DEFAULT_MAX_LONG_POLL_WAIT_IN_SEC;
+  }
+
+  /**
+   * Get the most events a long polling request may ask for in one response.
+   */
+  public static int getMaxLongPollEvents() {
+    return maxLongPollEvents;
+  }
+
+  public static void setMaxLongPollEvents(int maxLongPollEvents) {
+    FeedSettings.maxLongPollEvents = maxLongPollEvents > 0 ? maxLongPollEvents : DEFAULT_MAX_LONG_POLL_EVENTS;
+  }
+
+  public static boolean isStreamed(int count) {
+    return Math.abs(count) > streamingThreshold;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.spi.ChannelCachingHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.ChannelInvalidationPublisher;
+import org.apache.commons.lang.StringUtils;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Propagates channel cache invalidations to the other nodes over JGroups and applies the ones received from them. It
+ * joins a group of its own, next to the <tt>EventHub</tt> group of the clustered broadcasts, since every message sent
+ * to that group is broadcast to the subscribers of the hub.
+ * @author imyousuf
+ */
+public class JGroupsChannelInvalidationPublisher extends ReceiverAdapter implements ChannelInvalidationPublisher {
+
+  public static final String DEFAULT_CLUSTER_NAME = "EventHub-channel-cache";
+  private final ChannelCachingHubPersistentStorer cache;
+  private final String clusterName;
+  private final String jgroupsConfig;
+  private JChannel jChannel;
+  protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * Create a publisher for the cache.
+   * @param cache Cache to apply the invalidations received to
+   * @param clusterName Name of the group to join, the default is used if blank
+   * @param jgroupsConfig JGroups protocol stack configuration, the JGroups default is used if blank
+   */
+  public JGroupsChannelInvalidationPublisher(ChannelCachingHubPersistentStorer cache, String clusterName,
+                                             String jgroupsConfig) {
+    this.cache = cache;
+    this.clusterName = StringUtils.isBlank(clusterName) ? DEFAULT_CLUSTER_NAME : clusterName;
+    this.jgroupsConfig = jgroupsConfig;
+  }
+
+  public synchronized void start() throws Exception {
+    if (jChannel != null) {
+      return;
+    }
+    final JChannel newChannel = StringUtils.isBlank(jgroupsConfig) ? new JChannel() : new JChannel(jgroupsConfig);
+    newChannel.setReceiver(this);
+    newChannel.connect(clusterName);
+    jChannel = newChannel;
+    if (logger.isInfoEnabled()) {
+      logger.info("Joined " + clusterName + " for channel cache invalidation");
+    }
+  }
+
+  public synchronized void stop() {
+    if (jChannel != null) {
+      jChannel.close();
+      jChannel = null;
+    }
+  }
+
+  @Override
+  public void publishInvalidation(String channelName) {
+    final JChannel currentChannel;
+    synchronized (this) {
+      currentChannel = jChannel;
+    }
+    if (currentChannel == null || channelName == null) {
+      return;
+    }
+    try {
+      currentChannel.send(new Message(null, null, channelName));
+    }
+    catch (Exception ex) {
+      //The other nodes will still pick the change up once their cached copy expires
+      logger.warn("Could not propagate invalidation of channel " + channelName, ex);
+    }
+  }
+
+  @Override
+  public void receive(Message msg) {
+    final JChannel currentChannel;
+    synchronized (this) {
+      currentChannel = jChannel;
+    }
+    if (currentChannel != null && msg.getSrc() != null && msg.getSrc().equals(currentChannel.getAddress())) {
+      //Already invalidated locally before being published
+      return;
+    }
+    final Object channelName = msg.getObject();
+    if (channelName instanceof String) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Invalidating channel " + channelName + " on notification from " + msg.getSrc());
+      }
+      cache.invalidate((String) channelName);
+    }
+  }
+}
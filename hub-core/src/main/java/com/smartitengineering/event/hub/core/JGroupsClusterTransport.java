@@ -0,0 +1,161 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+import org.jgroups.View;
+
+/**
+ * {@link ClusterTransport} over a JGroups group, whose nodes are identified by their JGroups addresses.
+ * @author imyousuf
+ */
+public class JGroupsClusterTransport extends ReceiverAdapter implements ClusterTransport {
+
+  public static final String DEFAULT_CLUSTER_NAME = "EventHub";
+  private final String clusterName;
+  private final String jgroupsConfig;
+  private volatile JChannel jChannel;
+  private volatile Receiver receiver;
+  private volatile Map<String, Address> members = new HashMap<String, Address>();
+  private final Object viewLock = new Object();
+  private boolean viewHeldBack;
+  private volatile boolean connected;
+
+  /**
+   * @param clusterName Name of the group to join, the default is used if blank
+   * @param jgroupsConfig JGroups protocol stack configuration, the JGroups default is used if blank
+   */
+  public JGroupsClusterTransport(String clusterName, String jgroupsConfig) {
+    this.clusterName = StringUtils.isBlank(clusterName) ? DEFAULT_CLUSTER_NAME : clusterName;
+    this.jgroupsConfig = jgroupsConfig;
+  }
+
+  @Override
+  public void start(Receiver receiver) throws Exception {
+    synchronized (this) {
+      if (jChannel != null) {
+        return;
+      }
+      this.receiver = receiver;
+      final JChannel newChannel = StringUtils.isBlank(jgroupsConfig) ? new JChannel() : new JChannel(jgroupsConfig);
+      newChannel.setReceiver(this);
+      //Messages the other nodes send on this node joining may arrive while connecting
+      jChannel = newChannel;
+      try {
+        newChannel.connect(clusterName);
+      }
+      catch (Exception ex) {
+        jChannel = null;
+        newChannel.close();
+        throw ex;
+      }
+    }
+    //The first view is accepted while connecting, when nothing can be sent yet, so it is held back till now; else
+    //the receiver could not announce this node to the others
+    final boolean viewHeldBack;
+    synchronized (viewLock) {
+      connected = true;
+      viewHeldBack = this.viewHeldBack;
+      this.viewHeldBack = false;
+    }
+    if (viewHeldBack) {
+      receiver.membershipChanged(new LinkedHashSet<String>(members.keySet()));
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (jChannel != null) {
+      synchronized (viewLock) {
+        connected = false;
+      }
+      jChannel.close();
+      jChannel = null;
+    }
+  }
+
+  protected JChannel getChannel() {
+    return jChannel;
+  }
+
+  @Override
+  public String getLocalNode() {
+    final JChannel currentChannel = getChannel();
+    return currentChannel == null || currentChannel.getAddress() == null ? null : currentChannel.getAddress().
+        toString();
+  }
+
+  @Override
+  public void send(String node, Serializable message) throws Exception {
+    final JChannel currentChannel = getChannel();
+    final Address address = members.get(node);
+    if (currentChannel == null || !connected || address == null) {
+      return;
+    }
+    currentChannel.send(new Message(address, null, message));
+  }
+
+  @Override
+  public void sendToAll(Serializable message) throws Exception {
+    final JChannel currentChannel = getChannel();
+    if (currentChannel == null || !connected) {
+      return;
+    }
+    currentChannel.send(new Message(null, null, message));
+  }
+
+  @Override
+  public void receive(Message msg) {
+    final JChannel currentChannel = getChannel();
+    if (currentChannel == null || msg.getSrc() == null || msg.getSrc().equals(currentChannel.getAddress())) {
+      return;
+    }
+    final Object message = msg.getObject();
+    if (message instanceof Serializable) {
+      receiver.received(msg.getSrc().toString(), (Serializable) message);
+    }
+  }
+
+  @Override
+  public void viewAccepted(View view) {
+    final Map<String, Address> newMembers = new HashMap<String, Address>();
+    for (Address address : view.getMembers()) {
+      newMembers.put(address.toString(), address);
+    }
+    members = newMembers;
+    synchronized (viewLock) {
+      if (!connected) {
+        viewHeldBack = true;
+        return;
+      }
+    }
+    final Receiver currentReceiver = receiver;
+    if (currentReceiver != null) {
+      currentReceiver.membershipChanged(new LinkedHashSet<String>(newMembers.keySet()));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.abdera.model.Base;
+
+/**
+ * A request for the events of a channel after a placeholder, suspended by its {@link LongPollBroadcaster} till there
+ * are some or its wait is over. A request that is not to wait carries its answer instead.
+ * @author imyousuf
+ */
+public class LongPoll {
+
+  private final String channelName;
+  private final String placeholderId;
+  private final int maxEvents;
+  private final long waitInMillis;
+  private final ChannelEventsResource.EventFeedBuilder feedBuilder;
+  private final Object answer;
+  private volatile Future<?> timeout;
+
+  /**
+   * @param channelName Name of the channel
+   * @param placeholderId Placeholder to answer the events after
+   * @param maxEvents Most events to answer with
+   * @param waitInMillis Longest to wait for events
+   * @param feedBuilder Builder of the feed to answer with
+   */
+  public LongPoll(String channelName, String placeholderId, int maxEvents, long waitInMillis,
+                  ChannelEventsResource.EventFeedBuilder feedBuilder) {
+    this.channelName = channelName;
+    this.placeholderId = placeholderId;
+    this.maxEvents = maxEvents;
+    this.waitInMillis = waitInMillis;
+    this.feedBuilder = feedBuilder;
+    this.answer = null;
+  }
+
+  /**
+   * @param channelName Name of the channel
+   * @param answer Entity to answer with right away, either an Atom document or a {@link StreamingOutput}
+   */
+  public LongPoll(String channelName, Object answer) {
+    this.channelName = channelName;
+    this.placeholderId = null;
+    this.maxEvents = 0;
+    this.waitInMillis = 0;
+    this.feedBuilder = null;
+    this.answer = answer;
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public String getPlaceholderId() {
+    return placeholderId;
+  }
+
+  public int getMaxEvents() {
+    return maxEvents;
+  }
+
+  public long getWaitInMillis() {
+    return waitInMillis;
+  }
+
+  public boolean isAnswered() {
+    return answer != null;
+  }
+
+  public void setTimeout(Future<?> timeout) {
+    this.timeout = timeout;
+  }
+
+  public void cancelTimeout() {
+    final Future<?> future = timeout;
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Write the answer of the request, or the feed of the given events if it was not answered right away.
+   * @param events Events after the placeholder, newest first
+   * @param outputStream Stream of the suspended response
+   */
+  public void write(List<Event> events, OutputStream outputStream)
+      throws IOException {
+    final Object entity = answer == null ? feedBuilder.build(events) : answer;
+    if (entity instanceof StreamingOutput) {
+      ((StreamingOutput) entity).write(outputStream);
+    }
+    else if (entity instanceof Base) {
+      ((Base) entity).writeTo(outputStream);
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcaster of the long polls of a channel, i.e. of the requests for the channel's events after a placeholder that
+ * wait for them if there are none yet. A poll is suspended rather than holding a thread while it waits, and is
+ * answered with the events after its placeholder once the {@link ChannelActivityNotifier} reports events of the
+ * channel readable, or with none once its wait is over. The storer is read once per report for all the polls after
+ * the same placeholder, and not at all for those after the channel's newest event. Only settled events are handed
+ * out, so that a client polling after the newest event it was handed never skips one becoming visible late.
+ * <p>
+ * While it lives the broadcaster keeps interest in the channel with the {@link EventBus}, so that the events published
+ * on the other nodes are forwarded to this one, and the newest event of the channel known, in between the polls of a
+ * client too. It is kept by the {@link BroadcasterRegistry} by the channel's name suffixed with {@link #ID_SUFFIX} and
+ * reaped as the other broadcasters are.
+ * @author imyousuf
+ */
+public class LongPollBroadcaster
+    extends EventBroadcaster
+    implements ChannelActivityNotifier.Listener {
+
+  public static final String ID_SUFFIX = "/long-poll";
+  public static final String POLL_ATTRIBUTE = LongPoll.class.getName();
+  private final ConcurrentMap<AtmosphereResource, LongPoll> polls =
+                                                            new ConcurrentHashMap<AtmosphereResource, LongPoll>();
+  private final AtomicBoolean interested = new AtomicBoolean(false);
+  private final AtomicBoolean checkQueued = new AtomicBoolean(false);
+  private volatile ScheduledExecutorService scheduler;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public LongPollBroadcaster() {
+    super();
+  }
+
+  public LongPollBroadcaster(String id) {
+    super(id);
+  }
+
+  /**
+   * Retrieve the long poll broadcaster of a channel.
+   * @param channelName Name of the channel
+   * @param createIfAbsent Whether to create and register the broadcaster if the channel does not have one yet
+   * @return The broadcaster or null if the channel has none and one is not to be created
+   */
+  public static LongPollBroadcaster getBroadcaster(String channelName, boolean createIfAbsent) {
+    return BroadcasterRegistry.getInstance().getLongPollBroadcaster(channelName, createIfAbsent);
+  }
+
+  @Override
+  public String getChannelName() {
+    final String id = getID();
+    return id.endsWith(ID_SUFFIX) ? id.substring(0, id.length() - ID_SUFFIX.length()) : id;
+  }
+
+  /**
+   * Polls are only written their answers, so the filter need not report text broadcast to the broadcaster as activity
+   * of the channel.
+   */
+  @Override
+  protected ChannelEventFilter createChannelEventFilter() {
+    return new ChannelEventFilter(true);
+  }
+
+  /**
+   * Set the executor the polls' waits are timed with. Without one polls are answered right away.
+   */
+  public void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Get the number of polls waiting for events.
+   */
+  public int getPollCount() {
+    return polls.size();
+  }
+
+  @Override
+  public AtmosphereResource addAtmosphereResource(final AtmosphereResource r) {
+    final AtmosphereResource added = super.addAtmosphereResource(r);
+    final LongPoll poll = getPoll(r);
+    if (poll == null) {
+      return added;
+    }
+    if (poll.isAnswered()) {
+      answer(r, poll, Collections.<Event>emptyList());
+      return added;
+    }
+    //Interest is registered before the first read so that no event published on another node meanwhile is missed
+    keepInterest();
+    polls.put(r, poll);
+    getDispatcher().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        check(Collections.singletonMap(r, poll));
+      }
+    });
+    scheduleTimeout(r, poll);
+    return added;
+  }
+
+  @Override
+  public AtmosphereResource removeAtmosphereResource(AtmosphereResource r) {
+    final LongPoll poll = polls.remove(r);
+    if (poll != null) {
+      poll.cancelTimeout();
+    }
+    return super.removeAtmosphereResource(r);
+  }
+
+  @Override
+  public void channelActive(String channelName) {
+    if (polls.isEmpty() || checkQueued.getAndSet(true)) {
+      return;
+    }
+    getDispatcher().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        checkQueued.set(false);
+        check(new HashMap<AtmosphereResource, LongPoll>(polls));
+      }
+    });
+  }
+
+  @Override
+  public void destroy() {
+    if (interested.compareAndSet(true, false)) {
+      ChannelActivityNotifier.getInstance().removeListener(getChannelName(), this);
+      EventBus.getInstance().removeInterest(getChannelName());
+    }
+    super.destroy();
+  }
+
+  /**
+   * Answer the polls there are settled events after the placeholders of, reading the events once per placeholder.
+   */
+  protected void check(Map<AtmosphereResource, LongPoll> polled) {
+    final String channelName = getChannelName();
+    final Map<String, Integer> maxEvents = new HashMap<String, Integer>();
+    for (LongPoll poll : polled.values()) {
+      final Integer max = maxEvents.get(poll.getPlaceholderId());
+      if (max == null || max.intValue() < poll.getMaxEvents()) {
+        maxEvents.put(poll.getPlaceholderId(), poll.getMaxEvents());
+      }
+    }
+    final ChannelActivityNotifier notifier = ChannelActivityNotifier.getInstance();
+    final HubPersistentStorer storer = HubPersistentStorerSPI.getInstance().getStorer();
+    final Map<String, List<Event>> events = new HashMap<String, List<Event>>();
+    for (Map.Entry<String, Integer> entry : maxEvents.entrySet()) {
+      final String placeholderId = entry.getKey();
+      if (notifier.isNewest(channelName, placeholderId)) {
+        continue;
+      }
+      try {
+        final List<Event> settled = notifier.settle(channelName, storer.getEvents(placeholderId, channelName, entry.
+            getValue()));
+        if (!settled.isEmpty()) {
+          events.put(placeholderId, settled);
+        }
+      }
+      catch (RuntimeException ex) {
+        logger.error("Could not read events of " + channelName + " after " + placeholderId, ex);
+      }
+    }
+    for (Map.Entry<AtmosphereResource, LongPoll> entry : polled.entrySet()) {
+      final LongPoll poll = entry.getValue();
+      final List<Event> settled = events.get(poll.getPlaceholderId());
+      if (settled == null || !polls.remove(entry.getKey(), poll)) {
+        continue;
+      }
+      //Events are read newest first, so a poll asking for fewer gets the oldest of them
+      final int size = settled.size();
+      answer(entry.getKey(), poll, new ArrayList<Event>(settled.subList(Math.max(0, size - poll.getMaxEvents()),
+                                                                        size)));
+    }
+  }
+
+  protected void scheduleTimeout(final AtmosphereResource r, final LongPoll poll) {
+    final Runnable expire = new Runnable() {
+
+      @Override
+      public void run() {
+        if (polls.remove(r, poll)) {
+          answer(r, poll, Collections.<Event>emptyList());
+        }
+      }
+    };
+    final ScheduledExecutorService executor = scheduler;
+    if (executor != null) {
+      try {
+        poll.setTimeout(executor.schedule(expire, poll.getWaitInMillis(), TimeUnit.MILLISECONDS));
+        return;
+      }
+      catch (RejectedExecutionException ex) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Could not time poll of " + getChannelName() + ", answering it right away", ex);
+        }
+      }
+    }
+    //After the first read, as that is on the same dispatcher
+    getDispatcher().execute(expire);
+  }
+
+  /**
+   * Write the answer of a poll with the writer and resume it.
+   */
+  protected void answer(final AtmosphereResource r, final LongPoll poll, final List<Event> events) {
+    poll.cancelTimeout();
+    getWriter().execute(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          final OutputStream outputStream = ((HttpServletResponse) r.getResponse()).getOutputStream();
+          poll.write(events, outputStream);
+          outputStream.flush();
+        }
+        catch (IOException ex) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Could not answer poll of " + getChannelName(), ex);
+          }
+        }
+        catch (RuntimeException ex) {
+          logger.warn("Could not answer poll of " + getChannelName(), ex);
+        }
+        finally {
+          disconnect(r);
+        }
+      }
+    });
+  }
+
+  protected void keepInterest() {
+    if (interested.compareAndSet(false, true)) {
+      EventBus.getInstance().addInterest(getChannelName());
+      ChannelActivityNotifier.getInstance().addListener(getChannelName(), this);
+    }
+  }
+
+  protected static LongPoll getPoll(AtmosphereResource r) {
+    final Object request = r.getRequest();
+    if (!(request instanceof HttpServletRequest)) {
+      return null;
+    }
+    final Object poll = ((HttpServletRequest) request).getAttribute(POLL_ATTRIBUTE);
+    return poll instanceof LongPoll ? (LongPoll) poll : null;
+  }
+}
@@ -0,0 +1,494 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Content;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged pipeline publishing events to channels off the request thread. A publish request only enqueues its events
+ * into the bounded queue of the channel and gets a {@link PublishTicket} back. A writer stage drains each channel's
+ * queue, persisting what has accumulated as one batch, and hands the persisted events to a fan-out stage which
+ * publishes them to the {@link EventBus}, for the channel's subscribers on this node and the others. Both stages run
+ * serially per channel, on threads shared by all channels, so events are broadcast in placeholder order. Events whose
+ * batch fails to persist are retried in the batches of their own requests, so that one request can not fail the
+ * others it was grouped with; as a storer need not create a batch as a whole, the events of the failed batch that
+ * were persisted none the less are looked up by UUID first and not persisted again. So that an event found is one the
+ * batch persisted, an event published with a UUID of its own fails its request before the batch is persisted if an
+ * event with the UUID exists already.
+ * <p>
+ * The queue of a channel is kept, keyed by its lowercased name as its broadcasters are, until it has neither events
+ * nor work pending for longer than the {@link BroadcasterRegistry}'s idle timeout, by which the registry's reaper
+ * {@link #reap(long) reaps} it.
+ * @author imyousuf
+ */
+public class PublishPipeline {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  private static final int MAX_REMEMBERED_FAILURES = 1000;
+  private static volatile PublishPipeline pipeline = new PublishPipeline(DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, 0);
+  private final int queueCapacity;
+  private final int batchSize;
+  private final ExecutorService writerPool;
+  private final ExecutorService fanOutPool;
+  private final ConcurrentMap<String, ChannelQueue> queues = new ConcurrentHashMap<String, ChannelQueue>();
+  private final ConcurrentMap<String, PublishTicket> pendingTickets = new ConcurrentHashMap<String, PublishTicket>();
+  private final Map<String, String> failures = new LinkedHashMap<String, String>() {
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > MAX_REMEMBERED_FAILURES;
+    }
+  };
+  private volatile boolean accepting = true;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public PublishPipeline(int queueCapacity, int batchSize, int writerThreads) {
+    this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+    this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    final int threads = writerThreads > 0 ? writerThreads : Runtime.getRuntime().availableProcessors();
+    writerPool = Executors.newFixedThreadPool(threads);
+    fanOutPool = Executors.newFixedThreadPool(threads);
+  }
+
+  public static PublishPipeline getInstance() {
+    return pipeline;
+  }
+
+  /**
+   * Replace the pipeline in use, shutting the previous one down.
+   */
+  public static void setInstance(PublishPipeline newPipeline) {
+    if (newPipeline == null) {
+      return;
+    }
+    final PublishPipeline oldPipeline = pipeline;
+    pipeline = newPipeline;
+    if (oldPipeline != newPipeline) {
+      oldPipeline.shutdown(0);
+    }
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Enqueue events to be persisted and broadcast to a channel. Either all or none of the events are enqueued.
+   * @param channel Channel to publish to
+   * @param events Events to publish, no more than the {@link #getQueueCapacity() queue capacity}
+   * @return Ticket tracking the events, or null if the channel's queue can not take them at the moment
+   * @throws IllegalArgumentException If there are more events than the queue of a channel can ever take
+   */
+  public PublishTicket publish(Channel channel, List<Event> events) {
+    if (events.size() > queueCapacity) {
+      throw new IllegalArgumentException("Can not publish more than " + queueCapacity + " events at once");
+    }
+    if (!accepting) {
+      return null;
+    }
+    final List<PendingEvent> pendingEvents = new ArrayList<PendingEvent>(events.size());
+    final List<String> uuids = new ArrayList<String>(events.size());
+    for (Event event : events) {
+      final PendingEvent pendingEvent = toPendingEvent(event);
+      pendingEvents.add(pendingEvent);
+      uuids.add(pendingEvent.event.getUniversallyUniqueID());
+    }
+    final PublishTicket ticket = new PublishTicket(uuids);
+    for (int i = 0; i < pendingEvents.size(); ++i) {
+      pendingEvents.get(i).setTicket(ticket, i);
+    }
+    ChannelQueue channelQueue;
+    boolean enqueued = false;
+    do {
+      channelQueue = getQueue(channel);
+      synchronized (channelQueue) {
+        //A queue reaped after it was looked up is replaced by a new one
+        if (!channelQueue.reaped) {
+          if (channelQueue.queue.remainingCapacity() < pendingEvents.size()) {
+            return null;
+          }
+          for (String uuid : uuids) {
+            pendingTickets.put(uuid, ticket);
+          }
+          channelQueue.queue.addAll(pendingEvents);
+          channelQueue.lastUsed = System.currentTimeMillis();
+          enqueued = true;
+        }
+      }
+    }
+    while (!enqueued);
+    final ChannelQueue writtenQueue = channelQueue;
+    writtenQueue.writer.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        drain(writtenQueue);
+      }
+    });
+    return ticket;
+  }
+
+  /**
+   * Check whether an event is yet to be persisted.
+   */
+  public boolean isPending(String uuid) {
+    return pendingTickets.containsKey(uuid);
+  }
+
+  /**
+   * Get the error of an event that could not be persisted, as long as it is remembered.
+   */
+  public String getFailure(String uuid) {
+    synchronized (failures) {
+      return failures.get(uuid);
+    }
+  }
+
+  /**
+   * Stop accepting events, wait for the ones enqueued to be persisted and broadcast, and stop the stages.
+   * @param timeoutInMillis Maximum time to wait for the events enqueued
+   */
+  public void shutdown(long timeoutInMillis) {
+    accepting = false;
+    final long waitUntil = System.currentTimeMillis() + timeoutInMillis;
+    try {
+      while (!pendingTickets.isEmpty() && System.currentTimeMillis() < waitUntil) {
+        Thread.sleep(50);
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    if (!pendingTickets.isEmpty()) {
+      logger.warn("Shutting publish pipeline down with " + pendingTickets.size() + " events not persisted");
+    }
+    writerPool.shutdown();
+    fanOutPool.shutdown();
+  }
+
+  /**
+   * Remove the queues of the channels that have had neither events enqueued nor events being persisted or broadcast
+   * since a given time.
+   * @param idleSince Time in milliseconds since which a queue has to be idle to be removed
+   * @return Number of queues removed
+   */
+  public int reap(long idleSince) {
+    int reapedQueues = 0;
+    for (ChannelQueue channelQueue : queues.values()) {
+      synchronized (channelQueue) {
+        //The writer is checked before the fan-out since it is the writer that hands the fan-out its work
+        if (channelQueue.lastUsed < idleSince && channelQueue.queue.isEmpty() && channelQueue.writer.isIdle() &&
+            channelQueue.fanOut.isIdle()) {
+          channelQueue.reaped = true;
+          queues.remove(channelQueue.key, channelQueue);
+          ++reapedQueues;
+        }
+      }
+    }
+    if (logger.isDebugEnabled() && reapedQueues > 0) {
+      logger.debug("Reaped " + reapedQueues + " idle publish queues, " + queues.size() + " live");
+    }
+    return reapedQueues;
+  }
+
+  public int getQueueCount() {
+    return queues.size();
+  }
+
+  protected ChannelQueue getQueue(Channel channel) {
+    final String key = channel.getName().toLowerCase();
+    ChannelQueue channelQueue = queues.get(key);
+    if (channelQueue == null) {
+      final ChannelQueue newQueue = new ChannelQueue(key, channel.getName());
+      channelQueue = queues.putIfAbsent(key, newQueue);
+      if (channelQueue == null) {
+        channelQueue = newQueue;
+      }
+    }
+    channelQueue.channel = channel;
+    return channelQueue;
+  }
+
+  /**
+   * Read the content of the event once, unless it already is in memory, so that the same bytes can be persisted and
+   * broadcast, and assign it a UUID if it has none so that it can be looked up before its placeholder is known.
+   */
+  protected PendingEvent toPendingEvent(Event event) {
+    final Content eventContent = event.getEventContent();
+    final ByteContent content = eventContent instanceof ByteContent ? (ByteContent) eventContent : APIFactory.
+        getContent(eventContent.getContentType(), APIFactory.getContentBytes(eventContent));
+    final String uuid = StringUtils.isBlank(event.getUniversallyUniqueID()) ? UUID.randomUUID().toString() : event.
+        getUniversallyUniqueID();
+    final Event pendingEvent = APIFactory.getEventBuilder().uuid(uuid).eventContent(content).build();
+    return new PendingEvent(pendingEvent, content, !StringUtils.isBlank(event.getUniversallyUniqueID()));
+  }
+
+  protected void drain(final ChannelQueue channelQueue) {
+    final List<PendingEvent> drained = new ArrayList<PendingEvent>(batchSize);
+    channelQueue.queue.drainTo(drained, batchSize);
+    final List<PendingEvent> batch = rejectDuplicates(drained);
+    final List<EventBroadcastMessage.Item> items = new ArrayList<EventBroadcastMessage.Item>(batch.size());
+    if (batch.isEmpty()) {
+      scheduleDrain(channelQueue);
+      return;
+    }
+    try {
+      persist(channelQueue.channel, batch, items);
+    }
+    catch (RuntimeException ex) {
+      //Retry each request's events on their own so that a bad request does not fail the others, skipping the ones
+      //persisted before the batch failed so that they are not rejected as duplicates
+      items.clear();
+      final List<PendingEvent> notPersisted = collectPersisted(batch, items);
+      for (List<PendingEvent> requestEvents : groupByTicket(notPersisted)) {
+        try {
+          persist(channelQueue.channel, requestEvents, items);
+        }
+        catch (RuntimeException requestEx) {
+          logger.error("Could not persist events published to " + channelQueue.channelName, requestEx);
+          fail(requestEvents, requestEx);
+        }
+      }
+    }
+    if (!items.isEmpty()) {
+      final EventBroadcastMessage message = new EventBroadcastMessage(channelQueue.channelName, items);
+      channelQueue.fanOut.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          try {
+            broadcast(message);
+          }
+          catch (RuntimeException ex) {
+            logger.error("Could not broadcast events to " + channelQueue.channelName, ex);
+          }
+        }
+      });
+    }
+    scheduleDrain(channelQueue);
+  }
+
+  /**
+   * Publish persisted events to the {@link EventBus}, for the subscribers of their channel on all nodes.
+   */
+  protected void broadcast(EventBroadcastMessage message) {
+    EventBus.getInstance().publish(message);
+  }
+
+  protected HubPersistentStorer getStorer() {
+    return HubPersistentStorerSPI.getInstance().getStorer();
+  }
+
+  protected void scheduleDrain(final ChannelQueue channelQueue) {
+    if (!channelQueue.queue.isEmpty()) {
+      channelQueue.writer.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          drain(channelQueue);
+        }
+      });
+    }
+  }
+
+  /**
+   * Fail the requests of the events published with the UUID of an event that exists already, or of another event of
+   * the batch, and leave out the events of the requests failed.
+   * @return The events to persist
+   */
+  protected List<PendingEvent> rejectDuplicates(List<PendingEvent> pendingEvents) {
+    final HubPersistentStorer storer = getStorer();
+    final Set<String> uuids = new HashSet<String>();
+    final Map<PublishTicket, RuntimeException> rejectedTickets = new HashMap<PublishTicket, RuntimeException>();
+    for (PendingEvent pendingEvent : pendingEvents) {
+      final String uuid = pendingEvent.event.getUniversallyUniqueID();
+      if (pendingEvent.uuidSupplied && (!uuids.add(uuid) || exists(storer, uuid))) {
+        rejectedTickets.put(pendingEvent.ticket, new IllegalArgumentException("Event with UUID " + uuid +
+            " exists already"));
+      }
+      else if (pendingEvent.ticket.getError() != null) {
+        //Failed with the events of another batch
+        rejectedTickets.put(pendingEvent.ticket, pendingEvent.ticket.getError());
+      }
+    }
+    if (rejectedTickets.isEmpty()) {
+      return pendingEvents;
+    }
+    final List<PendingEvent> accepted = new ArrayList<PendingEvent>(pendingEvents.size());
+    for (List<PendingEvent> requestEvents : groupByTicket(pendingEvents)) {
+      final RuntimeException error = rejectedTickets.get(requestEvents.get(0).ticket);
+      if (error == null) {
+        accepted.addAll(requestEvents);
+      }
+      else {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Not persisting " + requestEvents.size() + " events: " + error.getMessage());
+        }
+        fail(requestEvents, error);
+      }
+    }
+    return accepted;
+  }
+
+  protected boolean exists(HubPersistentStorer storer, String uuid) {
+    try {
+      return storer.getEventByUUID(uuid) != null;
+    }
+    catch (RuntimeException ex) {
+      logger.warn("Could not look event " + uuid + " up", ex);
+      return false;
+    }
+  }
+
+  protected void persist(Channel channel, List<PendingEvent> pendingEvents, List<EventBroadcastMessage.Item> items) {
+    final List<Event> events = new ArrayList<Event>(pendingEvents.size());
+    for (PendingEvent pendingEvent : pendingEvents) {
+      events.add(pendingEvent.event);
+    }
+    final List<Event> createdEvents = getStorer().create(channel, events);
+    if (createdEvents.size() != pendingEvents.size()) {
+      throw new IllegalStateException("Persisted " + createdEvents.size() + " of " + pendingEvents.size() +
+          " events");
+    }
+    for (int i = 0; i < pendingEvents.size(); ++i) {
+      persisted(pendingEvents.get(i), createdEvents.get(i), items);
+    }
+  }
+
+  /**
+   * Mark the events that are found in the storer as persisted.
+   * @return The events not found
+   */
+  protected List<PendingEvent> collectPersisted(List<PendingEvent> pendingEvents,
+                                                List<EventBroadcastMessage.Item> items) {
+    final HubPersistentStorer storer = getStorer();
+    final List<PendingEvent> notPersisted = new ArrayList<PendingEvent>(pendingEvents.size());
+    for (PendingEvent pendingEvent : pendingEvents) {
+      Event createdEvent = null;
+      try {
+        createdEvent = storer.getEventByUUID(pendingEvent.event.getUniversallyUniqueID());
+      }
+      catch (RuntimeException ex) {
+        logger.warn("Could not look event " + pendingEvent.event.getUniversallyUniqueID() + " up", ex);
+      }
+      if (createdEvent != null) {
+        persisted(pendingEvent, createdEvent, items);
+      }
+      else {
+        notPersisted.add(pendingEvent);
+      }
+    }
+    return notPersisted;
+  }
+
+  protected void persisted(PendingEvent pendingEvent, Event createdEvent, List<EventBroadcastMessage.Item> items) {
+    pendingEvent.ticket.persisted(pendingEvent.index, createdEvent);
+    pendingTickets.remove(pendingEvent.event.getUniversallyUniqueID());
+    items.add(EventBroadcastMessage.Item.fromEvent(createdEvent, pendingEvent.content));
+  }
+
+  protected void fail(List<PendingEvent> pendingEvents, RuntimeException ex) {
+    for (PendingEvent pendingEvent : pendingEvents) {
+      pendingEvent.ticket.failed(ex);
+      final String uuid = pendingEvent.event.getUniversallyUniqueID();
+      synchronized (failures) {
+        failures.put(uuid, String.valueOf(ex.getMessage()));
+      }
+      pendingTickets.remove(uuid);
+    }
+  }
+
+  protected List<List<PendingEvent>> groupByTicket(List<PendingEvent> batch) {
+    final Map<PublishTicket, List<PendingEvent>> groups = new LinkedHashMap<PublishTicket, List<PendingEvent>>();
+    for (PendingEvent pendingEvent : batch) {
+      List<PendingEvent> group = groups.get(pendingEvent.ticket);
+      if (group == null) {
+        group = new ArrayList<PendingEvent>();
+        groups.put(pendingEvent.ticket, group);
+      }
+      group.add(pendingEvent);
+    }
+    return new ArrayList<List<PendingEvent>>(groups.values());
+  }
+
+  protected class ChannelQueue {
+
+    private final String key;
+    private final String channelName;
+    private final BlockingQueue<PendingEvent> queue = new ArrayBlockingQueue<PendingEvent>(queueCapacity);
+    private final SerialExecutor writer = new SerialExecutor(writerPool);
+    private final SerialExecutor fanOut = new SerialExecutor(fanOutPool);
+    private volatile Channel channel;
+    private long lastUsed = System.currentTimeMillis();
+    private boolean reaped;
+
+    ChannelQueue(String key, String channelName) {
+      this.key = key;
+      this.channelName = channelName;
+    }
+  }
+
+  protected static class PendingEvent {
+
+    private final Event event;
+    private final ByteContent content;
+    private final boolean uuidSupplied;
+    private PublishTicket ticket;
+    private int index;
+
+    PendingEvent(Event event, ByteContent content, boolean uuidSupplied) {
+      this.event = event;
+      this.content = content;
+      this.uuidSupplied = uuidSupplied;
+    }
+
+    void setTicket(PublishTicket ticket, int index) {
+      this.ticket = ticket;
+      this.index = index;
+    }
+  }
+}
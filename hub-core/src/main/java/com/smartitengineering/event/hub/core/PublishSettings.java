@@ -0,0 +1,58 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+/**
+ * Settings of publishing shared by the hub resources, configured from the web application's context parameters by
+ * {@link EventHubContextListener}.
+ * @author imyousuf
+ */
+public final class PublishSettings {
+
+  public static final long DEFAULT_DURABLE_ACK_TIMEOUT_IN_SEC = 30;
+  public static final long DEFAULT_RETRY_AFTER_IN_SEC = 1;
+  private static volatile long durableAckTimeoutInSec = DEFAULT_DURABLE_ACK_TIMEOUT_IN_SEC;
+  private static volatile long retryAfterInSec = DEFAULT_RETRY_AFTER_IN_SEC;
+
+  private PublishSettings() {
+  }
+
+  /**
+   * Get the maximum time a publisher asking for a durability acknowledgement waits for its events to be persisted,
+   * after which it is responded to as if it had not asked.
+   */
+  public static long getDurableAckTimeoutInSec() {
+    return durableAckTimeoutInSec;
+  }
+
+  public static void setDurableAckTimeoutInSec(long durableAckTimeoutInSec) {
+    PublishSettings.durableAckTimeoutInSec = durableAckTimeoutInSec > 0 ? durableAckTimeoutInSec
+        : DEFAULT_DURABLE_ACK_TIMEOUT_IN_SEC;
+  }
+
+  /**
+   * Get the time a publisher is asked to wait before retrying when the channel's queue is full.
+   */
+  public static long getRetryAfterInSec() {
+    return retryAfterInSec;
+  }
+
+  public static void setRetryAfterInSec(long retryAfterInSec) {
+    PublishSettings.retryAfterInSec = retryAfterInSec > 0 ? retryAfterInSec : DEFAULT_RETRY_AFTER_IN_SEC;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the events of one publish request through the {@link PublishPipeline}. It is complete once all of its events
+ * have been persisted, or any of them failed to be.
+ * @author imyousuf
+ */
+public class PublishTicket {
+
+  private final List<String> uuids;
+  private final Event[] createdEvents;
+  private final CountDownLatch latch = new CountDownLatch(1);
+  private int remaining;
+  private volatile RuntimeException error;
+
+  PublishTicket(List<String> uuids) {
+    this.uuids = Collections.unmodifiableList(uuids);
+    createdEvents = new Event[uuids.size()];
+    remaining = uuids.size();
+  }
+
+  /**
+   * Get the UUIDs assigned to the events at the time of publishing, by which they can be looked up once persisted.
+   */
+  public List<String> getUniversallyUniqueIDs() {
+    return uuids;
+  }
+
+  int size() {
+    return createdEvents.length;
+  }
+
+  synchronized void persisted(int index, Event event) {
+    if (isDone()) {
+      return;
+    }
+    createdEvents[index] = event;
+    if (--remaining == 0) {
+      latch.countDown();
+    }
+  }
+
+  synchronized void failed(RuntimeException ex) {
+    if (isDone()) {
+      return;
+    }
+    error = ex;
+    latch.countDown();
+  }
+
+  public boolean isDone() {
+    return latch.getCount() == 0;
+  }
+
+  /**
+   * Wait for the events to be persisted.
+   * @return True if done within the timeout
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return latch.await(timeout, unit);
+  }
+
+  /**
+   * Get the error persisting the events, if any
+   */
+  public RuntimeException getError() {
+    return error;
+  }
+
+  /**
+   * Get the events as persisted, in the order they were published; only available once done without error.
+   */
+  public List<Event> getCreatedEvents() {
+    if (!isDone() || error != null) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(createdEvents);
+  }
+}
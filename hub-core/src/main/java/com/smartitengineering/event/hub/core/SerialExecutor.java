@@ -0,0 +1,70 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one after another, in the order they were submitted, on a shared executor; so that many serial queues
+ * can share a few threads.
+ * @author imyousuf
+ */
+public class SerialExecutor implements Executor {
+
+  private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+  private final Executor executor;
+  private Runnable active;
+
+  public SerialExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public synchronized void execute(final Runnable task) {
+    tasks.offer(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          task.run();
+        }
+        finally {
+          scheduleNext();
+        }
+      }
+    });
+    if (active == null) {
+      scheduleNext();
+    }
+  }
+
+  /**
+   * Check whether there is no task running or waiting to run.
+   */
+  public synchronized boolean isIdle() {
+    return active == null && tasks.isEmpty();
+  }
+
+  protected synchronized void scheduleNext() {
+    if ((active = tasks.poll()) != null) {
+      executor.execute(active);
+    }
+  }
+}
@@ -0,0 +1,304 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.common.RenderedEventCache;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.lang.time.DateFormatUtils;
+
+/**
+ * Atom feed of a page of events written straight to the response as the events are fetched from the storer in
+ * chunks, so that the memory used by a request depends on the chunk size rather than the number of events in the
+ * page. The feed carries the same entries and paging links as the one built as an Abdera feed, but as the events are
+ * not known up front the paging link in the direction of the page is written after the entries, which Atom permits.
+ * <p>
+ * Entries are written newest first, as the storers return events and the Abdera feed has them. Pages before a
+ * placeholder are written as they are fetched. Pages after a placeholder can only be fetched away from the placeholder,
+ * i.e. oldest first, so they are walked twice: first to find the newest event of the page, holding no more than a
+ * chunk at a time, then written from that event back towards the placeholder as a page before it.
+ * @author imyousuf
+ */
+public class StreamingEventFeed implements StreamingOutput {
+
+  public static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+  public static final String REL_NEXT = "next";
+  public static final String REL_PREVIOUS = "previous";
+  public static final String REL_ALTERNATE = "alternate";
+  private static final String CHARSET = "UTF-8";
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+  private final HubPersistentStorer storer;
+  private final String channelId;
+  private final String placeholderId;
+  private final int count;
+  private final int chunkSize;
+  private final List<String[]> links = new ArrayList<String[]>();
+  private String id;
+  private String title;
+  private String author;
+  private UriBuilder afterUri;
+  private UriBuilder beforeUri;
+  private UriBuilder eventUri;
+  private Object[] pagingPathValues = new Object[0];
+
+  /**
+   * Create a feed of the page of events as requested from the storer.
+   * @param storer Storer to fetch the events from
+   * @param channelId Channel to fetch the events of, all events if blank
+   * @param placeholderId Placeholder to fetch the events from
+   * @param count Signed number of events, positive for the ones after the placeholder, negative for before
+   * @param chunkSize Number of events to fetch at a time
+   */
+  public StreamingEventFeed(HubPersistentStorer storer, String channelId, String placeholderId, int count,
+                            int chunkSize) {
+    this.storer = storer;
+    this.channelId = channelId;
+    this.placeholderId = placeholderId;
+    this.count = count;
+    this.chunkSize = chunkSize > 0 ? chunkSize : FeedSettings.DEFAULT_STREAMING_CHUNK_SIZE;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  /**
+   * Add a link to be written in the head of the feed.
+   */
+  public void addLink(String rel, String href) {
+    links.add(new String[]{rel, href});
+  }
+
+  /**
+   * Set the URIs of the pages after and before an event; they are built with the given path values followed by the
+   * placeholder of the event.
+   */
+  public void setPagingUris(UriBuilder afterUri, UriBuilder beforeUri, Object... pathValues) {
+    this.afterUri = afterUri;
+    this.beforeUri = beforeUri;
+    this.pagingPathValues = pathValues == null ? new Object[0] : pathValues;
+  }
+
+  /**
+   * Set the URI of an event; it is built with the placeholder of the event.
+   */
+  public void setEventUri(UriBuilder eventUri) {
+    this.eventUri = eventUri;
+  }
+
+  /**
+   * Whether the page is of events before the placeholder; when there is no placeholder, i.e. it is negative, the
+   * storers return the latest events, which too are read as a page before.
+   */
+  public boolean isBefore() {
+    return count < 0 || NumberUtils.toLong(placeholderId) < 0;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    final Writer writer = new OutputStreamWriter(output, CHARSET);
+    try {
+      final XMLStreamWriter xmlWriter = OUTPUT_FACTORY.createXMLStreamWriter(writer);
+      writeFeed(xmlWriter);
+      xmlWriter.flush();
+      xmlWriter.close();
+    }
+    catch (XMLStreamException ex) {
+      throw new IOException(ex.getMessage());
+    }
+    writer.flush();
+  }
+
+  protected void writeFeed(XMLStreamWriter xmlWriter) throws XMLStreamException {
+    xmlWriter.writeStartDocument(CHARSET, "1.0");
+    xmlWriter.writeStartElement("feed");
+    xmlWriter.writeDefaultNamespace(ATOM_NAMESPACE);
+    writeHead(xmlWriter);
+    final int total = Math.abs(count);
+    final List<Event> newestChunk;
+    final int pageSize;
+    if (isBefore()) {
+      newestChunk = nextChunk(placeholderId, true, total);
+      pageSize = total;
+    }
+    else {
+      /*
+       * Walk the page away from the placeholder, keeping only its newest event, to write it newest first from there
+       */
+      Event newest = null;
+      int found = 0;
+      int remaining = total;
+      List<Event> chunk = nextChunk(placeholderId, false, remaining);
+      while (!chunk.isEmpty()) {
+        final int fetched = chunk.size();
+        newest = chunk.get(0);
+        found += fetched;
+        remaining -= fetched;
+        if (remaining < 1 || fetched < Math.min(chunkSize, remaining + fetched)) {
+          break;
+        }
+        chunk = nextChunk(newest.getPlaceholderId(), false, remaining);
+      }
+      newestChunk = newest == null ? new ArrayList<Event>(0) : Collections.singletonList(newest);
+      pageSize = found;
+    }
+    if (!newestChunk.isEmpty()) {
+      //The newest event of the page is known, thus the link to the page after it can be written in the head
+      writeLink(xmlWriter, REL_PREVIOUS, buildPagingUri(afterUri, newestChunk.get(0).getPlaceholderId()), null);
+    }
+    final String oldest = writeEntries(xmlWriter, newestChunk, pageSize);
+    if (oldest != null) {
+      writeLink(xmlWriter, REL_NEXT, buildPagingUri(beforeUri, oldest), null);
+    }
+    xmlWriter.writeEndElement();
+    xmlWriter.writeEndDocument();
+  }
+
+  /**
+   * Write the entries of a page newest first, starting with the given chunk and fetching the events before its
+   * oldest one chunk by chunk, till the page is written or there are no more events.
+   * @param chunk The newest events of the page, newest first
+   * @param pageSize The number of events in the page
+   * @return The placeholder ID of the oldest event written, or null if none were
+   */
+  protected String writeEntries(XMLStreamWriter xmlWriter, List<Event> chunk, int pageSize) throws
+      XMLStreamException {
+    String oldest = null;
+    int remaining = pageSize;
+    List<Event> events = chunk;
+    while (!events.isEmpty()) {
+      final int fetched = events.size();
+      for (Event event : events) {
+        writeEntry(xmlWriter, event);
+      }
+      oldest = events.get(fetched - 1).getPlaceholderId();
+      xmlWriter.flush();
+      remaining -= fetched;
+      if (remaining < 1 || (events != chunk && fetched < Math.min(chunkSize, remaining + fetched))) {
+        break;
+      }
+      events = nextChunk(oldest, true, remaining);
+    }
+    return oldest;
+  }
+
+  protected List<Event> nextChunk(String cursor, boolean before, int remaining) {
+    final int size = Math.min(chunkSize, remaining);
+    if (size < 1) {
+      return new ArrayList<Event>(0);
+    }
+    final Collection<Event> events = storer.getEvents(cursor, StringUtils.isBlank(channelId) ? null : channelId,
+                                                      before ? -1 * size : size);
+    return events == null ? new ArrayList<Event>(0) : new ArrayList<Event>(events);
+  }
+
+  protected void writeHead(XMLStreamWriter xmlWriter) throws XMLStreamException {
+    if (StringUtils.isNotBlank(id)) {
+      writeTextElement(xmlWriter, "id", id);
+    }
+    writeTextElement(xmlWriter, "title", StringUtils.defaultString(title));
+    writeTextElement(xmlWriter, "updated", formatDate(new Date()));
+    if (StringUtils.isNotBlank(author)) {
+      xmlWriter.writeStartElement("author");
+      writeTextElement(xmlWriter, "name", author);
+      xmlWriter.writeEndElement();
+    }
+    for (String[] link : links) {
+      writeLink(xmlWriter, link[0], link[1], null);
+    }
+  }
+
+  protected void writeEntry(XMLStreamWriter xmlWriter, Event event) throws XMLStreamException {
+    xmlWriter.writeStartElement("entry");
+    writeTextElement(xmlWriter, "id", event.getPlaceholderId());
+    writeTextElement(xmlWriter, "title", event.getPlaceholderId());
+    if (event.getCreationDate() != null) {
+      writeTextElement(xmlWriter, "updated", formatDate(event.getCreationDate()));
+    }
+    if (eventUri != null) {
+      writeLink(xmlWriter, REL_ALTERNATE, eventUri.build(event.getPlaceholderId()).toString(),
+                MediaType.APPLICATION_JSON);
+    }
+    xmlWriter.writeStartElement("content");
+    xmlWriter.writeAttribute("type", "text");
+    xmlWriter.writeCharacters(RenderedEventCache.getInstance().getContentAsString(event));
+    xmlWriter.writeEndElement();
+    xmlWriter.writeEndElement();
+  }
+
+  protected void writeLink(XMLStreamWriter xmlWriter, String rel, String href, String type) throws
+      XMLStreamException {
+    if (href == null) {
+      return;
+    }
+    xmlWriter.writeEmptyElement("link");
+    xmlWriter.writeAttribute("href", href);
+    xmlWriter.writeAttribute("rel", rel);
+    if (type != null) {
+      xmlWriter.writeAttribute("type", type);
+    }
+  }
+
+  protected void writeTextElement(XMLStreamWriter xmlWriter, String name, String text) throws XMLStreamException {
+    xmlWriter.writeStartElement(name);
+    xmlWriter.writeCharacters(text);
+    xmlWriter.writeEndElement();
+  }
+
+  protected String buildPagingUri(UriBuilder uriBuilder, String placeholder) {
+    if (uriBuilder == null) {
+      return null;
+    }
+    final Object[] values = new Object[pagingPathValues.length + 1];
+    System.arraycopy(pagingPathValues, 0, values, 0, pagingPathValues.length);
+    values[pagingPathValues.length] = placeholder;
+    return uriBuilder.build(values).toString();
+  }
+
+  protected static String formatDate(Date date) {
+    return DateFormatUtils.format(date, DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.getPattern(), UTC);
+  }
+}
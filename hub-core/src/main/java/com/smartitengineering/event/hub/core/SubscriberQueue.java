@@ -0,0 +1,264 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import javax.servlet.http.HttpServletResponse;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound queue of a subscriber, whose payloads are written to its response by a writer pool shared by all
+ * subscribers, so that a subscriber slow to read delays only itself. The queue is bounded both in payloads and in
+ * bytes, including the payload being written; when a subscriber falls that far behind the channel's
+ * {@link OverflowPolicy} decides what gives.
+ * @author imyousuf
+ */
+public class SubscriberQueue {
+
+  private static final int MAX_PAYLOADS_PER_TURN = 64;
+  private final EventBroadcaster broadcaster;
+  private final AtmosphereResource resource;
+  private final Executor writer;
+  private final long byteBudget;
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final FanOutStats stats;
+  private final LinkedList<EncodedPayload> payloads = new LinkedList<EncodedPayload>();
+  private EncodedPayload inFlight;
+  private long queuedBytes = 0;
+  private boolean writing = false;
+  private boolean closed = false;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Runnable drainTask = new Runnable() {
+
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  /**
+   * What to do with a subscriber's queue when a payload does not fit in it.
+   */
+  public static enum OverflowPolicy {
+
+    /**
+     * Drop as many of the oldest payloads not yet being written as it takes for the new one to fit, or all of them
+     * if it still does not fit beside the payload being written.
+     */
+    DROP_OLDEST,
+    /**
+     * Disconnect the subscriber, leaving it to reconnect and catch up from the storer.
+     */
+    DISCONNECT,
+    /**
+     * Drop all payloads not yet being written, so that the subscriber skips to the newest broadcast.
+     */
+    COALESCE;
+
+    /**
+     * Parse a policy by its name, case insensitively and with either dashes or underscores, e.g. <tt>drop-oldest</tt>.
+     * @return The policy or null if there is none by the name
+     */
+    public static OverflowPolicy parse(String name) {
+      if (name == null) {
+        return null;
+      }
+      try {
+        return valueOf(name.trim().replace('-', '_').toUpperCase());
+      }
+      catch (IllegalArgumentException ex) {
+        return null;
+      }
+    }
+  }
+
+  public SubscriberQueue(EventBroadcaster broadcaster, AtmosphereResource resource, Executor writer, long byteBudget,
+                         int capacity, OverflowPolicy overflowPolicy, FanOutStats stats) {
+    this.broadcaster = broadcaster;
+    this.resource = resource;
+    this.writer = writer;
+    this.byteBudget = byteBudget;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DISCONNECT : overflowPolicy;
+    this.stats = stats;
+  }
+
+  /**
+   * Queue a payload to be written to the subscriber.
+   * @return False if the subscriber is disconnected, whether already or for the payload not fitting in its queue
+   */
+  public boolean offer(EncodedPayload payload) {
+    final boolean schedule;
+    final boolean overflown;
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      overflown = !fits(payload) && !makeRoom(payload);
+      if (overflown) {
+        if (logger.isInfoEnabled()) {
+          logger.info("Disconnecting subscriber of " + broadcaster.getID() + " with " + payloads.size() +
+              " payloads of " + queuedBytes + " bytes not written");
+        }
+        close();
+        schedule = false;
+      }
+      else {
+        payloads.add(payload);
+        queuedBytes += payload.getLength();
+        schedule = !writing;
+        writing = true;
+      }
+    }
+    if (overflown) {
+      stats.disconnected();
+      broadcaster.disconnect(resource);
+      return false;
+    }
+    if (schedule) {
+      writer.execute(drainTask);
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a payload fits in the queue. A payload is let through to an empty queue whatever its size, else it
+   * could never be written.
+   */
+  protected boolean fits(EncodedPayload payload) {
+    return payloads.isEmpty() || (payloads.size() < capacity && queuedBytes + payload.getLength() <= byteBudget);
+  }
+
+  /**
+   * Make room for a payload as the overflow policy says.
+   * @return False if the subscriber is to be disconnected instead
+   */
+  protected boolean makeRoom(EncodedPayload payload) {
+    if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+      return false;
+    }
+    int dropped = 0;
+    final Iterator<EncodedPayload> iterator = payloads.iterator();
+    while (iterator.hasNext() && (overflowPolicy == OverflowPolicy.COALESCE || !fits(payload))) {
+      final EncodedPayload queued = iterator.next();
+      if (queued == inFlight) {
+        continue;
+      }
+      iterator.remove();
+      queuedBytes -= queued.getLength();
+      ++dropped;
+    }
+    if (overflowPolicy == OverflowPolicy.COALESCE) {
+      stats.coalesced(dropped);
+    }
+    else {
+      stats.dropped(dropped);
+    }
+    return true;
+  }
+
+  public synchronized long getQueuedBytes() {
+    return queuedBytes;
+  }
+
+  public synchronized int getQueuedPayloads() {
+    return payloads.size();
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Stop writing to the subscriber, discarding what is queued.
+   */
+  public synchronized void close() {
+    closed = true;
+    payloads.clear();
+    queuedBytes = 0;
+  }
+
+  /**
+   * Write a bounded number of payloads and flush them together, then give the thread to other subscribers if there
+   * are more.
+   */
+  protected void drain() {
+    try {
+      final OutputStream outputStream = ((HttpServletResponse) resource.getResponse()).getOutputStream();
+      for (int i = 0; i < MAX_PAYLOADS_PER_TURN; ++i) {
+        final EncodedPayload payload;
+        synchronized (this) {
+          payload = closed ? null : payloads.peek();
+          inFlight = payload;
+        }
+        if (payload == null) {
+          break;
+        }
+        payload.writeTo(outputStream);
+        synchronized (this) {
+          inFlight = null;
+          if (payloads.peek() == payload) {
+            payloads.poll();
+            queuedBytes -= payload.getLength();
+          }
+        }
+      }
+      outputStream.flush();
+    }
+    catch (IOException ex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Could not write to subscriber of " + broadcaster.getID(), ex);
+      }
+      failed();
+      return;
+    }
+    catch (RuntimeException ex) {
+      logger.warn("Could not write to subscriber of " + broadcaster.getID(), ex);
+      failed();
+      return;
+    }
+    synchronized (this) {
+      if (closed || payloads.isEmpty()) {
+        writing = false;
+        return;
+      }
+    }
+    writer.execute(drainTask);
+  }
+
+  protected void failed() {
+    synchronized (this) {
+      inFlight = null;
+      writing = false;
+      close();
+    }
+    stats.disconnected();
+    broadcaster.disconnect(resource);
+  }
+}
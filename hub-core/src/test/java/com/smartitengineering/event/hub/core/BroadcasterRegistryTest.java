@@ -0,0 +1,177 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import org.atmosphere.cpr.DefaultBroadcasterFactory;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class BroadcasterRegistryTest
+    extends TestCase {
+
+  private TestRegistry registry;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    //Broadcasters register themselves with the default factory, which Atmosphere's servlet would create
+    DefaultBroadcasterFactory.buildAndReplaceDefaultfactory(EventBroadcaster.class, null);
+    registry = new TestRegistry();
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    registry.shutdown();
+  }
+
+  public void testBroadcasterIsCreatedOnceAndLookedUpCaseInsensitively() {
+    assertNull(registry.lookupBroadcaster("quotes"));
+    assertNull(registry.getEventStreamBroadcaster("quotes", false));
+    final EventBroadcaster broadcaster = registry.getBroadcaster("quotes");
+    assertSame(broadcaster, registry.getBroadcaster("Quotes"));
+    assertSame(broadcaster, registry.lookupBroadcaster("QUOTES"));
+    assertNull(registry.getEventStreamBroadcaster("quotes", false));
+    assertEquals(1, registry.getLiveCount());
+    assertEquals(1, registry.getCreatedCount());
+  }
+
+  public void testIdleBroadcasterIsReaped()
+      throws Exception {
+    final TestBroadcaster broadcaster = (TestBroadcaster) registry.getBroadcaster("quotes");
+    final long retrievedBy = System.currentTimeMillis();
+    Thread.sleep(20);
+    assertEquals(0, registry.reap(retrievedBy));
+    assertEquals(1, registry.reap(System.currentTimeMillis() + 1));
+    assertTrue(broadcaster.destroyed);
+    assertNull(registry.lookupBroadcaster("quotes"));
+    assertEquals(0, registry.getLiveCount());
+    assertEquals(1, registry.getReapedCount());
+    assertNotSame(broadcaster, registry.getBroadcaster("quotes"));
+  }
+
+  public void testRetrievingToSubscribeDelaysReaping()
+      throws Exception {
+    registry.getBroadcaster("quotes");
+    Thread.sleep(20);
+    final long idleSince = System.currentTimeMillis();
+    Thread.sleep(20);
+    registry.getBroadcaster("quotes");
+    assertEquals(0, registry.reap(idleSince));
+  }
+
+  public void testLookingUpToDeliverDoesNotDelayReaping()
+      throws Exception {
+    final TestBroadcaster broadcaster = (TestBroadcaster) registry.getBroadcaster("quotes");
+    registry.getEventStreamBroadcaster("quotes", true);
+    Thread.sleep(20);
+    final long idleSince = System.currentTimeMillis();
+    Thread.sleep(20);
+    assertSame(broadcaster, registry.lookupBroadcaster("quotes"));
+    assertNotNull(registry.getEventStreamBroadcaster("quotes", false));
+    assertEquals(2, registry.reap(idleSince));
+    assertTrue(broadcaster.destroyed);
+  }
+
+  public void testBroadcasterBeingReapedIsNotHandedOut()
+      throws Exception {
+    final TestBroadcaster broadcaster = (TestBroadcaster) registry.getBroadcaster("quotes");
+    Thread.sleep(20);
+    final long idleSince = System.currentTimeMillis();
+    broadcaster.pause = new CountDownLatch(1);
+    final AtomicReference<EventBroadcaster> retrieved = new AtomicReference<EventBroadcaster>();
+    final Thread subscriber = new Thread() {
+
+      @Override
+      public void run() {
+        retrieved.set(registry.getBroadcaster("quotes"));
+      }
+    };
+    subscriber.start();
+    assertTrue(broadcaster.touching.await(5, TimeUnit.SECONDS));
+    final Thread reaper = new Thread() {
+
+      @Override
+      public void run() {
+        registry.reap(idleSince);
+      }
+    };
+    reaper.start();
+    reaper.join(200);
+    broadcaster.pause.countDown();
+    subscriber.join(5000);
+    reaper.join(5000);
+    assertNotNull(retrieved.get());
+    assertFalse(((TestBroadcaster) retrieved.get()).destroyed);
+    assertSame(retrieved.get(), registry.lookupBroadcaster("quotes"));
+  }
+
+  private static class TestRegistry
+      extends BroadcasterRegistry {
+
+    public TestRegistry() {
+      super(1, 1, 3600);
+    }
+
+    @Override
+    protected EventBroadcaster newBroadcaster(String id, String suffix) {
+      return suffix.length() == 0 ? new TestBroadcaster(id) : super.newBroadcaster(id, suffix);
+    }
+  }
+
+  /**
+   * Broadcaster whose marking as in use can be paused and whose destruction is only recorded.
+   */
+  private static class TestBroadcaster
+      extends EventBroadcaster {
+
+    private final CountDownLatch touching = new CountDownLatch(1);
+    private volatile CountDownLatch pause;
+    private volatile boolean destroyed;
+
+    public TestBroadcaster(String id) {
+      super(id);
+    }
+
+    @Override
+    public void touch() {
+      final CountDownLatch currentPause = pause;
+      if (currentPause != null) {
+        touching.countDown();
+        try {
+          currentPause.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      super.touch();
+    }
+
+    @Override
+    public void destroy() {
+      destroyed = true;
+    }
+  }
+}
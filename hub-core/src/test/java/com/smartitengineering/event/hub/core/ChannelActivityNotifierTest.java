@@ -0,0 +1,143 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ChannelActivityNotifierTest
+    extends TestCase {
+
+  public void testIdleChannelTimesOut() throws Exception {
+    ChannelActivityNotifier notifier = new ChannelActivityNotifier();
+    long version = notifier.getVersion("test");
+    assertEquals(version, notifier.await("test", version, 50));
+    assertFalse(notifier.isNewest("test", "1"));
+  }
+
+  public void testPublishWakesWaiter() throws Exception {
+    final ChannelActivityNotifier notifier = new ChannelActivityNotifier();
+    final long version = notifier.getVersion("Test");
+    Thread publisher = new Thread() {
+
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException ex) {
+          return;
+        }
+        notifier.published("test", "5");
+      }
+    };
+    publisher.start();
+    long newVersion = notifier.await("TEST", version, 10000);
+    publisher.join();
+    assertTrue(newVersion > version);
+    assertTrue(notifier.isNewest("test", "5"));
+    assertFalse(notifier.isNewest("test", "4"));
+  }
+
+  public void testTextBroadcastForgetsNewest() throws Exception {
+    ChannelActivityNotifier notifier = new ChannelActivityNotifier();
+    notifier.published("test", "5");
+    long version = notifier.getVersion("test");
+    notifier.published("test");
+    assertTrue(notifier.getVersion("test") > version);
+    assertFalse(notifier.isNewest("test", "5"));
+  }
+
+  public void testLostInterestForgetsNewest() throws Exception {
+    ChannelActivityNotifier notifier = new ChannelActivityNotifier();
+    notifier.published("test", "5");
+    notifier.forgetNewest("Test");
+    assertFalse(notifier.isNewest("test", "5"));
+    assertTrue(notifier.isSettled("test", "5"));
+  }
+
+  public void testSettlesRightAwayWithoutLag() throws Exception {
+    ChannelActivityNotifier notifier = new ChannelActivityNotifier(PlaceholderOrder.DESCENDING, 0);
+    assertFalse(notifier.isSettled("test", "5"));
+    notifier.sighted("test", "5");
+    assertTrue(notifier.isSettled("test", "5"));
+    assertTrue(notifier.isSettled("test", "7"));
+    assertFalse(notifier.isSettled("test", "3"));
+  }
+
+  public void testSettlesAfterLag() throws Exception {
+    final ChannelActivityNotifier notifier = new ChannelActivityNotifier(PlaceholderOrder.ASCENDING, 100);
+    final List<String> active = new ArrayList<String>();
+    notifier.addListener("test", new ChannelActivityNotifier.Listener() {
+
+      @Override
+      public void channelActive(String channelName) {
+        synchronized (active) {
+          active.add(channelName);
+          active.notifyAll();
+        }
+      }
+    });
+    try {
+      final long version = notifier.getVersion("test");
+      notifier.published("test", "5");
+      notifier.sighted("test", "4");
+      //Events are not readable till every event ordered before them is visible
+      assertEquals(version, notifier.getVersion("test"));
+      assertFalse(notifier.isSettled("test", "4"));
+      assertTrue(notifier.isNewest("test", "5"));
+      final long newVersion = notifier.await("test", version, 10000);
+      assertTrue(newVersion > version);
+      assertEquals("5", notifier.getSettledPlaceholderId("test"));
+      assertTrue(notifier.isSettled("test", "4"));
+      assertFalse(notifier.isSettled("test", "6"));
+      synchronized (active) {
+        //Listeners are told after the waiters are woken up
+        if (active.isEmpty()) {
+          active.wait(10000);
+        }
+        assertEquals(1, active.size());
+        assertEquals("test", active.get(0));
+      }
+    }
+    finally {
+      notifier.shutdown();
+    }
+  }
+
+  public void testSettledPlaceholderNeverMovesBack() throws Exception {
+    final ChannelActivityNotifier notifier = new ChannelActivityNotifier(PlaceholderOrder.ASCENDING, 50);
+    try {
+      final long version = notifier.getVersion("test");
+      notifier.published("test", "5");
+      notifier.await("test", version, 10000);
+      notifier.sighted("test", "3");
+      Thread.sleep(100);
+      assertEquals("5", notifier.getSettledPlaceholderId("test"));
+    }
+    finally {
+      notifier.shutdown();
+    }
+  }
+}
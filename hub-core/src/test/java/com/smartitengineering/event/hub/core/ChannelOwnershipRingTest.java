@@ -0,0 +1,96 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ChannelOwnershipRingTest
+    extends TestCase {
+
+  private static final int CHANNELS = 10000;
+  private static final List<String> NODES = Arrays.asList("http://hub-a:8080/hub", "http://hub-b:8080/hub",
+                                                          "http://hub-c:8080/hub", "http://hub-d:8080/hub");
+
+  public void testEmptyRing() {
+    final ChannelOwnershipRing ring = new ChannelOwnershipRing(new ArrayList<String>());
+    assertTrue(ring.isEmpty());
+    assertNull(ring.getOwner("quotes"));
+  }
+
+  public void testOwnerIsStableAndCaseInsensitive() {
+    final ChannelOwnershipRing ring = new ChannelOwnershipRing(NODES);
+    final ChannelOwnershipRing reversed = new ChannelOwnershipRing(Arrays.asList(NODES.get(3), NODES.get(2),
+                                                                                 NODES.get(1), NODES.get(0)));
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(ring.getOwner("channel-" + i), reversed.getOwner("channel-" + i));
+      assertEquals(ring.getOwner("channel-" + i), ring.getOwner("CHANNEL-" + i));
+    }
+  }
+
+  public void testEvenSpread() {
+    final Map<String, Integer> owned = getOwners(new ChannelOwnershipRing(NODES));
+    final int fairShare = CHANNELS / NODES.size();
+    for (String node : NODES) {
+      final int count = owned.get(node) == null ? 0 : owned.get(node);
+      assertTrue(node + " owns " + count, count > fairShare * 0.7 && count < fairShare * 1.3);
+    }
+  }
+
+  public void testJoiningNodeOnlyTakesItsShare() {
+    final ChannelOwnershipRing before = new ChannelOwnershipRing(NODES.subList(0, 3));
+    final ChannelOwnershipRing after = new ChannelOwnershipRing(NODES);
+    int moved = 0;
+    for (int i = 0; i < CHANNELS; ++i) {
+      final String owner = after.getOwner("channel-" + i);
+      if (!owner.equals(before.getOwner("channel-" + i))) {
+        assertEquals(NODES.get(3), owner);
+        ++moved;
+      }
+    }
+    assertTrue("Moved " + moved, moved > CHANNELS / 4 * 0.7 && moved < CHANNELS / 4 * 1.3);
+  }
+
+  public void testLeavingNodeOnlyGivesAwayItsShare() {
+    final ChannelOwnershipRing before = new ChannelOwnershipRing(NODES);
+    final ChannelOwnershipRing after = new ChannelOwnershipRing(NODES.subList(1, 4));
+    for (int i = 0; i < CHANNELS; ++i) {
+      final String owner = before.getOwner("channel-" + i);
+      if (!owner.equals(NODES.get(0))) {
+        assertEquals(owner, after.getOwner("channel-" + i));
+      }
+    }
+  }
+
+  private Map<String, Integer> getOwners(ChannelOwnershipRing ring) {
+    final Map<String, Integer> owned = new HashMap<String, Integer>();
+    for (int i = 0; i < CHANNELS; ++i) {
+      final String owner = ring.getOwner("channel-" + i);
+      owned.put(owner, owned.get(owner) == null ? 1 : owned.get(owner) + 1);
+    }
+    return owned;
+  }
+}
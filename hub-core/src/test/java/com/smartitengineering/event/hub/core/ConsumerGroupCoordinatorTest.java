@@ -0,0 +1,193 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ConsumerGroupCoordinatorTest
+    extends TestCase {
+
+  private static final long LAG_IN_MILLIS = 300;
+  private ChannelActivityNotifier notifier;
+  private FakeStorer storer;
+  private ConsumerGroupCoordinator coordinator;
+
+  @Override
+  protected void setUp() throws Exception {
+    notifier = new ChannelActivityNotifier(PlaceholderOrder.ASCENDING, LAG_IN_MILLIS);
+    ChannelActivityNotifier.setInstance(notifier);
+    storer = new FakeStorer();
+    final HubPersistentStorer proxy = storer.newProxy();
+    coordinator = new ConsumerGroupCoordinator() {
+
+      @Override
+      protected ConsumerGroup newGroup(String channelName, String groupName) {
+        return new ConsumerGroup(channelName, groupName) {
+
+          @Override
+          protected HubPersistentStorer getStorer() {
+            return proxy;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ChannelActivityNotifier.setInstance(new ChannelActivityNotifier());
+  }
+
+  /*
+   * Node A allocated the ID block from 1 and node B the one from 101; B's event becomes visible before A's does
+   */
+  public void testEventsOfIdBlocksAreNotSkipped() throws Exception {
+    storer.create("101");
+    notifier.published("test", "101");
+    assertNull(coordinator.fetch("test", "group", 10, 0));
+    storer.create("1");
+    ConsumerLease lease = coordinator.fetch("test", "group", 10, 10000);
+    assertNotNull(lease);
+    assertEquals(Arrays.asList("1", "101"), ids(lease.getEvents()));
+    assertTrue(coordinator.commit("test", "group", Collections.singleton(lease.getId())).isEmpty());
+    assertEquals("101", coordinator.getCommittedOffset("test", "group"));
+    //The blocks expire within the lag, so the next events are of new blocks; B's becomes visible first again
+    storer.create("301");
+    notifier.published("test", "301");
+    storer.create("201");
+    lease = coordinator.fetch("test", "group", 10, 10000);
+    assertNotNull(lease);
+    assertEquals(Arrays.asList("201", "301"), ids(lease.getEvents()));
+  }
+
+  public void testSettledEventsAreHandedOutRightAway() throws Exception {
+    storer.create("1");
+    notifier.published("test", "1");
+    Thread.sleep(LAG_IN_MILLIS * 2);
+    //Read before being broadcast, hence not sighted till read
+    storer.create("101");
+    ConsumerLease lease = coordinator.fetch("test", "group", 10, 0);
+    assertNotNull(lease);
+    assertEquals(Arrays.asList("1"), ids(lease.getEvents()));
+    lease = coordinator.fetch("test", "group", 10, 10000);
+    assertNotNull(lease);
+    assertEquals(Arrays.asList("101"), ids(lease.getEvents()));
+  }
+
+  public void testIdleGroupsAreReapedOnceNothingIsLeftInMemory() throws Exception {
+    storer.create("1");
+    notifier.published("test", "1");
+    Thread.sleep(LAG_IN_MILLIS * 2);
+    final ConsumerLease lease = coordinator.fetch("test", "group", 10, 0);
+    assertNotNull(lease);
+    assertEquals(1, coordinator.getGroupCount());
+    assertEquals(0, coordinator.reap(System.currentTimeMillis() - 60000));
+    assertEquals(0, coordinator.reap(System.currentTimeMillis() + 1));
+    assertTrue(coordinator.commit("test", "group", Collections.singleton(lease.getId())).isEmpty());
+    assertEquals(1, coordinator.reap(System.currentTimeMillis() + 1));
+    assertEquals(0, coordinator.getGroupCount());
+    //Loaded again from the offset committed
+    assertEquals("1", coordinator.getCommittedOffset("test", "group"));
+    assertNull(coordinator.fetch("test", "group", 10, 0));
+  }
+
+  private static List<String> ids(List<Event> events) {
+    final List<String> ids = new ArrayList<String>();
+    for (Event event : events) {
+      ids.add(event.getPlaceholderId());
+    }
+    return ids;
+  }
+
+  /**
+   * Storer of a single channel streaming its visible events in the order of their placeholders and holding the
+   * offsets committed.
+   */
+  private static class FakeStorer
+      implements InvocationHandler {
+
+    private final TreeMap<Long, Event> events = new TreeMap<Long, Event>();
+    private final List<ConsumerOffset> offsets = new ArrayList<ConsumerOffset>();
+
+    public synchronized void create(String placeholderId) {
+      events.put(Long.valueOf(placeholderId), APIFactory.getEventBuilder().placeholder(placeholderId).uuid(
+          placeholderId).eventContent(APIFactory.getContent("text/plain", placeholderId.getBytes())).build());
+    }
+
+    public HubPersistentStorer newProxy() {
+      return (HubPersistentStorer) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                          new Class[]{HubPersistentStorer.class}, this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().equals("streamEvents")) {
+        final String placeholderId = (String) args[0];
+        final Collection<Event> after = placeholderId == null ? events.values() : events.tailMap(
+            Long.valueOf(placeholderId), false).values();
+        final Iterator<Event> iterator = new ArrayList<Event>(after).iterator();
+        return new CloseableIterator<Event>() {
+
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          public Event next() {
+            return iterator.next();
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+
+          public void close() {
+          }
+        };
+      }
+      if (method.getName().equals("getConsumerOffset")) {
+        return offsets.isEmpty() ? null : offsets.get(offsets.size() - 1);
+      }
+      if (method.getName().equals("commitConsumerOffsets")) {
+        offsets.addAll((Collection<ConsumerOffset>) args[0]);
+        return null;
+      }
+      throw new UnsupportedOperationException(method.getName());
+    }
+  }
+}
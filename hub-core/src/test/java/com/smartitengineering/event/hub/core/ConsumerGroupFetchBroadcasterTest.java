@@ -0,0 +1,161 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.common.Constants;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.memory.MemoryPersistentStorer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.servlet.http.HttpServletResponse;
+import junit.framework.TestCase;
+import org.atmosphere.cpr.DefaultBroadcasterFactory;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ConsumerGroupFetchBroadcasterTest
+    extends TestCase {
+
+  private static final String CHANNEL = "fetched";
+  private MemoryPersistentStorer storer;
+  private Channel channel;
+  private ExecutorService threads;
+  private ScheduledExecutorService scheduler;
+  private ConsumerGroupFetchBroadcaster broadcaster;
+  private long leaseTimeoutInSec;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    DefaultBroadcasterFactory.buildAndReplaceDefaultfactory(EventBroadcaster.class, null);
+    ChannelActivityNotifier.setInstance(new ChannelActivityNotifier());
+    storer = new MemoryPersistentStorer();
+    channel = APIFactory.getChannelBuilder(CHANNEL).build();
+    storer.create(channel);
+    ConsumerGroupCoordinator.setInstance(new ConsumerGroupCoordinator() {
+
+      @Override
+      protected ConsumerGroup newGroup(String channelName, String groupName) {
+        return new ConsumerGroup(channelName, groupName) {
+
+          @Override
+          protected HubPersistentStorer getStorer() {
+            return storer;
+          }
+        };
+      }
+    });
+    threads = Executors.newFixedThreadPool(2);
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    broadcaster = new ConsumerGroupFetchBroadcaster(CHANNEL + ConsumerGroupFetchBroadcaster.ID_SUFFIX);
+    broadcaster.setDispatcher(new SerialExecutor(threads));
+    broadcaster.setWriter(threads);
+    broadcaster.setScheduler(scheduler);
+    leaseTimeoutInSec = ConsumerGroupSettings.getLeaseTimeoutInSec();
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    ConsumerGroupSettings.setLeaseTimeoutInSec(leaseTimeoutInSec);
+    broadcaster.destroy();
+    scheduler.shutdownNow();
+    threads.shutdownNow();
+    ConsumerGroupCoordinator.setInstance(new ConsumerGroupCoordinator());
+    ChannelActivityNotifier.setInstance(new ChannelActivityNotifier());
+  }
+
+  public void testFetchIsSuspendedTillEventsArePublished()
+      throws Exception {
+    final FakeAtmosphereResource fetch = fetch(5000);
+    assertFalse(fetch.awaitResumed(200));
+    assertEquals(1, broadcaster.getFetchCount());
+    publish("first");
+    assertTrue(fetch.awaitResumed(5000));
+    assertEquals(HttpServletResponse.SC_OK, fetch.getStatus());
+    assertNotNull(fetch.getHeader(Constants.CONSUMER_LEASE_HEADER_NAME));
+    assertTrue(fetch.getBody(), fetch.getBody().contains("first"));
+    assertEquals(0, broadcaster.getFetchCount());
+  }
+
+  public void testFetchWithEventsIsAnsweredRightAway()
+      throws Exception {
+    publish("first");
+    final FakeAtmosphereResource fetch = fetch(5000);
+    assertTrue(fetch.awaitResumed(1000));
+    assertTrue(fetch.getBody(), fetch.getBody().contains("first"));
+  }
+
+  public void testFetchNotToWaitIsAnsweredRightAway()
+      throws Exception {
+    final FakeAtmosphereResource fetch = fetch(0);
+    assertTrue(fetch.awaitResumed(1000));
+    assertEquals(HttpServletResponse.SC_NO_CONTENT, fetch.getStatus());
+    assertNull(fetch.getHeader(Constants.CONSUMER_LEASE_HEADER_NAME));
+  }
+
+  public void testFetchIsAnsweredWithoutEventsOnceItsWaitIsOver()
+      throws Exception {
+    final long start = System.currentTimeMillis();
+    final FakeAtmosphereResource fetch = fetch(300);
+    assertTrue(fetch.awaitResumed(5000));
+    assertTrue(System.currentTimeMillis() - start >= 300);
+    assertEquals(HttpServletResponse.SC_NO_CONTENT, fetch.getStatus());
+  }
+
+  public void testEventsOfExpiredLeaseAreHandedToWaitingFetch()
+      throws Exception {
+    ConsumerGroupSettings.setLeaseTimeoutInSec(1);
+    publish("first");
+    assertNotNull(ConsumerGroupCoordinator.getInstance().fetch(CHANNEL, "group", 10, 0));
+    final FakeAtmosphereResource fetch = fetch(5000);
+    assertFalse(fetch.awaitResumed(200));
+    assertTrue(fetch.awaitResumed(5000));
+    assertTrue(fetch.getBody(), fetch.getBody().contains("first"));
+  }
+
+  public void testFetchOfSubscriberGoneIsDropped()
+      throws Exception {
+    final FakeAtmosphereResource fetch = fetch(5000);
+    assertEquals(1, broadcaster.getFetchCount());
+    broadcaster.removeAtmosphereResource(fetch.getResource());
+    assertEquals(0, broadcaster.getFetchCount());
+    publish("first");
+    assertFalse(fetch.awaitResumed(200));
+  }
+
+  private FakeAtmosphereResource fetch(long waitInMillis) {
+    final FakeAtmosphereResource fetch = new FakeAtmosphereResource();
+    fetch.setAttribute(ConsumerGroupFetchBroadcaster.FETCH_ATTRIBUTE, new ConsumerGroupFetch(CHANNEL, "group", 10,
+                                                                                             waitInMillis));
+    broadcaster.addAtmosphereResource(fetch.getResource());
+    return fetch;
+  }
+
+  private void publish(String content) {
+    final Event event = storer.create(channel, APIFactory.getEventBuilder().eventContent(APIFactory.getContent(
+        "text/plain", content.getBytes())).build());
+    ChannelActivityNotifier.getInstance().published(CHANNEL, event.getPlaceholderId());
+  }
+}
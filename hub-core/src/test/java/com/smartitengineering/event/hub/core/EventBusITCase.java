@@ -0,0 +1,259 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Runs the event buses of several nodes in the same JVM, over a transport delivering in memory, and checks that the
+ * events are only forwarded to the nodes with subscribers.
+ * @author imyousuf
+ */
+public class EventBusITCase
+    extends TestCase {
+
+  private InJvmCluster cluster;
+  private List<CountingEventBus> nodes;
+
+  @Override
+  protected void setUp() throws Exception {
+    cluster = new InJvmCluster();
+    nodes = new ArrayList<CountingEventBus>();
+  }
+
+  public void testEventsReachOnlySubscribedNodes() throws Exception {
+    startNodes(5);
+    nodes.get(1).addInterest("test");
+    nodes.get(2).addInterest("Test");
+    publish(nodes.get(0), "test", 10);
+    assertEquals(20, cluster.getEventMessages());
+    assertEquals(10, nodes.get(0).getDelivered());
+    assertEquals(10, nodes.get(1).getDelivered());
+    assertEquals(10, nodes.get(2).getDelivered());
+    assertEquals(0, nodes.get(3).getDelivered());
+    assertEquals(0, nodes.get(4).getDelivered());
+    assertEquals(0, cluster.getEventMessages("other"));
+  }
+
+  public void testMessagesScaleWithSubscribersNotNodes() throws Exception {
+    startNodes(3);
+    nodes.get(1).addInterest("test");
+    publish(nodes.get(0), "test", 10);
+    final int messagesWithThreeNodes = cluster.getEventMessages();
+    startNodes(7);
+    publish(nodes.get(0), "test", 10);
+    assertEquals(messagesWithThreeNodes, cluster.getEventMessages() - messagesWithThreeNodes);
+    nodes.get(8).addInterest("test");
+    publish(nodes.get(0), "test", 10);
+    assertEquals(messagesWithThreeNodes * 2 + 20, cluster.getEventMessages());
+  }
+
+  public void testInterestIsCountedPerNode() throws Exception {
+    startNodes(2);
+    nodes.get(1).addInterest("test");
+    nodes.get(1).addInterest("test");
+    nodes.get(1).removeInterest("test");
+    publish(nodes.get(0), "test", 1);
+    assertEquals(1, cluster.getEventMessages());
+    nodes.get(1).removeInterest("test");
+    publish(nodes.get(0), "test", 1);
+    assertEquals(1, cluster.getEventMessages());
+    assertTrue(nodes.get(0).getInterestedNodes("test").isEmpty());
+  }
+
+  public void testJoiningNodeLearnsSubscriptions() throws Exception {
+    startNodes(2);
+    nodes.get(1).addInterest("test");
+    startNodes(1);
+    publish(nodes.get(2), "test", 3);
+    assertEquals(3, nodes.get(1).getDelivered());
+    assertEquals(3, cluster.getEventMessages());
+  }
+
+  public void testLeavingNodeIsForgotten() throws Exception {
+    startNodes(3);
+    nodes.get(1).addInterest("test");
+    nodes.get(2).addInterest("test");
+    nodes.get(2).stop();
+    publish(nodes.get(0), "test", 4);
+    assertEquals(4, cluster.getEventMessages());
+    assertEquals(Collections.singleton(cluster.getNodeId(1)), nodes.get(0).getInterestedNodes("test"));
+  }
+
+  protected void startNodes(int count) throws Exception {
+    for (int i = 0; i < count; ++i) {
+      final CountingEventBus bus = new CountingEventBus(cluster.createTransport());
+      nodes.add(bus);
+      bus.start();
+    }
+  }
+
+  protected void publish(EventBus bus, String channelName, int batches) {
+    for (int i = 0; i < batches; ++i) {
+      final String id = String.valueOf(i);
+      final EventBroadcastMessage.Item item = new EventBroadcastMessage.Item(id, id, "text/plain", new byte[]{'e'},
+                                                                             null);
+      bus.publish(new EventBroadcastMessage(channelName, Collections.singletonList(item)));
+    }
+  }
+
+  /**
+   * Bus counting the events delivered to its node instead of broadcasting them.
+   */
+  private static class CountingEventBus
+      extends EventBus {
+
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    CountingEventBus(ClusterTransport transport) {
+      super(transport);
+    }
+
+    @Override
+    protected void deliverLocally(EventBroadcastMessage message) {
+      delivered.addAndGet(message.getItems().size());
+    }
+
+    int getDelivered() {
+      return delivered.get();
+    }
+  }
+
+  /**
+   * Nodes in the same JVM, delivering messages synchronously and counting those carrying events.
+   */
+  private static class InJvmCluster {
+
+    private final Map<String, InJvmTransport> members = new LinkedHashMap<String, InJvmTransport>();
+    private final Map<String, AtomicInteger> eventMessages = new LinkedHashMap<String, AtomicInteger>();
+    private int nextId = 0;
+
+    InJvmTransport createTransport() {
+      return new InJvmTransport(this, "node-" + nextId++);
+    }
+
+    String getNodeId(int index) {
+      return "node-" + index;
+    }
+
+    synchronized void join(InJvmTransport transport) {
+      members.put(transport.getLocalNode(), transport);
+      viewChanged();
+    }
+
+    synchronized void leave(InJvmTransport transport) {
+      members.remove(transport.getLocalNode());
+      viewChanged();
+    }
+
+    protected void viewChanged() {
+      final LinkedHashSet<String> view = new LinkedHashSet<String>(members.keySet());
+      for (InJvmTransport member : new ArrayList<InJvmTransport>(members.values())) {
+        member.receiver.membershipChanged(view);
+      }
+    }
+
+    void deliver(String from, String to, Serializable message) {
+      final InJvmTransport target;
+      synchronized (this) {
+        target = members.get(to);
+        if (target != null && message instanceof EventBusMessage && ((EventBusMessage) message).getType() ==
+            EventBusMessage.Type.EVENTS) {
+          final String channelName = ((EventBusMessage) message).getEvents().getChannelName();
+          AtomicInteger count = eventMessages.get(channelName);
+          if (count == null) {
+            count = new AtomicInteger();
+            eventMessages.put(channelName, count);
+          }
+          count.incrementAndGet();
+        }
+      }
+      if (target != null) {
+        target.receiver.received(from, message);
+      }
+    }
+
+    synchronized List<String> getOtherMembers(String node) {
+      final List<String> others = new ArrayList<String>(members.keySet());
+      others.remove(node);
+      return others;
+    }
+
+    synchronized int getEventMessages() {
+      int total = 0;
+      for (AtomicInteger count : eventMessages.values()) {
+        total += count.get();
+      }
+      return total;
+    }
+
+    synchronized int getEventMessages(String channelName) {
+      final AtomicInteger count = eventMessages.get(channelName);
+      return count == null ? 0 : count.get();
+    }
+  }
+
+  private static class InJvmTransport
+      implements ClusterTransport {
+
+    private final InJvmCluster cluster;
+    private final String id;
+    private Receiver receiver;
+
+    InJvmTransport(InJvmCluster cluster, String id) {
+      this.cluster = cluster;
+      this.id = id;
+    }
+
+    @Override
+    public void start(Receiver receiver) throws Exception {
+      this.receiver = receiver;
+      cluster.join(this);
+    }
+
+    @Override
+    public void stop() {
+      cluster.leave(this);
+    }
+
+    @Override
+    public String getLocalNode() {
+      return id;
+    }
+
+    @Override
+    public void send(String node, Serializable message) throws Exception {
+      cluster.deliver(id, node, message);
+    }
+
+    @Override
+    public void sendToAll(Serializable message) throws Exception {
+      for (String node : cluster.getOtherMembers(id)) {
+        cluster.deliver(id, node, message);
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class EventStreamCursorTest
+    extends TestCase {
+
+  public void testNewSubscriberIsLive() {
+    EventStreamCursor cursor = new EventStreamCursor("test", " ", PlaceholderOrder.ASCENDING);
+    assertFalse(cursor.isReplaying());
+    assertEquals(ids("1", "2"), ids(cursor.accept(items("1", "2"))));
+  }
+
+  public void testHandOverWithoutGapOrDuplicate() {
+    EventStreamCursor cursor = new EventStreamCursor("test", "10", PlaceholderOrder.ASCENDING);
+    assertTrue(cursor.isReplaying());
+    //Broadcast after joining, while the missed events are being read; 12 is persisted before the read started
+    assertTrue(cursor.accept(items("12")).isEmpty());
+    cursor.replayed("11");
+    cursor.replayed("12");
+    assertTrue(cursor.accept(items("13")).isEmpty());
+    assertEquals(ids("13"), ids(cursor.replayDone()));
+    assertFalse(cursor.isReplaying());
+    //Replayed events broadcast after the hand over are skipped as well
+    assertEquals(ids("14"), ids(cursor.accept(items("11", "14"))));
+    assertEquals(ids("15"), ids(cursor.accept(items("11", "15"))));
+  }
+
+  public void testSkipsEverythingUpToLastReplayed() {
+    EventStreamCursor cursor = new EventStreamCursor("test", "0", PlaceholderOrder.ASCENDING);
+    for (int i = 1; i <= 5000; ++i) {
+      cursor.replayed(String.valueOf(i));
+    }
+    assertTrue(cursor.replayDone().isEmpty());
+    assertEquals(ids("5001"), ids(cursor.accept(items("1", "2", "5000", "5001"))));
+  }
+
+  public void testResumesReplayAfterLastReplayed() {
+    EventStreamCursor cursor = new EventStreamCursor("test", "30", PlaceholderOrder.DESCENDING);
+    assertEquals("30", cursor.getReplayPosition());
+    cursor.replayed("29");
+    cursor.replayed("28");
+    assertEquals("28", cursor.getReplayPosition());
+    //Broadcast while waiting for 27 to settle, so the replay is handed over
+    assertTrue(cursor.accept(items("28", "27")).isEmpty());
+    assertTrue(cursor.isHeldBack("27"));
+    assertFalse(cursor.isHeldBack("26"));
+    assertEquals(ids("27"), ids(cursor.replayDone()));
+  }
+
+  public void testEventStreamFrames() {
+    EventBroadcastMessage.Item item = new EventBroadcastMessage.Item("7", "uuid", "text/plain", new byte[]{'a', '\r',
+                                                                                                          '\n', 'b'},
+                                                                     null);
+    assertEquals("id: 7\ndata: a\ndata: b\n\n", item.appendEventStreamFrame(new StringBuilder()).toString());
+  }
+
+  private static List<EventBroadcastMessage.Item> items(String... placeholderIds) {
+    List<EventBroadcastMessage.Item> items = new ArrayList<EventBroadcastMessage.Item>();
+    for (String placeholderId : placeholderIds) {
+      items.add(new EventBroadcastMessage.Item(placeholderId, placeholderId, "text/plain", new byte[0], null));
+    }
+    return items;
+  }
+
+  private static List<String> ids(String... placeholderIds) {
+    return Arrays.asList(placeholderIds);
+  }
+
+  private static List<String> ids(List<EventBroadcastMessage.Item> items) {
+    List<String> ids = new ArrayList<String>();
+    for (EventBroadcastMessage.Item item : items) {
+      ids.add(item.getPlaceholderId());
+    }
+    return ids;
+  }
+}
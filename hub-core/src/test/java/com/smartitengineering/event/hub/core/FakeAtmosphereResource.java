@@ -0,0 +1,250 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+
+/**
+ * A suspended request and its response, recording what is written to the response and whether it was resumed.
+ * Writes may be held back to keep a payload being written, or made to fail.
+ * @author imyousuf
+ */
+class FakeAtmosphereResource {
+
+  private final Map<String, Object> attributes = new HashMap<String, Object>();
+  private final Map<String, String> headers = new HashMap<String, String>();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private final CountDownLatch resumed = new CountDownLatch(1);
+  private volatile CountDownLatch writeGate;
+  private final CountDownLatch writeBlocked = new CountDownLatch(1);
+  private volatile boolean failWrites;
+  private volatile int status = HttpServletResponse.SC_OK;
+  private volatile Object message;
+  private final AtmosphereResource resource;
+  private final AtmosphereResourceEvent event;
+  private final HttpServletRequest request;
+  private final HttpServletResponse response;
+  private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+    @Override
+    public void write(int b)
+        throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length)
+        throws IOException {
+      final CountDownLatch gate = writeGate;
+      if (gate != null) {
+        writeBlocked.countDown();
+        try {
+          gate.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failWrites) {
+        throw new IOException("Failing a write");
+      }
+      synchronized (body) {
+        body.write(bytes, offset, length);
+      }
+    }
+  };
+
+  public FakeAtmosphereResource() {
+    request = (HttpServletRequest) newProxy(HttpServletRequest.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args)
+          throws Throwable {
+        if (method.getName().equals("getAttribute")) {
+          return attributes.get((String) args[0]);
+        }
+        if (method.getName().equals("setAttribute")) {
+          attributes.put((String) args[0], args[1]);
+          return null;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+    response = (HttpServletResponse) newProxy(HttpServletResponse.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args)
+          throws Throwable {
+        if (method.getName().equals("getOutputStream")) {
+          return outputStream;
+        }
+        if (method.getName().equals("setStatus")) {
+          status = ((Integer) args[0]).intValue();
+          return null;
+        }
+        if (method.getName().equals("setHeader")) {
+          headers.put((String) args[0], (String) args[1]);
+          return null;
+        }
+        if (method.getName().equals("setContentType")) {
+          headers.put("Content-Type", (String) args[0]);
+          return null;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+    event = (AtmosphereResourceEvent) newProxy(AtmosphereResourceEvent.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args)
+          throws Throwable {
+        if (method.getName().equals("getMessage")) {
+          return message;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+    resource = (AtmosphereResource) newProxy(AtmosphereResource.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args)
+          throws Throwable {
+        if (method.getName().equals("getRequest")) {
+          return request;
+        }
+        if (method.getName().equals("getResponse")) {
+          return response;
+        }
+        if (method.getName().equals("getAtmosphereResourceEvent")) {
+          return event;
+        }
+        if (method.getName().equals("resume")) {
+          resumed.countDown();
+          return null;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+  }
+
+  public AtmosphereResource getResource() {
+    return resource;
+  }
+
+  public AtmosphereResourceEvent getEvent() {
+    return event;
+  }
+
+  /**
+   * Set the message of the resource's event, i.e. the one being broadcast to it.
+   */
+  public void setMessage(Object message) {
+    this.message = message;
+  }
+
+  public void setAttribute(String name, Object value) {
+    attributes.put(name, value);
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public String getBody() {
+    synchronized (body) {
+      return body.toString();
+    }
+  }
+
+  /**
+   * Hold back writes till {@link #releaseWrites()}.
+   */
+  public void holdWrites() {
+    writeGate = new CountDownLatch(1);
+  }
+
+  public boolean awaitWriteHeld()
+      throws InterruptedException {
+    return writeBlocked.await(10, TimeUnit.SECONDS);
+  }
+
+  public void releaseWrites() {
+    final CountDownLatch gate = writeGate;
+    writeGate = null;
+    if (gate != null) {
+      gate.countDown();
+    }
+  }
+
+  public void failWrites() {
+    failWrites = true;
+  }
+
+  public boolean isResumed() {
+    return resumed.getCount() == 0;
+  }
+
+  public boolean awaitResumed(long timeoutInMillis)
+      throws InterruptedException {
+    return resumed.await(timeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static Object newProxy(Class<?> type, InvocationHandler handler) {
+    return Proxy.newProxyInstance(FakeAtmosphereResource.class.getClassLoader(), new Class[]{type}, handler);
+  }
+
+  private static Object defaultValue(Object proxy, Method method, Object[] args) {
+    if (method.getName().equals("equals")) {
+      return Boolean.valueOf(proxy == args[0]);
+    }
+    if (method.getName().equals("hashCode")) {
+      return Integer.valueOf(System.identityHashCode(proxy));
+    }
+    if (method.getName().equals("toString")) {
+      return "Fake " + method.getDeclaringClass().getSimpleName();
+    }
+    final Class<?> type = method.getReturnType();
+    if (type.equals(boolean.class)) {
+      return Boolean.FALSE;
+    }
+    if (type.equals(int.class)) {
+      return Integer.valueOf(0);
+    }
+    if (type.equals(long.class)) {
+      return Long.valueOf(0);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.core.SubscriberQueue.OverflowPolicy;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class FanOutSettingsTest
+    extends TestCase {
+
+  @Override
+  protected void tearDown() throws Exception {
+    FanOutSettings.setOverflowPolicies(null);
+    FanOutSettings.setDefaultOverflowPolicy(null);
+  }
+
+  public void testParsePolicy() {
+    assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse(" drop-oldest "));
+    assertEquals(OverflowPolicy.COALESCE, OverflowPolicy.parse("Coalesce"));
+    assertEquals(OverflowPolicy.DISCONNECT, OverflowPolicy.parse("DISCONNECT"));
+    assertNull(OverflowPolicy.parse("block"));
+    assertNull(OverflowPolicy.parse(null));
+  }
+
+  public void testPerChannelPolicies() {
+    FanOutSettings.setDefaultOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+    FanOutSettings.setOverflowPolicies("Quotes=coalesce, audit = disconnect,bad=block,=coalesce");
+    assertEquals(OverflowPolicy.COALESCE, FanOutSettings.getOverflowPolicy("quotes"));
+    assertEquals(OverflowPolicy.DISCONNECT, FanOutSettings.getOverflowPolicy("AUDIT"));
+    assertEquals(OverflowPolicy.DROP_OLDEST, FanOutSettings.getOverflowPolicy("bad"));
+    assertEquals(OverflowPolicy.DROP_OLDEST, FanOutSettings.getOverflowPolicy("other"));
+    FanOutSettings.setOverflowPolicy("quotes", null);
+    assertEquals(OverflowPolicy.DROP_OLDEST, FanOutSettings.getOverflowPolicy("quotes"));
+    FanOutSettings.setDefaultOverflowPolicy(null);
+    assertEquals(FanOutSettings.DEFAULT_OVERFLOW_POLICY, FanOutSettings.getOverflowPolicy("other"));
+  }
+}
@@ -0,0 +1,200 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.common.RenderedEventCache;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import javax.ws.rs.core.MediaType;
+import org.apache.abdera.Abdera;
+import org.apache.abdera.factory.Factory;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.model.Link;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Micro benchmark comparing the peak heap and latency of writing a page of events as an Abdera feed built in memory,
+ * the way the feed resources do for small pages, against streaming it with {@link StreamingEventFeed}. Events come
+ * from an in memory storer stub and the rendered event cache is disabled so that every run renders every event. It is
+ * not part of the test suite.
+ * <p>
+ * Usage: <tt>FeedRenderingBenchmark [content size in bytes, default 512] [runs per page size, default 20]</tt>
+ * @author imyousuf
+ */
+public class FeedRenderingBenchmark {
+
+  private static final int[] PAGE_SIZES = new int[]{10, 1000, 10000};
+  private static final long FIRST_PLACEHOLDER = 1000000;
+
+  public static void main(String[] args) throws Exception {
+    final int contentSize = args.length > 0 ? NumberUtils.toInt(args[0], 512) : 512;
+    final int runs = args.length > 1 ? NumberUtils.toInt(args[1], 20) : 20;
+    RenderedEventCache.setInstance(new RenderedEventCache(1, 1));
+    final HubPersistentStorer storer = newStorer(StringUtils.repeat("a", contentSize));
+    final Factory factory = new Abdera().getFactory();
+    for (final int pageSize : PAGE_SIZES) {
+      //Warm up both paths before measuring
+      for (int i = 0; i < runs; ++i) {
+        writeDom(factory, storer, pageSize, new CountingOutputStream());
+        writeStream(storer, pageSize, new CountingOutputStream());
+      }
+      measure("dom", pageSize, runs, new Runnable() {
+
+        public void run() {
+          writeDom(factory, storer, pageSize, new CountingOutputStream());
+        }
+      });
+      measure("stream", pageSize, runs, new Runnable() {
+
+        public void run() {
+          writeStream(storer, pageSize, new CountingOutputStream());
+        }
+      });
+    }
+  }
+
+  protected static void measure(String path, int pageSize, int runs, Runnable writer) {
+    long peak = 0;
+    long nanos = 0;
+    for (int i = 0; i < runs; ++i) {
+      System.gc();
+      final long baseline = resetPeakHeap();
+      final long start = System.nanoTime();
+      writer.run();
+      nanos += System.nanoTime() - start;
+      peak = Math.max(peak, getPeakHeap() - baseline);
+    }
+    System.out.println(path + " count=" + pageSize + ": peak heap growth " + (peak / 1024) + "KB, " + (nanos / runs /
+                                                                                                   1000) + "us/page");
+  }
+
+  protected static void writeDom(Factory factory, HubPersistentStorer storer, int pageSize, OutputStream output) {
+    try {
+      final Feed feed = factory.newFeed();
+      feed.setTitle("Events");
+      feed.setUpdated(new Date());
+      for (Event event : storer.getEvents("-1", null, -1 * pageSize)) {
+        Entry entry = factory.newEntry();
+        entry.setId(event.getPlaceholderId());
+        entry.setTitle(event.getPlaceholderId());
+        entry.setContent(RenderedEventCache.getInstance().getContentAsString(event));
+        entry.setUpdated(event.getCreationDate());
+        Link link = factory.newLink();
+        link.setHref("/event/" + event.getPlaceholderId());
+        link.setRel(Link.REL_ALTERNATE);
+        link.setMimeType(MediaType.APPLICATION_JSON);
+        entry.addLink(link);
+        feed.addEntry(entry);
+      }
+      feed.writeTo(output);
+    }
+    catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  protected static void writeStream(HubPersistentStorer storer, int pageSize, OutputStream output) {
+    try {
+      StreamingEventFeed feed = new StreamingEventFeed(storer, null, "-1", -1 * pageSize,
+                                                       FeedSettings.DEFAULT_STREAMING_CHUNK_SIZE);
+      feed.setTitle("Events");
+      feed.write(output);
+    }
+    catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  protected static long resetPeakHeap() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        used += pool.getUsage().getUsed();
+      }
+    }
+    return used;
+  }
+
+  protected static long getPeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /**
+   * Storer stub returning events counting down from {@link #FIRST_PLACEHOLDER} for pages before a placeholder.
+   */
+  protected static HubPersistentStorer newStorer(final String content) {
+    return (HubPersistentStorer) Proxy.newProxyInstance(HubPersistentStorer.class.getClassLoader(), new Class[]{
+          HubPersistentStorer.class}, new InvocationHandler() {
+
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (!method.getName().equals("getEvents")) {
+          throw new UnsupportedOperationException(method.getName());
+        }
+        final long placeholder = NumberUtils.toLong((String) args[0]);
+        final long start = placeholder < 0 ? FIRST_PLACEHOLDER : placeholder - 1;
+        final int count = Math.abs(((Integer) args[2]).intValue());
+        final LinkedHashSet<Event> events = new LinkedHashSet<Event>();
+        final Date now = new Date();
+        for (long id = start; id > start - count && id > 0; --id) {
+          events.add(APIFactory.getEventBuilder().placeholder(String.valueOf(id)).uuid(String.valueOf(id)).
+              creationDate(now).eventContent(APIFactory.getContent(MediaType.TEXT_PLAIN, content.getBytes("UTF-8"))).
+              build());
+        }
+        return events;
+      }
+    });
+  }
+
+  protected static class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+      ++count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+}
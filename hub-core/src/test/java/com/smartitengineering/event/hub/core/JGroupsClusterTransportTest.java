@@ -0,0 +1,137 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.io.Serializable;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Joins JGroups channels over the in-VM shared loopback, so that the transport is tested without a network.
+ * @author imyousuf
+ */
+public class JGroupsClusterTransportTest
+    extends TestCase {
+
+  private static final String CONFIG = "SHARED_LOOPBACK:PING(timeout=500;num_initial_members=2):pbcast.NAKACK:" +
+      "UNICAST:pbcast.STABLE:pbcast.GMS(print_local_addr=false;join_timeout=1000)";
+  private JGroupsClusterTransport first;
+  private JGroupsClusterTransport second;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    final String clusterName = "transport-test-" + System.nanoTime();
+    first = new JGroupsClusterTransport(clusterName, CONFIG);
+    second = new JGroupsClusterTransport(clusterName, CONFIG);
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    second.stop();
+    first.stop();
+  }
+
+  public void testJoiningNodeAnnouncesItselfFromItsFirstView()
+      throws Exception {
+    final AnnouncingReceiver firstReceiver = new AnnouncingReceiver(first);
+    first.start(firstReceiver);
+    final AnnouncingReceiver secondReceiver = new AnnouncingReceiver(second);
+    second.start(secondReceiver);
+    assertEquals(second.getLocalNode(), secondReceiver.firstViewLocalNode);
+    assertEquals(second.getLocalNode(), firstReceiver.received.poll(10, TimeUnit.SECONDS));
+    assertEquals(first.getLocalNode(), secondReceiver.received.poll(10, TimeUnit.SECONDS));
+  }
+
+  public void testSendToOneNode()
+      throws Exception {
+    final AnnouncingReceiver firstReceiver = new AnnouncingReceiver(null);
+    first.start(firstReceiver);
+    final AnnouncingReceiver secondReceiver = new AnnouncingReceiver(null);
+    second.start(secondReceiver);
+    second.send(first.getLocalNode(), "direct");
+    assertEquals(second.getLocalNode() + ":direct", firstReceiver.messages.poll(10, TimeUnit.SECONDS));
+    assertNull(secondReceiver.messages.poll(500, TimeUnit.MILLISECONDS));
+  }
+
+  public void testNothingIsSentOnceStopped()
+      throws Exception {
+    first.start(new AnnouncingReceiver(null));
+    first.stop();
+    assertNull(first.getLocalNode());
+    first.sendToAll("lost");
+  }
+
+  /**
+   * Announces the local node to all the others whenever the membership changes, as the event bus does.
+   */
+  private static class AnnouncingReceiver
+      implements ClusterTransport.Receiver {
+
+    private final ClusterTransport transport;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+    private volatile String firstViewLocalNode;
+    private boolean viewed;
+
+    public AnnouncingReceiver(ClusterTransport transport) {
+      this.transport = transport;
+    }
+
+    @Override
+    public void received(String node, Serializable message) {
+      if (message instanceof Announcement) {
+        received.add(((Announcement) message).node);
+      }
+      else {
+        messages.add(node + ":" + message);
+      }
+    }
+
+    @Override
+    public synchronized void membershipChanged(Set<String> nodes) {
+      if (transport == null) {
+        return;
+      }
+      if (!viewed) {
+        viewed = true;
+        firstViewLocalNode = transport.getLocalNode();
+      }
+      try {
+        transport.sendToAll(new Announcement(transport.getLocalNode()));
+      }
+      catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+
+  private static class Announcement
+      implements Serializable {
+
+    private final String node;
+
+    public Announcement(String node) {
+      this.node = node;
+    }
+  }
+}
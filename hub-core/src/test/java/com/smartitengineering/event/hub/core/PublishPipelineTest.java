@@ -0,0 +1,335 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.AbstractDecoratingHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.memory.MemoryPersistentStorer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Publishes through the pipeline to a {@link MemoryPersistentStorer}, decorated to block or fail creating events.
+ * @author imyousuf
+ */
+public class PublishPipelineTest
+    extends TestCase {
+
+  private static final long TIMEOUT_IN_SEC = 10;
+  private TestStorer storer;
+  private TestPipeline pipeline;
+  private Channel channel;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    storer = new TestStorer();
+    pipeline = new TestPipeline(4, 100, storer);
+    channel = APIFactory.getChannelBuilder("pipeline").build();
+    storer.create(channel);
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    storer.release();
+    pipeline.shutdown(0);
+  }
+
+  public void testEventsArePersistedAndBroadcastInOrder()
+      throws Exception {
+    final PublishTicket first = pipeline.publish(channel, events("1", "2"));
+    final PublishTicket second = pipeline.publish(channel, events("3"));
+    assertTrue(first.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertTrue(second.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertNull(first.getError());
+    assertEquals(Arrays.asList("1", "2"), getContents(first.getCreatedEvents()));
+    assertEquals(Arrays.asList("3"), getContents(second.getCreatedEvents()));
+    assertEquals(first.getUniversallyUniqueIDs().get(1), first.getCreatedEvents().get(1).getUniversallyUniqueID());
+    assertFalse(pipeline.isPending(first.getUniversallyUniqueIDs().get(0)));
+    assertEquals(Arrays.asList("1", "2", "3"), pipeline.awaitBroadcast(3));
+  }
+
+  public void testTicketIsNotDoneTillPersisted()
+      throws Exception {
+    storer.block();
+    final PublishTicket ticket = pipeline.publish(channel, events("1"));
+    assertFalse(ticket.await(100, TimeUnit.MILLISECONDS));
+    assertTrue(pipeline.isPending(ticket.getUniversallyUniqueIDs().get(0)));
+    assertTrue(ticket.getCreatedEvents().isEmpty());
+    storer.release();
+    assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertEquals(1, ticket.getCreatedEvents().size());
+  }
+
+  public void testFullQueueRejectsEventsAsAWhole()
+      throws Exception {
+    storer.block();
+    final PublishTicket blocked = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    assertNotNull(pipeline.publish(channel, events("2", "3", "4")));
+    assertNull(pipeline.publish(channel, events("5", "6")));
+    assertNotNull(pipeline.publish(channel, events("5")));
+    assertNull(pipeline.publish(channel, events("6")));
+    storer.release();
+    assertTrue(blocked.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("1", "2", "3", "4", "5"), pipeline.awaitBroadcast(5));
+  }
+
+  public void testMoreEventsThanTheQueueCanTakeAreRejected() {
+    try {
+      pipeline.publish(channel, events("1", "2", "3", "4", "5"));
+      fail("Published more events than the queue capacity");
+    }
+    catch (IllegalArgumentException ex) {
+      //Expected
+    }
+  }
+
+  public void testFailedBatchIsRetriedPerRequest()
+      throws Exception {
+    storer.block();
+    final PublishTicket blocked = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    final PublishTicket good = pipeline.publish(channel, events("2"));
+    final PublishTicket bad = pipeline.publish(channel, events("bad", "3"));
+    final PublishTicket alsoGood = pipeline.publish(channel, events("4"));
+    storer.failOn = "bad";
+    storer.release();
+    for (PublishTicket ticket : Arrays.asList(blocked, good, bad, alsoGood)) {
+      assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    }
+    assertNull(good.getError());
+    assertNull(alsoGood.getError());
+    assertNotNull(bad.getError());
+    assertTrue(bad.getCreatedEvents().isEmpty());
+    assertNotNull(pipeline.getFailure(bad.getUniversallyUniqueIDs().get(1)));
+    assertFalse(pipeline.isPending(bad.getUniversallyUniqueIDs().get(1)));
+    assertEquals(Arrays.asList("1", "2", "4"), pipeline.awaitBroadcast(3));
+    assertNull(storer.getEventByUUID(bad.getUniversallyUniqueIDs().get(1)));
+  }
+
+  public void testEventsPersistedBeforeTheBatchFailedAreNotPersistedAgain()
+      throws Exception {
+    storer.block();
+    final PublishTicket blocked = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    final PublishTicket first = pipeline.publish(channel, events("2", "3"));
+    final PublishTicket second = pipeline.publish(channel, events("4"));
+    storer.persistThenFail = 1;
+    storer.release();
+    for (PublishTicket ticket : Arrays.asList(blocked, first, second)) {
+      assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+      assertNull(ticket.getError());
+    }
+    assertEquals(Arrays.asList("2", "3"), getContents(first.getCreatedEvents()));
+    assertEquals(Arrays.asList("1", "2", "3", "4"), pipeline.awaitBroadcast(4));
+    assertEquals(4, storer.getEvents("0", channel.getName(), 10).size());
+  }
+
+  public void testEventWithTheUUIDOfAnExistingEventFailsItsRequest()
+      throws Exception {
+    final Event existing = storer.create(channel, event("existing", "old"));
+    storer.block();
+    final PublishTicket blocked = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    final PublishTicket good = pipeline.publish(channel, events("2"));
+    final PublishTicket duplicate = pipeline.publish(channel, Arrays.asList(event(null, "3"), event("existing",
+                                                                                                      "new")));
+    storer.release();
+    for (PublishTicket ticket : Arrays.asList(blocked, good, duplicate)) {
+      assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    }
+    assertNull(good.getError());
+    assertTrue(duplicate.getError() instanceof IllegalArgumentException);
+    assertTrue(duplicate.getCreatedEvents().isEmpty());
+    assertEquals(Arrays.asList("1", "2"), pipeline.awaitBroadcast(2));
+    assertEquals(existing.getPlaceholderId(), storer.getEventByUUID("existing").getPlaceholderId());
+    assertNull(storer.getEventByUUID(duplicate.getUniversallyUniqueIDs().get(0)));
+  }
+
+  public void testEventWithTheUUIDOfAnotherInTheBatchFailsItsRequest()
+      throws Exception {
+    storer.block();
+    final PublishTicket blocked = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    final PublishTicket first = pipeline.publish(channel, Arrays.asList(event("same", "2")));
+    final PublishTicket second = pipeline.publish(channel, Arrays.asList(event("same", "3")));
+    storer.release();
+    assertTrue(first.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertTrue(second.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertNull(first.getError());
+    assertNotNull(second.getError());
+    assertEquals(Arrays.asList("1", "2"), pipeline.awaitBroadcast(2));
+  }
+
+  public void testIdleQueueIsReaped()
+      throws Exception {
+    final long beforePublishing = System.currentTimeMillis() - 1;
+    final PublishTicket ticket = pipeline.publish(channel, events("1"));
+    assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    pipeline.awaitBroadcast(1);
+    assertEquals(1, pipeline.getQueueCount());
+    assertEquals(0, pipeline.reap(beforePublishing));
+    assertEquals(1, pipeline.reap(System.currentTimeMillis() + 1));
+    assertEquals(0, pipeline.getQueueCount());
+    final PublishTicket afterReaping = pipeline.publish(channel, events("2"));
+    assertTrue(afterReaping.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("1", "2"), pipeline.awaitBroadcast(2));
+  }
+
+  public void testQueueWithEventsPendingIsNotReaped()
+      throws Exception {
+    storer.block();
+    final PublishTicket ticket = pipeline.publish(channel, events("1"));
+    assertTrue(storer.awaitBlocked());
+    assertEquals(0, pipeline.reap(System.currentTimeMillis() + 1));
+    storer.release();
+    assertTrue(ticket.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS));
+  }
+
+  public void testNothingIsAcceptedOnceShutDown() {
+    pipeline.shutdown(0);
+    assertNull(pipeline.publish(channel, events("1")));
+  }
+
+  private static List<Event> events(String... contents) {
+    final List<Event> events = new ArrayList<Event>(contents.length);
+    for (String content : contents) {
+      events.add(event(null, content));
+    }
+    return events;
+  }
+
+  private static Event event(String uuid, String content) {
+    return APIFactory.getEventBuilder().uuid(uuid).eventContent(APIFactory.getContent("text/plain",
+                                                                                      content.getBytes())).build();
+  }
+
+  private static List<String> getContents(List<Event> events) {
+    final List<String> contents = new ArrayList<String>(events.size());
+    for (Event event : events) {
+      contents.add(new String(APIFactory.getContentBytes(event.getEventContent())));
+    }
+    return contents;
+  }
+
+  private static class TestPipeline
+      extends PublishPipeline {
+
+    private final HubPersistentStorer storer;
+    private final List<String> broadcast = new ArrayList<String>();
+
+    public TestPipeline(int queueCapacity, int batchSize, HubPersistentStorer storer) {
+      super(queueCapacity, batchSize, 2);
+      this.storer = storer;
+    }
+
+    @Override
+    protected HubPersistentStorer getStorer() {
+      return storer;
+    }
+
+    @Override
+    protected void broadcast(EventBroadcastMessage message) {
+      synchronized (broadcast) {
+        for (EventBroadcastMessage.Item item : message.getItems()) {
+          broadcast.add(item.getContent());
+        }
+        broadcast.notifyAll();
+      }
+    }
+
+    /**
+     * Wait for the given number of events to be broadcast, and a little longer for any more.
+     * @return The contents of the events broadcast
+     */
+    public List<String> awaitBroadcast(int count)
+        throws InterruptedException {
+      final long waitUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_IN_SEC);
+      synchronized (broadcast) {
+        while (broadcast.size() < count && System.currentTimeMillis() < waitUntil) {
+          broadcast.wait(100);
+        }
+        broadcast.wait(100);
+        return new ArrayList<String>(broadcast);
+      }
+    }
+  }
+
+  private static class TestStorer
+      extends AbstractDecoratingHubPersistentStorer {
+
+    private volatile CountDownLatch blocker;
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private volatile String failOn;
+    private volatile int persistThenFail;
+
+    public TestStorer() {
+      super(new MemoryPersistentStorer());
+    }
+
+    public void block() {
+      blocker = new CountDownLatch(1);
+    }
+
+    public boolean awaitBlocked()
+        throws InterruptedException {
+      return blocked.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS);
+    }
+
+    public void release() {
+      final CountDownLatch currentBlocker = blocker;
+      blocker = null;
+      if (currentBlocker != null) {
+        currentBlocker.countDown();
+      }
+    }
+
+    @Override
+    public List<Event> create(Channel channel, List<Event> events) {
+      final CountDownLatch currentBlocker = blocker;
+      if (currentBlocker != null) {
+        blocked.countDown();
+        try {
+          currentBlocker.await(TIMEOUT_IN_SEC, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failOn != null && getContents(events).contains(failOn)) {
+        throw new IllegalStateException("Failing a batch with " + failOn);
+      }
+      if (persistThenFail > 0 && events.size() > persistThenFail) {
+        //As a storer not creating a batch as a whole would
+        super.create(channel, events.subList(0, persistThenFail));
+        persistThenFail = 0;
+        throw new IllegalStateException("Failing a batch part way");
+      }
+      return super.create(channel, events);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class SerialExecutorTest
+    extends TestCase {
+
+  private ExecutorService threads;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    threads = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    threads.shutdownNow();
+  }
+
+  public void testTasksRunOneAtATimeInOrder()
+      throws Exception {
+    final SerialExecutor executor = new SerialExecutor(threads);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger overlaps = new AtomicInteger();
+    final int count = 200;
+    final CountDownLatch done = new CountDownLatch(count);
+    for (int i = 0; i < count; ++i) {
+      final int task = i;
+      executor.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          if (running.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+          }
+          order.add(task);
+          running.decrementAndGet();
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(0, overlaps.get());
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, order.get(i).intValue());
+    }
+  }
+
+  public void testFailingTaskDoesNotStopTheNext()
+      throws Exception {
+    final SerialExecutor executor = new SerialExecutor(threads);
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        throw new IllegalStateException("Failing a task");
+      }
+    });
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  public void testIdleOnlyWithNothingRunningOrWaiting()
+      throws Exception {
+    final SerialExecutor executor = new SerialExecutor(threads);
+    assertTrue(executor.isIdle());
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    executor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertFalse(executor.isIdle());
+    release.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    final long waitUntil = System.currentTimeMillis() + 10000;
+    while (!executor.isIdle() && System.currentTimeMillis() < waitUntil) {
+      Thread.sleep(10);
+    }
+    assertTrue(executor.isIdle());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.memory.MemoryPersistentStorer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.ws.rs.core.UriBuilder;
+import junit.framework.TestCase;
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.model.Link;
+
+/**
+ * Compares the pages {@link StreamingEventFeed} writes with the feeds
+ * {@link ChannelEventsResource.EventFeedBuilder} builds for the same events, with chunks smaller than the pages.
+ * <p>
+ * @author imyousuf
+ */
+public class StreamingEventFeedTest extends TestCase {
+
+  private static final String CHANNEL = "feed";
+  private static final int EVENTS = 10;
+  private static final int CHUNK_SIZE = 3;
+  private Abdera abdera;
+  private MemoryPersistentStorer storer;
+  private List<String> placeholders;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    abdera = new Abdera();
+    storer = new MemoryPersistentStorer();
+    final Channel channel = APIFactory.getChannelBuilder(CHANNEL).build();
+    storer.create(channel);
+    placeholders = new ArrayList<String>();
+    for (int i = 0; i < EVENTS; ++i) {
+      placeholders.add(storer.create(channel, APIFactory.getEventBuilder().eventContent(APIFactory.getContent(
+          "text/plain", ("event " + i).getBytes("UTF-8"))).build()).getPlaceholderId());
+    }
+  }
+
+  public void testAfterPageIsLatestFirst() {
+    final Feed streamed = writeStream(placeholders.get(1), 7);
+    assertEquals(placeholders.subList(2, 9), getReversedIds(streamed));
+    assertSameAsBuilt(placeholders.get(1), 7, streamed);
+  }
+
+  public void testAfterPagePastTheLatestEvent() {
+    assertSameAsBuilt(placeholders.get(3), 8, writeStream(placeholders.get(3), 8));
+    assertSameAsBuilt(placeholders.get(3), 6, writeStream(placeholders.get(3), 6));
+  }
+
+  public void testBeforePage() {
+    assertSameAsBuilt(placeholders.get(8), -7, writeStream(placeholders.get(8), -7));
+    assertSameAsBuilt(placeholders.get(4), -6, writeStream(placeholders.get(4), -6));
+  }
+
+  public void testEmptyPage() {
+    final Feed streamed = writeStream(placeholders.get(EVENTS - 1), 5);
+    assertTrue(streamed.getEntries().isEmpty());
+    assertNull(streamed.getLink(Link.REL_PREVIOUS));
+    assertNull(streamed.getLink(Link.REL_NEXT));
+  }
+
+  protected void assertSameAsBuilt(String placeholderId, int count, Feed streamed) {
+    final Feed built = new ChannelEventsResource.EventFeedBuilder(abdera.getFactory().newFeed(), abdera.getFactory(),
+                                                                  CHANNEL, afterUri(), beforeUri(), eventUri()).build(
+        storer.getEvents(placeholderId, CHANNEL, count));
+    assertEquals(getIds(built), getIds(streamed));
+    assertEquals(getHref(built, Link.REL_PREVIOUS), getHref(streamed, Link.REL_PREVIOUS));
+    assertEquals(getHref(built, Link.REL_NEXT), getHref(streamed, Link.REL_NEXT));
+    final List<Entry> builtEntries = built.getEntries();
+    final List<Entry> streamedEntries = streamed.getEntries();
+    for (int i = 0; i < builtEntries.size(); ++i) {
+      assertEquals(builtEntries.get(i).getContent(), streamedEntries.get(i).getContent());
+      assertEquals(builtEntries.get(i).getAlternateLink().getHref(), streamedEntries.get(i).getAlternateLink().
+          getHref());
+    }
+  }
+
+  protected Feed writeStream(String placeholderId, int count) {
+    final StreamingEventFeed feed = new StreamingEventFeed(storer, CHANNEL, placeholderId, count, CHUNK_SIZE);
+    feed.setTitle("Events");
+    feed.setPagingUris(afterUri(), beforeUri(), CHANNEL);
+    feed.setEventUri(eventUri());
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      feed.write(output);
+    }
+    catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+    return abdera.getParser().<Feed>parse(new ByteArrayInputStream(output.toByteArray())).getRoot();
+  }
+
+  protected List<String> getIds(Feed feed) {
+    final List<String> ids = new ArrayList<String>();
+    for (Entry entry : feed.getEntries()) {
+      ids.add(entry.getId().toString());
+    }
+    return ids;
+  }
+
+  protected List<String> getReversedIds(Feed feed) {
+    final List<String> ids = getIds(feed);
+    Collections.reverse(ids);
+    return ids;
+  }
+
+  protected String getHref(Feed feed, String rel) {
+    final Link link = feed.getLink(rel);
+    return link == null ? null : link.getHref().toString();
+  }
+
+  protected UriBuilder afterUri() {
+    return UriBuilder.fromPath("/channels/{channelName}/events/after/{placeholderId}");
+  }
+
+  protected UriBuilder beforeUri() {
+    return UriBuilder.fromPath("/channels/{channelName}/events/before/{placeholderId}");
+  }
+
+  protected UriBuilder eventUri() {
+    return UriBuilder.fromPath("/events/{placeholderId}");
+  }
+}
@@ -0,0 +1,254 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.core;
+
+import com.smartitengineering.event.hub.core.SubscriberQueue.OverflowPolicy;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.DefaultBroadcasterFactory;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class SubscriberQueueTest
+    extends TestCase {
+
+  private TestBroadcaster broadcaster;
+  private FakeAtmosphereResource subscriber;
+  private FanOutStats stats;
+  private ManualExecutor manualWriter;
+  private ExecutorService threadWriter;
+
+  @Override
+  protected void setUp()
+      throws Exception {
+    DefaultBroadcasterFactory.buildAndReplaceDefaultfactory(EventBroadcaster.class, null);
+    broadcaster = new TestBroadcaster();
+    subscriber = new FakeAtmosphereResource();
+    stats = new FanOutStats(null);
+    manualWriter = new ManualExecutor();
+    threadWriter = Executors.newSingleThreadExecutor();
+  }
+
+  @Override
+  protected void tearDown()
+      throws Exception {
+    subscriber.releaseWrites();
+    threadWriter.shutdownNow();
+    FanOutSettings.setOverflowPolicies(null);
+    broadcaster.destroy();
+  }
+
+  public void testPayloadsAreWrittenInOrder() {
+    final SubscriberQueue queue = newQueue(manualWriter, 1000, 10, OverflowPolicy.DISCONNECT);
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    assertTrue(queue.offer(EncodedPayload.encode("bc")));
+    assertEquals(2, queue.getQueuedPayloads());
+    assertEquals(3, queue.getQueuedBytes());
+    manualWriter.runAll();
+    assertEquals("abc", subscriber.getBody());
+    assertEquals(0, queue.getQueuedPayloads());
+    assertEquals(0, queue.getQueuedBytes());
+  }
+
+  public void testSubscriberIsDisconnectedOncePayloadsExceedTheCapacity() {
+    final SubscriberQueue queue = newQueue(manualWriter, 1000, 2, OverflowPolicy.DISCONNECT);
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    assertTrue(queue.offer(EncodedPayload.encode("b")));
+    assertFalse(queue.offer(EncodedPayload.encode("c")));
+    assertTrue(queue.isClosed());
+    assertEquals(0, queue.getQueuedPayloads());
+    assertEquals(Arrays.asList(subscriber.getResource()), broadcaster.disconnected);
+    assertTrue(subscriber.isResumed());
+    assertEquals(1, stats.getDisconnects());
+    assertFalse(queue.offer(EncodedPayload.encode("d")));
+    manualWriter.runAll();
+    assertEquals("", subscriber.getBody());
+  }
+
+  public void testSubscriberIsDisconnectedOnceBytesExceedTheBudget() {
+    final SubscriberQueue queue = newQueue(manualWriter, 5, 10, OverflowPolicy.DISCONNECT);
+    assertTrue(queue.offer(EncodedPayload.encode("abc")));
+    assertTrue(queue.offer(EncodedPayload.encode("de")));
+    assertFalse(queue.offer(EncodedPayload.encode("f")));
+    assertEquals(1, broadcaster.disconnected.size());
+  }
+
+  public void testPayloadOverTheBudgetIsLetThroughToAnEmptyQueue() {
+    final SubscriberQueue queue = newQueue(manualWriter, 2, 10, OverflowPolicy.DISCONNECT);
+    assertTrue(queue.offer(EncodedPayload.encode("abcdef")));
+    manualWriter.runAll();
+    assertEquals("abcdef", subscriber.getBody());
+    assertTrue(broadcaster.disconnected.isEmpty());
+  }
+
+  public void testDropOldestSkipsThePayloadBeingWritten()
+      throws Exception {
+    final SubscriberQueue queue = newQueue(threadWriter, 1000, 2, OverflowPolicy.DROP_OLDEST);
+    subscriber.holdWrites();
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    assertTrue(subscriber.awaitWriteHeld());
+    assertTrue(queue.offer(EncodedPayload.encode("b")));
+    assertTrue(queue.offer(EncodedPayload.encode("c")));
+    assertEquals(2, queue.getQueuedPayloads());
+    assertEquals(1, stats.getDroppedPayloads());
+    subscriber.releaseWrites();
+    awaitWritten(queue);
+    assertEquals("ac", subscriber.getBody());
+    assertTrue(broadcaster.disconnected.isEmpty());
+  }
+
+  public void testDropOldestDropsOnlyAsManyAsItTakes() {
+    final SubscriberQueue queue = newQueue(manualWriter, 4, 10, OverflowPolicy.DROP_OLDEST);
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    assertTrue(queue.offer(EncodedPayload.encode("b")));
+    assertTrue(queue.offer(EncodedPayload.encode("cd")));
+    assertTrue(queue.offer(EncodedPayload.encode("ef")));
+    assertEquals(2, stats.getDroppedPayloads());
+    manualWriter.runAll();
+    assertEquals("cdef", subscriber.getBody());
+  }
+
+  public void testCoalesceSkipsToTheNewestPayload()
+      throws Exception {
+    final SubscriberQueue queue = newQueue(threadWriter, 1000, 3, OverflowPolicy.COALESCE);
+    subscriber.holdWrites();
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    assertTrue(subscriber.awaitWriteHeld());
+    assertTrue(queue.offer(EncodedPayload.encode("b")));
+    assertTrue(queue.offer(EncodedPayload.encode("c")));
+    assertTrue(queue.offer(EncodedPayload.encode("d")));
+    assertEquals(2, queue.getQueuedPayloads());
+    assertEquals(2, stats.getCoalescedPayloads());
+    subscriber.releaseWrites();
+    awaitWritten(queue);
+    assertEquals("ad", subscriber.getBody());
+  }
+
+  public void testQueueTakesTheOverflowPolicyOfItsChannel() {
+    FanOutSettings.setOverflowPolicy("test", OverflowPolicy.COALESCE);
+    assertEquals(OverflowPolicy.COALESCE, broadcaster.getSubscriberQueue(subscriber.getResource()).
+        getOverflowPolicy());
+  }
+
+  public void testSubscriberFailingToBeWrittenIsDisconnected() {
+    final SubscriberQueue queue = newQueue(manualWriter, 1000, 10, OverflowPolicy.DROP_OLDEST);
+    subscriber.failWrites();
+    assertTrue(queue.offer(EncodedPayload.encode("a")));
+    manualWriter.runAll();
+    assertTrue(queue.isClosed());
+    assertEquals(Arrays.asList(subscriber.getResource()), broadcaster.disconnected);
+    assertEquals(1, stats.getDisconnects());
+  }
+
+  public void testPayloadIsEncodedOnceForAllSubscribers() {
+    final EventBroadcastMessage message = new EventBroadcastMessage("test", Arrays.asList(
+        new EventBroadcastMessage.Item("1", "uuid", "text/plain", "first".getBytes(), null)));
+    final EventBroadcastMessage filtered = message.withFilteredItems(message.getItems());
+    final ChannelEventFilter filter = new ChannelEventFilter();
+    final Object payload = filter.filter(filtered).message();
+    assertTrue(payload instanceof EncodedPayload);
+    assertSame(payload, filter.filter(filtered).message());
+    broadcaster.setWriter(manualWriter);
+    final FakeAtmosphereResource other = new FakeAtmosphereResource();
+    for (FakeAtmosphereResource resource : Arrays.asList(subscriber, other)) {
+      resource.setMessage(payload);
+      broadcaster.broadcast(resource.getResource(), resource.getEvent());
+    }
+    assertEquals(2, broadcaster.getSubscriberQueues().size());
+    manualWriter.runAll();
+    assertEquals(payload.toString(), subscriber.getBody());
+    assertEquals(payload.toString(), other.getBody());
+  }
+
+  public void testPayloadBytesCanNotBeChanged() {
+    final EncodedPayload payload = EncodedPayload.encode("abc");
+    final ByteBuffer buffer = payload.asReadOnlyBuffer();
+    try {
+      buffer.put(0, (byte) 'x');
+      fail("Changed the bytes of a payload");
+    }
+    catch (ReadOnlyBufferException ex) {
+      //Expected
+    }
+    assertEquals("abc", payload.toString());
+  }
+
+  private SubscriberQueue newQueue(Executor writer, long byteBudget, int capacity, OverflowPolicy policy) {
+    return new SubscriberQueue(broadcaster, subscriber.getResource(), writer, byteBudget, capacity, policy, stats);
+  }
+
+  private static void awaitWritten(SubscriberQueue queue)
+      throws InterruptedException {
+    final long waitUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (queue.getQueuedPayloads() > 0 && System.currentTimeMillis() < waitUntil) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, queue.getQueuedPayloads());
+  }
+
+  /**
+   * Runs tasks only when told to, so that payloads queue up.
+   */
+  private static class ManualExecutor
+      implements Executor {
+
+    private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    public void runAll() {
+      Runnable task;
+      while ((task = poll()) != null) {
+        task.run();
+      }
+    }
+
+    private synchronized Runnable poll() {
+      return tasks.poll();
+    }
+  }
+
+  private static class TestBroadcaster
+      extends EventBroadcaster {
+
+    private final LinkedList<AtmosphereResource> disconnected = new LinkedList<AtmosphereResource>();
+
+    public TestBroadcaster() {
+      super("test");
+    }
+
+    @Override
+    public void disconnect(AtmosphereResource r) {
+      disconnected.add(r);
+      super.disconnect(r);
+    }
+  }
+}
@@ -25,33 +25,56 @@ import com.smartitengineering.dao.common.queryparam.QueryParameter;
 import com.smartitengineering.dao.common.queryparam.QueryParameterFactory;
 import com.smartitengineering.event.hub.api.Channel;
 import com.smartitengineering.event.hub.api.Event;
-import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.AbstractChunkedIterator;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.OrderedHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
 import com.smartitengineering.util.bean.adapter.GenericAdapter;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * A Smart DAO based {@link HubPersistentStorer} implementation.
+ * A Smart DAO based {@link com.smartitengineering.event.hub.spi.HubPersistentStorer} implementation.
+ * <p>
+ * Event IDs are reserved in blocks per node and events are inserted by concurrent transactions, so events become
+ * visible out of the order of their IDs, within the {@link TimeBoundSequenceStyleGenerator block TTL} plus the
+ * {@link #getMaxWriteTimeInSec() longest time} inserting them takes. The block TTL is read off the generator mapped
+ * for the event IDs, so that it is configured in one place only.
  * @author imyousuf
  */
 public class DBPersistentStorer
-    implements HubPersistentStorer {
+    implements OrderedHubPersistentStorer {
 
+  public static final int DEFAULT_STREAM_FETCH_SIZE = 100;
+  public static final long DEFAULT_MAX_WRITE_TIME_IN_SEC = 2;
   private CommonReadDao<PersistentChannel, Integer> channelReadDao;
   private CommonReadDao<PersistentEvent, Integer> eventReadDao;
   private CommonWriteDao<PersistentChannel> channelWriteDao;
   private CommonWriteDao<PersistentEvent> eventWriteDao;
+  private CommonReadDao<PersistentConsumerOffset, Integer> consumerOffsetReadDao;
+  private CommonWriteDao<PersistentConsumerOffset> consumerOffsetWriteDao;
   private GenericAdapter<Channel, PersistentChannel> channelConverter;
   private GenericAdapter<Event, PersistentEvent> eventConverter;
+  private int streamFetchSize = DEFAULT_STREAM_FETCH_SIZE;
+  private long idBlockTtlInMillis = TimeBoundSequenceStyleGenerator.DEFAULT_BLOCK_TTL_IN_SEC * 1000;
+  private long maxWriteTimeInSec = DEFAULT_MAX_WRITE_TIME_IN_SEC;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
 
   public void setChannelConverter(
       GenericAdapter<Channel, PersistentChannel> channelConverter) {
@@ -72,6 +95,62 @@ public class DBPersistentStorer
     this.eventConverter = eventConverter;
   }
 
+  /**
+   * Set the number of events fetched per query, and hence held in memory, while streaming events.
+   */
+  public void setStreamFetchSize(int streamFetchSize) {
+    this.streamFetchSize = streamFetchSize > 0 ? streamFetchSize : DEFAULT_STREAM_FETCH_SIZE;
+  }
+
+  public int getStreamFetchSize() {
+    return streamFetchSize;
+  }
+
+  /**
+   * Set the session factory the events are persisted with, reading the TTL of the event ID blocks off the generator
+   * of the event IDs, i.e. the <tt>block_ttl_in_sec</tt> parameter in <tt>PersistentEvent.hbm.xml</tt>.
+   * @throws IllegalArgumentException If the event IDs are not generated by a
+   *                                  {@link TimeBoundSequenceStyleGenerator}, as then the visibility lag is unbounded
+   */
+  public void setSessionFactory(SessionFactory sessionFactory) {
+    final IdentifierGenerator generator = sessionFactory instanceof SessionFactoryImplementor
+        ? ((SessionFactoryImplementor) sessionFactory).getIdentifierGenerator(PersistentEvent.class.getName()) : null;
+    if (!(generator instanceof TimeBoundSequenceStyleGenerator)) {
+      throw new IllegalArgumentException("Event IDs have to be generated by " + TimeBoundSequenceStyleGenerator.class.
+          getName() + " for the visibility lag to be bounded, found " + generator);
+    }
+    idBlockTtlInMillis = ((TimeBoundSequenceStyleGenerator) generator).getBlockTtlInMillis();
+  }
+
+  /**
+   * Get the TTL of the event ID blocks, the generator's default till the session factory is set.
+   */
+  public long getIdBlockTtlInMillis() {
+    return idBlockTtlInMillis;
+  }
+
+  /**
+   * Set the longest time inserting events may take. Inserts taking longer are logged as errors, since readers
+   * resuming after a placeholder may have skipped their events.
+   */
+  public void setMaxWriteTimeInSec(long maxWriteTimeInSec) {
+    this.maxWriteTimeInSec = maxWriteTimeInSec > 0 ? maxWriteTimeInSec : DEFAULT_MAX_WRITE_TIME_IN_SEC;
+  }
+
+  public long getMaxWriteTimeInSec() {
+    return maxWriteTimeInSec;
+  }
+
+  @Override
+  public Comparator<String> getPlaceholderOrder() {
+    return PlaceholderOrder.ASCENDING;
+  }
+
+  @Override
+  public long getVisibilityLagInMillis() {
+    return idBlockTtlInMillis + maxWriteTimeInSec * 1000;
+  }
+
   public void setEventReadDao(CommonReadDao<PersistentEvent, Integer> eventReadDao) {
     this.eventReadDao = eventReadDao;
   }
@@ -80,6 +159,14 @@ public class DBPersistentStorer
     this.eventWriteDao = eventWriteDao;
   }
 
+  public void setConsumerOffsetReadDao(CommonReadDao<PersistentConsumerOffset, Integer> consumerOffsetReadDao) {
+    this.consumerOffsetReadDao = consumerOffsetReadDao;
+  }
+
+  public void setConsumerOffsetWriteDao(CommonWriteDao<PersistentConsumerOffset> consumerOffsetWriteDao) {
+    this.consumerOffsetWriteDao = consumerOffsetWriteDao;
+  }
+
   protected GenericAdapter<Channel, PersistentChannel> getChannelConverter() {
     return channelConverter;
   }
@@ -104,6 +191,14 @@ public class DBPersistentStorer
     return eventWriteDao;
   }
 
+  protected CommonReadDao<PersistentConsumerOffset, Integer> getConsumerOffsetReadDao() {
+    return consumerOffsetReadDao;
+  }
+
+  protected CommonWriteDao<PersistentConsumerOffset> getConsumerOffsetWriteDao() {
+    return consumerOffsetWriteDao;
+  }
+
   @Override
   public void create(Channel channel) {
     PersistentChannel persistentChannel = getChannelConverter().convert(channel);
@@ -145,12 +240,50 @@ public class DBPersistentStorer
     if (persistentEvent != null && channel != null) {
       persistentEvent.setChannelId(channel.getName());
       persistentEvent.setCreationDateTime(new Date());
+      final long startTime = System.currentTimeMillis();
       getEventWriteDao().save(persistentEvent);
+      checkWriteTime(1, startTime);
       return getEventConverter().convertInversely(persistentEvent);
     }
     return null;
   }
 
+  @Override
+  public List<Event> create(Channel channel, List<Event> events) {
+    if (channel == null || events == null || events.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<PersistentEvent> persistentEvents = new ArrayList<PersistentEvent>(events.size());
+    final Date date = new Date();
+    for (Event event : events) {
+      PersistentEvent persistentEvent = getEventConverter().convert(event);
+      if (persistentEvent != null) {
+        persistentEvent.setChannelId(channel.getName());
+        persistentEvent.setCreationDateTime(date);
+        persistentEvents.add(persistentEvent);
+      }
+    }
+    if (persistentEvents.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final long startTime = System.currentTimeMillis();
+    getEventWriteDao().save(persistentEvents.toArray(new PersistentEvent[persistentEvents.size()]));
+    checkWriteTime(persistentEvents.size(), startTime);
+    List<Event> createdEvents = new ArrayList<Event>(persistentEvents.size());
+    for (PersistentEvent persistentEvent : persistentEvents) {
+      createdEvents.add(getEventConverter().convertInversely(persistentEvent));
+    }
+    return createdEvents;
+  }
+
+  protected void checkWriteTime(int count, long startTime) {
+    final long writeTime = System.currentTimeMillis() - startTime;
+    if (writeTime > maxWriteTimeInSec * 1000) {
+      logger.error("Creating " + count + " events took " + writeTime +
+          "ms, longer than the visibility lag allows; readers may have skipped them");
+    }
+  }
+
   @Override
   public void delete(Event event) {
     PersistentEvent persistentEvent = getMergedPersistentEvent(event);
@@ -170,8 +303,8 @@ public class DBPersistentStorer
     if (StringUtils.isBlank(uuid)) {
       return null;
     }
-    PersistentEvent event = getEventReadDao().getSingle(QueryParameterFactory.getStringLikePropertyParam(
-        PersistentEvent.UUID, uuid, MatchMode.EXACT));
+    PersistentEvent event = getEventReadDao().getSingle(QueryParameterFactory.getEqualPropertyParam(
+        PersistentEvent.UUID, uuid));
     return getEventConverter().convertInversely(event);
   }
 
@@ -202,9 +335,9 @@ public class DBPersistentStorer
       else {
         orderByParam = QueryParameterFactory.getOrderByParam(PersistentEvent.PLACE_HOLDER_ID, Order.DESC);
       }
+      //An equality on the channel along with the ID range and order is served by the (channel_id, id) index
       if (StringUtils.isNotBlank(channelId)) {
-        params.add(QueryParameterFactory.getStringLikePropertyParam(PersistentEvent.CHANNEL_ID, channelId,
-                                                                    MatchMode.EXACT));
+        params.add(QueryParameterFactory.getEqualPropertyParam(PersistentEvent.CHANNEL_ID, channelId));
       }
       params.addAll(Arrays.asList(QueryParameterFactory.getMaxResultsParam(Math.abs(count)), orderByParam));
       List<PersistentEvent> persistentEvents = getEventReadDao().getList(params);
@@ -219,6 +352,49 @@ public class DBPersistentStorer
     }
   }
 
+  @Override
+  public CloseableIterator<Event> streamEvents(String placeholderId, final String channelId,
+                                               final Direction direction) {
+    final int startId = StringUtils.isBlank(placeholderId) ? -1 : NumberUtils.toInt(placeholderId, -1);
+    return new AbstractChunkedIterator<Event>() {
+
+      /*
+       * Events are paged by their IDs, each query starting after the last event of the previous page, so that the
+       * query costs the same however far the stream has gone
+       */
+      private int lastId = startId;
+      private boolean hasMore = true;
+
+      @Override
+      protected List<Event> nextChunk() {
+        if (!hasMore) {
+          return Collections.emptyList();
+        }
+        final boolean after = Direction.AFTER.equals(direction);
+        List<QueryParameter> params = new ArrayList<QueryParameter>();
+        if (lastId > -1) {
+          params.add(after ? QueryParameterFactory.getGreaterThanPropertyParam(PersistentEvent.PLACE_HOLDER_ID, lastId)
+              : QueryParameterFactory.getLesserThanPropertyParam(PersistentEvent.PLACE_HOLDER_ID, lastId));
+        }
+        if (StringUtils.isNotBlank(channelId)) {
+          params.add(QueryParameterFactory.getEqualPropertyParam(PersistentEvent.CHANNEL_ID, channelId));
+        }
+        params.add(QueryParameterFactory.getMaxResultsParam(streamFetchSize));
+        params.add(QueryParameterFactory.getOrderByParam(PersistentEvent.PLACE_HOLDER_ID, after ? Order.ASC
+            : Order.DESC));
+        List<PersistentEvent> persistentEvents = getEventReadDao().getList(params);
+        if (persistentEvents == null || persistentEvents.isEmpty()) {
+          hasMore = false;
+          return Collections.emptyList();
+        }
+        hasMore = persistentEvents.size() >= streamFetchSize;
+        lastId = persistentEvents.get(persistentEvents.size() - 1).getId();
+        return new ArrayList<Event>(getEventConverter().convertInversely(persistentEvents.toArray(
+            new PersistentEvent[persistentEvents.size()])));
+      }
+    };
+  }
+
   @Override
   public Collection<Channel> getChannels(int startIndex, int count) {
     if (startIndex < 0 || count == 0) {
@@ -257,6 +433,59 @@ public class DBPersistentStorer
     return persistentChannel;
   }
 
+  @Override
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName) {
+    if (StringUtils.isBlank(channelId) || StringUtils.isBlank(groupName)) {
+      return null;
+    }
+    PersistentConsumerOffset persistentOffset = getPersistentConsumerOffset(channelId.toLowerCase(), groupName);
+    if (persistentOffset == null) {
+      return null;
+    }
+    return new ConsumerOffset(persistentOffset.getChannelName(), persistentOffset.getGroupName(), persistentOffset.
+        getPlaceholderId(), persistentOffset.getCommitDateTime());
+  }
+
+  @Override
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets) {
+    if (offsets == null || offsets.isEmpty()) {
+      return;
+    }
+    List<PersistentConsumerOffset> newOffsets = new ArrayList<PersistentConsumerOffset>();
+    List<PersistentConsumerOffset> existingOffsets = new ArrayList<PersistentConsumerOffset>();
+    for (ConsumerOffset offset : offsets) {
+      if (offset == null || StringUtils.isBlank(offset.getChannelName()) || StringUtils.isBlank(offset.getGroupName())
+          || StringUtils.isBlank(offset.getPlaceholderId())) {
+        continue;
+      }
+      final String channelName = offset.getChannelName().toLowerCase();
+      PersistentConsumerOffset persistentOffset = getPersistentConsumerOffset(channelName, offset.getGroupName());
+      if (persistentOffset == null) {
+        persistentOffset = new PersistentConsumerOffset();
+        persistentOffset.setChannelName(channelName);
+        persistentOffset.setGroupName(offset.getGroupName());
+        newOffsets.add(persistentOffset);
+      }
+      else {
+        existingOffsets.add(persistentOffset);
+      }
+      persistentOffset.setPlaceholderId(offset.getPlaceholderId());
+      persistentOffset.setCommitDateTime(offset.getCommitDateTime());
+    }
+    if (!newOffsets.isEmpty()) {
+      getConsumerOffsetWriteDao().save(newOffsets.toArray(new PersistentConsumerOffset[newOffsets.size()]));
+    }
+    if (!existingOffsets.isEmpty()) {
+      getConsumerOffsetWriteDao().update(existingOffsets.toArray(new PersistentConsumerOffset[existingOffsets.size()]));
+    }
+  }
+
+  protected PersistentConsumerOffset getPersistentConsumerOffset(String channelName, String groupName) {
+    return getConsumerOffsetReadDao().getSingle(QueryParameterFactory.getStringLikePropertyParam(
+        PersistentConsumerOffset.CHANNEL_NAME, channelName, MatchMode.EXACT), QueryParameterFactory.
+        getStringLikePropertyParam(PersistentConsumerOffset.GROUP_NAME, groupName, MatchMode.EXACT));
+  }
+
   protected PersistentChannel getPersistentChannel(String channelName) {
     PersistentChannel persistentChannel = getChannelReadDao().getSingle(
         QueryParameterFactory.getStringLikePropertyParam(PersistentChannel.NAME,
@@ -40,14 +40,14 @@ public class EventAdapterHelper
     toBean.setUuid(fromBean.getUniversallyUniqueID());
     if (fromBean.getEventContent() != null) {
       toBean.setContentType(fromBean.getEventContent().getContentType());
-      toBean.setContentStream(fromBean.getEventContent().getContent());
+      toBean.setContent(APIFactory.getContentBytes(fromBean.getEventContent()));
     }
   }
 
   @Override
   protected Event convertFromT2F(PersistentEvent toBean) {
     return APIFactory.getEventBuilder().eventContent(APIFactory.getContent(toBean.
-        getContentType(), toBean.getContentStream())).placeholder(toBean.
+        getContentType(), toBean.getContent())).placeholder(toBean.
         getPlaceholderId()).uuid(toBean.getUuid()).creationDate(toBean.getCreationDateTime()).build();
   }
 }
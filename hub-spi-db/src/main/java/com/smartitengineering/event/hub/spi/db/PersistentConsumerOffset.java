@@ -0,0 +1,81 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.db;
+
+import com.smartitengineering.domain.AbstractPersistentDTO;
+import java.util.Date;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class PersistentConsumerOffset
+    extends AbstractPersistentDTO<PersistentConsumerOffset> {
+
+  static final String CHANNEL_NAME = "channelName";
+  static final String GROUP_NAME = "groupName";
+  private String channelName, groupName, placeholderId;
+  private Date commitDateTime;
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public void setChannelName(String channelName) {
+    this.channelName = channelName;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  public void setGroupName(String groupName) {
+    this.groupName = groupName;
+  }
+
+  public String getPlaceholderId() {
+    return placeholderId;
+  }
+
+  public void setPlaceholderId(String placeholderId) {
+    this.placeholderId = placeholderId;
+  }
+
+  public Date getCommitDateTime() {
+    if (commitDateTime == null) {
+      return null;
+    }
+    return new Date(commitDateTime.getTime());
+  }
+
+  public void setCommitDateTime(Date commitDateTime) {
+    if (commitDateTime != null) {
+      this.commitDateTime = new Date(commitDateTime.getTime());
+    }
+    else {
+      this.commitDateTime = null;
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return StringUtils.isNotBlank(channelName) && StringUtils.isNotBlank(groupName) && StringUtils.isNotBlank(
+        placeholderId);
+  }
+}
@@ -18,8 +18,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.spi.db;
 
 import com.smartitengineering.domain.AbstractPersistentDTO;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.Date;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -62,15 +62,18 @@ public class PersistentEvent
     return new Date(creationDateTime.getTime());
   }
 
+  /**
+   * Retrieve the bytes of the content. They are not copied, thus must not be modified.
+   */
   public byte[] getContent() {
-    if(content == null) {
-      return null;
-    }
-    return Arrays.copyOf(content, content.length);
+    return content;
   }
 
+  /**
+   * Set the bytes of the content. They are not copied, thus must not be modified once set.
+   */
   public void setContent(byte[] content) {
-    this.content = Arrays.copyOf(content, content.length);
+    this.content = content;
   }
 
   public String getContentType() {
@@ -100,7 +103,7 @@ public class PersistentEvent
   }
 
   public InputStream getContentStream() {
-    return IOUtils.toInputStream(new String(content));
+    return new ByteArrayInputStream(content == null ? new byte[0] : content);
   }
 
   public void setContentStream(InputStream stream) {
@@ -119,7 +122,7 @@ public class PersistentEvent
   }
 
   public boolean isValid() {
-    return getContent() != null && getContent().length > 0 && StringUtils.
+    return content != null && content.length > 0 && StringUtils.
         isNotBlank(getContentType());
   }
 }
@@ -0,0 +1,138 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.db;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.apache.commons.lang.math.NumberUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.engine.TransactionHelper;
+import org.hibernate.id.IdentifierGenerationException;
+import org.hibernate.id.IdentifierGeneratorFactory;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.TableStructure;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence style generator that hands out IDs from blocks of the <tt>increment_size</tt> parameter, the way the pooled
+ * optimizer does, but stops handing out IDs from a block once it has been reserved for longer than the
+ * <tt>block_ttl_in_sec</tt> parameter, 1 second by default; the rest of the block is abandoned and the next ID comes
+ * from a fresh block. Blocks are reserved in the order of their IDs, so an ID is handed out at most the TTL after any
+ * greater ID was, no matter how long a node goes without inserting.
+ * <p>
+ * Every block is reserved with a single read of the database structure, the value read being the exclusive upper
+ * bound of the block. The pooled optimizer reads twice for its first block, so it could not be recreated for a fresh
+ * block: two nodes doing so at the same time got overlapping blocks. A table is incremented before it is read, as
+ * reading it first under a shared lock, as {@link TableStructure} does, deadlocks nodes reserving at the same time.
+ * @author imyousuf
+ */
+public class TimeBoundSequenceStyleGenerator
+    extends SequenceStyleGenerator {
+
+  public static final String BLOCK_TTL_PARAM = "block_ttl_in_sec";
+  public static final long DEFAULT_BLOCK_TTL_IN_SEC = 1;
+  private Class returnedClass;
+  private String reserveSql;
+  private String readSql;
+  private long blockTtlInMillis;
+  private long reservedAt;
+  private long value;
+  private long hiValue;
+
+  @Override
+  public void configure(Type type, Properties params, Dialect dialect)
+      throws MappingException {
+    returnedClass = type.getReturnedClass();
+    final long blockTtl = NumberUtils.toLong(params.getProperty(BLOCK_TTL_PARAM), DEFAULT_BLOCK_TTL_IN_SEC);
+    blockTtlInMillis = (blockTtl > 0 ? blockTtl : DEFAULT_BLOCK_TTL_IN_SEC) * 1000;
+    super.configure(type, params, dialect);
+    if (getDatabaseStructure() instanceof TableStructure) {
+      final String table = getDatabaseStructure().getName();
+      final String column = determineValueColumnName(params);
+      reserveSql = new StringBuilder("update ").append(table).append(" set ").append(column).append(" = ").
+          append(column).append(" + ?").toString();
+      readSql = new StringBuilder("select ").append(column).append(" from ").append(table).toString();
+    }
+    else {
+      reserveSql = null;
+      readSql = null;
+    }
+  }
+
+  public long getBlockTtlInMillis() {
+    return blockTtlInMillis;
+  }
+
+  @Override
+  public synchronized Serializable generate(SessionImplementor session, Object object)
+      throws HibernateException {
+    if (value >= hiValue || System.currentTimeMillis() - reservedAt > blockTtlInMillis) {
+      final int incrementSize = getDatabaseStructure().getIncrementSize();
+      //The first value read is the initial value, the upper bound of an empty block
+      do {
+        hiValue = reserveSql == null ? getDatabaseStructure().buildCallback(session).getNextValue()
+            : reserveTableBlock(session, incrementSize);
+        value = Math.max(1, hiValue - incrementSize);
+      }
+      while (value >= hiValue);
+      reservedAt = System.currentTimeMillis();
+    }
+    return IdentifierGeneratorFactory.createNumber(value++, returnedClass);
+  }
+
+  /**
+   * Increment the table by a block in a transaction of its own and return the value it had, as a sequence would.
+   */
+  protected long reserveTableBlock(SessionImplementor session, final int incrementSize) {
+    final Serializable next = new TransactionHelper() {
+
+      @Override
+      protected Serializable doWorkInCurrentTransaction(Connection connection, String sql)
+          throws SQLException {
+        final PreparedStatement reserve = connection.prepareStatement(reserveSql);
+        try {
+          reserve.setLong(1, incrementSize);
+          if (reserve.executeUpdate() != 1) {
+            throw new IdentifierGenerationException("Expected a single row in " + getDatabaseStructure().getName());
+          }
+        }
+        finally {
+          reserve.close();
+        }
+        final PreparedStatement read = connection.prepareStatement(readSql);
+        try {
+          final ResultSet resultSet = read.executeQuery();
+          resultSet.next();
+          return resultSet.getLong(1) - incrementSize;
+        }
+        finally {
+          read.close();
+        }
+      }
+    }.doWorkInNewTransaction(session);
+    return ((Number) next).longValue();
+  }
+}
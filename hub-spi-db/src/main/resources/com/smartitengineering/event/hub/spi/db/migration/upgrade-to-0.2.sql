@@ -0,0 +1,38 @@
+-- It is a application for event distribution to event n-consumers with m-sources.
+-- Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+--
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or any later
+-- version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+-- Upgrades a database whose schema was generated by a 0.1 hub to the schema the 0.2 mappings generate. Written for
+-- Derby, the default dialect; statements may need adjusting for other databases.
+
+-- Indexes serving the reads of the events of a channel after and before a placeholder
+create index persistent_event_channel_id on persistent_event (channel_id, id);
+create index persistent_event_channel_id_desc on persistent_event (channel_id, id desc);
+
+-- Offsets of the consumer groups, new in 0.2
+create table persistent_consumer_offset (id integer not null, version integer not null,
+  channel_name varchar(200) not null, group_name varchar(200) not null, placeholder_id varchar(255) not null,
+  commit_date_time timestamp, primary key (id), unique (channel_name, group_name));
+
+-- Tables of the pooled ID generators, which replaced the increment generator. Derby has no sequences before 10.6, so
+-- Hibernate keeps the next value of each in a single row table; databases with sequences get a sequence of the same
+-- name starting at the same value and incrementing by the increment_size of the mapping instead. The pooled
+-- generator hands out the block ending at the stored value, thus it starts one block past the highest existing ID.
+create table persistent_event_seq (next_val bigint);
+insert into persistent_event_seq (next_val) select coalesce(max(id), 0) + 51 from persistent_event;
+create table persistent_channel_seq (next_val bigint);
+insert into persistent_channel_seq (next_val) select coalesce(max(id), 0) + 11 from persistent_channel;
+create table persistent_consumer_offset_seq (next_val bigint);
+insert into persistent_consumer_offset_seq (next_val) select coalesce(max(id), 0) + 11 from persistent_consumer_offset;
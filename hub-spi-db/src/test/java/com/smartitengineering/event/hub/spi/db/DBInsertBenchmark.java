@@ -0,0 +1,149 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.db;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.lang.math.NumberUtils;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.SimpleValue;
+
+/**
+ * Benchmark of concurrent event inserts with the pooled sequence generator of the event mapping against the
+ * <tt>increment</tt> generator it replaced. Every simulated node is a session factory of its own over the same Derby
+ * database, as separate hub instances would be; with <tt>increment</tt> each node counts from the highest ID it saw
+ * when it started, so several nodes insert duplicate IDs and only a single node is a fair comparison. It is not part
+ * of the test suite, since a meaningful run takes long.
+ * <p>
+ * Usage: <tt>DBInsertBenchmark [nodes, default 4] [threads per node, default 4] [events per thread, default 5000]</tt>
+ * @author imyousuf
+ */
+public class DBInsertBenchmark {
+
+  private static final String URL = "jdbc:derby:target/InsertBenchmarkDB;create=true";
+  private static final int BATCH_SIZE = 50;
+
+  public static void main(String[] args) throws Exception {
+    final int nodes = args.length > 0 ? NumberUtils.toInt(args[0], 4) : 4;
+    final int threads = args.length > 1 ? NumberUtils.toInt(args[1], 4) : 4;
+    final int events = args.length > 2 ? NumberUtils.toInt(args[2], 5000) : 5000;
+    run("increment, single node", false, 1, nodes * threads, events);
+    run("increment, " + nodes + " nodes", false, nodes, threads, events);
+    run("pooled sequence, " + nodes + " nodes", true, nodes, threads, events);
+  }
+
+  private static void run(String name, boolean pooled, int nodes, int threads, int events) throws Exception {
+    final List<SessionFactory> sessionFactories = new ArrayList<SessionFactory>(nodes);
+    //Only the first node creates the schema, the others would drop it from under it
+    for (int i = 0; i < nodes; ++i) {
+      sessionFactories.add(buildSessionFactory(pooled, i == 0, threads));
+    }
+    final ExecutorService executorService = Executors.newFixedThreadPool(nodes * threads);
+    final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    final long start = System.nanoTime();
+    for (final SessionFactory sessionFactory : sessionFactories) {
+      for (int i = 0; i < threads; ++i) {
+        results.add(executorService.submit(new Callable<Integer>() {
+
+          @Override
+          public Integer call() throws Exception {
+            return insert(sessionFactory, events);
+          }
+        }));
+      }
+    }
+    int inserted = 0;
+    for (Future<Integer> result : results) {
+      inserted += result.get();
+    }
+    final long nanos = System.nanoTime() - start;
+    executorService.shutdown();
+    for (SessionFactory sessionFactory : sessionFactories) {
+      sessionFactory.close();
+    }
+    final int attempted = nodes * threads * events;
+    System.out.println(name + ": " + inserted + " of " + attempted + " events inserted in " + (nanos / 1000000) +
+        "ms, " + (inserted * 1000000000l / Math.max(1, nanos)) + " events/s, " + (attempted - inserted) +
+        " lost to duplicate IDs or other failures");
+  }
+
+  /**
+   * Insert events in batches of the JDBC batch size, a failed batch is counted as not inserted.
+   */
+  private static int insert(SessionFactory sessionFactory, int events) {
+    int inserted = 0;
+    for (int batch = 0; batch < events; batch += BATCH_SIZE) {
+      final int size = Math.min(BATCH_SIZE, events - batch);
+      final Session session = sessionFactory.openSession();
+      Transaction transaction = null;
+      try {
+        transaction = session.beginTransaction();
+        for (int i = 0; i < size; ++i) {
+          final PersistentEvent event = new PersistentEvent();
+          event.setUuid(UUID.randomUUID().toString());
+          event.setChannelId("insert-benchmark");
+          event.setContentType("text/plain");
+          event.setContent(String.valueOf(batch + i).getBytes());
+          event.setCreationDateTime(new Date());
+          session.save(event);
+        }
+        transaction.commit();
+        inserted += size;
+      }
+      catch (RuntimeException ex) {
+        if (transaction != null) {
+          transaction.rollback();
+        }
+      }
+      finally {
+        session.close();
+      }
+    }
+    return inserted;
+  }
+
+  private static SessionFactory buildSessionFactory(boolean pooled, boolean createSchema, int poolSize) {
+    final Configuration configuration = new Configuration();
+    configuration.addResource("com/smartitengineering/event/hub/spi/db/PersistentEvent.hbm.xml");
+    configuration.setProperty("hibernate.connection.driver_class", "org.apache.derby.jdbc.EmbeddedDriver");
+    configuration.setProperty("hibernate.connection.url", URL);
+    configuration.setProperty("hibernate.connection.pool_size", String.valueOf(poolSize));
+    configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.DerbyDialect");
+    configuration.setProperty("hibernate.jdbc.batch_size", String.valueOf(BATCH_SIZE));
+    configuration.setProperty("hibernate.order_inserts", "true");
+    configuration.setProperty("hibernate.hbm2ddl.auto", createSchema ? "create" : "none");
+    if (!pooled) {
+      configuration.buildMappings();
+      final SimpleValue id = (SimpleValue) configuration.getClassMapping(PersistentEvent.class.getName()).
+          getIdentifier();
+      id.setIdentifierGeneratorStrategy("increment");
+      id.setIdentifierGeneratorProperties(new Properties());
+    }
+    return configuration.buildSessionFactory();
+  }
+}
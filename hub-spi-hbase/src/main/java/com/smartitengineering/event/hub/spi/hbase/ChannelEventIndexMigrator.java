@@ -0,0 +1,113 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.smartitengineering.event.hub.spi.ChannelCachingHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelEventIndex;
+import com.smartitengineering.event.hub.spi.hbase.persistents.EventId;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backfills the channel event index and the placeholder point index from the reverse ID index for events created
+ * before those indexes were introduced. Every event has a row in the reverse ID index, which is paged over in row
+ * order and the index rows are written for each of them; since index rows are keyed by the event it is safe to run
+ * the migration more than once. Till it has run, the nodes serving the hub have to be configured with
+ * <tt>com.smartitengineering.event.placeholderIndexMigrating=true</tt> so that the events yet to be indexed are
+ * looked up by scanning; the property should be removed once it has run.
+ * <p>
+ * Usage: <tt>ChannelEventIndexMigrator [pageSize]</tt>
+ * @author imyousuf
+ */
+public class ChannelEventIndexMigrator {
+
+  public static final int DEFAULT_PAGE_SIZE = 500;
+  private static final byte[] FAMILY_SELF = Bytes.toBytes("self");
+  private static final byte[] CELL_REVERSE_INDEX = Bytes.toBytes("reverse");
+  private static final byte[] STOP_ROW = Bytes.toBytes(":");
+  private final HubPersistentStorerImpl storer;
+  private final int pageSize;
+  protected Logger logger = LoggerFactory.getLogger(getClass());
+
+  public ChannelEventIndexMigrator(HubPersistentStorerImpl storer, int pageSize) {
+    this.storer = storer;
+    this.pageSize = pageSize < 1 ? DEFAULT_PAGE_SIZE : pageSize;
+  }
+
+  /**
+   * Migrate all the events in the reverse ID index.
+   * @return Number of events indexed
+   */
+  public long migrate() {
+    final String tableName = storer.reverseIdIndexSchemaInfoProvider.getMainTableName();
+    long count = 0;
+    byte[] startRow = RowRangeScanner.EMPTY_ROW;
+    List<Result> results;
+    do {
+      results = storer.rowRangeScanner.scan(tableName, startRow, STOP_ROW, pageSize, FAMILY_SELF, CELL_REVERSE_INDEX);
+      final List<ChannelEventIndex> indexes = new ArrayList<ChannelEventIndex>(results.size() * 3);
+      for (Result result : results) {
+        final byte[] value = result.getValue(FAMILY_SELF, CELL_REVERSE_INDEX);
+        if (value == null) {
+          continue;
+        }
+        final EventId id = EventId.fromString(Bytes.toString(value));
+        for (ChannelEventIndex index : storer.getChannelEventIndexes(id.getChannelName(), id,
+                                                                     id.getEventIdForChannel())) {
+          indexes.add(index);
+        }
+        ++count;
+      }
+      if (!indexes.isEmpty()) {
+        storer.channelEventIndexWrtDao.save(indexes.toArray(new ChannelEventIndex[indexes.size()]));
+      }
+      if (!results.isEmpty()) {
+        startRow = RowRangeScanner.getRowAfter(results.get(results.size() - 1).getRow());
+      }
+      if (logger.isInfoEnabled()) {
+        logger.info("Indexed " + count + " events so far");
+      }
+    }
+    while (results.size() == pageSize);
+    return count;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Initializer.init();
+    Initializer.generateTables();
+    HubPersistentStorer storer = HubPersistentStorerSPI.getInstance().getStorer();
+    if (storer instanceof ChannelCachingHubPersistentStorer) {
+      storer = ((ChannelCachingHubPersistentStorer) storer).getDelegate();
+    }
+    if (!(storer instanceof HubPersistentStorerImpl)) {
+      throw new IllegalStateException("HBase storer not configured, found " + storer);
+    }
+    final int pageSize = args.length > 0 ? NumberUtils.toInt(args[0], DEFAULT_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+    final ChannelEventIndexMigrator migrator = new ChannelEventIndexMigrator((HubPersistentStorerImpl) storer,
+                                                                             pageSize);
+    final long count = migrator.migrate();
+    migrator.logger.info("Channel event index migration completed for " + count + " events");
+  }
+}
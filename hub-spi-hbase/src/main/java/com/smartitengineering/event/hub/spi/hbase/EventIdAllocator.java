@@ -0,0 +1,200 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.smartitengineering.dao.common.CommonWriteDao;
+import com.smartitengineering.dao.impl.hbase.spi.RowCellIncrementor;
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ReverseIdIndex;
+import com.smartitengineering.event.hub.spi.hbase.persistents.RowAutoIdIndex;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocates event placeholder IDs from blocks leased off the <tt>events</tt> row of the auto id table, so that the
+ * shared counter cell is incremented once per block rather than once per event. IDs within a block are handed out
+ * from memory in the same descending order the per event increment used to produce. The reverse ID of an event is
+ * always <tt>Long.MAX_VALUE - placeholderId</tt>, which is what the reverse index lookups rely upon.
+ * <p>
+ * Since every node leases its own block, placeholder IDs created concurrently on different nodes are not ordered by
+ * creation time; an event may be created with an ID older than that of an event created earlier on another node.
+ * What still holds is that blocks are leased in the order of their IDs and that no ID is handed out from a block
+ * leased longer ago than the {@link #getBlockTtlInMillis() block TTL}; the rest of such a block is abandoned. So an
+ * event is assigned its ID at most the TTL after any event with a newer ID was, and once an event is visible every
+ * event older than it is visible within the TTL plus the time it takes to write an event, which the storer declares
+ * as its {@link HubPersistentStorerImpl#getVisibilityLagInMillis() visibility lag}. Within a node IDs are handed out
+ * in order.
+ * <p>
+ * IDs left in a block when the allocator is {@link #release() released}, or when the block expires, are never reused
+ * and are handled according to the configured {@link GapPolicy}.
+ * @author imyousuf
+ */
+public class EventIdAllocator {
+
+  public static final String EVENTS_ROW_ID = "events";
+  public static final String GAP_ROW_ID_PREFIX = "events:gap:";
+  public static final int DEFAULT_BLOCK_SIZE = 100;
+  public static final long DEFAULT_BLOCK_TTL_IN_SEC = 1;
+  @Inject
+  protected RowCellIncrementor<Channel, RowAutoIdIndex, String> idIncrementor;
+  @Inject
+  protected RowCellIncrementor<ReverseIdIndex, RowAutoIdIndex, String> reverseIdIncrementor;
+  @Inject
+  protected CommonWriteDao<RowAutoIdIndex> autoIdWrtDao;
+  @Inject
+  @Named("eventIdBlockSize")
+  protected Integer blockSize;
+  @Inject
+  @Named("eventIdGapPolicy")
+  protected GapPolicy gapPolicy;
+  @Inject(optional = true)
+  @Named("eventIdBlockTtlInSec")
+  protected Long blockTtlInSec;
+  private long nextId;
+  private long lastId;
+  private long leaseTime;
+  private boolean leased = false;
+  protected Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * Policy to apply to the unused IDs of the current block when the allocator is released, for example on shutdown.
+   */
+  public static enum GapPolicy {
+
+    /**
+     * Silently leave the unused IDs as a gap in the placeholder sequence.
+     */
+    IGNORE,
+    /**
+     * Leave the gap and log the abandoned range so that it can be told apart from lost events.
+     */
+    LOG,
+    /**
+     * Leave the gap, log it and record the abandoned range as a row in the auto id table.
+     */
+    RECORD;
+  }
+
+  public int getBlockSize() {
+    return blockSize == null || blockSize.intValue() < 1 ? DEFAULT_BLOCK_SIZE : blockSize.intValue();
+  }
+
+  /**
+   * Get the longest time after leasing a block that IDs are handed out from it.
+   */
+  public long getBlockTtlInMillis() {
+    return (blockTtlInSec == null || blockTtlInSec.longValue() < 1 ? DEFAULT_BLOCK_TTL_IN_SEC : blockTtlInSec.
+        longValue()) * 1000;
+  }
+
+  public GapPolicy getGapPolicy() {
+    return gapPolicy == null ? GapPolicy.LOG : gapPolicy;
+  }
+
+  /**
+   * Retrieve the next available placeholder ID, leasing a new block first if the current one is exhausted.
+   * @return The next placeholder ID
+   */
+  public synchronized long nextPlaceholderId() {
+    if (leased && nextId >= lastId && System.currentTimeMillis() - leaseTime > getBlockTtlInMillis()) {
+      release();
+    }
+    if (!leased || nextId < lastId) {
+      lease();
+    }
+    return nextId--;
+  }
+
+  /**
+   * Retrieve the next available placeholder IDs for a batch of events, leasing as many blocks as required. IDs are
+   * returned in the order they are to be assigned.
+   * @param count Number of IDs required
+   * @return Array of placeholder IDs of the requested length
+   */
+  public synchronized long[] nextPlaceholderIds(int count) {
+    final long[] ids = new long[count < 0 ? 0 : count];
+    for (int i = 0; i < ids.length; ++i) {
+      ids[i] = nextPlaceholderId();
+    }
+    return ids;
+  }
+
+  /**
+   * Derive the reverse ID for a placeholder ID handed out by this allocator.
+   * @param placeholderId Placeholder ID of the event
+   * @return The reverse ID to be used in the reverse index
+   */
+  public long getReverseId(long placeholderId) {
+    return Long.MAX_VALUE - placeholderId;
+  }
+
+  /**
+   * Give up the remainder of the currently leased block, if any. The next allocation, if one is made, leases a fresh
+   * block.
+   */
+  public synchronized void release() {
+    if (!leased) {
+      return;
+    }
+    leased = false;
+    if (nextId < lastId) {
+      return;
+    }
+    final GapPolicy policy = getGapPolicy();
+    switch (policy) {
+      case RECORD:
+        RowAutoIdIndex gap = new RowAutoIdIndex();
+        gap.setId(new StringBuilder(GAP_ROW_ID_PREFIX).append(StringUtils.leftPad(String.valueOf(nextId),
+                                                                                  HubPersistentStorerImpl.MAX_LENGTH,
+                                                                                  '0')).toString());
+        gap.setAutoIdValue(nextId);
+        gap.setReverseAutoIdValue(lastId);
+        try {
+          autoIdWrtDao.save(gap);
+        }
+        catch (RuntimeException ex) {
+          logger.error("Could not record abandoned event id range!", ex);
+        }
+      //Recorded gaps are logged as well
+      case LOG:
+        logger.warn("Abandoning unused event placeholder ids from " + nextId + " down to " + lastId);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("Ignoring unused event placeholder ids from " + nextId + " down to " + lastId);
+        }
+    }
+  }
+
+  protected void lease() {
+    final int size = getBlockSize();
+    final long lowest = idIncrementor.incrementAndGet(EVENTS_ROW_ID, -1 * size);
+    //Keep the reverse counter in step so that the auto id row stays consistent for its other readers
+    reverseIdIncrementor.incrementAndGet(EVENTS_ROW_ID, size);
+    nextId = lowest + size - 1;
+    lastId = lowest;
+    leaseTime = System.currentTimeMillis();
+    leased = true;
+    if (logger.isDebugEnabled()) {
+      logger.debug("Leased event placeholder ids from " + nextId + " down to " + lastId);
+    }
+  }
+}
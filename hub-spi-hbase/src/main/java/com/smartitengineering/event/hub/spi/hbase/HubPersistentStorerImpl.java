@@ -18,17 +18,26 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.spi.hbase;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import com.smartitengineering.dao.common.CommonReadDao;
 import com.smartitengineering.dao.common.CommonWriteDao;
 import com.smartitengineering.dao.common.queryparam.MatchMode;
 import com.smartitengineering.dao.common.queryparam.QueryParameter;
 import com.smartitengineering.dao.common.queryparam.QueryParameterFactory;
 import com.smartitengineering.dao.impl.hbase.spi.RowCellIncrementor;
+import com.smartitengineering.dao.impl.hbase.spi.SchemaInfoProvider;
 import com.smartitengineering.event.hub.api.Channel;
 import com.smartitengineering.event.hub.api.Event;
-import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.AbstractChunkedIterator;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.OrderedHubPersistentStorer;
+import com.smartitengineering.event.hub.spi.PlaceholderOrder;
 import com.smartitengineering.event.hub.spi.hbase.persistents.RowAutoIdIndex;
 import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelAdapterHelper;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelEventIndex;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelEventIndexObjectConverter;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ConsumerOffsetIndex;
 import com.smartitengineering.event.hub.spi.hbase.persistents.EventAdapterHelper;
 import com.smartitengineering.event.hub.spi.hbase.persistents.EventId;
 import com.smartitengineering.event.hub.spi.hbase.persistents.EventUUID;
@@ -41,7 +50,10 @@ import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -49,21 +61,34 @@ import java.util.Set;
 import java.util.UUID;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * HBase based {@link com.smartitengineering.event.hub.spi.HubPersistentStorer}. Placeholder IDs shrink as events are
+ * created and are assigned from blocks leased by each node, so events become visible out of order within the block
+ * TTL of the {@link EventIdAllocator} plus the {@link #getMaxWriteTimeInMillis() longest time} writing them takes.
  * @author imyousuf
  */
-public class HubPersistentStorerImpl implements HubPersistentStorer {
+public class HubPersistentStorerImpl implements OrderedHubPersistentStorer {
 
   private static final String CHANNELS_ROW_ID_N_PREFIX = "channels";
   private static final String EVENTS_ROW_ID_N_PREFIX = "events";
   private static final PersistentChannel[] EMPTY_CHANNEL_ARRAY = new PersistentChannel[0];
   private static final PersistentEvent[] EMPTY_EVENT_ARRAY = new PersistentEvent[0];
+  private static final byte[] FAMILY_SELF = Bytes.toBytes("self");
+  private static final byte[] CELL_REVERSE_INDEX = Bytes.toBytes("reverse");
+  private static final byte[] CELL_CHANNEL_ID = Bytes.toBytes("channelId");
+  /**
+   * Stop row for scans over the event and reverse index tables; all event rows there start with a zero padded number
+   * and ':' is the first character after the digits.
+   */
+  private static final byte[] NUMBERED_ROWS_STOP_ROW = Bytes.toBytes(":");
   public static final int MAX_LENGTH = String.valueOf(Long.MAX_VALUE).length();
+  public static final int DEFAULT_STREAM_CACHING = 100;
+  public static final long DEFAULT_MAX_WRITE_TIME_IN_SEC = 2;
   @Inject
   protected CommonWriteDao<PersistentChannel> channelWrtDao;
   @Inject
@@ -88,6 +113,33 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
   protected RowCellIncrementor<Channel, RowAutoIdIndex, String> idIncrementor;
   @Inject
   protected RowCellIncrementor<ReverseIdIndex, RowAutoIdIndex, String> reverseIdIncrementor;
+  @Inject
+  protected CommonWriteDao<ChannelEventIndex> channelEventIndexWrtDao;
+  @Inject
+  protected CommonReadDao<ChannelEventIndex, String> channelEventIndexRdDao;
+  @Inject
+  protected CommonWriteDao<ConsumerOffsetIndex> consumerOffsetWrtDao;
+  @Inject
+  protected CommonReadDao<ConsumerOffsetIndex, String> consumerOffsetRdDao;
+  @Inject
+  protected SchemaInfoProvider<PersistentEvent, EventId> eventSchemaInfoProvider;
+  @Inject
+  protected SchemaInfoProvider<ReverseIdIndex, String> reverseIdIndexSchemaInfoProvider;
+  @Inject
+  protected SchemaInfoProvider<ChannelEventIndex, String> channelEventIndexSchemaInfoProvider;
+  @Inject
+  protected EventIdAllocator eventIdAllocator;
+  @Inject
+  protected RowRangeScanner rowRangeScanner;
+  @Inject(optional = true)
+  @Named("eventStreamCaching")
+  protected Integer streamCaching;
+  @Inject(optional = true)
+  @Named("placeholderIndexMigrating")
+  protected Boolean placeholderIndexMigrating;
+  @Inject(optional = true)
+  @Named("eventMaxWriteTimeInSec")
+  protected Long maxWriteTimeInSec;
   protected boolean channelAutoIdInitialized = false;
   protected boolean eventAutoIdInitialized = false;
   protected final GenericAdapter<Channel, PersistentChannel> channelAdapter;
@@ -237,13 +289,8 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
   public Event create(Channel channel, Event event) {
     PersistentEvent persistentEvent = eventAdapter.convert(event);
     if (persistentEvent != null && channel != null) {
-      String eventsId = EVENTS_ROW_ID_N_PREFIX;
-      long placheholderId = idIncrementor.incrementAndGet(eventsId, -1);
-      long revPlacheholderId = reverseIdIncrementor.incrementAndGet(eventsId, 1);
-      persistentEvent.setPlaceholderId(String.valueOf(placheholderId));
-      persistentEvent.setChannelId(channel.getName());
-      persistentEvent.getId().setEventIdForChannel(placheholderId);
-      persistentEvent.setCreationDateTime(new Date());
+      long placheholderId = eventIdAllocator.nextPlaceholderId();
+      final long assignedAt = System.currentTimeMillis();
       if (StringUtils.isBlank(persistentEvent.getUuid())) {
         UUID uuid = UUID.randomUUID();
         persistentEvent.setUuid(uuid.toString());
@@ -254,20 +301,15 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
           throw new IllegalArgumentException("Duplication event!");
         }
       }
-
-      EventUUID eUuid = new EventUUID();
-      eUuid.setEventId(persistentEvent.getId());
-      eUuid.setId(persistentEvent.getUuid());
-
-      ReverseIdIndex reverseIdIndex = new ReverseIdIndex();
-      reverseIdIndex.setReverseId(persistentEvent.getId().toString());
-      reverseIdIndex.setId(
-          new StringBuilder().append(leftPadNumberWithZero(revPlacheholderId)).append(':').
-          append(channel.getName()).toString());
+      initializeNewEvent(channel, persistentEvent, placheholderId);
+      EventUUID eUuid = getEventUUID(persistentEvent);
+      ReverseIdIndex reverseIdIndex = getReverseIdIndex(channel, persistentEvent, placheholderId);
 
       eventWrtDao.save(persistentEvent);
       reverseIdIndexWrtDao.save(reverseIdIndex);
+      channelEventIndexWrtDao.save(getChannelEventIndexes(channel, persistentEvent, placheholderId));
       eventUUIDWrtDao.save(eUuid);
+      checkWriteTime(placheholderId, 1, assignedAt);
       final Event convertInversely = eventAdapter.convertInversely(persistentEvent);
       if (logger.isDebugEnabled()) {
         logger.debug("Event's ID, UUID and PlaceholderID: " + persistentEvent.getId().toString() + " " + convertInversely.
@@ -278,6 +320,69 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
     return null;
   }
 
+  @Override
+  public List<Event> create(Channel channel, List<Event> events) {
+    if (channel == null || events == null || events.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<PersistentEvent> persistentEvents = new ArrayList<PersistentEvent>(events.size());
+    final List<String> uuids = new ArrayList<String>(events.size());
+    final Set<String> uniqueUuids = new HashSet<String>();
+    for (Event event : events) {
+      PersistentEvent persistentEvent = eventAdapter.convert(event);
+      if (persistentEvent == null) {
+        continue;
+      }
+      if (StringUtils.isBlank(persistentEvent.getUuid())) {
+        persistentEvent.setUuid(UUID.randomUUID().toString());
+      }
+      else {
+        uuids.add(persistentEvent.getUuid());
+      }
+      if (!uniqueUuids.add(persistentEvent.getUuid())) {
+        throw new IllegalArgumentException("Duplication event!");
+      }
+      persistentEvents.add(persistentEvent);
+    }
+    if (persistentEvents.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (!uuids.isEmpty()) {
+      final Set<EventUUID> possDupEvents = eventUUIDRdDao.getByIds(uuids);
+      if (possDupEvents != null && !possDupEvents.isEmpty()) {
+        throw new IllegalArgumentException("Duplication event!");
+      }
+    }
+    final int size = persistentEvents.size();
+    final long[] placeholderIds = eventIdAllocator.nextPlaceholderIds(size);
+    final long assignedAt = System.currentTimeMillis();
+    final EventUUID[] eUuids = new EventUUID[size];
+    final ReverseIdIndex[] reverseIdIndexes = new ReverseIdIndex[size];
+    final ChannelEventIndex[] channelEventIndexes = new ChannelEventIndex[3 * size];
+    for (int i = 0; i < size; ++i) {
+      final PersistentEvent persistentEvent = persistentEvents.get(i);
+      initializeNewEvent(channel, persistentEvent, placeholderIds[i]);
+      eUuids[i] = getEventUUID(persistentEvent);
+      reverseIdIndexes[i] = getReverseIdIndex(channel, persistentEvent, placeholderIds[i]);
+      System.arraycopy(getChannelEventIndexes(channel, persistentEvent, placeholderIds[i]), 0, channelEventIndexes,
+                       3 * i, 3);
+    }
+    eventWrtDao.save(persistentEvents.toArray(EMPTY_EVENT_ARRAY));
+    reverseIdIndexWrtDao.save(reverseIdIndexes);
+    channelEventIndexWrtDao.save(channelEventIndexes);
+    eventUUIDWrtDao.save(eUuids);
+    checkWriteTime(placeholderIds[0], size, assignedAt);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Created " + size + " events in channel " + channel.getName() + " from placeholder " +
+          placeholderIds[0]);
+    }
+    final List<Event> createdEvents = new ArrayList<Event>(size);
+    for (PersistentEvent persistentEvent : persistentEvents) {
+      createdEvents.add(eventAdapter.convertInversely(persistentEvent));
+    }
+    return createdEvents;
+  }
+
   @Override
   public void delete(Event event) {
     if (event == null) {
@@ -288,6 +393,8 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
       return;
     }
     eventWrtDao.delete(persistentEvent);
+    channelEventIndexWrtDao.delete(getChannelEventIndexes(persistentEvent.getChannelId(), persistentEvent.getId(),
+                                                          persistentEvent.getId().getEventIdForChannel()));
   }
 
   @Override
@@ -326,96 +433,283 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
     if (count == 0) {
       return new LinkedHashSet<Event>();
     }
-    final QueryParameter<Integer> maxResultsParam = QueryParameterFactory.getMaxResultsParam(Math.abs(count));
-    final String eventChannelId;
-    long eventId = NumberUtils.toLong(placeholderId);
+    final long eventId = NumberUtils.toLong(placeholderId);
+    final boolean fromPlaceholder;
     if (eventId > -1) {
-      if (StringUtils.isNotBlank(placeholderId)) {
-        PersistentEvent pEvent = getPersistentEvent(eventId);
-        if (pEvent != null) {
-          eventChannelId = pEvent.getChannelId();
-        }
-        else {
-          eventChannelId = "";
-        }
-      }
-      else {
-        eventChannelId = channelId;
-      }
+      fromPlaceholder = StringUtils.isNotBlank(placeholderId);
     }
     else {
-      placeholderId = null;
-      eventChannelId = "";
-      if(count > 0) {
+      fromPlaceholder = false;
+      if (count > 0) {
         count = -1 * count;
       }
     }
+    final int maxResults = Math.abs(count);
+    final String channelName = StringUtils.isNotBlank(channelId) ? channelId.toLowerCase() : null;
+    final List<PersistentEvent> events;
     if (count < 0) {
-      final List<QueryParameter> params = new ArrayList<QueryParameter>();
-      params.add(maxResultsParam);
-      if (StringUtils.isNotBlank(placeholderId)) {
-        final StringBuilder searchId = new StringBuilder(leftPadNumberWithZero(NumberUtils.toLong(placeholderId))).
-            append(':');
-        searchId.append(eventChannelId);
-        if (logger.isDebugEnabled()) {
-          logger.debug("Event Id to search greater or smaller than: " + searchId);
-        }
-        params.add(QueryParameterFactory.getGreaterThanPropertyParam("id", Bytes.toBytes(searchId.toString())));
+      /*
+       * Events before the placeholder are the ones with greater placeholder IDs, in the natural order of the rows they
+       * are newest first.
+       */
+      if (fromPlaceholder && eventId == Long.MAX_VALUE) {
+        return new LinkedHashSet<Event>();
       }
-      if (StringUtils.isNotBlank(channelId)) {
-        String toString;
-        toString = new StringBuilder("[0-9]+").append(':').append(channelId.toLowerCase()).toString();
-        if (logger.isDebugEnabled()) {
-          logger.debug("Channel to search with id at end " + toString);
-        }
-        params.add(QueryParameterFactory.getStringLikePropertyParam("id", toString, MatchMode.END));
+      final String startAfter = fromPlaceholder ? leftPadNumberWithZero(eventId + 1) : "";
+      if (channelName != null) {
+        events = getPersistentEvents(scanChannelEventIndex(channelName, ChannelEventIndex.PLACEHOLDER_ORDER,
+                                                           startAfter, maxResults));
       }
-      logger.debug("Doing event straight search!");
-      final List<PersistentEvent> list = eventRdDao.getList(params);
-      if (logger.isDebugEnabled()) {
-        logger.debug("Straight event search completed!");
-        for (PersistentEvent pEvent : list) {
-          logger.debug("EVENT " + pEvent.getId().toString());
+      else {
+        List<Result> results = rowRangeScanner.scan(eventSchemaInfoProvider.getMainTableName(), Bytes.toBytes(
+            startAfter), NUMBERED_ROWS_STOP_ROW, maxResults, FAMILY_SELF, CELL_CHANNEL_ID);
+        List<EventId> eventIds = new ArrayList<EventId>(results.size());
+        for (Result result : results) {
+          eventIds.add(EventId.fromString(Bytes.toString(result.getRow())));
         }
+        events = getPersistentEvents(eventIds);
       }
-      return new LinkedHashSet<Event>(eventAdapter.convertInversely(
-          list.toArray(EMPTY_EVENT_ARRAY)));
     }
     else {
-      final List<QueryParameter> params = new ArrayList<QueryParameter>();
-      params.add(maxResultsParam);
-      if (StringUtils.isNotBlank(placeholderId)) {
-        final long toLong = NumberUtils.toLong(placeholderId);
-        final long reversePlaceholderId = Long.MAX_VALUE - toLong;
-        params.add(QueryParameterFactory.getGreaterThanPropertyParam("id", Bytes.toBytes(new StringBuilder(leftPadNumberWithZero(
-            reversePlaceholderId)).append(':').append(eventChannelId).toString())));
+      /*
+       * Events after the placeholder are the ones with greater reverse IDs, in the natural order of the rows they are
+       * oldest first and hence reversed to be newest first
+       */
+      final long reverseId = Long.MAX_VALUE - eventId;
+      if (fromPlaceholder && reverseId == Long.MAX_VALUE) {
+        return new LinkedHashSet<Event>();
       }
-      final String toString;
-      if (StringUtils.isNotBlank(channelId)) {
-        toString = new StringBuilder("[0-9]+").append("\\:").append(channelId.toLowerCase()).toString();
+      final String startAfter = fromPlaceholder ? leftPadNumberWithZero(reverseId + 1) : "";
+      final List<EventId> eventIds;
+      if (channelName != null) {
+        eventIds = scanChannelEventIndex(channelName, ChannelEventIndex.REVERSE_ORDER, startAfter, maxResults);
       }
       else {
-        toString = new StringBuilder("[0-9]+").append("\\:").append(".+").toString();
-      }
-      if (logger.isDebugEnabled()) {
-        logger.debug("End pattern to test for! " + toString);
-      }
-      params.add(QueryParameterFactory.getStringLikePropertyParam("id", toString, MatchMode.END));
-      logger.debug("Doing reverse event search!");
-      List<ReverseIdIndex> indexes = reverseIdIndexRdDao.getList(params);
-      List<EventId> eventIds = new ArrayList<EventId>(indexes.size());
-      for (ReverseIdIndex index : indexes) {
-        if (logger.isDebugEnabled()) {
-          logger.debug("Reverse ID: " + index.getReverseId());
+        List<Result> results = rowRangeScanner.scan(reverseIdIndexSchemaInfoProvider.getMainTableName(), Bytes.toBytes(
+            startAfter), NUMBERED_ROWS_STOP_ROW, maxResults, FAMILY_SELF, CELL_REVERSE_INDEX);
+        eventIds = new ArrayList<EventId>(results.size());
+        for (Result result : results) {
+          eventIds.add(EventId.fromString(Bytes.toString(result.getValue(FAMILY_SELF, CELL_REVERSE_INDEX))));
         }
-        eventIds.add(EventId.fromString(index.getReverseId()));
       }
       Collections.reverse(eventIds);
-      final Set<PersistentEvent> byIds = eventRdDao.getByIds(eventIds);
-      logger.debug("Reverse event search completed!");
-      return new LinkedHashSet<Event>(eventAdapter.convertInversely(byIds.toArray(
-          EMPTY_EVENT_ARRAY)));
+      events = getPersistentEvents(eventIds);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Found " + events.size() + " events from " + placeholderId + " for " + channelId);
+    }
+    return new LinkedHashSet<Event>(eventAdapter.convertInversely(events.toArray(EMPTY_EVENT_ARRAY)));
+  }
+
+  @Override
+  public CloseableIterator<Event> streamEvents(String placeholderId, String channelId, Direction direction) {
+    final long eventId = NumberUtils.toLong(placeholderId);
+    final boolean fromPlaceholder = eventId > -1 && StringUtils.isNotBlank(placeholderId);
+    final String channelName = StringUtils.isNotBlank(channelId) ? channelId.toLowerCase() : null;
+    final boolean before = !Direction.AFTER.equals(direction);
+    //The same rows as the ones paged by getEvents, but scanned onwards for as long as they are iterated
+    final long startNumber = before ? eventId : Long.MAX_VALUE - eventId;
+    if (fromPlaceholder && startNumber == Long.MAX_VALUE) {
+      return new EventStream(null, null, null, null, null, false);
+    }
+    final String startAfter = fromPlaceholder ? leftPadNumberWithZero(startNumber + 1) : "";
+    if (channelName != null) {
+      final String prefix = ChannelEventIndex.getRowIdPrefix(channelName, before ? ChannelEventIndex.PLACEHOLDER_ORDER
+          : ChannelEventIndex.REVERSE_ORDER);
+      return new EventStream(channelEventIndexSchemaInfoProvider.getMainTableName(), Bytes.toBytes(prefix +
+          startAfter), RowRangeScanner.getStopRow(Bytes.toBytes(prefix)), ChannelEventIndexObjectConverter.FAMILY_SELF,
+                             ChannelEventIndexObjectConverter.CELL_EVENT_ID, true);
+    }
+    else if (before) {
+      return new EventStream(eventSchemaInfoProvider.getMainTableName(), Bytes.toBytes(startAfter),
+                             NUMBERED_ROWS_STOP_ROW, FAMILY_SELF, CELL_CHANNEL_ID, false);
+    }
+    else {
+      return new EventStream(reverseIdIndexSchemaInfoProvider.getMainTableName(), Bytes.toBytes(startAfter),
+                             NUMBERED_ROWS_STOP_ROW, FAMILY_SELF, CELL_REVERSE_INDEX, true);
+    }
+  }
+
+  @Override
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName) {
+    if (StringUtils.isBlank(channelId) || StringUtils.isBlank(groupName)) {
+      return null;
+    }
+    final ConsumerOffsetIndex offsetIndex = consumerOffsetRdDao.getById(ConsumerOffsetIndex.getRowId(channelId.
+        toLowerCase(), groupName));
+    if (offsetIndex == null) {
+      return null;
+    }
+    return new ConsumerOffset(offsetIndex.getChannelName(), offsetIndex.getGroupName(), offsetIndex.getPlaceholderId(),
+                              offsetIndex.getCommitDateTime());
+  }
+
+  @Override
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets) {
+    if (offsets == null || offsets.isEmpty()) {
+      return;
+    }
+    final List<ConsumerOffsetIndex> offsetIndexes = new ArrayList<ConsumerOffsetIndex>(offsets.size());
+    for (ConsumerOffset offset : offsets) {
+      if (offset == null || StringUtils.isBlank(offset.getChannelName()) || StringUtils.isBlank(offset.getGroupName())
+          || StringUtils.isBlank(offset.getPlaceholderId())) {
+        continue;
+      }
+      final String channelName = offset.getChannelName().toLowerCase();
+      ConsumerOffsetIndex offsetIndex = new ConsumerOffsetIndex();
+      offsetIndex.setId(ConsumerOffsetIndex.getRowId(channelName, offset.getGroupName()));
+      offsetIndex.setChannelName(channelName);
+      offsetIndex.setGroupName(offset.getGroupName());
+      offsetIndex.setPlaceholderId(offset.getPlaceholderId());
+      offsetIndex.setCommitDateTime(offset.getCommitDateTime());
+      offsetIndexes.add(offsetIndex);
+    }
+    if (!offsetIndexes.isEmpty()) {
+      //Puts of a row replace its cells, so the same save serves the first and the subsequent commits of a group
+      consumerOffsetWrtDao.save(offsetIndexes.toArray(new ConsumerOffsetIndex[offsetIndexes.size()]));
+    }
+  }
+
+  /**
+   * Get the number of rows fetched per scan while streaming events, which is also the number of events held in
+   * memory at a time.
+   */
+  public int getStreamCaching() {
+    return streamCaching == null || streamCaching.intValue() < 1 ? DEFAULT_STREAM_CACHING : streamCaching.intValue();
+  }
+
+  /**
+   * Whether an event missing from the placeholder point index is looked up by scanning the event table. That is only
+   * required while {@link ChannelEventIndexMigrator} has yet to backfill the index for the events created before it
+   * existed; otherwise every lookup of a placeholder that does not exist would be a full table scan.
+   */
+  public boolean isPlaceholderIndexMigrating() {
+    return placeholderIndexMigrating != null && placeholderIndexMigrating.booleanValue();
+  }
+
+  public EventIdAllocator getEventIdAllocator() {
+    return eventIdAllocator;
+  }
+
+  /**
+   * Get the longest time creating events may take from their placeholder IDs being assigned, which is part of the
+   * {@link #getVisibilityLagInMillis() visibility lag}. Creations taking longer are logged as errors, since readers
+   * resuming after a placeholder may have skipped their events.
+   */
+  public long getMaxWriteTimeInMillis() {
+    return (maxWriteTimeInSec == null || maxWriteTimeInSec.longValue() < 1 ? DEFAULT_MAX_WRITE_TIME_IN_SEC
+        : maxWriteTimeInSec.longValue()) * 1000;
+  }
+
+  @Override
+  public Comparator<String> getPlaceholderOrder() {
+    return PlaceholderOrder.DESCENDING;
+  }
+
+  @Override
+  public long getVisibilityLagInMillis() {
+    return eventIdAllocator.getBlockTtlInMillis() + getMaxWriteTimeInMillis();
+  }
+
+  protected void checkWriteTime(long placeholderId, int count, long assignedAt) {
+    final long writeTime = System.currentTimeMillis() - assignedAt;
+    if (writeTime > getMaxWriteTimeInMillis()) {
+      logger.error("Creating " + count + " events from placeholder " + placeholderId + " took " + writeTime +
+          "ms, longer than the visibility lag allows; readers may have skipped them");
+    }
+  }
+
+  /**
+   * Scan the index of a channel's events starting at a number, zero padded to {@link #MAX_LENGTH}
+   * @param channelName Name of the channel
+   * @param order The order of the index to scan in
+   * @param startAt Zero padded number to start at or empty string to start from the beginning
+   * @param maxResults Maximum number of event IDs to return
+   * @return Event IDs in the order of the index
+   */
+  protected List<EventId> scanChannelEventIndex(String channelName, char order, String startAt, int maxResults) {
+    final String prefix = ChannelEventIndex.getRowIdPrefix(channelName, order);
+    final byte[] prefixBytes = Bytes.toBytes(prefix);
+    final List<Result> results = rowRangeScanner.scan(channelEventIndexSchemaInfoProvider.getMainTableName(),
+                                                      Bytes.toBytes(prefix + startAt), RowRangeScanner.getStopRow(
+        prefixBytes), maxResults, ChannelEventIndexObjectConverter.FAMILY_SELF,
+                                                      ChannelEventIndexObjectConverter.CELL_EVENT_ID);
+    List<EventId> eventIds = new ArrayList<EventId>(results.size());
+    for (Result result : results) {
+      eventIds.add(EventId.fromString(Bytes.toString(result.getValue(ChannelEventIndexObjectConverter.FAMILY_SELF,
+                                                                      ChannelEventIndexObjectConverter.CELL_EVENT_ID))));
+    }
+    return eventIds;
+  }
+
+  /**
+   * Fetch events in one multi-get and return them in the order of the IDs. IDs of events no longer available are
+   * skipped.
+   */
+  protected List<PersistentEvent> getPersistentEvents(List<EventId> eventIds) {
+    if (eventIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final Set<PersistentEvent> byIds = eventRdDao.getByIds(eventIds);
+    final Map<EventId, PersistentEvent> eventsById = new HashMap<EventId, PersistentEvent>(byIds.size());
+    for (PersistentEvent persistentEvent : byIds) {
+      if (persistentEvent != null) {
+        eventsById.put(persistentEvent.getId(), persistentEvent);
+      }
+    }
+    List<PersistentEvent> events = new ArrayList<PersistentEvent>(eventIds.size());
+    for (EventId id : eventIds) {
+      final PersistentEvent persistentEvent = eventsById.get(id);
+      if (persistentEvent != null) {
+        events.add(persistentEvent);
+      }
     }
+    return events;
+  }
+
+  protected void initializeNewEvent(Channel channel, PersistentEvent persistentEvent, long placheholderId) {
+    persistentEvent.setPlaceholderId(String.valueOf(placheholderId));
+    persistentEvent.setChannelId(channel.getName());
+    persistentEvent.getId().setEventIdForChannel(placheholderId);
+    persistentEvent.setCreationDateTime(new Date());
+  }
+
+  protected EventUUID getEventUUID(PersistentEvent persistentEvent) {
+    EventUUID eUuid = new EventUUID();
+    eUuid.setEventId(persistentEvent.getId());
+    eUuid.setId(persistentEvent.getUuid());
+    return eUuid;
+  }
+
+  protected ReverseIdIndex getReverseIdIndex(Channel channel, PersistentEvent persistentEvent, long placheholderId) {
+    ReverseIdIndex reverseIdIndex = new ReverseIdIndex();
+    reverseIdIndex.setReverseId(persistentEvent.getId().toString());
+    reverseIdIndex.setId(new StringBuilder().append(leftPadNumberWithZero(eventIdAllocator.getReverseId(
+        placheholderId))).append(':').append(channel.getName()).toString());
+    return reverseIdIndex;
+  }
+
+  protected ChannelEventIndex[] getChannelEventIndexes(Channel channel, PersistentEvent persistentEvent,
+                                                       long placheholderId) {
+    return getChannelEventIndexes(channel.getName(), persistentEvent.getId(), placheholderId);
+  }
+
+  protected ChannelEventIndex[] getChannelEventIndexes(String channelName, EventId id, long placheholderId) {
+    channelName = channelName.toLowerCase();
+    final String eventId = id.toString();
+    ChannelEventIndex placeholderIndex = new ChannelEventIndex();
+    placeholderIndex.setId(new StringBuilder(ChannelEventIndex.getRowIdPrefix(channelName,
+                                                                              ChannelEventIndex.PLACEHOLDER_ORDER)).
+        append(leftPadNumberWithZero(placheholderId)).toString());
+    placeholderIndex.setEventId(eventId);
+    ChannelEventIndex reverseIndex = new ChannelEventIndex();
+    reverseIndex.setId(new StringBuilder(ChannelEventIndex.getRowIdPrefix(channelName, ChannelEventIndex.REVERSE_ORDER)).
+        append(leftPadNumberWithZero(eventIdAllocator.getReverseId(placheholderId))).toString());
+    reverseIndex.setEventId(eventId);
+    ChannelEventIndex pointIndex = new ChannelEventIndex();
+    pointIndex.setId(leftPadNumberWithZero(placheholderId));
+    pointIndex.setEventId(eventId);
+    return new ChannelEventIndex[]{placeholderIndex, reverseIndex, pointIndex};
   }
 
   protected String getChannelIdIndexName(String channelName) {
@@ -520,9 +814,91 @@ public class HubPersistentStorerImpl implements HubPersistentStorer {
       logger.debug("Invalid place holder id!");
       return null;
     }
-    PersistentEvent persistentEvent =
-                    eventRdDao.getSingle(
-        QueryParameterFactory.getStringLikePropertyParam("id", leftPadNumberWithZero(placeholderId), MatchMode.START));
+    PersistentEvent persistentEvent = getPersistentEventByIndex(placeholderId);
+    if (persistentEvent == null && isPlaceholderIndexMigrating()) {
+      /*
+       * Events created before the placeholder index was introduced are only found by scanning, until the index is
+       * backfilled using ChannelEventIndexMigrator
+       */
+      persistentEvent = getPersistentEventByScan(placeholderId);
+    }
     return persistentEvent;
   }
+
+  /**
+   * Look an event up using the placeholder point index, i.e. with two gets and no scan.
+   */
+  protected PersistentEvent getPersistentEventByIndex(long placeholderId) {
+    final ChannelEventIndex pointIndex = channelEventIndexRdDao.getById(leftPadNumberWithZero(placeholderId));
+    if (pointIndex == null) {
+      return null;
+    }
+    return eventRdDao.getById(EventId.fromString(pointIndex.getEventId()));
+  }
+
+  /**
+   * Look an event up by scanning for the row ID starting with the placeholder ID.
+   */
+  protected PersistentEvent getPersistentEventByScan(long placeholderId) {
+    return eventRdDao.getSingle(QueryParameterFactory.getStringLikePropertyParam("id", leftPadNumberWithZero(
+        placeholderId), MatchMode.START));
+  }
+
+  /**
+   * Streams events by scanning an index or the event table onwards from a row, a bounded scan of
+   * {@link #getStreamCaching()} rows per chunk. No scanner is held open between chunks, thus a slow consumer does not
+   * hold region server resources nor see its scanner lease expire.
+   */
+  protected class EventStream extends AbstractChunkedIterator<Event> {
+
+    private final String tableName;
+    private final byte[] stopRow;
+    private final byte[] family;
+    private final byte[] qualifier;
+    private final boolean idInValue;
+    private byte[] startRow;
+
+    /**
+     * @param tableName Table to scan, null for an empty stream
+     * @param startRow Row to start at
+     * @param stopRow Row to stop before
+     * @param family Family of the cell to fetch
+     * @param qualifier Cell to fetch
+     * @param idInValue Whether the event ID is the value of the cell, else it is the row ID
+     */
+    EventStream(String tableName, byte[] startRow, byte[] stopRow, byte[] family, byte[] qualifier,
+                boolean idInValue) {
+      this.tableName = tableName;
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      this.family = family;
+      this.qualifier = qualifier;
+      this.idInValue = idInValue;
+    }
+
+    @Override
+    protected List<Event> nextChunk() {
+      final int caching = getStreamCaching();
+      //Rows whose events have been deleted are skipped, so keep scanning till a chunk has events or rows run out
+      while (tableName != null && startRow != null) {
+        final List<Result> results = rowRangeScanner.scan(tableName, startRow, stopRow, caching, family, qualifier);
+        if (results.size() < caching) {
+          startRow = null;
+        }
+        else {
+          startRow = RowRangeScanner.getRowAfter(results.get(results.size() - 1).getRow());
+        }
+        final List<EventId> eventIds = new ArrayList<EventId>(results.size());
+        for (Result result : results) {
+          eventIds.add(EventId.fromString(Bytes.toString(idInValue ? result.getValue(family, qualifier) : result.
+              getRow())));
+        }
+        final List<PersistentEvent> events = getPersistentEvents(eventIds);
+        if (!events.isEmpty()) {
+          return new ArrayList<Event>(eventAdapter.convertInversely(events.toArray(EMPTY_EVENT_ARRAY)));
+        }
+      }
+      return Collections.emptyList();
+    }
+  }
 }
@@ -17,6 +17,9 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package com.smartitengineering.event.hub.spi.hbase;
 
+import com.smartitengineering.dao.hbase.ddl.HBaseTableGenerator;
+import com.smartitengineering.dao.hbase.ddl.config.json.ConfigurationJsonParser;
+import com.smartitengineering.dao.impl.hbase.HBaseConfigurationFactory;
 import com.smartitengineering.util.bean.guice.GuiceUtil;
 
 /**
@@ -31,4 +34,13 @@ public class Initializer {
   public static void init() {
     GuiceUtil.getInstance("com/smartitengineering/event/hub/spi/hbase/di/hub-spi.properties").register();
   }
+
+  /**
+   * Create the tables described in the schema of this SPI, if they do not already exist.
+   */
+  public static void generateTables() throws Exception {
+    new HBaseTableGenerator(ConfigurationJsonParser.getConfigurations(Initializer.class.getClassLoader().
+        getResourceAsStream("com/smartitengineering/event/hub/spi/hbase/persistents/schema.json")),
+                            HBaseConfigurationFactory.getConfigurationInstance(), false).generateTables();
+  }
 }
@@ -18,12 +18,9 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.spi.hbase;
 
 
-import com.smartitengineering.dao.hbase.ddl.HBaseTableGenerator;
-import com.smartitengineering.dao.hbase.ddl.config.json.ConfigurationJsonParser;
-import com.smartitengineering.dao.impl.hbase.HBaseConfigurationFactory;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
-import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.MasterNotRunningException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,10 +36,8 @@ public class InitializerContextListener implements ServletContextListener {
   @Override
   public void contextInitialized(ServletContextEvent sce) {
     Initializer.init();
-    Configuration config = HBaseConfigurationFactory.getConfigurationInstance();
     try {
-      new HBaseTableGenerator(ConfigurationJsonParser.getConfigurations(getClass().getClassLoader().
-          getResourceAsStream("com/smartitengineering/event/hub/spi/hbase/persistents/schema.json")), config, false).generateTables();
+      Initializer.generateTables();
     }
     catch (MasterNotRunningException ex) {
       logger.error("Master could not be found!", ex);
@@ -54,5 +49,13 @@ public class InitializerContextListener implements ServletContextListener {
 
   @Override
   public void contextDestroyed(ServletContextEvent sce) {
+    final HubPersistentStorerImpl storer = HubPersistentStorerSPI.getInstance().getStorer(
+        HubPersistentStorerImpl.class);
+    if (storer != null) {
+      final EventIdAllocator allocator = storer.getEventIdAllocator();
+      if (allocator != null) {
+        allocator.release();
+      }
+    }
   }
 }
@@ -0,0 +1,112 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.google.inject.Inject;
+import com.smartitengineering.dao.impl.hbase.spi.AsyncExecutorService;
+import com.smartitengineering.dao.impl.hbase.spi.Callback;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+
+/**
+ * Performs bounded row range scans, i.e. scans with a start and stop row and a limit, so that a page of rows costs
+ * only the rows returned rather than a filter over the whole table.
+ * @author imyousuf
+ */
+public class RowRangeScanner {
+
+  public static final byte[] EMPTY_ROW = new byte[0];
+  @Inject
+  protected AsyncExecutorService executorService;
+
+  /**
+   * Scan a table from the start row (inclusive) to the stop row (exclusive) and return at most <tt>limit</tt> rows.
+   * @param tableName Table to scan
+   * @param startRow Row to start from, an empty array for the start of the table
+   * @param stopRow Row to stop at, an empty array for the end of the table
+   * @param limit Maximum number of rows to return
+   * @param family Column family to fetch
+   * @param qualifier Column to fetch, if null the whole family is fetched
+   * @return Rows in row ID order
+   */
+  public List<Result> scan(final String tableName, final byte[] startRow, final byte[] stopRow, final int limit,
+                           final byte[] family, final byte[] qualifier) {
+    if (limit < 1) {
+      return Collections.emptyList();
+    }
+    return executorService.execute(tableName, new Callback<List<Result>>() {
+
+      @Override
+      public List<Result> call(HTableInterface tableInterface) throws Exception {
+        Scan scan = new Scan(startRow, stopRow);
+        if (qualifier == null) {
+          scan.addFamily(family);
+        }
+        else {
+          scan.addColumn(family, qualifier);
+        }
+        scan.setCaching(limit);
+        ResultScanner scanner = tableInterface.getScanner(scan);
+        try {
+          List<Result> results = new ArrayList<Result>(limit);
+          Result result;
+          while (results.size() < limit && (result = scanner.next()) != null) {
+            results.add(result);
+          }
+          return results;
+        }
+        finally {
+          scanner.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Get the smallest row ID greater than every row ID that starts with the prefix, to be used as a stop row.
+   * @param prefix Row ID prefix
+   * @return The stop row for the prefix
+   */
+  public static byte[] getStopRow(byte[] prefix) {
+    byte[] stopRow = Arrays.copyOf(prefix, prefix.length);
+    for (int i = stopRow.length - 1; i >= 0; --i) {
+      if (stopRow[i] != (byte) 0xff) {
+        stopRow[i]++;
+        return Arrays.copyOf(stopRow, i + 1);
+      }
+    }
+    return EMPTY_ROW;
+  }
+
+  /**
+   * Get the smallest row ID greater than the given row ID, to be used to resume a scan after it.
+   * @param rowId Row ID
+   * @return The row right after the row ID
+   */
+  public static byte[] getRowAfter(byte[] rowId) {
+    byte[] nextRow = Arrays.copyOf(rowId, rowId.length + 1);
+    nextRow[rowId.length] = 0;
+    return nextRow;
+  }
+}
@@ -18,8 +18,11 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.spi.hbase.di;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 import com.smartitengineering.dao.common.CommonReadDao;
 import com.smartitengineering.dao.common.CommonWriteDao;
@@ -44,10 +47,17 @@ import com.smartitengineering.dao.impl.hbase.spi.impl.guice.GenericBaseConfigPro
 import com.smartitengineering.dao.impl.hbase.spi.impl.guice.GenericFilterConfigsProvider;
 import com.smartitengineering.domain.PersistentDTO;
 import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.spi.ChannelCachingHubPersistentStorer;
 import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import com.smartitengineering.event.hub.spi.hbase.EventIdAllocator;
+import com.smartitengineering.event.hub.spi.hbase.RowRangeScanner;
 import com.smartitengineering.event.hub.spi.hbase.HubPersistentStorerImpl;
 import com.smartitengineering.event.hub.spi.hbase.persistents.AutoIdObjectConverter;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelEventIndex;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelEventIndexObjectConverter;
 import com.smartitengineering.event.hub.spi.hbase.persistents.ChannelObjectConverter;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ConsumerOffsetIndex;
+import com.smartitengineering.event.hub.spi.hbase.persistents.ConsumerOffsetObjectConverter;
 import com.smartitengineering.event.hub.spi.hbase.persistents.DomainIdInstanceProviderImpl;
 import com.smartitengineering.event.hub.spi.hbase.persistents.EventId;
 import com.smartitengineering.event.hub.spi.hbase.persistents.EventObjectConverter;
@@ -63,6 +73,7 @@ import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 
 /**
@@ -72,16 +83,70 @@ import org.apache.commons.lang.math.NumberUtils;
 public class GuiceModule extends AbstractModule {
 
   private final long waitTime;
+  private final int eventIdBlockSize;
+  private final EventIdAllocator.GapPolicy eventIdGapPolicy;
+  private final long eventIdBlockTtl;
+  private final long eventMaxWriteTime;
+  private final long channelCacheTtl;
+  private final int channelCacheMaxSize;
+  private final int eventStreamCaching;
+  private final boolean placeholderIndexMigrating;
 
   public GuiceModule(Properties properties) {
     long toLong = NumberUtils.toLong(properties.getProperty("com.smartitengineering.event.waitTimeInSec"), 10L);
     waitTime = toLong > 0 ? toLong : 10l;
+    int toInt = NumberUtils.toInt(properties.getProperty("com.smartitengineering.event.idBlockSize"),
+                                  EventIdAllocator.DEFAULT_BLOCK_SIZE);
+    eventIdBlockSize = toInt > 0 ? toInt : EventIdAllocator.DEFAULT_BLOCK_SIZE;
+    toLong = NumberUtils.toLong(properties.getProperty("com.smartitengineering.event.idBlockTtlInSec"),
+                                EventIdAllocator.DEFAULT_BLOCK_TTL_IN_SEC);
+    eventIdBlockTtl = toLong > 0 ? toLong : EventIdAllocator.DEFAULT_BLOCK_TTL_IN_SEC;
+    toLong = NumberUtils.toLong(properties.getProperty("com.smartitengineering.event.maxWriteTimeInSec"),
+                                HubPersistentStorerImpl.DEFAULT_MAX_WRITE_TIME_IN_SEC);
+    eventMaxWriteTime = toLong > 0 ? toLong : HubPersistentStorerImpl.DEFAULT_MAX_WRITE_TIME_IN_SEC;
+    String gapPolicy = properties.getProperty("com.smartitengineering.event.idGapPolicy");
+    if (StringUtils.isNotBlank(gapPolicy)) {
+      eventIdGapPolicy = EventIdAllocator.GapPolicy.valueOf(gapPolicy.trim().toUpperCase());
+    }
+    else {
+      eventIdGapPolicy = EventIdAllocator.GapPolicy.LOG;
+    }
+    toLong = NumberUtils.toLong(properties.getProperty("com.smartitengineering.event.channelCache.ttlInSec"), 60L);
+    channelCacheTtl = toLong > 0 ? toLong : 0l;
+    toInt = NumberUtils.toInt(properties.getProperty("com.smartitengineering.event.channelCache.maxSize"),
+                              ChannelCachingHubPersistentStorer.DEFAULT_MAX_SIZE);
+    channelCacheMaxSize = toInt > 0 ? toInt : ChannelCachingHubPersistentStorer.DEFAULT_MAX_SIZE;
+    toInt = NumberUtils.toInt(properties.getProperty("com.smartitengineering.event.streamCaching"),
+                              HubPersistentStorerImpl.DEFAULT_STREAM_CACHING);
+    eventStreamCaching = toInt > 0 ? toInt : HubPersistentStorerImpl.DEFAULT_STREAM_CACHING;
+    placeholderIndexMigrating = Boolean.parseBoolean(StringUtils.trim(properties.getProperty(
+        "com.smartitengineering.event.placeholderIndexMigrating")));
+  }
+
+  @Provides
+  @Singleton
+  @Named("storer")
+  protected HubPersistentStorer provideStorer(HubPersistentStorerImpl storerImpl) {
+    if (channelCacheTtl > 0) {
+      return new ChannelCachingHubPersistentStorer(storerImpl, TimeUnit.SECONDS.toMillis(channelCacheTtl),
+                                                   channelCacheMaxSize);
+    }
+    else {
+      return storerImpl;
+    }
   }
 
   @Override
   protected void configure() {
-    bind(HubPersistentStorer.class).annotatedWith(Names.named("storer")).to(HubPersistentStorerImpl.class).in(
-        Scopes.SINGLETON);
+    bind(HubPersistentStorerImpl.class).in(Scopes.SINGLETON);
+    bind(EventIdAllocator.class).in(Scopes.SINGLETON);
+    bind(RowRangeScanner.class).in(Scopes.SINGLETON);
+    bind(Integer.class).annotatedWith(Names.named("eventIdBlockSize")).toInstance(eventIdBlockSize);
+    bind(EventIdAllocator.GapPolicy.class).annotatedWith(Names.named("eventIdGapPolicy")).toInstance(eventIdGapPolicy);
+    bind(Long.class).annotatedWith(Names.named("eventIdBlockTtlInSec")).toInstance(eventIdBlockTtl);
+    bind(Long.class).annotatedWith(Names.named("eventMaxWriteTimeInSec")).toInstance(eventMaxWriteTime);
+    bind(Integer.class).annotatedWith(Names.named("eventStreamCaching")).toInstance(eventStreamCaching);
+    bind(Boolean.class).annotatedWith(Names.named("placeholderIndexMigrating")).toInstance(placeholderIndexMigrating);
 
     bind(AsyncExecutorService.class).to(MixedExecutorServiceImpl.class).in(Scopes.SINGLETON);
     bind(ExecutorService.class).toInstance(Executors.newCachedThreadPool());
@@ -244,6 +309,68 @@ public class GuiceModule extends AbstractModule {
           "com/smartitengineering/event/hub/spi/hbase/persistents/ReverseIdIndexSchemaBaseConfig.json")).in(
           Scopes.SINGLETON);
     }
+    {
+      bind(new TypeLiteral<ObjectRowConverter<ChannelEventIndex>>() {
+      }).to(ChannelEventIndexObjectConverter.class).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<CommonReadDao<ChannelEventIndex, String>>() {
+      }).to(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ChannelEventIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<CommonWriteDao<ChannelEventIndex>>() {
+      }).to(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ChannelEventIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ChannelEventIndex, String>>() {
+      }).to(new TypeLiteral<CommonDao<ChannelEventIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      final TypeLiteral<SchemaInfoProviderImpl<ChannelEventIndex, String>> typeLiteral = new TypeLiteral<SchemaInfoProviderImpl<ChannelEventIndex, String>>() {
+      };
+      bind(new TypeLiteral<MergeService<ChannelEventIndex, String>>() {
+      }).to(new TypeLiteral<DiffBasedMergeService<ChannelEventIndex, String>>() {
+      });
+      bind(new TypeLiteral<LockAttainer<ChannelEventIndex, String>>() {
+      }).to(new TypeLiteral<LockAttainerImpl<ChannelEventIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<SchemaInfoProvider<ChannelEventIndex, String>>() {
+      }).to(typeLiteral).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<FilterConfigs<ChannelEventIndex>>() {
+      }).toProvider(new GenericFilterConfigsProvider<ChannelEventIndex>(
+          "com/smartitengineering/event/hub/spi/hbase/persistents/ChannelEventIndexFilterConfigs.json")).in(
+          Scopes.SINGLETON);
+      bind(new TypeLiteral<SchemaInfoProviderBaseConfig<ChannelEventIndex>>() {
+      }).toProvider(new GenericBaseConfigProvider<ChannelEventIndex>(
+          "com/smartitengineering/event/hub/spi/hbase/persistents/ChannelEventIndexSchemaBaseConfig.json")).in(
+          Scopes.SINGLETON);
+    }
+    {
+      bind(new TypeLiteral<ObjectRowConverter<ConsumerOffsetIndex>>() {
+      }).to(ConsumerOffsetObjectConverter.class).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<CommonReadDao<ConsumerOffsetIndex, String>>() {
+      }).to(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ConsumerOffsetIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<CommonWriteDao<ConsumerOffsetIndex>>() {
+      }).to(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ConsumerOffsetIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<com.smartitengineering.dao.common.CommonDao<ConsumerOffsetIndex, String>>() {
+      }).to(new TypeLiteral<CommonDao<ConsumerOffsetIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      final TypeLiteral<SchemaInfoProviderImpl<ConsumerOffsetIndex, String>> typeLiteral = new TypeLiteral<SchemaInfoProviderImpl<ConsumerOffsetIndex, String>>() {
+      };
+      bind(new TypeLiteral<MergeService<ConsumerOffsetIndex, String>>() {
+      }).to(new TypeLiteral<DiffBasedMergeService<ConsumerOffsetIndex, String>>() {
+      });
+      bind(new TypeLiteral<LockAttainer<ConsumerOffsetIndex, String>>() {
+      }).to(new TypeLiteral<LockAttainerImpl<ConsumerOffsetIndex, String>>() {
+      }).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<SchemaInfoProvider<ConsumerOffsetIndex, String>>() {
+      }).to(typeLiteral).in(Scopes.SINGLETON);
+      bind(new TypeLiteral<FilterConfigs<ConsumerOffsetIndex>>() {
+      }).toProvider(new GenericFilterConfigsProvider<ConsumerOffsetIndex>(
+          "com/smartitengineering/event/hub/spi/hbase/persistents/ConsumerOffsetFilterConfigs.json")).in(
+          Scopes.SINGLETON);
+      bind(new TypeLiteral<SchemaInfoProviderBaseConfig<ConsumerOffsetIndex>>() {
+      }).toProvider(new GenericBaseConfigProvider<ConsumerOffsetIndex>(
+          "com/smartitengineering/event/hub/spi/hbase/persistents/ConsumerOffsetSchemaBaseConfig.json")).in(
+          Scopes.SINGLETON);
+    }
     bind(new TypeLiteral<RowCellIncrementor<Channel, RowAutoIdIndex, String>>() {
     }).to(new TypeLiteral<RowCellIncrementorImpl<Channel, RowAutoIdIndex, String>>() {
     });
@@ -0,0 +1,60 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase.persistents;
+
+import com.smartitengineering.dao.impl.hbase.spi.domain.AbstractHBaseDomain;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Index of events of a channel, whose row ID is prefixed with the channel name so that a page of a channel's events
+ * is a bounded row range. Each event is indexed twice, once in placeholder ID order, i.e. newest first, and once in
+ * reverse ID order, i.e. oldest first.
+ * <p>
+ * The table also holds the placeholder point index, whose row ID is the zero padded placeholder ID alone. Those rows
+ * have no ':' in them and hence never fall within the row range of a channel.
+ * @author imyousuf
+ */
+public class ChannelEventIndex extends AbstractHBaseDomain<ChannelEventIndex, String> {
+
+  public static final char PLACEHOLDER_ORDER = 'p';
+  public static final char REVERSE_ORDER = 'r';
+  private String eventId;
+
+  public String getEventId() {
+    return eventId;
+  }
+
+  public void setEventId(String eventId) {
+    this.eventId = eventId;
+  }
+
+  /**
+   * Get the common row ID prefix of all index rows of a channel in the given order
+   * @param channelName Name of the channel
+   * @param order Either {@link #PLACEHOLDER_ORDER} or {@link #REVERSE_ORDER}
+   * @return The row ID prefix
+   */
+  public static String getRowIdPrefix(String channelName, char order) {
+    return new StringBuilder(channelName).append(':').append(order).append(':').toString();
+  }
+
+  @Override
+  public boolean isValid() {
+    return StringUtils.isNotBlank(getId()) && StringUtils.isNotBlank(eventId);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase.persistents;
+
+import com.smartitengineering.dao.impl.hbase.spi.domain.AbstractHBaseDomain;
+import java.util.Date;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Offset committed by a consumer group of a channel, whose row ID is the channel name and the group name separated
+ * by a '/', so that the groups of a channel are a row range.
+ * @author imyousuf
+ */
+public class ConsumerOffsetIndex extends AbstractHBaseDomain<ConsumerOffsetIndex, String> {
+
+  public static final char GROUP_SEPARATOR = '/';
+  private String channelName;
+  private String groupName;
+  private String placeholderId;
+  private Date commitDateTime;
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public void setChannelName(String channelName) {
+    this.channelName = channelName;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  public void setGroupName(String groupName) {
+    this.groupName = groupName;
+  }
+
+  public String getPlaceholderId() {
+    return placeholderId;
+  }
+
+  public void setPlaceholderId(String placeholderId) {
+    this.placeholderId = placeholderId;
+  }
+
+  public Date getCommitDateTime() {
+    return commitDateTime;
+  }
+
+  public void setCommitDateTime(Date commitDateTime) {
+    this.commitDateTime = commitDateTime;
+  }
+
+  public static String getRowId(String channelName, String groupName) {
+    return new StringBuilder(channelName).append(GROUP_SEPARATOR).append(groupName).toString();
+  }
+
+  @Override
+  public boolean isValid() {
+    return StringUtils.isNotBlank(getId()) && StringUtils.isNotBlank(placeholderId);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase.persistents;
+
+import com.smartitengineering.dao.impl.hbase.spi.ExecutorService;
+import com.smartitengineering.dao.impl.hbase.spi.impl.AbstractObjectRowConverter;
+import java.util.Date;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class ConsumerOffsetObjectConverter extends AbstractObjectRowConverter<ConsumerOffsetIndex, String> {
+
+  private static final byte[] FAMILY_SELF = Bytes.toBytes("self");
+  private static final byte[] CELL_CHANNEL = Bytes.toBytes("channel");
+  private static final byte[] CELL_GROUP = Bytes.toBytes("group");
+  private static final byte[] CELL_PLACEHOLDER_ID = Bytes.toBytes("placeholderId");
+  private static final byte[] CELL_COMMIT_DATE = Bytes.toBytes("commitDate");
+
+  @Override
+  protected String[] getTablesToAttainLock() {
+    return new String[]{getInfoProvider().getMainTableName()};
+  }
+
+  @Override
+  protected void getPutForTable(ConsumerOffsetIndex instance, ExecutorService service, Put put) {
+    put.add(FAMILY_SELF, CELL_CHANNEL, Bytes.toBytes(instance.getChannelName()));
+    put.add(FAMILY_SELF, CELL_GROUP, Bytes.toBytes(instance.getGroupName()));
+    put.add(FAMILY_SELF, CELL_PLACEHOLDER_ID, Bytes.toBytes(instance.getPlaceholderId()));
+    if (instance.getCommitDateTime() != null) {
+      put.add(FAMILY_SELF, CELL_COMMIT_DATE, Utils.toBytes(instance.getCommitDateTime()));
+    }
+  }
+
+  @Override
+  protected void getDeleteForTable(ConsumerOffsetIndex instance, ExecutorService service, Delete put) {
+    //Nothing to do
+  }
+
+  @Override
+  public ConsumerOffsetIndex rowsToObject(Result startRow, ExecutorService executorService) {
+    try {
+      ConsumerOffsetIndex offset = new ConsumerOffsetIndex();
+      offset.setId(getInfoProvider().getIdFromRowId(startRow.getRow()));
+      offset.setChannelName(Bytes.toString(startRow.getValue(FAMILY_SELF, CELL_CHANNEL)));
+      offset.setGroupName(Bytes.toString(startRow.getValue(FAMILY_SELF, CELL_GROUP)));
+      offset.setPlaceholderId(Bytes.toString(startRow.getValue(FAMILY_SELF, CELL_PLACEHOLDER_ID)));
+      final byte[] commitDate = startRow.getValue(FAMILY_SELF, CELL_COMMIT_DATE);
+      if (commitDate != null) {
+        offset.setCommitDateTime(Utils.toDate(commitDate));
+      }
+      return offset;
+    }
+    catch (Exception ex) {
+      logger.error("Could not convert to consumer offset!", ex);
+    }
+    return null;
+  }
+}
@@ -18,8 +18,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package com.smartitengineering.event.hub.spi.hbase.persistents;
 
 import com.smartitengineering.dao.impl.hbase.spi.domain.AbstractHBaseDomain;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.Date;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -86,15 +86,18 @@ public class PersistentEvent
     return new Date(creationDateTime.getTime());
   }
 
+  /**
+   * Retrieve the bytes of the content. They are not copied, thus must not be modified.
+   */
   public byte[] getContent() {
-    if (content == null) {
-      return null;
-    }
-    return Arrays.copyOf(content, content.length);
+    return content;
   }
 
+  /**
+   * Set the bytes of the content. They are not copied, thus must not be modified once set.
+   */
   public void setContent(byte[] content) {
-    this.content = Arrays.copyOf(content, content.length);
+    this.content = content;
   }
 
   public String getContentType() {
@@ -106,7 +109,7 @@ public class PersistentEvent
   }
 
   public InputStream getContentStream() {
-    return IOUtils.toInputStream(new String(content));
+    return new ByteArrayInputStream(content == null ? new byte[0] : content);
   }
 
   public void setContentStream(InputStream stream) {
@@ -126,6 +129,6 @@ public class PersistentEvent
 
   @Override
   public boolean isValid() {
-    return getContent() != null && getContent().length > 0 && StringUtils.isNotBlank(getContentType());
+    return content != null && content.length > 0 && StringUtils.isNotBlank(getContentType());
   }
 }
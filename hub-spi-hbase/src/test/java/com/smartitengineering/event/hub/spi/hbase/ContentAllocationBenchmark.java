@@ -0,0 +1,111 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Content;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.hbase.persistents.PersistentEvent;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Micro benchmark measuring the bytes allocated per event while its content is taken from the request entity to the
+ * HBase <tt>Put</tt> and read back, using the byte content against the stream and string round trips it replaced.
+ * The allocation is measured using the thread allocation counter of the HotSpot thread MX bean, thus it needs a
+ * HotSpot JVM; it does not need HBase and is not part of the test suite.
+ * <p>
+ * Usage: <tt>ContentAllocationBenchmark [content size in bytes, default 1024] [events, default 1000000]</tt>
+ * @author imyousuf
+ */
+public class ContentAllocationBenchmark {
+
+  private static final String CONTENT_TYPE = "text/plain; charset=UTF-8";
+  private static final int WARM_UP = 100000;
+
+  public static void main(String[] args) throws Exception {
+    final int size = args.length > 0 ? NumberUtils.toInt(args[0], 1024) : 1024;
+    final int events = args.length > 1 ? NumberUtils.toInt(args[1], 1000000) : 1000000;
+    final String message = StringUtils.repeat("a", size);
+    final byte[] entity = message.getBytes("UTF-8");
+    final com.sun.management.ThreadMXBean threadBean =
+                                           (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    long sink = 0;
+    for (int round = 0; round < 2; ++round) {
+      final boolean measure = round > 0;
+      final int count = measure ? events : WARM_UP;
+      long allocated = threadBean.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+      for (int i = 0; i < count; ++i) {
+        sink += streamRoundTrip(message);
+      }
+      if (measure) {
+        report("stream", threadBean.getThreadAllocatedBytes(threadId) - allocated, System.nanoTime() - start, count);
+      }
+      allocated = threadBean.getThreadAllocatedBytes(threadId);
+      start = System.nanoTime();
+      for (int i = 0; i < count; ++i) {
+        //The entity is read into a new array per request in both cases, so it is not part of the measurement
+        sink += byteRoundTrip(entity);
+      }
+      if (measure) {
+        report("bytes", threadBean.getThreadAllocatedBytes(threadId) - allocated, System.nanoTime() - start, count);
+      }
+    }
+    System.out.println("Checksum " + sink);
+  }
+
+  /**
+   * The path content took before it was held as bytes: the request entity as a string, written to a stream, read
+   * into the persistent event, copied for the <tt>Put</tt> and when read back, then turned back into a stream via a
+   * string in the platform charset.
+   */
+  protected static int streamRoundTrip(String message) throws Exception {
+    final Content content = APIFactory.getContent(CONTENT_TYPE, IOUtils.toInputStream(message));
+    final PersistentEvent persistentEvent = new PersistentEvent();
+    persistentEvent.setContentStream(content.getContent());
+    final byte[] putValue = Arrays.copyOf(persistentEvent.getContent(), persistentEvent.getContent().length);
+    final PersistentEvent readEvent = new PersistentEvent();
+    readEvent.setContent(Arrays.copyOf(putValue, putValue.length));
+    final InputStream readStream = IOUtils.toInputStream(new String(Arrays.copyOf(readEvent.getContent(), readEvent.
+        getContent().length)));
+    return APIFactory.getContent(CONTENT_TYPE, readStream).getContent().available();
+  }
+
+  /**
+   * The path content takes now, from the entity's bytes to the <tt>Put</tt> and back without copying.
+   */
+  protected static int byteRoundTrip(byte[] entity) {
+    final ByteContent content = APIFactory.getContent(CONTENT_TYPE, entity);
+    final PersistentEvent persistentEvent = new PersistentEvent();
+    persistentEvent.setContent(APIFactory.getContentBytes(content));
+    final byte[] putValue = persistentEvent.getContent();
+    final PersistentEvent readEvent = new PersistentEvent();
+    readEvent.setContent(putValue);
+    return APIFactory.getContent(CONTENT_TYPE, readEvent.getContent()).getLength();
+  }
+
+  protected static void report(String path, long allocated, long nanos, int count) {
+    System.out.println(path + ": " + (allocated / count) + " bytes/event, " + (nanos / count) + "ns/event");
+  }
+}
@@ -0,0 +1,218 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.smartitengineering.dao.common.CommonWriteDao;
+import com.smartitengineering.dao.impl.hbase.spi.RowCellIncrementor;
+import com.smartitengineering.event.hub.spi.hbase.EventIdAllocator.GapPolicy;
+import com.smartitengineering.event.hub.spi.hbase.persistents.RowAutoIdIndex;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Runs the allocator against in memory counters standing in for the cells of the auto id table.
+ * @author imyousuf
+ */
+public class EventIdAllocatorTest {
+
+  private static final long INITIAL_ID = 1000;
+  private Counter idCounter;
+  private Counter reverseIdCounter;
+  private final List<RowAutoIdIndex> saved = new ArrayList<RowAutoIdIndex>();
+  private final List<String> warnings = new ArrayList<String>();
+  private EventIdAllocator allocator;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    idCounter = new Counter(INITIAL_ID);
+    reverseIdCounter = new Counter(0);
+    allocator = new EventIdAllocator();
+    allocator.idIncrementor = newProxy(RowCellIncrementor.class, idCounter);
+    allocator.reverseIdIncrementor = newProxy(RowCellIncrementor.class, reverseIdCounter);
+    allocator.autoIdWrtDao = newProxy(CommonWriteDao.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("save")) {
+          for (Object arg : args) {
+            if (arg instanceof Object[]) {
+              for (Object state : (Object[]) arg) {
+                saved.add((RowAutoIdIndex) state);
+              }
+            }
+            else {
+              saved.add((RowAutoIdIndex) arg);
+            }
+          }
+        }
+        return null;
+      }
+    });
+    allocator.logger = newProxy(Logger.class, new InvocationHandler() {
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("warn")) {
+          warnings.add(String.valueOf(args[0]));
+        }
+        return method.getReturnType().equals(boolean.class) ? Boolean.FALSE : null;
+      }
+    });
+    allocator.blockSize = 3;
+    allocator.gapPolicy = GapPolicy.IGNORE;
+  }
+
+  @Test
+  public void testIdsAreHandedOutDescendingFromLeasedBlocks() {
+    final long[] ids = allocator.nextPlaceholderIds(5);
+    Assert.assertTrue(Arrays.equals(new long[]{999, 998, 997, 996, 995}, ids));
+    Assert.assertEquals(Arrays.asList(-3l, -3l), idCounter.deltas);
+    Assert.assertEquals(Arrays.asList(3l, 3l), reverseIdCounter.deltas);
+    Assert.assertEquals(994, allocator.nextPlaceholderId());
+    Assert.assertEquals(2, idCounter.deltas.size());
+  }
+
+  @Test
+  public void testCounterIsIncrementedOncePerBlock() {
+    allocator.blockSize = 100;
+    allocator.nextPlaceholderIds(100);
+    Assert.assertEquals(1, idCounter.deltas.size());
+    allocator.nextPlaceholderId();
+    Assert.assertEquals(2, idCounter.deltas.size());
+  }
+
+  @Test
+  public void testDefaultsApplyToSettingsNotConfigured() {
+    allocator.blockSize = null;
+    allocator.gapPolicy = null;
+    Assert.assertEquals(EventIdAllocator.DEFAULT_BLOCK_SIZE, allocator.getBlockSize());
+    Assert.assertEquals(EventIdAllocator.DEFAULT_BLOCK_TTL_IN_SEC * 1000, allocator.getBlockTtlInMillis());
+    Assert.assertEquals(GapPolicy.LOG, allocator.getGapPolicy());
+    allocator.blockTtlInSec = 5l;
+    Assert.assertEquals(5000, allocator.getBlockTtlInMillis());
+  }
+
+  @Test
+  public void testReverseIdMirrorsPlaceholderId() {
+    final long id = allocator.nextPlaceholderId();
+    Assert.assertEquals(Long.MAX_VALUE - id, allocator.getReverseId(id));
+  }
+
+  @Test
+  public void testRestOfAnExpiredBlockIsAbandoned() throws Exception {
+    allocator.gapPolicy = GapPolicy.RECORD;
+    Assert.assertEquals(999, allocator.nextPlaceholderId());
+    Assert.assertEquals(998, allocator.nextPlaceholderId());
+    Thread.sleep(allocator.getBlockTtlInMillis() + 100);
+    Assert.assertEquals(996, allocator.nextPlaceholderId());
+    Assert.assertEquals(1, saved.size());
+    Assert.assertEquals(997, saved.get(0).getAutoIdValue());
+    Assert.assertEquals(997, saved.get(0).getReverseAutoIdValue());
+  }
+
+  @Test
+  public void testIgnoredGapIsNeitherLoggedNorRecorded() {
+    allocator.nextPlaceholderId();
+    allocator.release();
+    Assert.assertTrue(warnings.isEmpty());
+    Assert.assertTrue(saved.isEmpty());
+  }
+
+  @Test
+  public void testLoggedGapIsNotRecorded() {
+    allocator.gapPolicy = GapPolicy.LOG;
+    allocator.nextPlaceholderId();
+    allocator.release();
+    Assert.assertEquals(1, warnings.size());
+    Assert.assertTrue(warnings.get(0), warnings.get(0).contains("998 down to 997"));
+    Assert.assertTrue(saved.isEmpty());
+  }
+
+  @Test
+  public void testRecordedGapIsLoggedAndSaved() {
+    allocator.gapPolicy = GapPolicy.RECORD;
+    allocator.nextPlaceholderId();
+    allocator.release();
+    Assert.assertEquals(1, warnings.size());
+    Assert.assertEquals(1, saved.size());
+    final RowAutoIdIndex gap = saved.get(0);
+    Assert.assertEquals(EventIdAllocator.GAP_ROW_ID_PREFIX + StringUtils.leftPad("998",
+                                                                                HubPersistentStorerImpl.MAX_LENGTH,
+                                                                                '0'), gap.getId());
+    Assert.assertEquals(998, gap.getAutoIdValue());
+    Assert.assertEquals(997, gap.getReverseAutoIdValue());
+  }
+
+  @Test
+  public void testExhaustedBlockLeavesNoGap() {
+    allocator.gapPolicy = GapPolicy.RECORD;
+    allocator.nextPlaceholderIds(3);
+    allocator.release();
+    Assert.assertTrue(warnings.isEmpty());
+    Assert.assertTrue(saved.isEmpty());
+  }
+
+  @Test
+  public void testReleaseIsAppliedOnceAndAFreshBlockLeasedAfter() {
+    allocator.gapPolicy = GapPolicy.RECORD;
+    allocator.nextPlaceholderId();
+    allocator.release();
+    allocator.release();
+    Assert.assertEquals(1, saved.size());
+    Assert.assertEquals(996, allocator.nextPlaceholderId());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(EventIdAllocatorTest.class.getClassLoader(), new Class[]{type}, handler);
+  }
+
+  /**
+   * A counter cell, incremented atomically as HBase does and returning the value after the increment.
+   */
+  private static class Counter implements InvocationHandler {
+
+    private long value;
+    private final List<Long> deltas = new ArrayList<Long>();
+
+    public Counter(long value) {
+      this.value = value;
+    }
+
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (!method.getName().equals("incrementAndGet")) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      final long delta = ((Number) args[1]).longValue();
+      deltas.add(delta);
+      value += delta;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.hbase;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.HubPersistentStorerSPI;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Micro benchmark comparing looking an event up by its placeholder ID using the point index against the row prefix
+ * scan it replaced. It runs against the HBase cluster configured for the SPI and is not part of the test suite, since
+ * loading a meaningful number of events takes long; the comparison is intended for tables of 10M events.
+ * <p>
+ * Usage: <tt>PlaceholderLookupBenchmark [events to load, default 10000000] [lookups, default 10000]</tt>, load 0
+ * events to reuse the ones loaded by an earlier run.
+ * @author imyousuf
+ */
+public class PlaceholderLookupBenchmark {
+
+  private static final String CHANNEL_NAME = "lookup-benchmark";
+  private static final int BATCH_SIZE = 1000;
+
+  public static void main(String[] args) throws Exception {
+    final long events = args.length > 0 ? NumberUtils.toLong(args[0], 10000000l) : 10000000l;
+    final int lookups = args.length > 1 ? NumberUtils.toInt(args[1], 10000) : 10000;
+    Initializer.init();
+    Initializer.generateTables();
+    final HubPersistentStorerImpl storer = HubPersistentStorerSPI.getInstance().getStorer(
+        HubPersistentStorerImpl.class);
+    if (storer == null) {
+      throw new IllegalStateException("HBase storer not configured, found " + HubPersistentStorerSPI.getInstance().
+          getStorer());
+    }
+    Channel channel = storer.getChannel(CHANNEL_NAME);
+    if (channel == null) {
+      channel = APIFactory.getChannelBuilder(CHANNEL_NAME).build();
+      storer.create(channel);
+    }
+    long start = System.currentTimeMillis();
+    for (long loaded = 0; loaded < events; loaded += BATCH_SIZE) {
+      final int size = (int) Math.min(BATCH_SIZE, events - loaded);
+      final List<Event> batch = new ArrayList<Event>(size);
+      for (int i = 0; i < size; ++i) {
+        batch.add(APIFactory.getEventBuilder().eventContent(APIFactory.getContent("text/plain",
+                                                                                       new ByteArrayInputStream(String.
+            valueOf(loaded + i).getBytes()))).build());
+      }
+      storer.create(channel, batch);
+    }
+    if (events > 0) {
+      System.out.println("Loaded " + events + " events in " + (System.currentTimeMillis() - start) + "ms");
+    }
+    final List<Event> newest = new ArrayList<Event>(storer.getEvents("-1", CHANNEL_NAME, -1));
+    if (newest.isEmpty()) {
+      throw new IllegalStateException("No events to look up");
+    }
+    final long newestId = NumberUtils.toLong(newest.get(0).getPlaceholderId());
+    //Without a load in this run the lookups are spread over as many events as there are lookups
+    final long range = Math.max(1, Math.min(events > 0 ? events : lookups, Integer.MAX_VALUE));
+    final long[] placeholderIds = new long[lookups];
+    final Random random = new Random(lookups);
+    for (int i = 0; i < lookups; ++i) {
+      placeholderIds[i] = newestId + random.nextInt((int) range);
+    }
+    //Warm both paths up before measuring
+    for (int i = 0; i < Math.min(100, lookups); ++i) {
+      storer.getPersistentEventByIndex(placeholderIds[i]);
+      storer.getPersistentEventByScan(placeholderIds[i]);
+    }
+    int found = 0;
+    start = System.nanoTime();
+    for (long placeholderId : placeholderIds) {
+      if (storer.getPersistentEventByIndex(placeholderId) != null) {
+        found++;
+      }
+    }
+    report("Point index", lookups, found, System.nanoTime() - start);
+    found = 0;
+    start = System.nanoTime();
+    for (long placeholderId : placeholderIds) {
+      if (storer.getPersistentEventByScan(placeholderId) != null) {
+        found++;
+      }
+    }
+    report("Prefix scan", lookups, found, System.nanoTime() - start);
+  }
+
+  private static void report(String path, int lookups, int found, long nanos) {
+    System.out.println(path + ": " + lookups + " lookups (" + found + " found) in " + (nanos / 1000000) + "ms, " +
+        (nanos / 1000 / Math.max(1, lookups)) + "us per lookup");
+  }
+}
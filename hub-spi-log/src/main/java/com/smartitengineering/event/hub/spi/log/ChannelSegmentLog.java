@@ -0,0 +1,453 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.log;
+
+import com.smartitengineering.event.hub.api.Event;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * The segments of a channel, ordered by the placeholder ID they start at, of which only the last one is appended to.
+ * Appends and retention have to be serialized by the caller, reads need no locking; the list of segments is replaced
+ * as a whole on every change.
+ * @author imyousuf
+ */
+final class ChannelSegmentLog {
+
+  private final String channelName;
+  private final File directory;
+  private final int indexInterval;
+  private final ConcurrentSkipListSet<Long> deletedIds = new ConcurrentSkipListSet<Long>();
+  private volatile List<LogSegment> segments = Collections.emptyList();
+
+  private ChannelSegmentLog(String channelName, File directory, int indexInterval) {
+    this.channelName = channelName;
+    this.directory = directory;
+    this.indexInterval = indexInterval;
+  }
+
+  /**
+   * Open the log of a channel from its directory, creating the directory if it does not exist and recovering the
+   * segments in it if it does.
+   */
+  static ChannelSegmentLog open(String channelName, File directory, int indexInterval) throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    final ChannelSegmentLog log = new ChannelSegmentLog(channelName, directory, indexInterval);
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Could not list directory " + directory);
+    }
+    Arrays.sort(files);
+    final List<LogSegment> segments = new ArrayList<LogSegment>(files.length);
+    final List<Long> tombstones = new ArrayList<Long>();
+    for (File file : files) {
+      final LogSegment segment = LogSegment.open(file, indexInterval, tombstones);
+      if (segment != null) {
+        segments.add(segment);
+      }
+    }
+    log.deletedIds.addAll(tombstones);
+    log.segments = Collections.unmodifiableList(segments);
+    return log;
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public List<LogSegment> getSegments() {
+    return segments;
+  }
+
+  /**
+   * Get the placeholder ID of the last event in the log, -1 if it has none.
+   */
+  public long getLastId() {
+    long lastId = -1;
+    for (LogSegment segment : segments) {
+      lastId = Math.max(lastId, segment.getLastId());
+    }
+    return lastId;
+  }
+
+  /**
+   * Get the bytes taken by the segment files of the log.
+   */
+  public long getLength() {
+    long length = 0;
+    for (LogSegment segment : segments) {
+      length += segment.getCapacity();
+    }
+    return length;
+  }
+
+  /**
+   * Append the records of a batch of events created at the same time, rolling over to new segments where the current
+   * one is full or older than the maximum age. The segments the batch rolls over to are all created before the first
+   * record is appended, so that failing to create one leaves the log as it was; appending to a mapped segment does not
+   * fail otherwise.
+   * @param ids Placeholder IDs of the events, ascending
+   * @param creationTime Creation time of the events
+   * @param payloads Encoded events, in the order of their IDs
+   */
+  public void appendEvents(long[] ids, long creationTime, List<byte[]> payloads, int segmentSize, long maxSegmentAge)
+      throws IOException {
+    final LogSegment active = getActiveSegment();
+    final boolean expired = active != null && maxSegmentAge > 0 && active.getFirstCreationTime() > -1 && creationTime
+        - active.getFirstCreationTime() >= maxSegmentAge;
+    long free = active == null || expired ? -1 : active.getCapacity() - active.getSize();
+    final LogSegment[] rolledTo = new LogSegment[payloads.size()];
+    final List<LogSegment> created = new ArrayList<LogSegment>();
+    long baseId = active == null ? -1 : active.getBaseId();
+    try {
+      for (int i = 0; i < rolledTo.length; ++i) {
+        final int payloadLength = payloads.get(i).length;
+        if (free < LogSegment.getRecordLength(payloadLength)) {
+          baseId = Math.max(ids[i], baseId + 1);
+          final LogSegment segment = LogSegment.create(directory, baseId, Math.max(segmentSize, payloadLength + 64),
+                                                       indexInterval);
+          created.add(segment);
+          rolledTo[i] = segment;
+          free = segment.getCapacity();
+        }
+        free -= LogSegment.getRecordLength(payloadLength);
+      }
+    }
+    catch (IOException ex) {
+      for (LogSegment segment : created) {
+        if (!segment.getFile().delete()) {
+          segment.getFile().deleteOnExit();
+        }
+      }
+      throw ex;
+    }
+    LogSegment segment = active;
+    for (int i = 0; i < rolledTo.length; ++i) {
+      if (rolledTo[i] != null) {
+        //Published only once the previous segment has had its records, which readers rely upon to switch segments
+        if (segment != null) {
+          segment.force();
+        }
+        segment = rolledTo[i];
+        final List<LogSegment> newSegments = new ArrayList<LogSegment>(segments);
+        newSegments.add(segment);
+        segments = Collections.unmodifiableList(newSegments);
+      }
+      segment.appendEvent(ids[i], creationTime, payloads.get(i));
+    }
+  }
+
+  /**
+   * Append the tombstone of a deleted event, which is left out of reads from then on.
+   */
+  public void appendTombstone(long id, long nextId, int segmentSize) throws IOException {
+    final byte[] payload = LogSegment.encodeTombstone(id);
+    LogSegment segment = getActiveSegment();
+    if (segment == null || !segment.fits(payload.length)) {
+      segment = roll(nextId, segmentSize, payload.length);
+    }
+    segment.appendTombstone(payload);
+    deletedIds.add(id);
+  }
+
+  private LogSegment getActiveSegment() {
+    final List<LogSegment> current = segments;
+    return current.isEmpty() ? null : current.get(current.size() - 1);
+  }
+
+  private LogSegment roll(long baseId, int segmentSize, int payloadLength) throws IOException {
+    final LogSegment active = getActiveSegment();
+    if (active != null) {
+      active.force();
+      baseId = Math.max(baseId, active.getBaseId() + 1);
+    }
+    final LogSegment segment = LogSegment.create(directory, baseId, Math.max(segmentSize, payloadLength + 64),
+                                                 indexInterval);
+    final List<LogSegment> newSegments = new ArrayList<LogSegment>(segments);
+    newSegments.add(segment);
+    segments = Collections.unmodifiableList(newSegments);
+    return segment;
+  }
+
+  /**
+   * Remove the oldest segments, never the one being appended to, while the log is longer than the maximum length or
+   * their last event was created before the given time. The files of the removed segments are left to the caller to
+   * delete.
+   * @param maxLength Maximum bytes of the log, 0 or less for no limit
+   * @param minCreationTime Time before which the last event of a segment has to be created for it to be removed, 0 or
+   *                        less for no limit
+   * @return The removed segments
+   */
+  public List<LogSegment> removeExpiredSegments(long maxLength, long minCreationTime) {
+    final List<LogSegment> remaining = new ArrayList<LogSegment>(segments);
+    final List<LogSegment> removed = new ArrayList<LogSegment>();
+    long length = getLength();
+    while (remaining.size() > 1) {
+      final LogSegment oldest = remaining.get(0);
+      if ((maxLength > 0 && length > maxLength) || (minCreationTime > 0 && oldest.getLastCreationTime() <
+                                                                           minCreationTime)) {
+        remaining.remove(0);
+        removed.add(oldest);
+        length -= oldest.getCapacity();
+      }
+      else {
+        break;
+      }
+    }
+    if (!removed.isEmpty()) {
+      segments = Collections.unmodifiableList(remaining);
+      final long firstId = remaining.get(0).getBaseId();
+      deletedIds.headSet(firstId).clear();
+    }
+    return removed;
+  }
+
+  /**
+   * Write the appended records of the segment being appended to to the disk.
+   */
+  public void force() {
+    final LogSegment segment = getActiveSegment();
+    if (segment != null) {
+      segment.force();
+    }
+  }
+
+  public boolean isDeleted(long id) {
+    return deletedIds.contains(id);
+  }
+
+  /**
+   * Look an event up by its placeholder ID.
+   */
+  public Event getEvent(long id) {
+    if (deletedIds.contains(id)) {
+      return null;
+    }
+    final LogSegment segment = getSegment(segments, id);
+    if (segment == null || segment.getLastId() < id) {
+      return null;
+    }
+    final int block = segment.getBlock(id);
+    if (block < 0) {
+      return null;
+    }
+    int position = segment.getBlockPosition(block);
+    ByteBuffer payload;
+    while ((payload = segment.readPayload(position)) != null) {
+      if (payload.get(0) == LogSegment.EVENT_RECORD) {
+        final long recordId = payload.getLong(1);
+        if (recordId == id) {
+          return LogSegment.decodeEvent(payload);
+        }
+        if (recordId > id) {
+          return null;
+        }
+      }
+      position = segment.getNextPosition(position, payload);
+    }
+    return null;
+  }
+
+  /**
+   * Get the last segment starting at or before a placeholder ID.
+   */
+  private static LogSegment getSegment(List<LogSegment> segments, long id) {
+    int low = 0;
+    int high = segments.size() - 1;
+    LogSegment segment = null;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (segments.get(middle).getBaseId() <= id) {
+        segment = segments.get(middle);
+        low = middle + 1;
+      }
+      else {
+        high = middle - 1;
+      }
+    }
+    return segment;
+  }
+
+  /**
+   * Iterate the events after a placeholder ID in the order they were created. Events appended while iterating are
+   * included.
+   */
+  public Iterator<Event> iterateAfter(long id) {
+    return new AfterIterator(id);
+  }
+
+  /**
+   * Iterate the events before a placeholder ID, latest first.
+   */
+  public Iterator<Event> iterateBefore(long id) {
+    return new BeforeIterator(id);
+  }
+
+  private final class AfterIterator
+      implements Iterator<Event> {
+
+    private final long afterId;
+    private LogSegment segment;
+    private int position;
+    private Event next;
+
+    AfterIterator(long afterId) {
+      this.afterId = afterId;
+      final List<LogSegment> current = segments;
+      segment = getSegment(current, afterId);
+      if (segment == null) {
+        segment = current.isEmpty() ? null : current.get(0);
+        position = 0;
+      }
+      else {
+        final int block = segment.getBlock(afterId);
+        position = block < 0 ? 0 : segment.getBlockPosition(block);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && segment != null) {
+        ByteBuffer payload = segment.readPayload(position);
+        if (payload == null) {
+          //Stay at the end of the last segment, so that events appended later are read when asked again
+          final LogSegment nextSegment = getNextSegment(segment);
+          if (nextSegment == null) {
+            break;
+          }
+          //A segment is rolled over after its last append, thus reading it again now reads all of it
+          payload = segment.readPayload(position);
+          if (payload == null) {
+            segment = nextSegment;
+            position = 0;
+            continue;
+          }
+        }
+        position = segment.getNextPosition(position, payload);
+        if (payload.get(0) == LogSegment.EVENT_RECORD) {
+          final long id = payload.getLong(1);
+          if (id > afterId && !deletedIds.contains(id)) {
+            next = LogSegment.decodeEvent(payload);
+          }
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Event next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Event event = next;
+      next = null;
+      return event;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported!");
+    }
+
+    private LogSegment getNextSegment(LogSegment segment) {
+      for (LogSegment nextSegment : segments) {
+        if (nextSegment.getBaseId() > segment.getBaseId()) {
+          return nextSegment;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final class BeforeIterator
+      implements Iterator<Event> {
+
+    private final long beforeId;
+    private LogSegment segment;
+    private int block;
+    private List<Event> blockEvents = Collections.emptyList();
+    private int blockIndex = -1;
+
+    BeforeIterator(long beforeId) {
+      this.beforeId = beforeId;
+      final List<LogSegment> current = segments;
+      segment = getSegment(current, beforeId - 1);
+      block = segment == null ? -1 : segment.getBlock(beforeId - 1);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (blockIndex < 0 && segment != null) {
+        if (block < 0) {
+          segment = getPreviousSegment(segment);
+          block = segment == null ? -1 : segment.getBlockCount() - 1;
+          continue;
+        }
+        blockEvents = segment.readBlock(block--);
+        blockIndex = blockEvents.size() - 1;
+        while (blockIndex > -1 && isSkipped(blockEvents.get(blockIndex))) {
+          blockIndex--;
+        }
+      }
+      return blockIndex > -1;
+    }
+
+    @Override
+    public Event next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Event event = blockEvents.get(blockIndex--);
+      while (blockIndex > -1 && isSkipped(blockEvents.get(blockIndex))) {
+        blockIndex--;
+      }
+      return event;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported!");
+    }
+
+    private boolean isSkipped(Event event) {
+      final long id = NumberUtils.toLong(event.getPlaceholderId());
+      return id >= beforeId || deletedIds.contains(id);
+    }
+
+    private LogSegment getPreviousSegment(LogSegment segment) {
+      final List<LogSegment> current = segments;
+      for (int i = current.size() - 1; i > -1; --i) {
+        if (current.get(i).getBaseId() < segment.getBaseId()) {
+          return current.get(i);
+        }
+      }
+      return null;
+    }
+  }
+}
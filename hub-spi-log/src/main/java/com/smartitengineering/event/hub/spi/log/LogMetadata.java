@@ -0,0 +1,179 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.log;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Filter;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Channels and consumer offsets of a {@link SegmentLogPersistentStorer}, which are few and change seldom compared to
+ * events and thus are rewritten as a whole on every change. The file is written to a temporary file next to it first
+ * and then renamed, so that a node going down while writing it leaves the previous one intact.
+ * @author imyousuf
+ */
+final class LogMetadata {
+
+  private static final int MAGIC = 0x45484c4d;
+  private static final int VERSION = 1;
+  private final int lastChannelPosition;
+  private final List<Channel> channels;
+  private final List<ConsumerOffset> consumerOffsets;
+
+  LogMetadata(int lastChannelPosition, Collection<Channel> channels, Collection<ConsumerOffset> consumerOffsets) {
+    this.lastChannelPosition = lastChannelPosition;
+    this.channels = Collections.unmodifiableList(new ArrayList<Channel>(channels));
+    this.consumerOffsets = Collections.unmodifiableList(new ArrayList<ConsumerOffset>(consumerOffsets));
+  }
+
+  public int getLastChannelPosition() {
+    return lastChannelPosition;
+  }
+
+  public List<Channel> getChannels() {
+    return channels;
+  }
+
+  public List<ConsumerOffset> getConsumerOffsets() {
+    return consumerOffsets;
+  }
+
+  public void write(File file) throws IOException {
+    final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+    final FileOutputStream fileStream = new FileOutputStream(tempFile);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(lastChannelPosition);
+      out.writeInt(channels.size());
+      for (Channel channel : channels) {
+        writeString(out, channel.getName());
+        out.writeInt(channel.getPosition());
+        writeString(out, channel.getDescription());
+        writeString(out, channel.getAuthToken());
+        writeDate(out, channel.getCreationDateTime());
+        writeDate(out, channel.getLastModifiedDate());
+        writeDate(out, channel.getAutoExpiryDateTime());
+        final Filter filter = channel.getFilter();
+        out.writeBoolean(filter != null && filter.getMimeType() != null);
+        if (filter != null && filter.getMimeType() != null) {
+          writeString(out, filter.getMimeType().name());
+          writeString(out, filter.getFilterScript());
+        }
+      }
+      out.writeInt(consumerOffsets.size());
+      for (ConsumerOffset offset : consumerOffsets) {
+        writeString(out, offset.getChannelName());
+        writeString(out, offset.getGroupName());
+        writeString(out, offset.getPlaceholderId());
+        writeDate(out, offset.getCommitDateTime());
+      }
+      out.flush();
+      fileStream.getFD().sync();
+    }
+    finally {
+      out.close();
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not replace metadata " + file);
+    }
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("Could not rename " + tempFile + " to " + file);
+    }
+  }
+
+  public static LogMetadata read(File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not the metadata of a segment log storer");
+      }
+      final int lastChannelPosition = in.readInt();
+      final int channelCount = in.readInt();
+      final List<Channel> channels = new ArrayList<Channel>(channelCount);
+      for (int i = 0; i < channelCount; ++i) {
+        final APIFactory.ChannelBuilder builder = APIFactory.getChannelBuilder(readString(in)).position(in.readInt()).
+            description(readString(in)).authToken(readString(in)).creationDateTime(readDate(in)).lastModifiedDate(
+            readDate(in)).autoExpiryDateTime(readDate(in));
+        if (in.readBoolean()) {
+          builder.filter(APIFactory.getFilter(Filter.SupportedMimeType.valueOf(readString(in)), readString(in)));
+        }
+        channels.add(builder.build());
+      }
+      final int offsetCount = in.readInt();
+      final List<ConsumerOffset> offsets = new ArrayList<ConsumerOffset>(offsetCount);
+      for (int i = 0; i < offsetCount; ++i) {
+        offsets.add(new ConsumerOffset(readString(in), readString(in), readString(in), readDate(in)));
+      }
+      return new LogMetadata(lastChannelPosition, channels, offsets);
+    }
+    catch (IllegalArgumentException ex) {
+      throw new IOException("Corrupt metadata " + file + ": " + ex.getMessage());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+    }
+    else {
+      final byte[] bytes = string.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private static void writeDate(DataOutputStream out, Date date) throws IOException {
+    out.writeBoolean(date != null);
+    if (date != null) {
+      out.writeLong(date.getTime());
+    }
+  }
+
+  private static Date readDate(DataInputStream in) throws IOException {
+    return in.readBoolean() ? new Date(in.readLong()) : null;
+  }
+}
@@ -0,0 +1,479 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.log;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append only file of records of one channel, written and read through a memory mapped buffer. The file is
+ * allocated at its full capacity up front; records follow each other from its start, each made up of the length of
+ * its payload, the CRC32 of its payload and the payload itself, and a length of 0 marks the end of the records. Records
+ * are either events or tombstones of deleted events.
+ * <p>
+ * A sparse index maps the placeholder ID of an event every so many bytes to its position, so that an event is found
+ * by a binary search on the index and a sequential read of at most the index interval. Appends have to be serialized
+ * by the caller; reads need no locking, as the records and index entries are published by the volatile size.
+ * @author imyousuf
+ */
+final class LogSegment {
+
+  static final String FILE_SUFFIX = ".log";
+  static final byte EVENT_RECORD = 1;
+  static final byte TOMBSTONE_RECORD = 2;
+  private static final int HEADER_SIZE = 8;
+  /**
+   * Position of the UUID in the payload of an event record, following its type, placeholder ID and creation time
+   */
+  private static final int UUID_POSITION = 17;
+  private final File file;
+  private final long baseId;
+  private final int indexInterval;
+  private final MappedByteBuffer buffer;
+  private volatile int size = 0;
+  private volatile long lastId = -1;
+  private volatile long firstCreationTime = -1;
+  private volatile long lastCreationTime = -1;
+  private volatile long[] indexIds = new long[64];
+  private volatile int[] indexPositions = new int[64];
+  private volatile int indexSize = 0;
+  private int lastIndexedPosition = -1;
+  private volatile boolean dirty = false;
+  private boolean truncated = false;
+
+  private LogSegment(File file, long baseId, int indexInterval, MappedByteBuffer buffer) {
+    this.file = file;
+    this.baseId = baseId;
+    this.indexInterval = indexInterval;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Create a new segment file for events starting at a placeholder ID.
+   */
+  static LogSegment create(File directory, long baseId, int capacity, int indexInterval) throws IOException {
+    final File file = new File(directory, getFileName(baseId));
+    if (file.exists()) {
+      throw new IOException("Segment " + file + " already exists!");
+    }
+    return new LogSegment(file, baseId, indexInterval, map(file, capacity));
+  }
+
+  /**
+   * Open an existing segment file and recover its records, up to the first one that is incomplete or fails its CRC
+   * check. Whatever follows such a record is erased, so that records appended after recovery can not be followed by
+   * stale ones.
+   * @return The recovered segment, or null if the file is not a segment
+   */
+  static LogSegment open(File file, int indexInterval, List<Long> tombstones) throws IOException {
+    final String name = file.getName();
+    if (!name.endsWith(FILE_SUFFIX)) {
+      return null;
+    }
+    final long baseId;
+    try {
+      baseId = Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+    }
+    catch (NumberFormatException ex) {
+      return null;
+    }
+    final LogSegment segment = new LogSegment(file, baseId, indexInterval, map(file, (int) file.length()));
+    segment.recover(tombstones);
+    return segment;
+  }
+
+  static String getFileName(long baseId) {
+    final String id = Long.toString(baseId);
+    final char[] padding = new char[20 - id.length()];
+    Arrays.fill(padding, '0');
+    return new StringBuilder().append(padding).append(id).append(FILE_SUFFIX).toString();
+  }
+
+  private static MappedByteBuffer map(File file, int capacity) throws IOException {
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      if (randomAccessFile.length() < capacity) {
+        randomAccessFile.setLength(capacity);
+      }
+      final FileChannel channel = randomAccessFile.getChannel();
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Encode an event as the payload of a record.
+   */
+  static byte[] encodeEvent(long id, long creationTime, Event event) {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(EVENT_RECORD);
+      out.writeLong(id);
+      out.writeLong(creationTime);
+      writeString(out, event.getUniversallyUniqueID());
+      writeString(out, event.getEventContent().getContentType());
+      writeString(out, event.getEventContent() instanceof ByteContent ? ((ByteContent) event.getEventContent()).
+          getCharset() : null);
+      final byte[] content = APIFactory.getContentBytes(event.getEventContent());
+      out.writeInt(content.length);
+      out.write(content);
+      out.flush();
+      return bytes.toByteArray();
+    }
+    catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Encode the deletion of an event as the payload of a record.
+   */
+  static byte[] encodeTombstone(long id) {
+    return ByteBuffer.allocate(9).put(TOMBSTONE_RECORD).putLong(id).array();
+  }
+
+  static Event decodeEvent(ByteBuffer payload) {
+    payload.get();
+    final long id = payload.getLong();
+    final long creationTime = payload.getLong();
+    final String uuid = readString(payload);
+    final String contentType = readString(payload);
+    final String charset = readString(payload);
+    final byte[] content = new byte[payload.getInt()];
+    payload.get(content);
+    return APIFactory.getEventBuilder().placeholder(Long.toString(id)).uuid(uuid).creationDate(new Date(creationTime)).
+        eventContent(APIFactory.getContent(contentType, content, charset)).build();
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+    }
+    else {
+      final byte[] bytes = string.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(ByteBuffer payload) {
+    final int length = payload.getInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    payload.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public long getBaseId() {
+    return baseId;
+  }
+
+  /**
+   * Get the placeholder ID of the last event in the segment, -1 if it has none.
+   */
+  public long getLastId() {
+    return lastId;
+  }
+
+  public long getFirstCreationTime() {
+    return firstCreationTime;
+  }
+
+  public long getLastCreationTime() {
+    return lastCreationTime;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return buffer.capacity();
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the bytes a record with a payload of the given length takes in a segment.
+   */
+  static int getRecordLength(int payloadLength) {
+    return HEADER_SIZE + payloadLength;
+  }
+
+  /**
+   * Check whether a record with a payload of the given length fits in the rest of the segment.
+   */
+  public boolean fits(int payloadLength) {
+    return size + HEADER_SIZE + payloadLength <= buffer.capacity();
+  }
+
+  /**
+   * Append an event record. The caller has to check that it {@link #fits(int) fits} first.
+   */
+  public void appendEvent(long id, long creationTime, byte[] payload) {
+    final int position = size;
+    write(position, payload);
+    if (lastIndexedPosition < 0 || position - lastIndexedPosition >= indexInterval) {
+      addIndexEntry(id, position);
+    }
+    lastId = id;
+    if (firstCreationTime < 0) {
+      firstCreationTime = creationTime;
+    }
+    lastCreationTime = creationTime;
+    size = position + HEADER_SIZE + payload.length;
+  }
+
+  /**
+   * Append a tombstone record. The caller has to check that it {@link #fits(int) fits} first.
+   */
+  public void appendTombstone(byte[] payload) {
+    final int position = size;
+    write(position, payload);
+    size = position + HEADER_SIZE + payload.length;
+  }
+
+  private void write(int position, byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    final ByteBuffer view = buffer.duplicate();
+    view.position(position);
+    view.putInt(payload.length);
+    view.putInt((int) crc.getValue());
+    view.put(payload);
+    dirty = true;
+  }
+
+  private void addIndexEntry(long id, int position) {
+    final int entries = indexSize;
+    if (entries == indexIds.length) {
+      indexIds = Arrays.copyOf(indexIds, entries * 2);
+      indexPositions = Arrays.copyOf(indexPositions, entries * 2);
+    }
+    indexIds[entries] = id;
+    indexPositions[entries] = position;
+    lastIndexedPosition = position;
+    indexSize = entries + 1;
+  }
+
+  /**
+   * Write the appended records to the disk. May be called while appending; records appended meanwhile are left
+   * marked for the next call.
+   */
+  public void force() {
+    if (dirty) {
+      dirty = false;
+      buffer.force();
+    }
+  }
+
+  /**
+   * Get the number of blocks of records the sparse index divides the segment into.
+   */
+  public int getBlockCount() {
+    return indexSize;
+  }
+
+  /**
+   * Get the block holding the event of a placeholder ID, were it in this segment; the last block starting at or
+   * before it, or -1 if the ID is before the first block.
+   */
+  public int getBlock(long id) {
+    final int entries = indexSize;
+    final long[] ids = indexIds;
+    int low = 0;
+    int high = entries - 1;
+    int block = -1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (ids[middle] <= id) {
+        block = middle;
+        low = middle + 1;
+      }
+      else {
+        high = middle - 1;
+      }
+    }
+    return block;
+  }
+
+  /**
+   * Get the position the records of a block start at.
+   */
+  public int getBlockPosition(int block) {
+    return indexPositions[block];
+  }
+
+  /**
+   * Read the events of a block, in the order they were appended.
+   */
+  public List<Event> readBlock(int block) {
+    final int start = indexPositions[block];
+    final int end = block + 1 < indexSize ? indexPositions[block + 1] : size;
+    final List<Event> events = new ArrayList<Event>();
+    int position = start;
+    while (position < end) {
+      final ByteBuffer payload = readPayload(position);
+      if (payload.get(0) == EVENT_RECORD) {
+        events.add(decodeEvent(payload));
+      }
+      position = getNextPosition(position, payload);
+    }
+    return events;
+  }
+
+  /**
+   * Read the record at a position.
+   * @return The payload of the record, or null if there is no record at the position
+   */
+  public ByteBuffer readPayload(int position) {
+    if (position >= size) {
+      return null;
+    }
+    final ByteBuffer view = buffer.duplicate();
+    view.position(position);
+    final int length = view.getInt();
+    view.getInt();
+    view.limit(view.position() + length);
+    return view.slice();
+  }
+
+  /**
+   * Get the position of the record following the one at a position.
+   */
+  public int getNextPosition(int position, ByteBuffer payload) {
+    return position + HEADER_SIZE + payload.limit();
+  }
+
+  /**
+   * Collect the UUIDs of the events in the segment along with their placeholder IDs.
+   */
+  public void collectUUIDs(Map<String, Long> uuids) {
+    int position = 0;
+    ByteBuffer payload;
+    while ((payload = readPayload(position)) != null) {
+      position = getNextPosition(position, payload);
+      if (payload.get(0) == EVENT_RECORD) {
+        final long id = payload.getLong(1);
+        payload.position(UUID_POSITION);
+        uuids.put(readString(payload), id);
+      }
+    }
+  }
+
+  private void recover(List<Long> tombstones) {
+    final ByteBuffer view = buffer.duplicate();
+    final CRC32 crc = new CRC32();
+    int position = 0;
+    boolean torn = false;
+    while (position + HEADER_SIZE <= view.capacity()) {
+      final int length = view.getInt(position);
+      if (length == 0) {
+        break;
+      }
+      if (length < 0 || position + HEADER_SIZE + length > view.capacity()) {
+        torn = true;
+        break;
+      }
+      final int expectedCrc = view.getInt(position + 4);
+      final byte[] payload = new byte[length];
+      view.position(position + HEADER_SIZE);
+      view.get(payload);
+      crc.reset();
+      crc.update(payload);
+      if ((int) crc.getValue() != expectedCrc) {
+        torn = true;
+        break;
+      }
+      final ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+      if (payload[0] == EVENT_RECORD) {
+        payloadBuffer.get();
+        final long id = payloadBuffer.getLong();
+        final long creationTime = payloadBuffer.getLong();
+        if (lastIndexedPosition < 0 || position - lastIndexedPosition >= indexInterval) {
+          addIndexEntry(id, position);
+        }
+        lastId = id;
+        if (firstCreationTime < 0) {
+          firstCreationTime = creationTime;
+        }
+        lastCreationTime = creationTime;
+      }
+      else if (payload[0] == TOMBSTONE_RECORD) {
+        payloadBuffer.get();
+        tombstones.add(payloadBuffer.getLong());
+      }
+      position += HEADER_SIZE + length;
+    }
+    size = position;
+    truncated = torn;
+    if (torn) {
+      final ByteBuffer erase = buffer.duplicate();
+      erase.position(position);
+      final byte[] zeros = new byte[Math.min(8192, erase.remaining())];
+      while (erase.hasRemaining()) {
+        erase.put(zeros, 0, Math.min(zeros.length, erase.remaining()));
+      }
+      buffer.force();
+    }
+  }
+
+  /**
+   * Check whether recovering the segment stopped at a damaged record.
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public String toString() {
+    return file.getName() + "[" + size + "/" + buffer.capacity() + "]";
+  }
+}
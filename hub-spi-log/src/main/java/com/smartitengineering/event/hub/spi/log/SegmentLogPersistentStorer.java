@@ -0,0 +1,843 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.log;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link HubPersistentStorer} writing the events of each channel to append only segment files through memory mapped
+ * buffers, for single node deployments that want durable events without an external database. Creating an event is
+ * a copy into the active segment of its channel; reading the events after or before a placeholder is a binary search
+ * on the sparse index of a segment followed by a sequential read. Segments are rolled over once full or older than the
+ * maximum segment age, and the oldest ones are deleted once older than the retention period or beyond the maximum
+ * bytes of their channel.
+ * <p>
+ * Every record carries a CRC32 of its payload; when started the segments are recovered up to the first record that is
+ * incomplete or fails its check, which is where a node going down mid write leaves them. The indexes of the UUIDs and
+ * of the channel of every placeholder ID are kept in memory and rebuilt from the segments when started, while channels
+ * and consumer offsets are kept in a metadata file rewritten on every change. Placeholder IDs are global across channels and writes are serialized, so that they are
+ * assigned in the order events become visible.
+ * @author imyousuf
+ */
+public class SegmentLogPersistentStorer
+    implements HubPersistentStorer {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  public static final int DEFAULT_INDEX_INTERVAL = 4096;
+  public static final int DEFAULT_SEGMENT_MAX_AGE_IN_SEC = 24 * 60 * 60;
+  public static final int DEFAULT_RETENTION_IN_SEC = 7 * 24 * 60 * 60;
+  public static final int DEFAULT_FLUSH_INTERVAL_IN_MILLIS = 1000;
+  public static final int RETENTION_CHECK_INTERVAL_IN_SEC = 60;
+  private static final String METADATA_FILE_NAME = "metadata";
+  private static final String CHANNELS_DIRECTORY_NAME = "channels";
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  /**
+   * Guards appends to and retention of the segments, reads go straight to them
+   */
+  private final Object writeLock = new Object();
+  /**
+   * Guards modifications of channels and consumer offsets along with the metadata file
+   */
+  private final Object metadataLock = new Object();
+  private final ConcurrentSkipListMap<String, ChannelSegmentLog> logs =
+                                                                 new ConcurrentSkipListMap<String, ChannelSegmentLog>();
+  private final ConcurrentMap<String, Long> uuids = new ConcurrentHashMap<String, Long>();
+  private final ConcurrentMap<Long, ChannelSegmentLog> eventLogs = new ConcurrentHashMap<Long, ChannelSegmentLog>();
+  private final ConcurrentSkipListMap<String, Channel> channels = new ConcurrentSkipListMap<String, Channel>();
+  private final ConcurrentSkipListMap<Integer, Channel> channelsByPosition =
+                                                        new ConcurrentSkipListMap<Integer, Channel>();
+  private final ConcurrentMap<String, ConsumerOffset> consumerOffsets = new ConcurrentHashMap<String, ConsumerOffset>();
+  private volatile File directory;
+  private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+  private volatile int indexInterval = DEFAULT_INDEX_INTERVAL;
+  private volatile int segmentMaxAgeInSec = DEFAULT_SEGMENT_MAX_AGE_IN_SEC;
+  private volatile int retentionInSec = DEFAULT_RETENTION_IN_SEC;
+  private volatile long maxChannelBytes = 0;
+  private volatile int flushIntervalInMillis = DEFAULT_FLUSH_INTERVAL_IN_MILLIS;
+  private volatile boolean started = false;
+  private long lastPlaceholderId = 0;
+  private int lastChannelPosition = 0;
+  private ScheduledExecutorService scheduler;
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Set the directory the segments and metadata are kept in, it is created if it does not exist.
+   */
+  public void setDirectory(File directory) {
+    this.directory = directory;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * Set the bytes allocated for a segment file, which is rolled over once full.
+   */
+  public void setSegmentSize(int segmentSize) {
+    this.segmentSize = segmentSize > 0 ? segmentSize : DEFAULT_SEGMENT_SIZE;
+  }
+
+  public int getIndexInterval() {
+    return indexInterval;
+  }
+
+  /**
+   * Set the bytes of records between entries of the sparse index of a segment, i.e. the most that is read
+   * sequentially to find an event.
+   */
+  public void setIndexInterval(int indexInterval) {
+    this.indexInterval = indexInterval > 0 ? indexInterval : DEFAULT_INDEX_INTERVAL;
+  }
+
+  public int getSegmentMaxAgeInSec() {
+    return segmentMaxAgeInSec;
+  }
+
+  /**
+   * Set the seconds after its first event a segment is rolled over even if not full, 0 to roll over when full only.
+   */
+  public void setSegmentMaxAgeInSec(int segmentMaxAgeInSec) {
+    this.segmentMaxAgeInSec = segmentMaxAgeInSec < 0 ? DEFAULT_SEGMENT_MAX_AGE_IN_SEC : segmentMaxAgeInSec;
+  }
+
+  public int getRetentionInSec() {
+    return retentionInSec;
+  }
+
+  /**
+   * Set the seconds after its last event a segment is deleted, 0 to keep segments regardless of their age.
+   */
+  public void setRetentionInSec(int retentionInSec) {
+    this.retentionInSec = retentionInSec < 0 ? DEFAULT_RETENTION_IN_SEC : retentionInSec;
+  }
+
+  public long getMaxChannelBytes() {
+    return maxChannelBytes;
+  }
+
+  /**
+   * Set the bytes of segments kept per channel, beyond which the oldest are deleted; 0 for no limit.
+   */
+  public void setMaxChannelBytes(long maxChannelBytes) {
+    this.maxChannelBytes = maxChannelBytes < 0 ? 0 : maxChannelBytes;
+  }
+
+  public int getFlushIntervalInMillis() {
+    return flushIntervalInMillis;
+  }
+
+  /**
+   * Set the milliseconds between writing appended records to the disk, 0 to write them before every create returns.
+   * Events created since the last flush may be lost if the machine, not just the node, goes down.
+   */
+  public void setFlushIntervalInMillis(int flushIntervalInMillis) {
+    this.flushIntervalInMillis = flushIntervalInMillis < 0 ? DEFAULT_FLUSH_INTERVAL_IN_MILLIS : flushIntervalInMillis;
+  }
+
+  /**
+   * Recover the channels, consumer offsets and segments from the directory and start flushing and deleting segments
+   * periodically.
+   */
+  public void start() {
+    final File root = directory;
+    if (root == null) {
+      throw new IllegalStateException("Directory of the storer is not set!");
+    }
+    synchronized (metadataLock) {
+      synchronized (writeLock) {
+        if (started) {
+          return;
+        }
+        try {
+          recover(root);
+        }
+        catch (IOException ex) {
+          throw new IllegalStateException("Could not recover storer from " + root, ex);
+        }
+        started = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+          @Override
+          public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "SegmentLogPersistentStorer-maintenance");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+        if (flushIntervalInMillis > 0) {
+          scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+              flush();
+            }
+          }, flushIntervalInMillis, flushIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+          @Override
+          public void run() {
+            try {
+              enforceRetention();
+            }
+            catch (Exception ex) {
+              logger.error("Could not delete expired segments", ex);
+            }
+          }
+        }, RETENTION_CHECK_INTERVAL_IN_SEC, RETENTION_CHECK_INTERVAL_IN_SEC, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Stop the periodic tasks and write all appended records to the disk. The storer can be started again afterwards.
+   */
+  public void stop() {
+    synchronized (metadataLock) {
+      synchronized (writeLock) {
+        if (!started) {
+          return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        flush();
+        started = false;
+        logs.clear();
+        uuids.clear();
+        eventLogs.clear();
+        channels.clear();
+        channelsByPosition.clear();
+        consumerOffsets.clear();
+      }
+    }
+  }
+
+  private void recover(File root) throws IOException {
+    final File channelsDirectory = new File(root, CHANNELS_DIRECTORY_NAME);
+    if (!channelsDirectory.exists() && !channelsDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + channelsDirectory);
+    }
+    final File metadataFile = new File(root, METADATA_FILE_NAME);
+    lastChannelPosition = 0;
+    if (metadataFile.exists()) {
+      final LogMetadata metadata = LogMetadata.read(metadataFile);
+      lastChannelPosition = metadata.getLastChannelPosition();
+      for (Channel channel : metadata.getChannels()) {
+        channels.put(channel.getName(), channel);
+        channelsByPosition.put(channel.getPosition(), channel);
+        lastChannelPosition = Math.max(lastChannelPosition, channel.getPosition());
+      }
+      for (ConsumerOffset offset : metadata.getConsumerOffsets()) {
+        consumerOffsets.put(getOffsetKey(offset.getChannelName(), offset.getGroupName()), offset);
+      }
+    }
+    lastPlaceholderId = 0;
+    final File[] channelDirectories = channelsDirectory.listFiles();
+    if (channelDirectories == null) {
+      throw new IOException("Could not list directory " + channelsDirectory);
+    }
+    final Map<String, Long> segmentUUIDs = new HashMap<String, Long>();
+    for (File channelDirectory : channelDirectories) {
+      if (!channelDirectory.isDirectory()) {
+        continue;
+      }
+      final String channelName = decodeChannelName(channelDirectory.getName());
+      final ChannelSegmentLog log = ChannelSegmentLog.open(channelName, channelDirectory, indexInterval);
+      logs.put(channelName, log);
+      lastPlaceholderId = Math.max(lastPlaceholderId, log.getLastId());
+      for (LogSegment segment : log.getSegments()) {
+        if (segment.isTruncated()) {
+          logger.warn("Segment " + segment.getFile() + " was truncated at " + segment.getSize() +
+              " bytes, where a record failed its CRC check");
+        }
+        segmentUUIDs.clear();
+        segment.collectUUIDs(segmentUUIDs);
+        for (Map.Entry<String, Long> uuid : segmentUUIDs.entrySet()) {
+          if (!log.isDeleted(uuid.getValue())) {
+            uuids.put(uuid.getKey(), uuid.getValue());
+            eventLogs.put(uuid.getValue(), log);
+          }
+        }
+      }
+    }
+    if (logger.isInfoEnabled()) {
+      logger.info("Recovered " + uuids.size() + " events of " + logs.size() + " channel logs from " + root);
+    }
+  }
+
+  /**
+   * Write the appended records of all channels to the disk.
+   */
+  public void flush() {
+    for (ChannelSegmentLog log : logs.values()) {
+      try {
+        log.force();
+      }
+      catch (Exception ex) {
+        logger.error("Could not flush segments of " + log.getChannelName(), ex);
+      }
+    }
+  }
+
+  /**
+   * Delete the segments older than the retention period or beyond the maximum bytes of their channel, along with the
+   * UUIDs of their events. Done periodically once started.
+   */
+  public void enforceRetention() {
+    final long minCreationTime = retentionInSec > 0 ? System.currentTimeMillis() - retentionInSec * 1000L : 0;
+    final List<LogSegment> removedSegments = new ArrayList<LogSegment>();
+    synchronized (writeLock) {
+      for (ChannelSegmentLog log : logs.values()) {
+        removedSegments.addAll(log.removeExpiredSegments(maxChannelBytes, minCreationTime));
+      }
+    }
+    final Map<String, Long> segmentUUIDs = new HashMap<String, Long>();
+    for (LogSegment segment : removedSegments) {
+      segmentUUIDs.clear();
+      segment.collectUUIDs(segmentUUIDs);
+      for (Map.Entry<String, Long> uuid : segmentUUIDs.entrySet()) {
+        uuids.remove(uuid.getKey(), uuid.getValue());
+        eventLogs.remove(uuid.getValue());
+      }
+      if (!segment.getFile().delete()) {
+        logger.warn("Could not delete expired segment " + segment.getFile());
+      }
+      else if (logger.isInfoEnabled()) {
+        logger.info("Deleted expired segment " + segment.getFile());
+      }
+    }
+  }
+
+  @Override
+  public void create(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (metadataLock) {
+      checkStarted();
+      if (channels.containsKey(getKey(channel.getName()))) {
+        throw new IllegalArgumentException("Channel " + channel.getName() + " already exists!");
+      }
+      final Date date = new Date();
+      final Channel newChannel = APIFactory.getChannelBuilder(channel).position(++lastChannelPosition).
+          creationDateTime(date).lastModifiedDate(date).build();
+      channels.put(newChannel.getName(), newChannel);
+      channelsByPosition.put(newChannel.getPosition(), newChannel);
+      writeMetadata();
+    }
+  }
+
+  @Override
+  public void update(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (metadataLock) {
+      checkStarted();
+      final Channel existingChannel = channels.get(getKey(channel.getName()));
+      if (existingChannel == null) {
+        return;
+      }
+      final Channel updatedChannel = APIFactory.getChannelBuilder(channel).position(existingChannel.getPosition()).
+          creationDateTime(existingChannel.getCreationDateTime()).lastModifiedDate(new Date()).build();
+      channels.put(updatedChannel.getName(), updatedChannel);
+      channelsByPosition.put(updatedChannel.getPosition(), updatedChannel);
+      writeMetadata();
+    }
+  }
+
+  @Override
+  public void delete(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (metadataLock) {
+      checkStarted();
+      final Channel existingChannel = channels.remove(getKey(channel.getName()));
+      if (existingChannel != null) {
+        channelsByPosition.remove(existingChannel.getPosition());
+        writeMetadata();
+      }
+    }
+  }
+
+  @Override
+  public Channel getChannel(String channelName) {
+    if (channelName == null) {
+      return null;
+    }
+    return channels.get(getKey(channelName));
+  }
+
+  @Override
+  public Collection<Channel> getChannels(int startIndex, int count) {
+    if (startIndex < 0 || count == 0) {
+      return Collections.emptyList();
+    }
+    final NavigableMap<Integer, Channel> range = count > 0 ? channelsByPosition.tailMap(startIndex, false)
+        : channelsByPosition.headMap(startIndex, false).descendingMap();
+    final List<Channel> result = new ArrayList<Channel>();
+    final Iterator<Channel> iterator = range.values().iterator();
+    while (iterator.hasNext() && result.size() < Math.abs(count)) {
+      result.add(iterator.next());
+    }
+    //Channels are always returned latest first
+    if (count > 0) {
+      Collections.reverse(result);
+    }
+    return result;
+  }
+
+  @Override
+  public Event create(Channel channel, Event event) {
+    if (channel == null || event == null) {
+      return null;
+    }
+    final List<Event> createdEvents = create(channel, Collections.singletonList(event));
+    return createdEvents.isEmpty() ? null : createdEvents.get(0);
+  }
+
+  @Override
+  public List<Event> create(Channel channel, List<Event> newEvents) {
+    if (channel == null || newEvents == null || newEvents.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final String channelName = getKey(channel.getName());
+    final Date date = new Date();
+    final List<Event> createdEvents = new ArrayList<Event>(newEvents.size());
+    synchronized (writeLock) {
+      checkStarted();
+      /*
+       * Check the whole batch first and create the segments it needs before appending any of it, so that it is either
+       * created as a whole or not at all
+       */
+      final Set<String> batchUUIDs = new HashSet<String>();
+      for (Event event : newEvents) {
+        final String uuid = event == null ? null : event.getUniversallyUniqueID();
+        if (StringUtils.isNotBlank(uuid) && (uuids.containsKey(uuid) || !batchUUIDs.add(uuid))) {
+          throw new IllegalArgumentException("Event " + uuid + " already exists!");
+        }
+      }
+      final ChannelSegmentLog log = getLog(channelName);
+      final long creationTime = date.getTime();
+      final List<byte[]> payloads = new ArrayList<byte[]>(newEvents.size());
+      for (Event event : newEvents) {
+        if (event == null || event.getEventContent() == null) {
+          continue;
+        }
+        final String uuid = StringUtils.isBlank(event.getUniversallyUniqueID()) ? UUID.randomUUID().toString()
+            : event.getUniversallyUniqueID();
+        final String charset = event.getEventContent() instanceof ByteContent ? ((ByteContent) event.
+            getEventContent()).getCharset() : null;
+        final long id = lastPlaceholderId + createdEvents.size() + 1;
+        final Event createdEvent = APIFactory.getEventBuilder().placeholder(Long.toString(id)).uuid(uuid).
+            creationDate(date).eventContent(APIFactory.getContent(event.getEventContent().getContentType(),
+                                                                  APIFactory.getContentBytes(event.getEventContent()),
+                                                                  charset)).build();
+        payloads.add(LogSegment.encodeEvent(id, creationTime, createdEvent));
+        createdEvents.add(createdEvent);
+      }
+      if (createdEvents.isEmpty()) {
+        return createdEvents;
+      }
+      final long[] ids = new long[createdEvents.size()];
+      for (int i = 0; i < ids.length; ++i) {
+        ids[i] = lastPlaceholderId + i + 1;
+      }
+      //Indexed before appending so that an event can be looked up as soon as it can be read
+      for (int i = 0; i < ids.length; ++i) {
+        uuids.put(createdEvents.get(i).getUniversallyUniqueID(), ids[i]);
+        eventLogs.put(ids[i], log);
+      }
+      try {
+        log.appendEvents(ids, creationTime, payloads, segmentSize, segmentMaxAgeInSec * 1000L);
+      }
+      catch (IOException ex) {
+        for (int i = 0; i < ids.length; ++i) {
+          uuids.remove(createdEvents.get(i).getUniversallyUniqueID(), ids[i]);
+          eventLogs.remove(ids[i]);
+        }
+        throw new IllegalStateException("Could not append events to channel " + channelName, ex);
+      }
+      finally {
+        if (flushIntervalInMillis == 0) {
+          log.force();
+        }
+      }
+      lastPlaceholderId = ids[ids.length - 1];
+    }
+    return createdEvents;
+  }
+
+  @Override
+  public void delete(Event event) {
+    if (event == null) {
+      return;
+    }
+    final long id = NumberUtils.toLong(event.getPlaceholderId());
+    synchronized (writeLock) {
+      checkStarted();
+      final ChannelSegmentLog log = eventLogs.get(id);
+      final Event existingEvent = log == null ? null : log.getEvent(id);
+      if (existingEvent == null) {
+        return;
+      }
+      try {
+        log.appendTombstone(id, lastPlaceholderId + 1, segmentSize);
+      }
+      catch (IOException ex) {
+        throw new IllegalStateException("Could not delete event " + id, ex);
+      }
+      finally {
+        if (flushIntervalInMillis == 0) {
+          log.force();
+        }
+      }
+      uuids.remove(existingEvent.getUniversallyUniqueID(), id);
+      eventLogs.remove(id);
+    }
+  }
+
+  @Override
+  public Event getEvent(String placeholderId) {
+    final long id = NumberUtils.toLong(placeholderId);
+    if (id <= 0) {
+      return null;
+    }
+    final ChannelSegmentLog log = eventLogs.get(id);
+    return log == null ? null : log.getEvent(id);
+  }
+
+  @Override
+  public Event getEventByUUID(String uuid) {
+    if (StringUtils.isBlank(uuid)) {
+      return null;
+    }
+    final Long id = uuids.get(uuid);
+    return id == null ? null : getEvent(id.toString());
+  }
+
+  @Override
+  public LinkedHashSet<Event> getEvents(String placeholderId, String channelId, int count) {
+    final LinkedHashSet<Event> result = new LinkedHashSet<Event>();
+    if (count == 0) {
+      return result;
+    }
+    final long id = NumberUtils.toLong(placeholderId);
+    final Iterator<Event> iterator;
+    if (id > -1) {
+      iterator = count > 0 ? iterateAfter(channelId, id) : iterateBefore(channelId, id);
+    }
+    else {
+      iterator = iterateBefore(channelId, Long.MAX_VALUE);
+    }
+    final List<Event> selected = new ArrayList<Event>();
+    while (iterator.hasNext() && selected.size() < Math.abs(count)) {
+      selected.add(iterator.next());
+    }
+    //Events are always returned latest first
+    if (count > 0 && id > -1) {
+      Collections.reverse(selected);
+    }
+    result.addAll(selected);
+    return result;
+  }
+
+  @Override
+  public CloseableIterator<Event> streamEvents(String placeholderId, String channelId, Direction direction) {
+    final long id = StringUtils.isBlank(placeholderId) ? -1 : NumberUtils.toLong(placeholderId, -1);
+    if (Direction.AFTER.equals(direction)) {
+      return new EventIterator(iterateAfter(channelId, id));
+    }
+    else {
+      return new EventIterator(iterateBefore(channelId, id > -1 ? id : Long.MAX_VALUE));
+    }
+  }
+
+  private Iterator<Event> iterateAfter(String channelId, long id) {
+    if (StringUtils.isNotBlank(channelId)) {
+      final ChannelSegmentLog log = logs.get(getKey(channelId));
+      return log == null ? Collections.<Event>emptyList().iterator() : log.iterateAfter(id);
+    }
+    final List<Iterator<Event>> iterators = new ArrayList<Iterator<Event>>();
+    for (ChannelSegmentLog log : logs.values()) {
+      iterators.add(log.iterateAfter(id));
+    }
+    return new MergingIterator(iterators, true);
+  }
+
+  private Iterator<Event> iterateBefore(String channelId, long id) {
+    if (StringUtils.isNotBlank(channelId)) {
+      final ChannelSegmentLog log = logs.get(getKey(channelId));
+      return log == null ? Collections.<Event>emptyList().iterator() : log.iterateBefore(id);
+    }
+    final List<Iterator<Event>> iterators = new ArrayList<Iterator<Event>>();
+    for (ChannelSegmentLog log : logs.values()) {
+      iterators.add(log.iterateBefore(id));
+    }
+    return new MergingIterator(iterators, false);
+  }
+
+  @Override
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName) {
+    if (StringUtils.isBlank(channelId) || StringUtils.isBlank(groupName)) {
+      return null;
+    }
+    return consumerOffsets.get(getOffsetKey(channelId, groupName));
+  }
+
+  @Override
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets) {
+    if (offsets == null || offsets.isEmpty()) {
+      return;
+    }
+    synchronized (metadataLock) {
+      checkStarted();
+      for (ConsumerOffset offset : offsets) {
+        if (offset == null || StringUtils.isBlank(offset.getChannelName()) || StringUtils.isBlank(offset.
+            getGroupName()) || StringUtils.isBlank(offset.getPlaceholderId())) {
+          continue;
+        }
+        consumerOffsets.put(getOffsetKey(offset.getChannelName(), offset.getGroupName()), new ConsumerOffset(getKey(
+            offset.getChannelName()), offset.getGroupName(), offset.getPlaceholderId(), offset.getCommitDateTime()));
+      }
+      writeMetadata();
+    }
+  }
+
+  /**
+   * Get the number of segments of a channel.
+   */
+  public int getSegmentCount(String channelName) {
+    final ChannelSegmentLog log = channelName == null ? null : logs.get(getKey(channelName));
+    return log == null ? 0 : log.getSegments().size();
+  }
+
+  /**
+   * Get the log of a channel, opening it if it is the first event of the channel. Has to be called holding the write
+   * lock.
+   */
+  private ChannelSegmentLog getLog(String channelName) {
+    ChannelSegmentLog log = logs.get(channelName);
+    if (log == null) {
+      final File channelDirectory = new File(new File(directory, CHANNELS_DIRECTORY_NAME), encodeChannelName(
+          channelName));
+      try {
+        log = ChannelSegmentLog.open(channelName, channelDirectory, indexInterval);
+      }
+      catch (IOException ex) {
+        throw new IllegalStateException("Could not open log of channel " + channelName, ex);
+      }
+      logs.put(channelName, log);
+    }
+    return log;
+  }
+
+  /**
+   * Write the channels and consumer offsets to the metadata file. Has to be called holding the metadata lock.
+   */
+  private void writeMetadata() {
+    try {
+      new LogMetadata(lastChannelPosition, channelsByPosition.values(), consumerOffsets.values()).write(new File(
+          directory, METADATA_FILE_NAME));
+    }
+    catch (IOException ex) {
+      throw new IllegalStateException("Could not write metadata", ex);
+    }
+  }
+
+  private void checkStarted() {
+    if (!started) {
+      throw new IllegalStateException("Storer is not started!");
+    }
+  }
+
+  /**
+   * Encode a channel name as a directory name, escaping everything but letters, digits, '-' and '_'.
+   */
+  static String encodeChannelName(String channelName) {
+    try {
+      return URLEncoder.encode(channelName, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  static String decodeChannelName(String directoryName) {
+    try {
+      return URLDecoder.decode(directoryName, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  protected String getKey(String channelName) {
+    return channelName.trim().toLowerCase();
+  }
+
+  protected String getOffsetKey(String channelName, String groupName) {
+    return new StringBuilder(getKey(channelName)).append('\n').append(groupName).toString();
+  }
+
+  /**
+   * Merges the events of several channels, each already ordered by placeholder ID, into one ordered stream.
+   */
+  private static final class MergingIterator
+      implements Iterator<Event> {
+
+    private final PriorityQueue<PeekingIterator> queue;
+
+    MergingIterator(List<Iterator<Event>> iterators, final boolean ascending) {
+      queue = new PriorityQueue<PeekingIterator>(Math.max(1, iterators.size()), new Comparator<PeekingIterator>() {
+
+        @Override
+        public int compare(PeekingIterator o1, PeekingIterator o2) {
+          final int comparison = o1.nextId < o2.nextId ? -1 : (o1.nextId == o2.nextId ? 0 : 1);
+          return ascending ? comparison : -comparison;
+        }
+      });
+      for (Iterator<Event> iterator : iterators) {
+        if (iterator.hasNext()) {
+          queue.add(new PeekingIterator(iterator));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override
+    public Event next() {
+      final PeekingIterator iterator = queue.poll();
+      if (iterator == null) {
+        throw new NoSuchElementException();
+      }
+      final Event event = iterator.next;
+      if (iterator.advance()) {
+        queue.add(iterator);
+      }
+      return event;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported!");
+    }
+  }
+
+  private static final class PeekingIterator {
+
+    private final Iterator<Event> iterator;
+    private Event next;
+    private long nextId;
+
+    PeekingIterator(Iterator<Event> iterator) {
+      this.iterator = iterator;
+      advance();
+    }
+
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      next = iterator.next();
+      nextId = NumberUtils.toLong(next.getPlaceholderId());
+      return true;
+    }
+  }
+
+  private static final class EventIterator
+      implements CloseableIterator<Event> {
+
+    private final Iterator<Event> iterator;
+    private boolean closed = false;
+
+    EventIterator(Iterator<Event> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !closed && iterator.hasNext();
+    }
+
+    @Override
+    public Event next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return iterator.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported!");
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.log;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.AbstractHubPersistentStorerContractTest;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the storer contract on the segment log storer with segments small enough to roll over every few events, along
+ * with its durability across restarts, recovery and retention.
+ * @author imyousuf
+ */
+public class SegmentLogPersistentStorerTest
+    extends AbstractHubPersistentStorerContractTest {
+
+  private File directory;
+  private SegmentLogPersistentStorer storer;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("segment-log-storer", "");
+    directory.delete();
+    storer = newStorer();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    storer.stop();
+    delete(directory);
+  }
+
+  @Override
+  protected HubPersistentStorer getStorer() {
+    return storer;
+  }
+
+  public void testChannelsSurviveRestart() {
+    storer.create(APIFactory.getChannelBuilder("someName").build());
+    storer.create(APIFactory.getChannelBuilder("name").filter(APIFactory.getFilter(SupportedMimeType.JYTHON,
+                                                                                    "script")).description("Desc").
+        authToken("auth_token").build());
+    storer.update(APIFactory.getChannelBuilder(storer.getChannel("name")).description("Other").build());
+    storer.delete(storer.getChannel("someName"));
+    restart();
+    assertNull(storer.getChannel("someName"));
+    final Channel channel = storer.getChannel("name");
+    assertEquals("Other", channel.getDescription());
+    assertEquals("auth_token", channel.getAuthToken());
+    assertEquals("script", channel.getFilter().getFilterScript());
+    assertEquals(2, channel.getPosition());
+    storer.create(APIFactory.getChannelBuilder("third").build());
+    assertEquals(3, storer.getChannel("third").getPosition());
+  }
+
+  public void testStoredEventKeepsCreationDate() throws Exception {
+    final Event event = storer.create(APIFactory.getChannelBuilder("someName").build(), newEvent("<xml>some xml</xml>"));
+    final Event storedEvent = storer.getEvent(event.getPlaceholderId());
+    assertEquals("<xml>some xml</xml>", getContent(storedEvent));
+    assertEquals(event.getCreationDate(), storedEvent.getCreationDate());
+    assertNull(storer.getEvent("1000"));
+  }
+
+  public void testGetEventsAcrossSegments() throws Exception {
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final Channel otherChannel = APIFactory.getChannelBuilder("otherName").build();
+    final List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 60; ++i) {
+      ids.add(storer.create(channel, newEvent("<xml>" + i + "</xml>")).getPlaceholderId());
+      storer.create(otherChannel, newEvent("<xml>other " + i + "</xml>"));
+    }
+    assertTrue(storer.getSegmentCount("someName") > 3);
+    for (int i = 0; i < 60; ++i) {
+      assertEquals("<xml>" + i + "</xml>", getContent(storer.getEvent(ids.get(i))));
+    }
+    assertEquals(Arrays.asList(ids.get(33), ids.get(32), ids.get(31)), getIds(storer.getEvents(ids.get(30), channel.
+        getName(), 3)));
+    assertEquals(Arrays.asList(ids.get(29), ids.get(28), ids.get(27)), getIds(storer.getEvents(ids.get(30),
+                                                                                               "SomeName", -3)));
+    assertEquals(Arrays.asList(ids.get(59), ids.get(58)), getIds(storer.getEvents("-1", channel.getName(), 2)));
+    assertEquals(Arrays.asList(ids.get(1), ids.get(0)), getIds(storer.getEvents("", channel.getName(), 2)));
+    final List<String> allIds = getIds(storer.getEvents(ids.get(30), null, -6));
+    assertEquals(6, allIds.size());
+    for (int i = 1; i < allIds.size(); ++i) {
+      assertEquals(Long.parseLong(allIds.get(i - 1)) - 1, Long.parseLong(allIds.get(i)));
+    }
+    assertTrue(storer.getEvents(ids.get(3), "missing", 3).isEmpty());
+  }
+
+  public void testStreamEventsAcrossSegments() {
+    final Channel channel = APIFactory.getChannelBuilder("streamChannel").build();
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 40; ++i) {
+      events.add(newEvent("<xml>stream " + i + "</xml>"));
+    }
+    final List<Event> createdEvents = storer.create(channel, events);
+    CloseableIterator<Event> iterator = storer.streamEvents(createdEvents.get(0).getPlaceholderId(), channel.getName(),
+                                                            HubPersistentStorer.Direction.AFTER);
+    for (int i = 1; i < 40; ++i) {
+      assertTrue(iterator.hasNext());
+      assertEquals(createdEvents.get(i).getPlaceholderId(), iterator.next().getPlaceholderId());
+    }
+    assertFalse(iterator.hasNext());
+    final Event appendedEvent = storer.create(channel, newEvent("<xml>appended</xml>"));
+    assertTrue(iterator.hasNext());
+    assertEquals(appendedEvent.getPlaceholderId(), iterator.next().getPlaceholderId());
+    iterator.close();
+    assertFalse(iterator.hasNext());
+    iterator = storer.streamEvents(createdEvents.get(39).getPlaceholderId(), channel.getName(),
+                                   HubPersistentStorer.Direction.BEFORE);
+    for (int i = 38; i > -1; --i) {
+      assertTrue(iterator.hasNext());
+      assertEquals(createdEvents.get(i).getPlaceholderId(), iterator.next().getPlaceholderId());
+    }
+    assertFalse(iterator.hasNext());
+    iterator = storer.streamEvents(null, null, HubPersistentStorer.Direction.BEFORE);
+    assertEquals(appendedEvent.getPlaceholderId(), iterator.next().getPlaceholderId());
+    iterator.close();
+  }
+
+  public void testDeletedEventStaysDeletedAfterRestart() {
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final Event event = storer.create(channel, newEvent("<xml/>"));
+    final Event otherEvent = storer.create(channel, newEvent("<xml>other</xml>"));
+    storer.delete(event);
+    assertNull(storer.getEvent(event.getPlaceholderId()));
+    assertNull(storer.getEventByUUID(event.getUniversallyUniqueID()));
+    assertEquals(Collections.singletonList(otherEvent.getPlaceholderId()), getIds(storer.getEvents("-1", "someName",
+                                                                                                   10)));
+    restart();
+    assertNull(storer.getEvent(event.getPlaceholderId()));
+    assertNull(storer.getEventByUUID(event.getUniversallyUniqueID()));
+    assertNotNull(storer.getEventByUUID(otherEvent.getUniversallyUniqueID()));
+  }
+
+  public void testConsumerOffsetsSurviveRestart() {
+    storer.commitConsumerOffsets(Arrays.asList(new ConsumerOffset("offsetChannel", "workers", "10"),
+                                               new ConsumerOffset("offsetChannel", "auditors", "5")));
+    storer.commitConsumerOffsets(Collections.singletonList(new ConsumerOffset("offsetChannel", "workers", "12")));
+    restart();
+    assertEquals("12", storer.getConsumerOffset("OffsetChannel", "workers").getPlaceholderId());
+    assertEquals("5", storer.getConsumerOffset("offsetChannel", "auditors").getPlaceholderId());
+    assertNull(storer.getConsumerOffset("offsetChannel", "others"));
+  }
+
+  public void testRecoverTornRecord() throws Exception {
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 25; ++i) {
+      ids.add(storer.create(channel, newEvent("<xml>" + i + "</xml>")).getPlaceholderId());
+    }
+    final Event lastEvent = storer.getEvent(ids.get(24));
+    storer.stop();
+    final File[] segments = new File(new File(directory, "channels"), "somename").listFiles();
+    Arrays.sort(segments);
+    final RandomAccessFile file = new RandomAccessFile(segments[segments.length - 1], "rw");
+    try {
+      int position = 0;
+      int length;
+      while ((length = readInt(file, position)) > 0) {
+        position += 8 + length;
+      }
+      file.seek(position - 1);
+      final int lastByte = file.read();
+      file.seek(position - 1);
+      file.write(lastByte ^ 0xff);
+    }
+    finally {
+      file.close();
+    }
+    storer.start();
+    assertNull(storer.getEvent(ids.get(24)));
+    assertNull(storer.getEventByUUID(lastEvent.getUniversallyUniqueID()));
+    assertEquals("<xml>23</xml>", getContent(storer.getEvent(ids.get(23))));
+    final Event nextEvent = storer.create(channel, newEvent("<xml>next</xml>"));
+    assertEquals(ids.get(24), nextEvent.getPlaceholderId());
+    restart();
+    assertEquals("<xml>next</xml>", getContent(storer.getEvent(ids.get(24))));
+    assertEquals(Arrays.asList(ids.get(24), ids.get(23)), getIds(storer.getEvents("-1", "someName", 2)));
+  }
+
+  public void testFailedBatchIsNotAppended() throws Exception {
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final Event firstEvent = storer.create(channel, newEvent("<xml>first</xml>"));
+    final long firstId = Long.parseLong(firstEvent.getPlaceholderId());
+    //Segments the batch would roll over to can not be created while files of their names exist
+    final File channelDirectory = new File(new File(directory, "channels"), "somename");
+    final List<File> blockers = new ArrayList<File>();
+    for (long id = firstId + 2; id < firstId + 40; ++id) {
+      final File blocker = new File(channelDirectory, LogSegment.getFileName(id));
+      assertTrue(blocker.createNewFile());
+      blockers.add(blocker);
+    }
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 30; ++i) {
+      events.add(newEvent("<xml>batch " + i + "</xml>"));
+    }
+    try {
+      storer.create(channel, events);
+      fail("Appended a batch a segment could not be created for");
+    }
+    catch (IllegalStateException ex) {
+      //expected
+    }
+    assertEquals(Collections.singletonList(firstEvent.getPlaceholderId()), getIds(storer.getEvents("-1", "someName",
+                                                                                                   100)));
+    assertNull(storer.getEvent(Long.toString(firstId + 1)));
+    for (File blocker : blockers) {
+      assertTrue(blocker.delete());
+    }
+    final List<Event> createdEvents = storer.create(channel, events);
+    assertEquals(Long.toString(firstId + 1), createdEvents.get(0).getPlaceholderId());
+    restart();
+    assertEquals(31, storer.getEvents("-1", "someName", 100).size());
+    assertEquals("<xml>batch 29</xml>", getContent(storer.getEvent(createdEvents.get(29).getPlaceholderId())));
+  }
+
+  public void testRetention() {
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 60; ++i) {
+      events.add(storer.create(channel, newEvent("<xml>" + i + "</xml>")));
+    }
+    final int segmentCount = storer.getSegmentCount("someName");
+    storer.setMaxChannelBytes(2 * storer.getSegmentSize());
+    storer.enforceRetention();
+    assertEquals(2, storer.getSegmentCount("someName"));
+    assertEquals(2, new File(new File(directory, "channels"), "somename").listFiles().length);
+    assertTrue(segmentCount > 2);
+    assertNull(storer.getEvent(events.get(0).getPlaceholderId()));
+    assertNull(storer.getEventByUUID(events.get(0).getUniversallyUniqueID()));
+    assertNotNull(storer.getEventByUUID(events.get(59).getUniversallyUniqueID()));
+    final List<String> ids = getIds(storer.getEvents("", "someName", 100));
+    assertEquals(events.get(59).getPlaceholderId(), ids.get(0));
+    assertTrue(ids.size() < 60);
+    storer.setMaxChannelBytes(0);
+    storer.setRetentionInSec(1);
+    storer.enforceRetention();
+    assertEquals(2, storer.getSegmentCount("someName"));
+  }
+
+  public void testChannelNameEncoding() {
+    assertEquals("a%2Eb%2F%2E%2E", SegmentLogPersistentStorer.encodeChannelName("a.b/.."));
+    assertEquals("a.b/..", SegmentLogPersistentStorer.decodeChannelName(SegmentLogPersistentStorer.encodeChannelName(
+        "a.b/..")));
+    storer.create(APIFactory.getChannelBuilder("..").build(), newEvent("<xml/>"));
+    assertEquals(1, storer.getEvents("-1", "..", 10).size());
+    assertTrue(new File(new File(directory, "channels"), "%2E%2E").isDirectory());
+  }
+
+  private SegmentLogPersistentStorer newStorer() {
+    final SegmentLogPersistentStorer newStorer = new SegmentLogPersistentStorer();
+    newStorer.setDirectory(directory);
+    newStorer.setSegmentSize(512);
+    newStorer.setIndexInterval(64);
+    newStorer.setFlushIntervalInMillis(0);
+    newStorer.start();
+    return newStorer;
+  }
+
+  private void restart() {
+    storer.stop();
+    storer = newStorer();
+  }
+
+  private static int readInt(RandomAccessFile file, int position) throws Exception {
+    if (position + 4 > file.length()) {
+      return 0;
+    }
+    file.seek(position);
+    return file.readInt();
+  }
+
+  private static void delete(File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
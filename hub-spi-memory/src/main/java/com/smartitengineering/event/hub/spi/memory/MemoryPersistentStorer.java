@@ -0,0 +1,605 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.memory;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.CloseableIterator;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link HubPersistentStorer} keeping channels and the recent events of each channel in memory, for nodes that only
+ * serve a recent window of events and for tests. Events are indexed by placeholder ID, by channel and by UUID in
+ * concurrent skip lists, so reads never lock; writes are serialized so that placeholder IDs are assigned in the order
+ * events become visible. Each channel keeps at most its capacity of events, the oldest ones being dropped as new ones
+ * are created.
+ * <p>
+ * If a snapshot file is set the storer is loaded from it when started and written to it periodically and when
+ * stopped, else everything is lost when the node goes down.
+ * @author imyousuf
+ */
+public class MemoryPersistentStorer
+    implements HubPersistentStorer {
+
+  public static final int DEFAULT_CHANNEL_CAPACITY = 10000;
+  public static final int DEFAULT_SNAPSHOT_INTERVAL_IN_SEC = 60;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  /**
+   * Guards all modifications, reads go straight to the indexes
+   */
+  private final Object writeLock = new Object();
+  private final ConcurrentSkipListMap<Long, StoredEvent> events = new ConcurrentSkipListMap<Long, StoredEvent>();
+  private final ConcurrentSkipListMap<String, StoredEvent> eventsByUUID =
+                                                           new ConcurrentSkipListMap<String, StoredEvent>();
+  private final ConcurrentSkipListMap<String, ChannelLog> channelLogs = new ConcurrentSkipListMap<String, ChannelLog>();
+  private final ConcurrentSkipListMap<String, Channel> channels = new ConcurrentSkipListMap<String, Channel>();
+  private final ConcurrentSkipListMap<Integer, Channel> channelsByPosition =
+                                                        new ConcurrentSkipListMap<Integer, Channel>();
+  private final ConcurrentMap<String, ConsumerOffset> consumerOffsets = new ConcurrentHashMap<String, ConsumerOffset>();
+  private final ConcurrentMap<String, Integer> channelCapacities = new ConcurrentHashMap<String, Integer>();
+  private volatile int defaultChannelCapacity = DEFAULT_CHANNEL_CAPACITY;
+  private volatile File snapshotFile;
+  private volatile int snapshotIntervalInSec = DEFAULT_SNAPSHOT_INTERVAL_IN_SEC;
+  private long lastPlaceholderId = 0;
+  private int lastChannelPosition = 0;
+  private ScheduledExecutorService snapshotScheduler;
+
+  public int getDefaultChannelCapacity() {
+    return defaultChannelCapacity;
+  }
+
+  /**
+   * Set the maximum number of events kept per channel, unless set otherwise for the channel.
+   */
+  public void setDefaultChannelCapacity(int defaultChannelCapacity) {
+    this.defaultChannelCapacity = defaultChannelCapacity > 0 ? defaultChannelCapacity : DEFAULT_CHANNEL_CAPACITY;
+  }
+
+  /**
+   * Set the maximum number of events kept for channels by their names, replacing the ones set earlier. Channels not
+   * named are bound by the default capacity. It takes effect as events are created in the channels.
+   */
+  public void setChannelCapacities(Map<String, Integer> capacities) {
+    channelCapacities.clear();
+    if (capacities == null) {
+      return;
+    }
+    for (Map.Entry<String, Integer> capacity : capacities.entrySet()) {
+      if (StringUtils.isNotBlank(capacity.getKey()) && capacity.getValue() != null && capacity.getValue() > 0) {
+        channelCapacities.put(getKey(capacity.getKey()), capacity.getValue());
+      }
+    }
+  }
+
+  public int getChannelCapacity(String channelName) {
+    final Integer capacity = channelName == null ? null : channelCapacities.get(getKey(channelName));
+    return capacity == null ? defaultChannelCapacity : capacity;
+  }
+
+  public File getSnapshotFile() {
+    return snapshotFile;
+  }
+
+  /**
+   * Set the file to load the storer from and write its snapshots to, null to keep the storer in memory only.
+   */
+  public void setSnapshotFile(File snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  public int getSnapshotIntervalInSec() {
+    return snapshotIntervalInSec;
+  }
+
+  /**
+   * Set the seconds between snapshots, 0 to write snapshots only when stopped.
+   */
+  public void setSnapshotIntervalInSec(int snapshotIntervalInSec) {
+    this.snapshotIntervalInSec = snapshotIntervalInSec < 0 ? DEFAULT_SNAPSHOT_INTERVAL_IN_SEC : snapshotIntervalInSec;
+  }
+
+  /**
+   * Load the storer from its snapshot file, if there is one, and start writing snapshots periodically.
+   */
+  public void start() {
+    final File file = snapshotFile;
+    if (file == null) {
+      return;
+    }
+    if (file.exists()) {
+      try {
+        restore(MemorySnapshot.read(file));
+        if (logger.isInfoEnabled()) {
+          logger.info("Loaded " + events.size() + " events of " + channels.size() + " channels from " + file);
+        }
+      }
+      catch (IOException ex) {
+        logger.error("Could not load snapshot " + file + ", starting empty!", ex);
+      }
+    }
+    synchronized (writeLock) {
+      if (snapshotScheduler != null || snapshotIntervalInSec == 0) {
+        return;
+      }
+      snapshotScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+          final Thread thread = new Thread(r, "MemoryPersistentStorer-snapshot");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      snapshotScheduler.scheduleWithFixedDelay(new Runnable() {
+
+        @Override
+        public void run() {
+          try {
+            snapshot();
+          }
+          catch (Exception ex) {
+            logger.error("Could not write snapshot", ex);
+          }
+        }
+      }, snapshotIntervalInSec, snapshotIntervalInSec, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Stop writing snapshots periodically and write a last one.
+   */
+  public void stop() {
+    synchronized (writeLock) {
+      if (snapshotScheduler != null) {
+        snapshotScheduler.shutdownNow();
+        snapshotScheduler = null;
+      }
+    }
+    try {
+      snapshot();
+    }
+    catch (IOException ex) {
+      logger.error("Could not write snapshot", ex);
+    }
+  }
+
+  /**
+   * Write the storer to its snapshot file, if it has one. The snapshot is written without holding up writes; events
+   * created while it is being written may or may not be in it.
+   */
+  public void snapshot() throws IOException {
+    final File file = snapshotFile;
+    if (file == null) {
+      return;
+    }
+    final long placeholderId;
+    final int channelPosition;
+    synchronized (writeLock) {
+      placeholderId = lastPlaceholderId;
+      channelPosition = lastChannelPosition;
+    }
+    final List<MemorySnapshot.SnapshotEvent> snapshotEvents = new ArrayList<MemorySnapshot.SnapshotEvent>();
+    for (StoredEvent event : events.values()) {
+      snapshotEvents.add(new MemorySnapshot.SnapshotEvent(event.channelName, event.event));
+    }
+    new MemorySnapshot(placeholderId, channelPosition, new ArrayList<Channel>(channelsByPosition.values()),
+                       snapshotEvents, new ArrayList<ConsumerOffset>(consumerOffsets.values())).write(file);
+  }
+
+  /**
+   * Replace the contents of the storer with those of a snapshot.
+   */
+  private void restore(MemorySnapshot snapshot) {
+    synchronized (writeLock) {
+      clear();
+      lastChannelPosition = snapshot.getLastChannelPosition();
+      for (Channel channel : snapshot.getChannels()) {
+        channels.put(channel.getName(), channel);
+        channelsByPosition.put(channel.getPosition(), channel);
+        lastChannelPosition = Math.max(lastChannelPosition, channel.getPosition());
+      }
+      lastPlaceholderId = snapshot.getLastPlaceholderId();
+      for (MemorySnapshot.SnapshotEvent snapshotEvent : snapshot.getEvents()) {
+        final StoredEvent event = new StoredEvent(snapshotEvent.getChannelName(), snapshotEvent.getEvent());
+        store(event);
+        lastPlaceholderId = Math.max(lastPlaceholderId, event.id);
+      }
+      for (ConsumerOffset offset : snapshot.getConsumerOffsets()) {
+        consumerOffsets.put(getOffsetKey(offset.getChannelName(), offset.getGroupName()), offset);
+      }
+    }
+  }
+
+  /**
+   * Remove all channels, events and consumer offsets.
+   */
+  public void clear() {
+    synchronized (writeLock) {
+      events.clear();
+      eventsByUUID.clear();
+      channelLogs.clear();
+      channels.clear();
+      channelsByPosition.clear();
+      consumerOffsets.clear();
+    }
+  }
+
+  @Override
+  public void create(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (writeLock) {
+      if (channels.containsKey(getKey(channel.getName()))) {
+        throw new IllegalArgumentException("Channel " + channel.getName() + " already exists!");
+      }
+      final Date date = new Date();
+      final Channel newChannel = APIFactory.getChannelBuilder(channel).position(++lastChannelPosition).
+          creationDateTime(date).lastModifiedDate(date).build();
+      channels.put(newChannel.getName(), newChannel);
+      channelsByPosition.put(newChannel.getPosition(), newChannel);
+    }
+  }
+
+  @Override
+  public void update(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (writeLock) {
+      final Channel existingChannel = channels.get(getKey(channel.getName()));
+      if (existingChannel == null) {
+        return;
+      }
+      final Channel updatedChannel = APIFactory.getChannelBuilder(channel).position(existingChannel.getPosition()).
+          creationDateTime(existingChannel.getCreationDateTime()).lastModifiedDate(new Date()).build();
+      channels.put(updatedChannel.getName(), updatedChannel);
+      channelsByPosition.put(updatedChannel.getPosition(), updatedChannel);
+    }
+  }
+
+  @Override
+  public void delete(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+    synchronized (writeLock) {
+      final Channel existingChannel = channels.remove(getKey(channel.getName()));
+      if (existingChannel != null) {
+        channelsByPosition.remove(existingChannel.getPosition());
+      }
+    }
+  }
+
+  @Override
+  public Channel getChannel(String channelName) {
+    if (channelName == null) {
+      return null;
+    }
+    return channels.get(getKey(channelName));
+  }
+
+  @Override
+  public Collection<Channel> getChannels(int startIndex, int count) {
+    if (startIndex < 0 || count == 0) {
+      return Collections.emptyList();
+    }
+    final NavigableMap<Integer, Channel> range = count > 0 ? channelsByPosition.tailMap(startIndex, false)
+        : channelsByPosition.headMap(startIndex, false).descendingMap();
+    final List<Channel> result = new ArrayList<Channel>();
+    final Iterator<Channel> iterator = range.values().iterator();
+    while (iterator.hasNext() && result.size() < Math.abs(count)) {
+      result.add(iterator.next());
+    }
+    //Channels are always returned latest first
+    if (count > 0) {
+      Collections.reverse(result);
+    }
+    return result;
+  }
+
+  @Override
+  public Event create(Channel channel, Event event) {
+    if (channel == null || event == null) {
+      return null;
+    }
+    final List<Event> createdEvents = create(channel, Collections.singletonList(event));
+    return createdEvents.isEmpty() ? null : createdEvents.get(0);
+  }
+
+  @Override
+  public List<Event> create(Channel channel, List<Event> newEvents) {
+    if (channel == null || newEvents == null || newEvents.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final String channelName = getKey(channel.getName());
+    final Date date = new Date();
+    final List<Event> createdEvents = new ArrayList<Event>(newEvents.size());
+    synchronized (writeLock) {
+      //Check the whole batch first, so that it is either created as a whole or not at all
+      final Set<String> uuids = new HashSet<String>();
+      for (Event event : newEvents) {
+        final String uuid = event == null ? null : event.getUniversallyUniqueID();
+        if (StringUtils.isNotBlank(uuid) && (eventsByUUID.containsKey(uuid) || !uuids.add(uuid))) {
+          throw new IllegalArgumentException("Event " + uuid + " already exists!");
+        }
+      }
+      for (Event event : newEvents) {
+        if (event == null || event.getEventContent() == null) {
+          continue;
+        }
+        final String uuid = StringUtils.isBlank(event.getUniversallyUniqueID()) ? UUID.randomUUID().toString()
+            : event.getUniversallyUniqueID();
+        final String charset = event.getEventContent() instanceof ByteContent ? ((ByteContent) event.
+            getEventContent()).getCharset() : null;
+        final Event createdEvent = APIFactory.getEventBuilder().placeholder(Long.toString(++lastPlaceholderId)).uuid(
+            uuid).creationDate(date).eventContent(APIFactory.getContent(event.getEventContent().getContentType(),
+                                                                        APIFactory.getContentBytes(
+            event.getEventContent()), charset)).build();
+        store(new StoredEvent(channelName, createdEvent));
+        createdEvents.add(createdEvent);
+      }
+    }
+    return createdEvents;
+  }
+
+  @Override
+  public void delete(Event event) {
+    if (event == null) {
+      return;
+    }
+    final long id = NumberUtils.toLong(event.getPlaceholderId());
+    synchronized (writeLock) {
+      final StoredEvent storedEvent = events.get(id);
+      if (storedEvent != null) {
+        remove(storedEvent);
+      }
+    }
+  }
+
+  @Override
+  public Event getEvent(String placeholderId) {
+    final long id = NumberUtils.toLong(placeholderId);
+    if (id <= 0) {
+      return null;
+    }
+    final StoredEvent event = events.get(id);
+    return event == null ? null : event.event;
+  }
+
+  @Override
+  public Event getEventByUUID(String uuid) {
+    if (StringUtils.isBlank(uuid)) {
+      return null;
+    }
+    final StoredEvent event = eventsByUUID.get(uuid);
+    return event == null ? null : event.event;
+  }
+
+  @Override
+  public LinkedHashSet<Event> getEvents(String placeholderId, String channelId, int count) {
+    final LinkedHashSet<Event> result = new LinkedHashSet<Event>();
+    final NavigableMap<Long, StoredEvent> index = getIndex(channelId);
+    if (count == 0 || index == null) {
+      return result;
+    }
+    final long id = NumberUtils.toLong(placeholderId);
+    final NavigableMap<Long, StoredEvent> range;
+    if (id > -1) {
+      range = count > 0 ? index.tailMap(id, false) : index.headMap(id, false).descendingMap();
+    }
+    else {
+      range = index.descendingMap();
+    }
+    final List<Event> selected = new ArrayList<Event>();
+    final Iterator<StoredEvent> iterator = range.values().iterator();
+    while (iterator.hasNext() && selected.size() < Math.abs(count)) {
+      selected.add(iterator.next().event);
+    }
+    //Events are always returned latest first
+    if (count > 0 && id > -1) {
+      Collections.reverse(selected);
+    }
+    result.addAll(selected);
+    return result;
+  }
+
+  @Override
+  public CloseableIterator<Event> streamEvents(String placeholderId, String channelId, Direction direction) {
+    final long id = StringUtils.isBlank(placeholderId) ? -1 : NumberUtils.toLong(placeholderId, -1);
+    final NavigableMap<Long, StoredEvent> index = getIndex(channelId);
+    final NavigableMap<Long, StoredEvent> range;
+    if (index == null) {
+      range = new ConcurrentSkipListMap<Long, StoredEvent>();
+    }
+    else if (Direction.AFTER.equals(direction)) {
+      range = id > -1 ? index.tailMap(id, false) : index;
+    }
+    else {
+      range = id > -1 ? index.headMap(id, false).descendingMap() : index.descendingMap();
+    }
+    return new EventIterator(range.values().iterator());
+  }
+
+  @Override
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName) {
+    if (StringUtils.isBlank(channelId) || StringUtils.isBlank(groupName)) {
+      return null;
+    }
+    return consumerOffsets.get(getOffsetKey(channelId, groupName));
+  }
+
+  @Override
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets) {
+    if (offsets == null || offsets.isEmpty()) {
+      return;
+    }
+    for (ConsumerOffset offset : offsets) {
+      if (offset == null || StringUtils.isBlank(offset.getChannelName()) || StringUtils.isBlank(offset.getGroupName())
+          || StringUtils.isBlank(offset.getPlaceholderId())) {
+        continue;
+      }
+      consumerOffsets.put(getOffsetKey(offset.getChannelName(), offset.getGroupName()), new ConsumerOffset(getKey(
+          offset.getChannelName()), offset.getGroupName(), offset.getPlaceholderId(), offset.getCommitDateTime()));
+    }
+  }
+
+  /**
+   * Get the number of events kept for a channel.
+   */
+  public int getEventCount(String channelName) {
+    final ChannelLog log = channelName == null ? null : channelLogs.get(getKey(channelName));
+    return log == null ? 0 : log.size;
+  }
+
+  /**
+   * Add an event to the indexes, dropping the oldest events of its channel beyond its capacity. Has to be called
+   * holding the write lock.
+   */
+  private void store(StoredEvent event) {
+    ChannelLog log = channelLogs.get(event.channelName);
+    if (log == null) {
+      log = new ChannelLog();
+      channelLogs.put(event.channelName, log);
+    }
+    events.put(event.id, event);
+    eventsByUUID.put(event.event.getUniversallyUniqueID(), event);
+    log.events.put(event.id, event);
+    log.size++;
+    final int capacity = getChannelCapacity(event.channelName);
+    while (log.size > capacity) {
+      remove(log.events.firstEntry().getValue());
+    }
+  }
+
+  /**
+   * Remove an event from the indexes. Has to be called holding the write lock.
+   */
+  private void remove(StoredEvent event) {
+    events.remove(event.id);
+    eventsByUUID.remove(event.event.getUniversallyUniqueID());
+    final ChannelLog log = channelLogs.get(event.channelName);
+    if (log != null && log.events.remove(event.id) != null) {
+      log.size--;
+    }
+  }
+
+  private NavigableMap<Long, StoredEvent> getIndex(String channelId) {
+    if (StringUtils.isBlank(channelId)) {
+      return events;
+    }
+    final ChannelLog log = channelLogs.get(getKey(channelId));
+    return log == null ? null : log.events;
+  }
+
+  protected String getKey(String channelName) {
+    return channelName.trim().toLowerCase();
+  }
+
+  protected String getOffsetKey(String channelName, String groupName) {
+    return new StringBuilder(getKey(channelName)).append('\n').append(groupName).toString();
+  }
+
+  /**
+   * An event along with the channel it was created in
+   */
+  private static final class StoredEvent {
+
+    private final long id;
+    private final String channelName;
+    private final Event event;
+
+    StoredEvent(String channelName, Event event) {
+      this.id = NumberUtils.toLong(event.getPlaceholderId());
+      this.channelName = channelName;
+      this.event = event;
+    }
+  }
+
+  /**
+   * Events of a channel and their count, which is guarded by the write lock
+   */
+  private static final class ChannelLog {
+
+    private final ConcurrentSkipListMap<Long, StoredEvent> events = new ConcurrentSkipListMap<Long, StoredEvent>();
+    private volatile int size = 0;
+  }
+
+  private static final class EventIterator
+      implements CloseableIterator<Event> {
+
+    private final Iterator<StoredEvent> iterator;
+    private boolean closed = false;
+
+    EventIterator(Iterator<StoredEvent> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !closed && iterator.hasNext();
+    }
+
+    @Override
+    public Event next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return iterator.next().event;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported!");
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
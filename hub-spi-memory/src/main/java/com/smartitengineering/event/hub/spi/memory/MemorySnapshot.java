@@ -0,0 +1,249 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.memory;
+
+import com.smartitengineering.event.hub.api.ByteContent;
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Contents of a {@link MemoryPersistentStorer} as written to and read from its snapshot file. The file is written to a
+ * temporary file next to it first and then renamed, so that a node going down while writing a snapshot leaves the
+ * previous one intact.
+ * @author imyousuf
+ */
+final class MemorySnapshot {
+
+  private static final int MAGIC = 0x45485348;
+  private static final int VERSION = 1;
+  private final long lastPlaceholderId;
+  private final int lastChannelPosition;
+  private final List<Channel> channels;
+  private final List<SnapshotEvent> events;
+  private final List<ConsumerOffset> consumerOffsets;
+
+  MemorySnapshot(long lastPlaceholderId, int lastChannelPosition, List<Channel> channels, List<SnapshotEvent> events,
+                 List<ConsumerOffset> consumerOffsets) {
+    this.lastPlaceholderId = lastPlaceholderId;
+    this.lastChannelPosition = lastChannelPosition;
+    this.channels = Collections.unmodifiableList(channels);
+    this.events = Collections.unmodifiableList(events);
+    this.consumerOffsets = Collections.unmodifiableList(consumerOffsets);
+  }
+
+  public long getLastPlaceholderId() {
+    return lastPlaceholderId;
+  }
+
+  public int getLastChannelPosition() {
+    return lastChannelPosition;
+  }
+
+  public List<Channel> getChannels() {
+    return channels;
+  }
+
+  public List<SnapshotEvent> getEvents() {
+    return events;
+  }
+
+  public List<ConsumerOffset> getConsumerOffsets() {
+    return consumerOffsets;
+  }
+
+  public void write(File file) throws IOException {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(lastPlaceholderId);
+      out.writeInt(lastChannelPosition);
+      out.writeInt(channels.size());
+      for (Channel channel : channels) {
+        writeString(out, channel.getName());
+        out.writeInt(channel.getPosition());
+        writeString(out, channel.getDescription());
+        writeString(out, channel.getAuthToken());
+        writeDate(out, channel.getCreationDateTime());
+        writeDate(out, channel.getLastModifiedDate());
+        writeDate(out, channel.getAutoExpiryDateTime());
+        final Filter filter = channel.getFilter();
+        out.writeBoolean(filter != null && filter.getMimeType() != null);
+        if (filter != null && filter.getMimeType() != null) {
+          writeString(out, filter.getMimeType().name());
+          writeString(out, filter.getFilterScript());
+        }
+      }
+      out.writeInt(events.size());
+      for (SnapshotEvent snapshotEvent : events) {
+        final Event event = snapshotEvent.getEvent();
+        writeString(out, snapshotEvent.getChannelName());
+        writeString(out, event.getPlaceholderId());
+        writeString(out, event.getUniversallyUniqueID());
+        writeDate(out, event.getCreationDate());
+        writeString(out, event.getEventContent().getContentType());
+        writeString(out, event.getEventContent() instanceof ByteContent ? ((ByteContent) event.getEventContent()).
+            getCharset() : null);
+        writeBytes(out, APIFactory.getContentBytes(event.getEventContent()));
+      }
+      out.writeInt(consumerOffsets.size());
+      for (ConsumerOffset offset : consumerOffsets) {
+        writeString(out, offset.getChannelName());
+        writeString(out, offset.getGroupName());
+        writeString(out, offset.getPlaceholderId());
+        writeDate(out, offset.getCommitDateTime());
+      }
+    }
+    finally {
+      out.close();
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not replace snapshot " + file);
+    }
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("Could not rename " + tempFile + " to " + file);
+    }
+  }
+
+  public static MemorySnapshot read(File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a snapshot of a memory storer");
+      }
+      final long lastPlaceholderId = in.readLong();
+      final int lastChannelPosition = in.readInt();
+      final int channelCount = in.readInt();
+      final List<Channel> channels = new ArrayList<Channel>(channelCount);
+      for (int i = 0; i < channelCount; ++i) {
+        final APIFactory.ChannelBuilder builder = APIFactory.getChannelBuilder(readString(in)).position(in.readInt()).
+            description(readString(in)).authToken(readString(in)).creationDateTime(readDate(in)).lastModifiedDate(
+            readDate(in)).autoExpiryDateTime(readDate(in));
+        if (in.readBoolean()) {
+          builder.filter(APIFactory.getFilter(Filter.SupportedMimeType.valueOf(readString(in)), readString(in)));
+        }
+        channels.add(builder.build());
+      }
+      final int eventCount = in.readInt();
+      final List<SnapshotEvent> events = new ArrayList<SnapshotEvent>(eventCount);
+      for (int i = 0; i < eventCount; ++i) {
+        final String channelName = readString(in);
+        final APIFactory.EventBuilder builder = APIFactory.getEventBuilder().placeholder(readString(in)).uuid(
+            readString(in)).creationDate(readDate(in));
+        final String contentType = readString(in);
+        final String charset = readString(in);
+        events.add(new SnapshotEvent(channelName, builder.eventContent(APIFactory.getContent(contentType, readBytes(in),
+                                                                                              charset)).build()));
+      }
+      final int offsetCount = in.readInt();
+      final List<ConsumerOffset> offsets = new ArrayList<ConsumerOffset>(offsetCount);
+      for (int i = 0; i < offsetCount; ++i) {
+        offsets.add(new ConsumerOffset(readString(in), readString(in), readString(in), readDate(in)));
+      }
+      return new MemorySnapshot(lastPlaceholderId, lastChannelPosition, channels, events, offsets);
+    }
+    catch (IllegalArgumentException ex) {
+      throw new IOException("Corrupt snapshot " + file + ": " + ex.getMessage());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    writeBytes(out, string == null ? null : string.getBytes("UTF-8"));
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = readBytes(in);
+    return bytes == null ? null : new String(bytes, "UTF-8");
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+    }
+    else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeDate(DataOutputStream out, Date date) throws IOException {
+    out.writeBoolean(date != null);
+    if (date != null) {
+      out.writeLong(date.getTime());
+    }
+  }
+
+  private static Date readDate(DataInputStream in) throws IOException {
+    return in.readBoolean() ? new Date(in.readLong()) : null;
+  }
+
+  /**
+   * An event along with the name of the channel it was created in
+   */
+  static final class SnapshotEvent {
+
+    private final String channelName;
+    private final Event event;
+
+    SnapshotEvent(String channelName, Event event) {
+      this.channelName = channelName;
+      this.event = event;
+    }
+
+    public String getChannelName() {
+      return channelName;
+    }
+
+    public Event getEvent() {
+      return event;
+    }
+  }
+}
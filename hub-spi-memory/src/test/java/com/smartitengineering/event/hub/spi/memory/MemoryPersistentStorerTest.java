@@ -0,0 +1,134 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi.memory;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import com.smartitengineering.event.hub.spi.AbstractHubPersistentStorerContractTest;
+import com.smartitengineering.event.hub.spi.ConsumerOffset;
+import com.smartitengineering.event.hub.spi.HubPersistentStorer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the storer contract on the in memory storer, along with its capacity and snapshots.
+ * @author imyousuf
+ */
+public class MemoryPersistentStorerTest
+    extends AbstractHubPersistentStorerContractTest {
+
+  private MemoryPersistentStorer storer;
+
+  @Override
+  protected void setUp() throws Exception {
+    storer = new MemoryPersistentStorer();
+  }
+
+  @Override
+  protected HubPersistentStorer getStorer() {
+    return storer;
+  }
+
+  public void testGetChannelsByPosition() {
+    for (int i = 1; i < 11; ++i) {
+      storer.create(APIFactory.getChannelBuilder("channel" + i).build());
+    }
+    List<Channel> channels = new ArrayList<Channel>(storer.getChannels(6, 2));
+    assertEquals(2, channels.size());
+    assertEquals(8, channels.get(0).getPosition());
+    assertEquals(7, channels.get(1).getPosition());
+    channels = new ArrayList<Channel>(storer.getChannels(6, -2));
+    assertEquals(2, channels.size());
+    assertEquals(5, channels.get(0).getPosition());
+    assertEquals(4, channels.get(1).getPosition());
+  }
+
+  public void testUpdateMissingChannel() {
+    storer.update(APIFactory.getChannelBuilder("missing").build());
+    assertNull(storer.getChannel("missing"));
+  }
+
+  public void testDeleteEventForgetsItsUUID() {
+    final Event event = storer.create(APIFactory.getChannelBuilder("someName").build(), newEvent("<xml/>"));
+    assertNotNull(event.getCreationDate());
+    storer.delete(event);
+    assertNull(storer.getEventByUUID(event.getUniversallyUniqueID()));
+    assertEquals(0, storer.getEventCount("someName"));
+  }
+
+  public void testChannelCapacity() {
+    storer.setDefaultChannelCapacity(3);
+    storer.setChannelCapacities(Collections.singletonMap("Quotes", 2));
+    final Channel channel = APIFactory.getChannelBuilder("someName").build();
+    final Channel quotes = APIFactory.getChannelBuilder("quotes").build();
+    final List<String> ids = new ArrayList<String>();
+    final List<String> uuids = new ArrayList<String>();
+    for (int i = 0; i < 5; ++i) {
+      final Event event = storer.create(channel, newEvent("<xml>" + i + "</xml>"));
+      ids.add(event.getPlaceholderId());
+      uuids.add(event.getUniversallyUniqueID());
+      storer.create(quotes, newEvent("<xml>quote " + i + "</xml>"));
+    }
+    assertEquals(3, storer.getEventCount("someName"));
+    assertEquals(2, storer.getEventCount("quotes"));
+    assertNull(storer.getEvent(ids.get(1)));
+    assertNull(storer.getEventByUUID(uuids.get(1)));
+    assertNotNull(storer.getEvent(ids.get(2)));
+    assertEquals(Arrays.asList(ids.get(4), ids.get(3), ids.get(2)), getIds(storer.getEvents("-1", "someName", 10)));
+    assertEquals(5, storer.getEvents("-1", null, 10).size());
+  }
+
+  public void testSnapshot() throws Exception {
+    final File file = File.createTempFile("memory-storer", ".snapshot");
+    file.delete();
+    try {
+      storer.setSnapshotFile(file);
+      storer.setSnapshotIntervalInSec(0);
+      storer.start();
+      storer.create(APIFactory.getChannelBuilder("name").filter(APIFactory.getFilter(SupportedMimeType.RUBY,
+                                                                                      "script")).build());
+      final Event event = storer.create(storer.getChannel("name"), newEvent("<xml>snapshot</xml>"));
+      storer.commitConsumerOffsets(Collections.singletonList(new ConsumerOffset("name", "workers",
+                                                                                event.getPlaceholderId())));
+      storer.stop();
+      assertTrue(file.exists());
+      final MemoryPersistentStorer restored = new MemoryPersistentStorer();
+      restored.setSnapshotFile(file);
+      restored.setSnapshotIntervalInSec(0);
+      restored.start();
+      final Channel channel = restored.getChannel("name");
+      assertEquals(storer.getChannel("name").getPosition(), channel.getPosition());
+      assertEquals(storer.getChannel("name").getCreationDateTime(), channel.getCreationDateTime());
+      assertEquals("script", channel.getFilter().getFilterScript());
+      final Event restoredEvent = restored.getEventByUUID(event.getUniversallyUniqueID());
+      assertEquals(event.getPlaceholderId(), restoredEvent.getPlaceholderId());
+      assertEquals("<xml>snapshot</xml>", getContent(restoredEvent));
+      assertEquals(event.getPlaceholderId(), restored.getConsumerOffset("name", "workers").getPlaceholderId());
+      final Event nextEvent = restored.create(channel, newEvent("<xml>after</xml>"));
+      assertTrue(Long.parseLong(nextEvent.getPlaceholderId()) > Long.parseLong(event.getPlaceholderId()));
+    }
+    finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Closeable iterator over elements fetched a chunk at a time, holding only the current chunk in memory. Iteration ends
+ * when a chunk is fetched empty or the iterator is closed.
+ * @author imyousuf
+ */
+public abstract class AbstractChunkedIterator<T>
+    implements CloseableIterator<T> {
+
+  private Iterator<T> chunk;
+  private boolean exhausted = false;
+  private boolean closed = false;
+
+  /**
+   * Fetch the next chunk of elements.
+   * @return Elements of the next chunk in iteration order, empty if there are no more
+   */
+  protected abstract List<T> nextChunk();
+
+  /**
+   * Release the resources held, if any; invoked once when the iterator is closed.
+   */
+  protected void release() {
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed) {
+      return false;
+    }
+    while ((chunk == null || !chunk.hasNext()) && !exhausted) {
+      final List<T> next = nextChunk();
+      if (next == null || next.isEmpty()) {
+        exhausted = true;
+        chunk = null;
+      }
+      else {
+        chunk = next.iterator();
+      }
+    }
+    return chunk != null && chunk.hasNext();
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return chunk.next();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("Events can not be removed while being streamed");
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    chunk = null;
+    release();
+  }
+}
@@ -0,0 +1,137 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Base of the layers, e.g. caching or metrics, stacked around a {@link HubPersistentStorer}. Every operation is passed
+ * on to the decorated storer; layers override the operations they are concerned with.
+ * @author imyousuf
+ */
+public abstract class AbstractDecoratingHubPersistentStorer implements HubPersistentStorer {
+
+  private final HubPersistentStorer storer;
+
+  protected AbstractDecoratingHubPersistentStorer(HubPersistentStorer storer) {
+    if (storer == null) {
+      throw new IllegalArgumentException("Storer to decorate can not be null!");
+    }
+    this.storer = storer;
+  }
+
+  public HubPersistentStorer getDelegate() {
+    return storer;
+  }
+
+  /**
+   * Find a layer of a type in a stack of decorated storers, looking from the outermost to the storer decorated.
+   * @param storer The outermost storer
+   * @param type Type of the layer to look for
+   * @return The outermost layer of the type or null if there is none
+   */
+  public static <T extends HubPersistentStorer> T unwrap(HubPersistentStorer storer, Class<T> type) {
+    HubPersistentStorer current = storer;
+    while (current != null) {
+      if (type.isInstance(current)) {
+        return type.cast(current);
+      }
+      if (current instanceof AbstractDecoratingHubPersistentStorer) {
+        current = ((AbstractDecoratingHubPersistentStorer) current).getDelegate();
+      }
+      else {
+        current = null;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void create(Channel channel) {
+    storer.create(channel);
+  }
+
+  @Override
+  public void update(Channel channel) {
+    storer.update(channel);
+  }
+
+  @Override
+  public void delete(Channel channel) {
+    storer.delete(channel);
+  }
+
+  @Override
+  public Channel getChannel(String channelName) {
+    return storer.getChannel(channelName);
+  }
+
+  @Override
+  public Collection<Channel> getChannels(int startIndex, int count) {
+    return storer.getChannels(startIndex, count);
+  }
+
+  @Override
+  public Event create(Channel channel, Event event) {
+    return storer.create(channel, event);
+  }
+
+  @Override
+  public List<Event> create(Channel channel, List<Event> events) {
+    return storer.create(channel, events);
+  }
+
+  @Override
+  public void delete(Event event) {
+    storer.delete(event);
+  }
+
+  @Override
+  public Event getEvent(String placeholderId) {
+    return storer.getEvent(placeholderId);
+  }
+
+  @Override
+  public Event getEventByUUID(String uuid) {
+    return storer.getEventByUUID(uuid);
+  }
+
+  @Override
+  public LinkedHashSet<Event> getEvents(String placeholderId, String channelId, int count) {
+    return storer.getEvents(placeholderId, channelId, count);
+  }
+
+  @Override
+  public CloseableIterator<Event> streamEvents(String placeholderId, String channelId, Direction direction) {
+    return storer.streamEvents(placeholderId, channelId, direction);
+  }
+
+  @Override
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName) {
+    return storer.getConsumerOffset(channelId, groupName);
+  }
+
+  @Override
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets) {
+    storer.commitConsumerOffsets(offsets);
+  }
+}
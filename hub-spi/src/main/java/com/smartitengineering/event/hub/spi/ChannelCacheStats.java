@@ -0,0 +1,109 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the channel cache, exposed as an MBean.
+ * @author imyousuf
+ */
+public class ChannelCacheStats implements ChannelCacheStatsMBean {
+
+  public static final String OBJECT_NAME = "com.smartitengineering.event.hub:type=ChannelCache";
+  private final ChannelCachingHubPersistentStorer cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public ChannelCacheStats(ChannelCachingHubPersistentStorer cache) {
+    this.cache = cache;
+  }
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void evicted() {
+    evictions.incrementAndGet();
+  }
+
+  void invalidated() {
+    invalidations.incrementAndGet();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public double getHitRate() {
+    final long hitCount = hits.get();
+    final long total = hitCount + misses.get();
+    return total > 0 ? (double) hitCount / total : 0d;
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  @Override
+  public int getSize() {
+    return cache.getCacheSize();
+  }
+
+  @Override
+  public int getMaxSize() {
+    return cache.getMaxSize();
+  }
+
+  @Override
+  public long getTimeToLiveInMillis() {
+    return cache.getTimeToLiveInMillis();
+  }
+
+  @Override
+  public void resetStats() {
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+    invalidations.set(0);
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
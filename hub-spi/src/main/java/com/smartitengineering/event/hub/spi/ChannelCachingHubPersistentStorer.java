@@ -0,0 +1,206 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decorates a {@link HubPersistentStorer} with a bounded, time to live based cache of channels looked up by name.
+ * Every other operation is passed on to the decorated storer. Channels are invalidated locally when they are created,
+ * updated or deleted through this storer and, if an {@link ChannelInvalidationPublisher invalidation publisher} is set,
+ * on the other nodes of the cluster as well. Since invalidations from other nodes are asynchronous, the time to live
+ * bounds how long a node may serve a channel modified elsewhere.
+ * @author imyousuf
+ */
+public class ChannelCachingHubPersistentStorer extends AbstractDecoratingHubPersistentStorer {
+
+  public static final long DEFAULT_TIME_TO_LIVE_IN_MILLIS = 60 * 1000;
+  public static final int DEFAULT_MAX_SIZE = 1000;
+  private final long timeToLiveInMillis;
+  private final int maxSize;
+  private final Map<String, CachedChannel> cache;
+  private final ChannelCacheStats stats;
+  private volatile ChannelInvalidationPublisher invalidationPublisher;
+  /**
+   * Incremented on every invalidation, guarded by the cache's lock. A channel read from the storer is cached only if
+   * no invalidation happened while it was being read, so that a stale read can not be cached after the invalidation.
+   */
+  private long generation = 0;
+
+  public ChannelCachingHubPersistentStorer(HubPersistentStorer storer) {
+    this(storer, DEFAULT_TIME_TO_LIVE_IN_MILLIS, DEFAULT_MAX_SIZE);
+  }
+
+  public ChannelCachingHubPersistentStorer(HubPersistentStorer storer, long timeToLiveInMillis, int maxSize) {
+    super(storer);
+    this.timeToLiveInMillis = timeToLiveInMillis > 0 ? timeToLiveInMillis : DEFAULT_TIME_TO_LIVE_IN_MILLIS;
+    this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+    this.stats = new ChannelCacheStats(this);
+    this.cache = new LinkedHashMap<String, CachedChannel>(16, 0.75f, true) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedChannel> eldest) {
+        final boolean evict = size() > ChannelCachingHubPersistentStorer.this.maxSize;
+        if (evict) {
+          stats.evicted();
+        }
+        return evict;
+      }
+    };
+  }
+
+  public ChannelInvalidationPublisher getInvalidationPublisher() {
+    return invalidationPublisher;
+  }
+
+  public void setInvalidationPublisher(ChannelInvalidationPublisher invalidationPublisher) {
+    this.invalidationPublisher = invalidationPublisher;
+  }
+
+  public ChannelCacheStats getStats() {
+    return stats;
+  }
+
+  public long getTimeToLiveInMillis() {
+    return timeToLiveInMillis;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getCacheSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Remove a channel from the cache of this node only, e.g. when notified of its modification on another node.
+   * @param channelName Name of the channel to invalidate
+   */
+  public void invalidate(String channelName) {
+    if (channelName == null) {
+      return;
+    }
+    final CachedChannel removed;
+    synchronized (cache) {
+      generation++;
+      removed = cache.remove(getKey(channelName));
+    }
+    if (removed != null) {
+      stats.invalidated();
+    }
+  }
+
+  /**
+   * Remove all channels from the cache of this node only.
+   */
+  public void invalidateAll() {
+    synchronized (cache) {
+      generation++;
+      cache.clear();
+    }
+  }
+
+  @Override
+  public Channel getChannel(String channelName) {
+    if (channelName == null) {
+      return getDelegate().getChannel(channelName);
+    }
+    final String key = getKey(channelName);
+    final long now = System.currentTimeMillis();
+    final long readGeneration;
+    synchronized (cache) {
+      readGeneration = generation;
+      CachedChannel cachedChannel = cache.get(key);
+      if (cachedChannel != null) {
+        if (cachedChannel.expiresAt > now) {
+          stats.hit();
+          return cachedChannel.channel;
+        }
+        cache.remove(key);
+      }
+    }
+    stats.miss();
+    final Channel channel = getDelegate().getChannel(channelName);
+    //Non-existent channels are not cached so that a channel created on another node is seen right away
+    if (channel != null) {
+      synchronized (cache) {
+        if (readGeneration == generation) {
+          cache.put(key, new CachedChannel(channel, now + timeToLiveInMillis));
+        }
+      }
+    }
+    return channel;
+  }
+
+  @Override
+  public void create(Channel channel) {
+    getDelegate().create(channel);
+    invalidateEverywhere(channel);
+  }
+
+  @Override
+  public void update(Channel channel) {
+    try {
+      getDelegate().update(channel);
+    }
+    finally {
+      invalidateEverywhere(channel);
+    }
+  }
+
+  @Override
+  public void delete(Channel channel) {
+    try {
+      getDelegate().delete(channel);
+    }
+    finally {
+      invalidateEverywhere(channel);
+    }
+  }
+
+  protected void invalidateEverywhere(Channel channel) {
+    if (channel == null || channel.getName() == null) {
+      return;
+    }
+    invalidate(channel.getName());
+    final ChannelInvalidationPublisher publisher = invalidationPublisher;
+    if (publisher != null) {
+      publisher.publishInvalidation(channel.getName());
+    }
+  }
+
+  protected String getKey(String channelName) {
+    return channelName.toLowerCase();
+  }
+
+  private static class CachedChannel {
+
+    private final Channel channel;
+    private final long expiresAt;
+
+    CachedChannel(Channel channel, long expiresAt) {
+      this.channel = channel;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
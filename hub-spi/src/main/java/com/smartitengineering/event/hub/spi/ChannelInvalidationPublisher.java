@@ -0,0 +1,32 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+/**
+ * Propagates invalidation of a cached channel to the other nodes of a cluster, which are expected to pass it on to
+ * {@link ChannelCachingHubPersistentStorer#invalidate(java.lang.String)} of their own cache.
+ * @author imyousuf
+ */
+public interface ChannelInvalidationPublisher {
+
+  /**
+   * Notify the other nodes that the channel has been modified and hence their cached copy is stale.
+   * @param channelName Name of the channel modified
+   */
+  public void publishInvalidation(String channelName);
+}
@@ -0,0 +1,35 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.util.Iterator;
+
+/**
+ * An iterator holding resources of its storage, such as an open cursor, which have to be released by closing it once
+ * the consumer is done with it, whether or not it has been iterated through.
+ * @author imyousuf
+ */
+public interface CloseableIterator<T>
+    extends Iterator<T> {
+
+  /**
+   * Release the resources held by this iterator. Once closed it has no next element. Closing it more than once has no
+   * effect.
+   */
+  public void close();
+}
@@ -0,0 +1,68 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Offset committed by a named consumer group of a channel, i.e. the placeholder ID of the last event the group has
+ * consumed, every event before it included.
+ * @author imyousuf
+ */
+public class ConsumerOffset implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private final String channelName;
+  private final String groupName;
+  private final String placeholderId;
+  private final Date commitDateTime;
+
+  public ConsumerOffset(String channelName, String groupName, String placeholderId) {
+    this(channelName, groupName, placeholderId, new Date());
+  }
+
+  public ConsumerOffset(String channelName, String groupName, String placeholderId, Date commitDateTime) {
+    this.channelName = channelName;
+    this.groupName = groupName;
+    this.placeholderId = placeholderId;
+    this.commitDateTime = commitDateTime == null ? null : new Date(commitDateTime.getTime());
+  }
+
+  public String getChannelName() {
+    return channelName;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  public String getPlaceholderId() {
+    return placeholderId;
+  }
+
+  public Date getCommitDateTime() {
+    return commitDateTime == null ? null : new Date(commitDateTime.getTime());
+  }
+
+  @Override
+  public String toString() {
+    return new StringBuilder(String.valueOf(channelName)).append('/').append(groupName).append('@').append(
+        placeholderId).toString();
+  }
+}
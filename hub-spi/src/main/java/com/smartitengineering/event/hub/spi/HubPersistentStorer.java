@@ -22,6 +22,7 @@ import com.smartitengineering.event.hub.api.Content;
 import com.smartitengineering.event.hub.api.Event;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  *
@@ -29,6 +30,21 @@ import java.util.LinkedHashSet;
  */
 public interface HubPersistentStorer {
 
+  /**
+   * Direction to stream events in from a placeholder
+   */
+  public static enum Direction {
+
+    /**
+     * Events before the placeholder, i.e. older ones, newest first
+     */
+    BEFORE,
+    /**
+     * Events after the placeholder, i.e. newer ones, oldest first
+     */
+    AFTER;
+  }
+
   /**
    * Persists a new channel in persistent storage supported. It will also set
    * the creation time of channel.
@@ -59,6 +75,15 @@ public interface HubPersistentStorer {
    */
   public Event create(Channel channel, Event event);
 
+  /**
+   * Persist a batch of events for a channel in one go. Events are assigned placeholder IDs in the order they appear
+   * in the list and the batch is written with as few round trips to the persistent storage as it supports.
+   * @param channel Channel the events are published to
+   * @param events Events to be saved
+   * @return Saved events with placeholder id and UUID set, in the same order as supplied. Should never return null.
+   */
+  public List<Event> create(Channel channel, List<Event> events);
+
   public void delete(Event event);
 
   /**
@@ -81,4 +106,39 @@ public interface HubPersistentStorer {
    */
   public LinkedHashSet<Event> getEvents(String placeholderId, String channelId,
                                         int count);
+
+  /**
+   * Stream all events from a certain placeholder in one direction. Unlike
+   * {@link #getEvents(java.lang.String, java.lang.String, int)} the events are
+   * fetched lazily a chunk at a time as they are iterated, so that the memory
+   * used does not grow with the number of events streamed. The iterator must be
+   * closed when done with.
+   * <p>
+   * Events created concurrently need not become visible in the order they are streamed in, so an event may appear
+   * before the placeholder after it has been streamed past; how long that may take is declared by storers implementing
+   * {@link OrderedHubPersistentStorer}.
+   * @param placeholderId The placeholder id to start streaming after, exclusive. If
+   *        blank or negative the events are streamed from the newest for
+   *        {@link Direction#BEFORE} and from the oldest for {@link Direction#AFTER}
+   * @param channelId Channel name/ID to stream the events of. It will be considered only if it is non-blank
+   * @param direction Direction to stream the events in
+   * @return Iterator over the events in the order of the direction
+   * @see OrderedHubPersistentStorer
+   */
+  public CloseableIterator<Event> streamEvents(String placeholderId, String channelId, Direction direction);
+
+  /**
+   * Retrieve the offset committed by a consumer group of a channel.
+   * @param channelId Channel name/ID the group consumes
+   * @param groupName Name of the consumer group
+   * @return The committed offset or null if the group has not committed any
+   */
+  public ConsumerOffset getConsumerOffset(String channelId, String groupName);
+
+  /**
+   * Commit the offsets of one or more consumer groups in one batch, replacing any previously committed for the same
+   * groups. It is up to the caller not to move a group's offset backwards.
+   * @param offsets Offsets to commit
+   */
+  public void commitConsumerOffsets(Collection<ConsumerOffset> offsets);
 }
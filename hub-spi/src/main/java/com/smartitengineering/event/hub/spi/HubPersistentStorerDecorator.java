@@ -0,0 +1,33 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+/**
+ * Stacks a layer around the storer resolved by the {@link HubPersistentStorerSPI}. Decorators are applied in the order
+ * they are configured, so the last one configured is the outermost layer.
+ * @author imyousuf
+ */
+public interface HubPersistentStorerDecorator {
+
+  /**
+   * Decorate a storer.
+   * @param storer The storer to decorate, never null
+   * @return The decorated storer, or the storer itself to leave it as it is
+   */
+  public HubPersistentStorer decorate(HubPersistentStorer storer);
+}
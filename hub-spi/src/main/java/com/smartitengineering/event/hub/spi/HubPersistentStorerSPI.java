@@ -20,31 +20,173 @@ package com.smartitengineering.event.hub.spi;
 import com.smartitengineering.util.bean.BeanFactoryRegistrar;
 import com.smartitengineering.util.bean.annotations.Aggregator;
 import com.smartitengineering.util.bean.annotations.InjectableField;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 /**
- *
+ * Resolves the {@link HubPersistentStorer} of the hub from the bean factory once, when it is first asked for, and
+ * stacks the {@link #setDecorators(java.util.List) configured decorators} around it. The instance is created by the
+ * class loader holding it, so concurrent first calls neither race nor pay for locking afterwards; the web application
+ * should {@link #initialize() initialize} it at start up so that requests never do. If resolving the storer fails,
+ * the failure is kept and every call to {@link #getInstance()} fails with it rather than the class being left
+ * unusable.
  * @author imyousuf
  */
 @Aggregator(contextName="com.smartitengineering.event.hub.spi")
 public final class HubPersistentStorerSPI {
 
+  private static volatile List<HubPersistentStorerDecorator> decorators = Collections.emptyList();
+  private static volatile boolean initialized = false;
   @InjectableField(beanName="storer")
   private HubPersistentStorer storer;
+  private final HubPersistentStorer decoratedStorer;
 
   private HubPersistentStorerSPI() {
+    BeanFactoryRegistrar.aggregate(this);
+    decoratedStorer = storer == null ? null : decorate(storer, decorators);
+    initialized = true;
   }
 
+  /**
+   * Get the storer with all the configured decorators stacked around it.
+   */
   public HubPersistentStorer getStorer() {
-    return storer;
+    return decoratedStorer;
   }
 
-  private static HubPersistentStorerSPI storerSPI;
+  /**
+   * Get the outermost layer of a type in the stack of decorated storers.
+   * @return The layer or null if there is no such layer
+   */
+  public <T extends HubPersistentStorer> T getStorer(Class<T> type) {
+    return AbstractDecoratingHubPersistentStorer.unwrap(decoratedStorer, type);
+  }
+
+  /**
+   * Get the order the storer streams events in after a placeholder, by their placeholder IDs.
+   * @see OrderedHubPersistentStorer#getPlaceholderOrder()
+   */
+  public Comparator<String> getPlaceholderOrder() {
+    final OrderedHubPersistentStorer orderedStorer = getStorer(OrderedHubPersistentStorer.class);
+    return orderedStorer == null ? PlaceholderOrder.ASCENDING : orderedStorer.getPlaceholderOrder();
+  }
 
+  /**
+   * Get the time within which every event streamed before a visible event becomes visible.
+   * @see OrderedHubPersistentStorer#getVisibilityLagInMillis()
+   */
+  public long getVisibilityLagInMillis() {
+    final OrderedHubPersistentStorer orderedStorer = getStorer(OrderedHubPersistentStorer.class);
+    return orderedStorer == null ? 0 : Math.max(0, orderedStorer.getVisibilityLagInMillis());
+  }
+
+  /**
+   * Get the SPI, resolving the storer if it is the first call.
+   * @throws IllegalStateException If the storer could not be resolved
+   */
   public static HubPersistentStorerSPI getInstance() {
-    if(storerSPI == null) {
-      storerSPI = new HubPersistentStorerSPI();
-      BeanFactoryRegistrar.aggregate(storerSPI);
+    if (InstanceHolder.INSTANCE == null) {
+      throw new IllegalStateException("Could not resolve the persistent storer!", InstanceHolder.FAILURE);
+    }
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Resolve the storer now rather than on the first request using it.
+   */
+  public static HubPersistentStorerSPI initialize() {
+    return getInstance();
+  }
+
+  public static boolean isInitialized() {
+    return initialized;
+  }
+
+  public static List<HubPersistentStorerDecorator> getDecorators() {
+    return decorators;
+  }
+
+  /**
+   * Set the decorators to stack around the storer, innermost first. They have to be set before the SPI is
+   * initialized, since the storer is decorated once.
+   * @throws IllegalStateException If the SPI has already been initialized
+   */
+  public static void setDecorators(List<HubPersistentStorerDecorator> decorators) {
+    if (initialized) {
+      throw new IllegalStateException("Storer has already been decorated!");
+    }
+    HubPersistentStorerSPI.decorators = decorators == null ? Collections.<HubPersistentStorerDecorator>emptyList()
+        : Collections.unmodifiableList(new ArrayList<HubPersistentStorerDecorator>(decorators));
+  }
+
+  /**
+   * Stack decorators around a storer.
+   * @param storer The storer to decorate
+   * @param decorators Decorators to apply, innermost first
+   * @return The outermost layer, or the storer itself if no decorator decorated it
+   */
+  public static HubPersistentStorer decorate(HubPersistentStorer storer,
+                                             List<HubPersistentStorerDecorator> decorators) {
+    HubPersistentStorer current = storer;
+    for (HubPersistentStorerDecorator decorator : decorators) {
+      final HubPersistentStorer decorated = decorator.decorate(current);
+      if (decorated != null) {
+        current = decorated;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Instantiate decorators from their class names, each of which has to have a public no-args constructor.
+   * @param classNames Class names separated by commas or white spaces, innermost first
+   * @return The decorators in the order named
+   * @throws IllegalArgumentException If any of the decorators could not be instantiated
+   */
+  public static List<HubPersistentStorerDecorator> createDecorators(String classNames) {
+    final List<HubPersistentStorerDecorator> newDecorators = new ArrayList<HubPersistentStorerDecorator>();
+    if (classNames == null) {
+      return newDecorators;
+    }
+    for (String className : classNames.split("[,\\s]+")) {
+      if (className.length() < 1) {
+        continue;
+      }
+      try {
+        newDecorators.add((HubPersistentStorerDecorator) Class.forName(className).newInstance());
+      }
+      catch (Exception ex) {
+        throw new IllegalArgumentException("Could not instantiate storer decorator " + className, ex);
+      }
+    }
+    return newDecorators;
+  }
+
+  private static class InstanceHolder {
+
+    private static final HubPersistentStorerSPI INSTANCE;
+    private static final Throwable FAILURE;
+
+    static {
+      /*
+       * A failure escaping the initializer would leave the holder class unusable, failing every later call with a
+       * NoClassDefFoundError that does not tell why
+       */
+      HubPersistentStorerSPI instance = null;
+      Throwable failure = null;
+      try {
+        instance = new HubPersistentStorerSPI();
+      }
+      catch (RuntimeException ex) {
+        failure = ex;
+      }
+      catch (LinkageError ex) {
+        failure = ex;
+      }
+      INSTANCE = instance;
+      FAILURE = failure;
     }
-    return storerSPI;
   }
 }
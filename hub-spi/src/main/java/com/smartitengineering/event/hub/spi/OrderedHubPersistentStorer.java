@@ -0,0 +1,49 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.util.Comparator;
+
+/**
+ * A storer whose events do not necessarily become visible in the order they are streamed in, e.g. since every node
+ * creating events assigns placeholder IDs from a block of its own, or since events are written by concurrent
+ * transactions. The storer guarantees instead that once an event is visible, every event streamed before it becomes
+ * visible within the {@link #getVisibilityLagInMillis() visibility lag}. So a reader resuming after the last event it
+ * read must only move past events that have been visible for the lag, else it may skip events that become visible
+ * later before its position.
+ * <p>
+ * A storer that does not implement this interface makes its events visible in the order they are streamed in, and
+ * orders its placeholder IDs {@link PlaceholderOrder#ASCENDING ascending}; see
+ * {@link HubPersistentStorerSPI#getPlaceholderOrder()} and {@link HubPersistentStorerSPI#getVisibilityLagInMillis()}.
+ * @author imyousuf
+ */
+public interface OrderedHubPersistentStorer extends HubPersistentStorer {
+
+  /**
+   * Get the order in which events are streamed {@link HubPersistentStorer.Direction#AFTER after} a placeholder, by
+   * their placeholder IDs.
+   */
+  public Comparator<String> getPlaceholderOrder();
+
+  /**
+   * Get the longest time, from when an event becomes visible, within which every event streamed before it becomes
+   * visible.
+   * @return The lag in milliseconds, 0 if events become visible in the order they are streamed in
+   */
+  public long getVisibilityLagInMillis();
+}
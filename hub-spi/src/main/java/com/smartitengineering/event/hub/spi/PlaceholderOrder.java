@@ -0,0 +1,82 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * Orders numeric placeholder IDs the way their events are streamed {@link HubPersistentStorer.Direction#AFTER after}
+ * one another, i.e. oldest first. Placeholder IDs that are not numbers are ordered before all others.
+ * @author imyousuf
+ */
+public final class PlaceholderOrder implements Comparator<String>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+  /**
+   * Order of storers whose placeholder IDs grow as events are created
+   */
+  public static final PlaceholderOrder ASCENDING = new PlaceholderOrder(false);
+  /**
+   * Order of storers whose placeholder IDs shrink as events are created
+   */
+  public static final PlaceholderOrder DESCENDING = new PlaceholderOrder(true);
+  private final boolean descending;
+
+  private PlaceholderOrder(boolean descending) {
+    this.descending = descending;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  @Override
+  public int compare(String placeholderId, String otherPlaceholderId) {
+    final long id = toNumber(placeholderId);
+    final long otherId = toNumber(otherPlaceholderId);
+    if (id == otherId) {
+      return 0;
+    }
+    if (id == Long.MIN_VALUE || otherId == Long.MIN_VALUE) {
+      return id == Long.MIN_VALUE ? -1 : 1;
+    }
+    return (id < otherId) != descending ? -1 : 1;
+  }
+
+  private static long toNumber(String placeholderId) {
+    if (placeholderId == null) {
+      return Long.MIN_VALUE;
+    }
+    try {
+      return Long.parseLong(placeholderId.trim());
+    }
+    catch (NumberFormatException ex) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  private Object readResolve() {
+    return descending ? DESCENDING : ASCENDING;
+  }
+
+  @Override
+  public String toString() {
+    return descending ? "DESCENDING" : "ASCENDING";
+  }
+}
@@ -0,0 +1,96 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import junit.framework.TestCase;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+
+/**
+ * Unit test for stacking decorators around a storer.
+ */
+public class AbstractDecoratingHubPersistentStorerTest
+    extends TestCase {
+
+  private Mockery mockery;
+  private HubPersistentStorer storer;
+
+  @Override
+  protected void setUp() throws Exception {
+    mockery = new Mockery();
+    storer = mockery.mock(HubPersistentStorer.class);
+  }
+
+  public void testOperationsArePassedOn() {
+    final Channel channel = mockery.mock(Channel.class);
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(1).of(storer).getChannel("channel");
+        will(returnValue(channel));
+        exactly(1).of(storer).delete(channel);
+      }
+    });
+    final CountingStorer inner = new CountingStorer(storer);
+    final CountingStorer outer = new CountingStorer(inner);
+    assertSame(channel, outer.getChannel("channel"));
+    outer.delete(channel);
+    assertEquals(1, inner.lookups);
+    assertEquals(1, outer.lookups);
+    mockery.assertIsSatisfied();
+  }
+
+  public void testUnwrapFindsOutermostLayerOfType() {
+    final CountingStorer inner = new CountingStorer(storer);
+    final ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(inner);
+    final CountingStorer outer = new CountingStorer(cache);
+    assertSame(outer, AbstractDecoratingHubPersistentStorer.unwrap(outer, CountingStorer.class));
+    assertSame(cache, AbstractDecoratingHubPersistentStorer.unwrap(outer, ChannelCachingHubPersistentStorer.class));
+    assertSame(outer, AbstractDecoratingHubPersistentStorer.unwrap(outer, HubPersistentStorer.class));
+    assertSame(inner, AbstractDecoratingHubPersistentStorer.unwrap(cache, CountingStorer.class));
+    assertNull(AbstractDecoratingHubPersistentStorer.unwrap(inner, ChannelCachingHubPersistentStorer.class));
+    assertNull(AbstractDecoratingHubPersistentStorer.unwrap(null, HubPersistentStorer.class));
+  }
+
+  public void testDecoratorNeedsStorer() {
+    try {
+      new CountingStorer(null);
+      fail("Decorated a null storer");
+    }
+    catch (IllegalArgumentException ex) {
+      //Expected
+    }
+  }
+
+  private static class CountingStorer
+      extends AbstractDecoratingHubPersistentStorer {
+
+    private int lookups;
+
+    CountingStorer(HubPersistentStorer storer) {
+      super(storer);
+    }
+
+    @Override
+    public Channel getChannel(String channelName) {
+      lookups++;
+      return super.getChannel(channelName);
+    }
+  }
+}
@@ -0,0 +1,346 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import com.smartitengineering.event.hub.api.Event;
+import com.smartitengineering.event.hub.api.Filter;
+import com.smartitengineering.event.hub.api.Filter.SupportedMimeType;
+import com.smartitengineering.event.hub.api.impl.APIFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import junit.framework.TestCase;
+
+/**
+ * The contract every {@link HubPersistentStorer} is tested against; each storer module subclasses it to run it on its
+ * storer and adds the tests specific to its backend. The tests do not expect the storer to be empty, nor clean up
+ * after themselves, so that backends shared by the tests of a run, such as a database, are tested as well; hence each
+ * test works on channels of its own.
+ * @author imyousuf
+ */
+public abstract class AbstractHubPersistentStorerContractTest
+    extends TestCase {
+
+  protected static final String CONTENT_TYPE = "application/xml";
+
+  /**
+   * Get the storer under test, set up for each test.
+   */
+  protected abstract HubPersistentStorer getStorer();
+
+  /**
+   * Check whether an exception is the one the storer rejects a duplicate channel or event with.
+   */
+  protected boolean isDuplicateRejection(RuntimeException ex) {
+    return ex instanceof IllegalArgumentException;
+  }
+
+  /**
+   * Get a date as the storer reads it back after persisting it, for storers that do not keep its full precision.
+   */
+  protected Date getStoredDate(Date date) {
+    return date;
+  }
+
+  public void testCreateChannel() {
+    final HubPersistentStorer storer = getStorer();
+    final String someName = newChannelName("someName");
+    storer.create((Channel) null);
+    storer.create(APIFactory.getChannelBuilder(someName).build());
+    Channel channel = storer.getChannel(someName.toUpperCase());
+    assertNotNull(channel);
+    assertEquals(someName.toLowerCase(), channel.getName());
+    assertNotNull(channel.getCreationDateTime());
+    assertNull(channel.getAuthToken());
+    assertNull(channel.getAutoExpiryDateTime());
+    assertNull(channel.getDescription());
+    assertNull(channel.getFilter());
+    final String name = newChannelName("name");
+    final Date expiry = new Date();
+    channel = APIFactory.getChannelBuilder(name).filter(APIFactory.getFilter(SupportedMimeType.JYTHON, "script")).
+        description("Desc").authToken("auth_token").autoExpiryDateTime(expiry).build();
+    storer.create(channel);
+    final Channel createdChannel = storer.getChannel(name);
+    assertNotNull(createdChannel);
+    assertEquals(name, createdChannel.getName());
+    assertNotNull(createdChannel.getCreationDateTime());
+    assertEquals("auth_token", createdChannel.getAuthToken());
+    assertEquals(getStoredDate(expiry), createdChannel.getAutoExpiryDateTime());
+    assertEquals("Desc", createdChannel.getDescription());
+    assertEquals(SupportedMimeType.JYTHON, createdChannel.getFilter().getMimeType());
+    assertEquals("script", createdChannel.getFilter().getFilterScript());
+    try {
+      storer.create(channel);
+      fail("Created duplicate!");
+    }
+    catch (RuntimeException ex) {
+      assertTrue(ex.toString(), isDuplicateRejection(ex));
+    }
+  }
+
+  public void testUpdateChannel() {
+    final HubPersistentStorer storer = getStorer();
+    final String name = newChannelName("name");
+    storer.create(APIFactory.getChannelBuilder(name).filter(APIFactory.getFilter(SupportedMimeType.JYTHON, "script")).
+        description("Desc").authToken("auth_token").build());
+    final Channel channel = storer.getChannel(name);
+    final Filter filter = APIFactory.getFilter(SupportedMimeType.RUBY, "script");
+    storer.update(APIFactory.getChannelBuilder(channel).filter(filter).description("Other").creationDateTime(channel.
+        getCreationDateTime()).build());
+    final Channel updatedChannel = storer.getChannel(name);
+    assertNotNull(updatedChannel);
+    assertEquals(name, updatedChannel.getName());
+    assertEquals("Other", updatedChannel.getDescription());
+    assertEquals("auth_token", updatedChannel.getAuthToken());
+    assertEquals(SupportedMimeType.RUBY, updatedChannel.getFilter().getMimeType());
+    assertEquals("script", updatedChannel.getFilter().getFilterScript());
+    assertEquals(channel.getPosition(), updatedChannel.getPosition());
+    assertEquals(channel.getCreationDateTime(), updatedChannel.getCreationDateTime());
+    storer.update(updatedChannel);
+    assertEquals("Other", storer.getChannel(name).getDescription());
+    storer.update(null);
+  }
+
+  public void testDeleteChannel() {
+    final HubPersistentStorer storer = getStorer();
+    final String name = newChannelName("name");
+    storer.create(APIFactory.getChannelBuilder(name).build());
+    final Channel channel = storer.getChannel(name);
+    assertNotNull(channel);
+    storer.delete(channel);
+    assertNull(storer.getChannel(name));
+    storer.delete((Channel) null);
+  }
+
+  public void testGetChannels() {
+    final HubPersistentStorer storer = getStorer();
+    assertTrue(storer.getChannels(1, 0) == Collections.EMPTY_LIST);
+    assertTrue(storer.getChannels(-1, 0) == Collections.EMPTY_LIST);
+    final List<Integer> positions = new ArrayList<Integer>();
+    for (int i = 0; i < 5; ++i) {
+      final String name = newChannelName("channel");
+      storer.create(APIFactory.getChannelBuilder(name).build());
+      positions.add(storer.getChannel(name).getPosition());
+    }
+    //The channels created before and after the middle one are on either side of it, whichever way positions grow
+    final int position = positions.get(2);
+    Collection<Channel> channels = storer.getChannels(position, 2);
+    assertFalse(channels.isEmpty());
+    assertTrue(channels.size() <= 2);
+    for (Channel channel : channels) {
+      assertTrue("Position is: " + channel.getPosition(), channel.getPosition() > position);
+    }
+    channels = storer.getChannels(position, -2);
+    assertFalse(channels.isEmpty());
+    assertTrue(channels.size() <= 2);
+    for (Channel channel : channels) {
+      assertTrue("Position is: " + channel.getPosition(), channel.getPosition() < position);
+    }
+  }
+
+  public void testCreateEvent() throws Exception {
+    final HubPersistentStorer storer = getStorer();
+    final Channel channel = APIFactory.getChannelBuilder(newChannelName("someName")).build();
+    assertNull(storer.create((Channel) null, (Event) null));
+    assertNull(storer.create(null, newEvent("<xml>some xml</xml>")));
+    assertNull(storer.create(channel, (Event) null));
+    Event event = storer.create(channel, newEvent("<xml>some xml</xml>"));
+    assertNotNull(event);
+    assertNotNull(event.getPlaceholderId());
+    assertNotNull(event.getUniversallyUniqueID());
+    assertEquals("<xml>some xml</xml>", getContent(event));
+    assertEquals(CONTENT_TYPE, event.getEventContent().getContentType());
+    event = storer.getEvent(event.getPlaceholderId());
+    assertNotNull(event);
+    assertEquals("<xml>some xml</xml>", getContent(event));
+    assertEquals(CONTENT_TYPE, event.getEventContent().getContentType());
+    assertNotNull(event.getUniversallyUniqueID());
+    Event event2 = storer.create(channel, APIFactory.getEventBuilder().eventContent(APIFactory.getContent(CONTENT_TYPE,
+        new byte[]{1})).placeholder(event.getPlaceholderId()).build());
+    assertFalse(event.getPlaceholderId().equals(event2.getPlaceholderId()));
+    assertFalse(event.getUniversallyUniqueID().equals(event2.getUniversallyUniqueID()));
+    assertNotNull(storer.getEvent(event2.getPlaceholderId()));
+    try {
+      storer.create(channel, APIFactory.getEventBuilder().eventContent(APIFactory.getContent(CONTENT_TYPE, new byte[]{
+            1})).uuid(event.getUniversallyUniqueID()).build());
+      fail("Created duplicate Event!");
+    }
+    catch (RuntimeException ex) {
+      assertTrue(ex.toString(), isDuplicateRejection(ex));
+    }
+    final String uuid = UUID.randomUUID().toString();
+    Event event3 = storer.create(channel, APIFactory.getEventBuilder().eventContent(APIFactory.getContent(
+        CONTENT_TYPE, new byte[]{1})).uuid(uuid).build());
+    assertEquals(uuid, event3.getUniversallyUniqueID());
+    assertEquals(uuid, storer.getEvent(event3.getPlaceholderId()).getUniversallyUniqueID());
+  }
+
+  public void testGetEventByUUID() {
+    final HubPersistentStorer storer = getStorer();
+    final String uuid = UUID.randomUUID().toString();
+    final Event event = storer.create(APIFactory.getChannelBuilder(newChannelName("someName")).build(), APIFactory.
+        getEventBuilder().eventContent(APIFactory.getContent(CONTENT_TYPE, new byte[]{1})).uuid(uuid).build());
+    assertEquals(uuid, event.getUniversallyUniqueID());
+    final Event foundEvent = storer.getEventByUUID(uuid);
+    assertEquals(uuid, foundEvent.getUniversallyUniqueID());
+    assertEquals(event.getPlaceholderId(), foundEvent.getPlaceholderId());
+    assertNull(storer.getEventByUUID(null));
+    assertNull(storer.getEventByUUID(""));
+    assertNull(storer.getEventByUUID("aab"));
+  }
+
+  public void testGetEvents() {
+    final HubPersistentStorer storer = getStorer();
+    assertTrue(storer.getEvents("-1", null, 0).isEmpty());
+    assertTrue(storer.getEvents("  ", "  ", 0).isEmpty());
+    assertTrue(storer.getEvents(null, null, 0).isEmpty());
+    assertTrue(storer.getEvents("1", null, 0).isEmpty());
+    final Channel channel = APIFactory.getChannelBuilder(newChannelName("someName")).build();
+    final Channel otherChannel = APIFactory.getChannelBuilder(newChannelName("otherName")).build();
+    final List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 7; ++i) {
+      ids.add(storer.create(channel, newEvent("<xml>" + i + "</xml>")).getPlaceholderId());
+      storer.create(otherChannel, newEvent("<xml>other " + i + "</xml>"));
+    }
+    //Newest first in either direction
+    assertEquals(Arrays.asList(ids.get(6), ids.get(5), ids.get(4)), getIds(storer.getEvents(ids.get(3), channel.
+        getName(), 3)));
+    assertEquals(Arrays.asList(ids.get(2), ids.get(1), ids.get(0)), getIds(storer.getEvents(ids.get(3), channel.
+        getName().toUpperCase(), -3)));
+    assertEquals(Arrays.asList(ids.get(6), ids.get(5)), getIds(storer.getEvents("-1", channel.getName(), 2)));
+    assertEquals(3, storer.getEvents(ids.get(3), null, 3).size());
+    assertEquals(3, storer.getEvents(ids.get(3), "\t", -3).size());
+    assertTrue(storer.getEvents(ids.get(3), newChannelName("missing"), 3).isEmpty());
+  }
+
+  public void testCreateEvents() throws Exception {
+    final HubPersistentStorer storer = getStorer();
+    final Channel channel = APIFactory.getChannelBuilder(newChannelName("someName")).build();
+    assertTrue(storer.create(channel, (List<Event>) null).isEmpty());
+    assertTrue(storer.create(null, Collections.singletonList(newEvent("<xml>null channel</xml>"))).isEmpty());
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 5; ++i) {
+      events.add(newEvent("<xml>batch " + i + "</xml>"));
+    }
+    final List<Event> createdEvents = storer.create(channel, events);
+    assertEquals(5, createdEvents.size());
+    for (int i = 0; i < 5; ++i) {
+      assertNotNull(createdEvents.get(i).getPlaceholderId());
+      assertNotNull(createdEvents.get(i).getUniversallyUniqueID());
+      final Event event = storer.getEvent(createdEvents.get(i).getPlaceholderId());
+      assertNotNull(event);
+      assertEquals("<xml>batch " + i + "</xml>", getContent(event));
+      assertEquals(event.getPlaceholderId(), storer.getEventByUUID(event.getUniversallyUniqueID()).getPlaceholderId());
+    }
+  }
+
+  public void testStreamEvents() {
+    final HubPersistentStorer storer = getStorer();
+    final Channel channel = APIFactory.getChannelBuilder(newChannelName("streamChannel")).build();
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 5; ++i) {
+      events.add(newEvent("<xml>stream " + i + "</xml>"));
+    }
+    final List<Event> createdEvents = storer.create(channel, events);
+    assertEquals(5, createdEvents.size());
+    CloseableIterator<Event> iterator = storer.streamEvents(createdEvents.get(0).getPlaceholderId(), channel.getName(),
+                                                            HubPersistentStorer.Direction.AFTER);
+    for (int i = 1; i < 5; ++i) {
+      assertTrue(iterator.hasNext());
+      assertEquals(createdEvents.get(i).getPlaceholderId(), iterator.next().getPlaceholderId());
+    }
+    assertFalse(iterator.hasNext());
+    iterator.close();
+    iterator = storer.streamEvents(createdEvents.get(4).getPlaceholderId(), channel.getName(),
+                                   HubPersistentStorer.Direction.BEFORE);
+    for (int i = 3; i > -1; --i) {
+      assertTrue(iterator.hasNext());
+      assertEquals(createdEvents.get(i).getPlaceholderId(), iterator.next().getPlaceholderId());
+    }
+    assertFalse(iterator.hasNext());
+    iterator.close();
+    iterator = storer.streamEvents("-1", channel.getName(), HubPersistentStorer.Direction.BEFORE);
+    assertTrue(iterator.hasNext());
+    assertEquals(createdEvents.get(4).getPlaceholderId(), iterator.next().getPlaceholderId());
+    iterator.close();
+    assertFalse(iterator.hasNext());
+  }
+
+  public void testConsumerOffsets() {
+    final HubPersistentStorer storer = getStorer();
+    final String channelName = newChannelName("offsetChannel");
+    assertNull(storer.getConsumerOffset(channelName, "workers"));
+    storer.commitConsumerOffsets(Arrays.asList(new ConsumerOffset(channelName, "workers", "10"),
+                                               new ConsumerOffset(channelName, "auditors", "5")));
+    assertEquals("10", storer.getConsumerOffset(channelName, "workers").getPlaceholderId());
+    assertEquals("5", storer.getConsumerOffset(channelName.toUpperCase(), "auditors").getPlaceholderId());
+    storer.commitConsumerOffsets(Collections.singletonList(new ConsumerOffset(channelName, "workers", "12")));
+    final ConsumerOffset offset = storer.getConsumerOffset(channelName, "workers");
+    assertEquals("12", offset.getPlaceholderId());
+    assertEquals("workers", offset.getGroupName());
+    assertNotNull(offset.getCommitDateTime());
+    assertEquals("5", storer.getConsumerOffset(channelName, "auditors").getPlaceholderId());
+    assertNull(storer.getConsumerOffset(channelName, "others"));
+  }
+
+  public void testDeleteEvent() {
+    final HubPersistentStorer storer = getStorer();
+    storer.delete((Event) null);
+    final Event event = newEvent("<xml/>");
+    storer.delete(event);
+    final Event createdEvent = storer.create(APIFactory.getChannelBuilder(newChannelName("someName")).build(), event);
+    assertNotNull(storer.getEvent(createdEvent.getPlaceholderId()));
+    storer.delete(storer.getEvent(createdEvent.getPlaceholderId()));
+    assertNull(storer.getEvent(createdEvent.getPlaceholderId()));
+  }
+
+  /**
+   * Get a name for a channel of the test not used by any other test of the run.
+   */
+  protected String newChannelName(String prefix) {
+    return prefix + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  protected Event newEvent(String content) {
+    try {
+      return APIFactory.getEventBuilder().eventContent(APIFactory.getContent(CONTENT_TYPE, content.getBytes("UTF-8"))).
+          build();
+    }
+    catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  protected String getContent(Event event)
+      throws Exception {
+    return new String(APIFactory.getContentBytes(event.getEventContent()), "UTF-8");
+  }
+
+  protected List<String> getIds(Collection<Event> events) {
+    final List<String> ids = new ArrayList<String>();
+    for (Event event : events) {
+      ids.add(event.getPlaceholderId());
+    }
+    return ids;
+  }
+}
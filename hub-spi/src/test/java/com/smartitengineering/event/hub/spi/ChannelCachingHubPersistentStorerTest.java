@@ -0,0 +1,139 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import junit.framework.TestCase;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+
+/**
+ * Unit test for the channel cache.
+ */
+public class ChannelCachingHubPersistentStorerTest
+    extends TestCase {
+
+  private Mockery mockery;
+  private HubPersistentStorer storer;
+  private Channel channel;
+
+  @Override
+  protected void setUp() throws Exception {
+    mockery = new Mockery();
+    storer = mockery.mock(HubPersistentStorer.class);
+    channel = mockery.mock(Channel.class);
+    mockery.checking(new Expectations() {
+
+      {
+        allowing(channel).getName();
+        will(returnValue("channel"));
+      }
+    });
+  }
+
+  public void testRepeatedLookupIsServedFromCache() {
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(1).of(storer).getChannel("channel");
+        will(returnValue(channel));
+      }
+    });
+    ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(storer);
+    assertSame(channel, cache.getChannel("channel"));
+    assertSame(channel, cache.getChannel("Channel"));
+    assertSame(channel, cache.getChannel("channel"));
+    assertEquals(2, cache.getStats().getHits());
+    assertEquals(1, cache.getStats().getMisses());
+    assertEquals(2d / 3d, cache.getStats().getHitRate(), 0.0001d);
+    mockery.assertIsSatisfied();
+  }
+
+  public void testMissingChannelIsNotCached() {
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(2).of(storer).getChannel("channel");
+        will(returnValue(null));
+      }
+    });
+    ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(storer);
+    assertNull(cache.getChannel("channel"));
+    assertNull(cache.getChannel("channel"));
+    assertEquals(0, cache.getCacheSize());
+    mockery.assertIsSatisfied();
+  }
+
+  public void testUpdateInvalidatesLocallyAndAcrossCluster() {
+    final ChannelInvalidationPublisher publisher = mockery.mock(ChannelInvalidationPublisher.class);
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(2).of(storer).getChannel("channel");
+        will(returnValue(channel));
+        exactly(1).of(storer).update(channel);
+        exactly(1).of(publisher).publishInvalidation("channel");
+      }
+    });
+    ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(storer);
+    cache.setInvalidationPublisher(publisher);
+    cache.getChannel("channel");
+    cache.update(channel);
+    cache.getChannel("channel");
+    assertEquals(1, cache.getStats().getInvalidations());
+    mockery.assertIsSatisfied();
+  }
+
+  public void testRemoteInvalidationIsNotRepublished() {
+    final ChannelInvalidationPublisher publisher = mockery.mock(ChannelInvalidationPublisher.class);
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(2).of(storer).getChannel("channel");
+        will(returnValue(channel));
+        never(publisher).publishInvalidation(with(any(String.class)));
+      }
+    });
+    ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(storer);
+    cache.setInvalidationPublisher(publisher);
+    cache.getChannel("channel");
+    cache.invalidate("channel");
+    cache.getChannel("channel");
+    mockery.assertIsSatisfied();
+  }
+
+  public void testSizeIsBounded() {
+    final Channel other = mockery.mock(Channel.class, "other");
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(2).of(storer).getChannel("channel");
+        will(returnValue(channel));
+        exactly(1).of(storer).getChannel("other");
+        will(returnValue(other));
+      }
+    });
+    ChannelCachingHubPersistentStorer cache = new ChannelCachingHubPersistentStorer(storer, 60000, 1);
+    cache.getChannel("channel");
+    cache.getChannel("other");
+    cache.getChannel("channel");
+    assertEquals(1, cache.getCacheSize());
+    assertEquals(2, cache.getStats().getEvictions());
+    mockery.assertIsSatisfied();
+  }
+}
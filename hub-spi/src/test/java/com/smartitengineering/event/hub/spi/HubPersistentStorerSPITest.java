@@ -0,0 +1,142 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import com.smartitengineering.event.hub.api.Channel;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+
+/**
+ * Unit test for stacking the decorators named by the <tt>storerDecorators</tt> parameter around a storer.
+ */
+public class HubPersistentStorerSPITest
+    extends TestCase {
+
+  private Mockery mockery;
+  private HubPersistentStorer storer;
+
+  @Override
+  protected void setUp() throws Exception {
+    mockery = new Mockery();
+    storer = mockery.mock(HubPersistentStorer.class);
+  }
+
+  public void testDecoratorsAreStackedInOrder() {
+    final Channel channel = mockery.mock(Channel.class);
+    mockery.checking(new Expectations() {
+
+      {
+        exactly(1).of(storer).getChannel("channel");
+        will(returnValue(channel));
+      }
+    });
+    final List<HubPersistentStorerDecorator> decorators = HubPersistentStorerSPI.createDecorators(
+        InnerDecorator.class.getName() + ", " + OuterDecorator.class.getName());
+    assertEquals(2, decorators.size());
+    final HubPersistentStorer decorated = HubPersistentStorerSPI.decorate(storer, decorators);
+    assertTrue(decorated instanceof OuterStorer);
+    final InnerStorer inner = AbstractDecoratingHubPersistentStorer.unwrap(decorated, InnerStorer.class);
+    assertNotNull(inner);
+    assertSame(storer, inner.getDelegate());
+    assertSame(inner, ((OuterStorer) decorated).getDelegate());
+    assertSame(channel, decorated.getChannel("channel"));
+    assertEquals(1, inner.lookups);
+    assertEquals(1, ((OuterStorer) decorated).lookups);
+    mockery.assertIsSatisfied();
+  }
+
+  public void testDecoratorMayLeaveStorerAsItIs() {
+    final List<HubPersistentStorerDecorator> decorators = HubPersistentStorerSPI.createDecorators(
+        NoopDecorator.class.getName());
+    assertSame(storer, HubPersistentStorerSPI.decorate(storer, decorators));
+    assertSame(storer, HubPersistentStorerSPI.decorate(storer, HubPersistentStorerSPI.createDecorators(" ")));
+    assertSame(storer, HubPersistentStorerSPI.decorate(storer, Collections.<HubPersistentStorerDecorator>emptyList()));
+  }
+
+  public void testUnknownDecorator() {
+    try {
+      HubPersistentStorerSPI.createDecorators(InnerDecorator.class.getName() + ",no.such.Decorator");
+      fail("Instantiated an unknown decorator");
+    }
+    catch (IllegalArgumentException ex) {
+      //Expected
+    }
+  }
+
+  public static class InnerDecorator
+      implements HubPersistentStorerDecorator {
+
+    @Override
+    public HubPersistentStorer decorate(HubPersistentStorer storer) {
+      return new InnerStorer(storer);
+    }
+  }
+
+  public static class OuterDecorator
+      implements HubPersistentStorerDecorator {
+
+    @Override
+    public HubPersistentStorer decorate(HubPersistentStorer storer) {
+      return new OuterStorer(storer);
+    }
+  }
+
+  public static class NoopDecorator
+      implements HubPersistentStorerDecorator {
+
+    @Override
+    public HubPersistentStorer decorate(HubPersistentStorer storer) {
+      return null;
+    }
+  }
+
+  private static class InnerStorer
+      extends AbstractDecoratingHubPersistentStorer {
+
+    private int lookups;
+
+    InnerStorer(HubPersistentStorer storer) {
+      super(storer);
+    }
+
+    @Override
+    public Channel getChannel(String channelName) {
+      lookups++;
+      return super.getChannel(channelName);
+    }
+  }
+
+  private static class OuterStorer
+      extends AbstractDecoratingHubPersistentStorer {
+
+    private int lookups;
+
+    OuterStorer(HubPersistentStorer storer) {
+      super(storer);
+    }
+
+    @Override
+    public Channel getChannel(String channelName) {
+      lookups++;
+      return super.getChannel(channelName);
+    }
+  }
+}
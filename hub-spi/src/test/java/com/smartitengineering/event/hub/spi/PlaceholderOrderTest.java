@@ -0,0 +1,65 @@
+/*
+It is a application for event distribution to event n-consumers with m-sources.
+Copyright (C) 2010 "Imran M Yousuf <imran@smartitengineering.com>"
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or any later
+version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.smartitengineering.event.hub.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author imyousuf
+ */
+public class PlaceholderOrderTest
+    extends TestCase {
+
+  public void testAscending() {
+    List<String> ids = Arrays.asList("10", "9", "100", " 11 ");
+    Collections.sort(ids, PlaceholderOrder.ASCENDING);
+    assertEquals(Arrays.asList("9", "10", " 11 ", "100"), ids);
+    assertEquals(0, PlaceholderOrder.ASCENDING.compare("7", "7"));
+  }
+
+  public void testDescending() {
+    List<String> ids = Arrays.asList("10", "9", "100", String.valueOf(Long.MAX_VALUE));
+    Collections.sort(ids, PlaceholderOrder.DESCENDING);
+    assertEquals(Arrays.asList(String.valueOf(Long.MAX_VALUE), "100", "10", "9"), ids);
+  }
+
+  public void testNonNumericFirst() {
+    assertTrue(PlaceholderOrder.ASCENDING.compare(null, "1") < 0);
+    assertTrue(PlaceholderOrder.DESCENDING.compare("abc", "1") < 0);
+    assertTrue(PlaceholderOrder.DESCENDING.compare("1", "") > 0);
+    assertEquals(0, PlaceholderOrder.DESCENDING.compare(null, "abc"));
+  }
+
+  public void testSerializedOrderIsSame()
+      throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(PlaceholderOrder.DESCENDING);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertSame(PlaceholderOrder.DESCENDING, in.readObject());
+  }
+}